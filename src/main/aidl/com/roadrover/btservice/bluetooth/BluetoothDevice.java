@@ -2,8 +2,11 @@ package com.roadrover.btservice.bluetooth;
 
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.v4.util.Pools;
 import android.text.TextUtils;
 
+import java.util.List;
+
 /**
  * 蓝牙设备对象 </br>
  *   1) 用户调用 searchNewDevice 接口时，返回该对象 </br>
@@ -40,12 +43,14 @@ public class BluetoothDevice implements Parcelable {
     public static final Creator<BluetoothDevice> CREATOR = new Creator<BluetoothDevice>() {
         @Override
         public BluetoothDevice createFromParcel(Parcel in) {
-            return new BluetoothDevice(in);
+            BluetoothDevice device = obtain();
+            device.readFromParcel(in);
+            return device;
         }
 
         @Override
         public BluetoothDevice[] newArray(int size) {
-            return new BluetoothDevice[size];
+            return (size == 0) ? EMPTY_ARRAY : new BluetoothDevice[size];
         }
     };
 
@@ -56,7 +61,7 @@ public class BluetoothDevice implements Parcelable {
      * @return
      */
     public static BluetoothDevice createDevice(String addr, String name) {
-        BluetoothDevice device = CREATOR.createFromParcel(null);
+        BluetoothDevice device = obtain();
         device.name = name;
         device.addr = addr;
         return device;
@@ -73,4 +78,51 @@ public class BluetoothDevice implements Parcelable {
         }
         return false;
     }
+
+    private static final BluetoothDevice[] EMPTY_ARRAY = new BluetoothDevice[0];
+    private static final Pools.SynchronizedPool<BluetoothDevice> sPool = new Pools.SynchronizedPool<>(32);
+    private boolean mRecycled = false;
+
+    /**
+     * 从对象池获取一个对象，字段为默认值
+     * @return
+     */
+    public static BluetoothDevice obtain() {
+        BluetoothDevice instance = sPool.acquire();
+        if (instance == null) {
+            return new BluetoothDevice((Parcel) null);
+        }
+        instance.mRecycled = false;
+        return instance;
+    }
+
+    /**
+     * 放回对象池，放回之后不能再使用该对象
+     */
+    public void recycle() {
+        synchronized (sPool) {
+            if (mRecycled) {
+                return;
+            }
+            mRecycled = true;
+        }
+        name = "";
+        addr = "";
+        sPool.release(this);
+    }
+
+    /**
+     * 批量放回对象池，一般在一批数据使用完之后调用，放回之后列表会被清空
+     * @param list 数据列表
+     */
+    public static void recycle(List<BluetoothDevice> list) {
+        if (list != null) {
+            for (BluetoothDevice item : list) {
+                if (item != null) {
+                    item.recycle();
+                }
+            }
+            list.clear();
+        }
+    }
 }
@@ -2,8 +2,11 @@ package com.roadrover.btservice.bluetooth;
 
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.v4.util.Pools;
 import android.text.TextUtils;
 
+import java.util.List;
+
 /**
  * 蓝牙电话本，通话记录, 传递数据类
  */
@@ -49,7 +52,7 @@ public class BluetoothVCardBook implements Parcelable {
      * @return
      */
     public static BluetoothVCardBook createVCardBook(String codingType, String name, String type, String phoneNumber, String callTime) {
-        BluetoothVCardBook book = CREATOR.createFromParcel(null);
+        BluetoothVCardBook book = obtain();
         book.codingType = codingType;
         book.name = name;
         book.type = type;
@@ -61,12 +64,14 @@ public class BluetoothVCardBook implements Parcelable {
     public static final Creator<BluetoothVCardBook> CREATOR = new Creator<BluetoothVCardBook>() {
         @Override
         public BluetoothVCardBook createFromParcel(Parcel in) {
-            return new BluetoothVCardBook(in);
+            BluetoothVCardBook book = obtain();
+            book.readFromParcel(in);
+            return book;
         }
 
         @Override
         public BluetoothVCardBook[] newArray(int size) {
-            return new BluetoothVCardBook[size];
+            return (size == 0) ? EMPTY_ARRAY : new BluetoothVCardBook[size];
         }
     };
 
@@ -129,4 +134,54 @@ public class BluetoothVCardBook implements Parcelable {
         }
         return 0;
     }
+
+    private static final BluetoothVCardBook[] EMPTY_ARRAY = new BluetoothVCardBook[0];
+    private static final Pools.SynchronizedPool<BluetoothVCardBook> sPool = new Pools.SynchronizedPool<>(512);
+    private boolean mRecycled = false;
+
+    /**
+     * 从对象池获取一个对象，字段为默认值
+     * @return
+     */
+    public static BluetoothVCardBook obtain() {
+        BluetoothVCardBook instance = sPool.acquire();
+        if (instance == null) {
+            return new BluetoothVCardBook((Parcel) null);
+        }
+        instance.mRecycled = false;
+        return instance;
+    }
+
+    /**
+     * 放回对象池，放回之后不能再使用该对象
+     */
+    public void recycle() {
+        synchronized (sPool) {
+            if (mRecycled) {
+                return;
+            }
+            mRecycled = true;
+        }
+        codingType = null;
+        name = null;
+        type = null;
+        phoneNumber = null;
+        callTime = null;
+        sPool.release(this);
+    }
+
+    /**
+     * 批量放回对象池，一般在一批数据使用完之后调用，放回之后列表会被清空
+     * @param list 数据列表
+     */
+    public static void recycle(List<BluetoothVCardBook> list) {
+        if (list != null) {
+            for (BluetoothVCardBook item : list) {
+                if (item != null) {
+                    item.recycle();
+                }
+            }
+            list.clear();
+        }
+    }
 }
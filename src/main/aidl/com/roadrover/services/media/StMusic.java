@@ -3,8 +3,11 @@ package com.roadrover.services.media;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.v4.util.Pools;
 import android.text.TextUtils;
 
+import java.util.List;
+
 /**
  * Created by y on 2017/2/24.
  * 音乐的结构体类，该类主要用作id3信息传递
@@ -32,12 +35,14 @@ public class StMusic implements Parcelable {
     public static final Creator<StMusic> CREATOR = new Creator<StMusic>() {
         @Override
         public StMusic createFromParcel(Parcel in) {
-            return new StMusic(in);
+            StMusic stMusic = obtain();
+            stMusic.readFromParcel(in);
+            return stMusic;
         }
 
         @Override
         public StMusic[] newArray(int size) {
-            return new StMusic[size];
+            return (size == 0) ? EMPTY_ARRAY : new StMusic[size];
         }
     };
 
@@ -81,7 +86,7 @@ public class StMusic implements Parcelable {
     public static StMusic createStMusic(@NonNull String path, @NonNull String track,
                                         @NonNull String album, @NonNull String artist,
                                         @NonNull String name, long duration) {
-        StMusic stMusic = CREATOR.createFromParcel(null);
+        StMusic stMusic = obtain();
         stMusic.mPath = path;
         stMusic.mTrack = track;
         stMusic.mAlbum = album;
@@ -102,4 +107,56 @@ public class StMusic implements Parcelable {
         }
         return super.equals(o);
     }
+
+    private static final StMusic[] EMPTY_ARRAY = new StMusic[0];
+    private static final Pools.SynchronizedPool<StMusic> sPool = new Pools.SynchronizedPool<>(256);
+    private boolean mRecycled = false;
+
+    /**
+     * 从对象池获取一个对象，字段为默认值
+     * @return
+     */
+    public static StMusic obtain() {
+        StMusic instance = sPool.acquire();
+        if (instance == null) {
+            return new StMusic((Parcel) null);
+        }
+        instance.mRecycled = false;
+        return instance;
+    }
+
+    /**
+     * 放回对象池，放回之后不能再使用该对象
+     */
+    public void recycle() {
+        synchronized (sPool) {
+            if (mRecycled) {
+                return;
+            }
+            mRecycled = true;
+        }
+        mPath = "";
+        mTrack = "";
+        mAlbum = "";
+        mArtist = "";
+        mName = "";
+        mDuration = 0;
+        sPool.release(this);
+    }
+
+    /**
+     * 批量放回对象池，一般在一批数据使用完之后调用，放回之后列表会被清空 </br>
+     * SDK 不会回收通过回调和事件交给应用的对象，应用确定没有其他地方使用时才可以放回
+     * @param list 数据列表
+     */
+    public static void recycle(List<StMusic> list) {
+        if (list != null) {
+            for (StMusic item : list) {
+                if (item != null) {
+                    item.recycle();
+                }
+            }
+            list.clear();
+        }
+    }
 }
@@ -0,0 +1,276 @@
+package com.roadrover.sdk.audio;
+
+import android.os.RemoteException;
+import android.util.SparseBooleanArray;
+
+import com.roadrover.sdk.utils.LogNameUtil;
+import com.roadrover.sdk.utils.Logcat;
+import com.roadrover.sdk.utils.ParamTable;
+import com.roadrover.services.audio.IAudio;
+
+/**
+ * 音频参数表，缓存全部 {@link AudioParam} 和 {@link IVIAudio.Channel} 的有效性、最小值、最大值、默认值和当前值 </br>
+ * 1. 第一次获取时通过 IAudio.getParamTable 等批量接口一次取回整张表，服务不支持批量接口时退化为逐个获取，获取过的不会再获取，
+ *    加载过程和视频参数表一样由 {@link ParamTable} 实现 </br>
+ * 2. 当前值由 {@link IVIAudioManager} 在设置参数和收到服务回调时更新，服务只回调音量和静音，
+ *    其他参数被服务内部修改时表中的值会过时，例如切换EQ模式，需要调用 {@link #invalidateParams()} </br>
+ * 3. 服务重新连接之后需要调用 {@link #clear()}，下次获取时重新加载 </br>
+ * 返回的是表内部的对象，调用者不能修改
+ */
+class AudioParamTable {
+
+    private static int[] sParamIds = null;
+    private static int[] sChannels = null;
+
+    private final ParamTable<IAudio, AudioParam> mParams = new ParamTable<IAudio, AudioParam>() {
+        @Override
+        protected int[] getIds() {
+            return getParamIds();
+        }
+
+        @Override
+        protected boolean fetchAll(IAudio audio, int[] ids) throws RemoteException {
+            final int[] values = audio.getParamTable(ids);
+            if (values == null || values.length != ids.length * FIELD_COUNT) {
+                return false;
+            }
+            for (int i = 0; i < ids.length; ++i) {
+                final int base = i * FIELD_COUNT;
+                put(ids[i], (values[base + FIELD_AVAILABLE] == 0) ? null :
+                        new AudioParam(ids[i], values[base + FIELD_MIN], values[base + FIELD_MAX],
+                                values[base + FIELD_DEFAULT], values[base + FIELD_VALUE]));
+            }
+            Logcat.d("load " + ids.length + " params");
+            return true;
+        }
+
+        @Override
+        protected AudioParam fetch(IAudio audio, int id) throws RemoteException {
+            if (!audio.isParamAvailable(id)) {
+                return null;
+            }
+            return new AudioParam(id, audio.getParamMinValue(id), audio.getParamMaxValue(id),
+                    audio.getParamDefaultValue(id), audio.getParam(id));
+        }
+    };
+
+    private final ParamTable<IAudio, IVIAudio.Channel> mBuildIns = new ChannelTable() {
+        @Override
+        protected float[] fetchTable(IAudio audio, int[] channels) throws RemoteException {
+            return audio.getBuildInPreVolumeTable(channels);
+        }
+
+        @Override
+        protected IVIAudio.Channel fetch(IAudio audio, int channel) throws RemoteException {
+            if (!audio.isBuildInPreVolumeAvailable(channel)) {
+                return null;
+            }
+            IVIAudio.Channel param = new IVIAudio.Channel(channel, audio.getBuildInPreVolumeMinValue(channel),
+                    audio.getBuildInPreVolumeMaxValue(channel), audio.getBuildInPreVolumeDefaultValue(channel));
+            param.mValue = audio.getBuildInPreVolumeValue(channel);
+            return param;
+        }
+    };
+
+    private final ParamTable<IAudio, IVIAudio.Channel> mSecondaryBuildIns = new ChannelTable() {
+        @Override
+        protected float[] fetchTable(IAudio audio, int[] channels) throws RemoteException {
+            return audio.getSecondaryBuildInPreVolumeTable(channels);
+        }
+
+        @Override
+        protected IVIAudio.Channel fetch(IAudio audio, int channel) throws RemoteException {
+            if (!audio.isSecondaryBuildInPreVolumeAvailable(channel)) {
+                return null;
+            }
+            IVIAudio.Channel param = new IVIAudio.Channel(channel, audio.getSecondaryBuildInPreVolumeMinValue(channel),
+                    audio.getSecondaryBuildInPreVolumeMaxValue(channel),
+                    audio.getSecondaryBuildInPreVolumeDefaultValue(channel));
+            param.mValue = audio.getSecondaryBuildInPreVolumeValue(channel);
+            return param;
+        }
+    };
+
+    /**
+     * 声音通道 BuildInPreVolume 参数的缓存，批量接口的值为 float
+     */
+    private static abstract class ChannelTable extends ParamTable<IAudio, IVIAudio.Channel> {
+        @Override
+        protected int[] getIds() {
+            return getChannels();
+        }
+
+        @Override
+        protected boolean fetchAll(IAudio audio, int[] channels) throws RemoteException {
+            final float[] values = fetchTable(audio, channels);
+            if (values == null || values.length != channels.length * FIELD_COUNT) {
+                return false;
+            }
+            for (int i = 0; i < channels.length; ++i) {
+                final int base = i * FIELD_COUNT;
+                IVIAudio.Channel param = null;
+                if (values[base + FIELD_AVAILABLE] != 0) {
+                    param = new IVIAudio.Channel(channels[i], values[base + FIELD_MIN], values[base + FIELD_MAX],
+                            values[base + FIELD_DEFAULT]);
+                    param.mValue = values[base + FIELD_VALUE];
+                }
+                put(channels[i], param);
+            }
+            return true;
+        }
+
+        protected abstract float[] fetchTable(IAudio audio, int[] channels) throws RemoteException;
+    }
+
+    /**
+     * 获取参数，第一次调用时批量加载整张参数表
+     * @param audio 音频服务接口
+     * @param id {@link AudioParam.Id}
+     * @return 参数无效返回null
+     * @throws RemoteException
+     */
+    AudioParam getParam(IAudio audio, int id) throws RemoteException {
+        return mParams.get(audio, id);
+    }
+
+    /**
+     * 获取主通道的 BuildInPreVolume 参数，第一次调用时批量加载全部通道
+     * @param audio 音频服务接口
+     * @param channel {@link IVIAudio.Channel}
+     * @return 参数无效返回null
+     * @throws RemoteException
+     */
+    IVIAudio.Channel getBuildInPreVolume(IAudio audio, int channel) throws RemoteException {
+        return mBuildIns.get(audio, channel);
+    }
+
+    /**
+     * 获取辅助通道的 BuildInPreVolume 参数，第一次调用时批量加载全部通道
+     * @param audio 音频服务接口
+     * @param channel {@link IVIAudio.Channel}
+     * @return 参数无效返回null
+     * @throws RemoteException
+     */
+    IVIAudio.Channel getSecondaryBuildInPreVolume(IAudio audio, int channel) throws RemoteException {
+        return mSecondaryBuildIns.get(audio, channel);
+    }
+
+    /**
+     * 更新参数的当前值，参数还没有加载时不处理
+     * @param id {@link AudioParam.Id}
+     * @param value 当前值
+     * @return 表中的值发生了变化返回true
+     */
+    boolean updateParam(int id, int value) {
+        synchronized (mParams) {
+            AudioParam param = mParams.peek(id);
+            if (param != null && param.mValue != value) {
+                param.mValue = value;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 更新主通道 BuildInPreVolume 的当前值，超出范围时取边界值
+     * @param channel {@link IVIAudio.Channel}
+     * @param value 当前值
+     * @return 表中的值发生了变化返回true
+     */
+    boolean updateBuildInPreVolume(int channel, float value) {
+        return updateChannel(mBuildIns, channel, value);
+    }
+
+    /**
+     * 更新辅助通道 BuildInPreVolume 的当前值，超出范围时取边界值
+     * @param channel {@link IVIAudio.Channel}
+     * @param value 当前值
+     * @return 表中的值发生了变化返回true
+     */
+    boolean updateSecondaryBuildInPreVolume(int channel, float value) {
+        return updateChannel(mSecondaryBuildIns, channel, value);
+    }
+
+    /**
+     * 参数被服务内部修改，下次获取时重新加载全部 {@link AudioParam}
+     */
+    void invalidateParams() {
+        mParams.clear();
+    }
+
+    /**
+     * 主通道的 BuildInPreVolume 被重设，下次获取时重新加载
+     */
+    void invalidateBuildInPreVolume() {
+        mBuildIns.clear();
+    }
+
+    /**
+     * 辅助通道的 BuildInPreVolume 被重设，下次获取时重新加载
+     */
+    void invalidateSecondaryBuildInPreVolume() {
+        mSecondaryBuildIns.clear();
+    }
+
+    /**
+     * 清空整张表，下次获取时重新加载
+     */
+    void clear() {
+        mParams.clear();
+        mBuildIns.clear();
+        mSecondaryBuildIns.clear();
+    }
+
+    private static boolean updateChannel(ParamTable<IAudio, IVIAudio.Channel> table, int channel, float value) {
+        synchronized (table) {
+            IVIAudio.Channel param = table.peek(channel);
+            return (param != null) && param.set(value);
+        }
+    }
+
+    /**
+     * 获取全部的参数id，包括十段EQ的增益、Q值和中心频点
+     * @return
+     */
+    static synchronized int[] getParamIds() {
+        if (sParamIds == null) {
+            SparseBooleanArray ids = new SparseBooleanArray();
+            for (Integer id : LogNameUtil.getFields(AudioParam.Id.class)) {
+                ids.put(id, true);
+            }
+            for (int band = 0; band <= AudioParam.Id.EQ_BAND9_GAIN - AudioParam.Id.EQ_BAND0_GAIN; ++band) {
+                ids.put(AudioParam.Id.getEqGainId(band), true);
+                ids.put(AudioParam.Id.getEqQId(band), true);
+                ids.put(AudioParam.Id.getEqCenterFreqId(band), true);
+            }
+            ids.delete(AudioParam.Id.NONE);
+            sParamIds = keys(ids);
+        }
+        return sParamIds;
+    }
+
+    /**
+     * 获取全部的声音通道
+     * @return
+     */
+    static synchronized int[] getChannels() {
+        if (sChannels == null) {
+            SparseBooleanArray channels = new SparseBooleanArray();
+            for (Integer channel : IVIAudio.Channel.getChannels()) {
+                channels.put(channel, true);
+            }
+            channels.delete(IVIAudio.Channel.NONE);
+            sChannels = keys(channels);
+        }
+        return sChannels;
+    }
+
+    private static int[] keys(SparseBooleanArray array) {
+        int[] keys = new int[array.size()];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = array.keyAt(i);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,204 @@
+package com.roadrover.sdk.audio;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+/**
+ * 音频参数的合并写入类，用于旋钮调节音量、拖动EQ/平衡/渐变等连续修改参数的场景 </br>
+ * 1. 同一个参数只保留最后一次设置的值，按 {@link #setInterval(int)} 限频发送，空闲时第一次设置立即发送 </br>
+ * 2. 一次发送的全部 {@link AudioParam} 通过 {@link IVIAudioManager#setParams(int[], int[], int)} 一次 IPC 批量设置 </br>
+ * 3. {@link #setRampDuration(int)} 大于0时由服务端平滑过渡到目标值，旋钮快速转动时只有少量的 IPC，不会丢失最终值 </br>
+ * 4. BuildInPreVolume 和 DSP 参数同样只发送最后的值 </br>
+ * 空闲时的第一次发送在调用线程执行，限频之后的发送在主线程执行，不再使用时调用 {@link #release()}，没有发送的值会立即发送
+ */
+public class AudioParamWriter {
+
+    /**
+     * 默认的最小发送间隔，单位毫秒
+     */
+    public static final int DEFAULT_INTERVAL = 50;
+
+    private final IVIAudioManager mManager;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Object mSendLock = new Object(); // 保证调用线程和主线程的发送顺序
+    private int mInterval = DEFAULT_INTERVAL;
+    private int mRampDuration = 0;
+
+    private final SparseIntArray mPendingParams = new SparseIntArray();
+    private final SparseArray<Float> mPendingBuildIns = new SparseArray<>();
+    private final SparseArray<Float> mPendingSecondaryBuildIns = new SparseArray<>();
+    private final SparseArray<double[]> mPendingChipParams = new SparseArray<>();
+    private long mLastFlushTime = 0;
+    private boolean mScheduled = false;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (AudioParamWriter.this) {
+                mScheduled = false;
+            }
+            flush();
+        }
+    };
+
+    /**
+     * 构造函数
+     * @param manager 音频管理对象
+     */
+    public AudioParamWriter(IVIAudioManager manager) {
+        mManager = manager;
+    }
+
+    /**
+     * 设置最小的发送间隔
+     * @param interval 单位毫秒，小于等于0表示每次设置都立即发送
+     * @return
+     */
+    public AudioParamWriter setInterval(int interval) {
+        mInterval = Math.max(interval, 0);
+        return this;
+    }
+
+    /**
+     * 设置服务端的渐变时间，只对 {@link AudioParam} 有效
+     * @param duration 单位毫秒，0表示立即生效，一般设置为和发送间隔相近的值
+     * @return
+     */
+    public AudioParamWriter setRampDuration(int duration) {
+        mRampDuration = Math.max(duration, 0);
+        return this;
+    }
+
+    /**
+     * 设置参数，只保留最后一次的值
+     * @param id {@link AudioParam.Id}
+     * @param value 值
+     */
+    public void setParam(int id, int value) {
+        synchronized (this) {
+            mPendingParams.put(id, value);
+        }
+        schedule();
+    }
+
+    /**
+     * 设置主通道的 BuildInPreVolume，只保留最后一次的值
+     * @param channel {@link IVIAudio.Channel}
+     * @param value 增益值
+     */
+    public void setBuildInPreVolume(int channel, float value) {
+        synchronized (this) {
+            mPendingBuildIns.put(channel, value);
+        }
+        schedule();
+    }
+
+    /**
+     * 设置辅助通道的 BuildInPreVolume，只保留最后一次的值
+     * @param channel {@link IVIAudio.Channel}
+     * @param value 增益值
+     */
+    public void setSecondaryBuildInPreVolume(int channel, float value) {
+        synchronized (this) {
+            mPendingSecondaryBuildIns.put(channel, value);
+        }
+        schedule();
+    }
+
+    /**
+     * 设置DSP参数，同一个 chipId 和 paramId 只保留最后一次的值
+     * @see IVIAudioManager#setChipParam(int, int, double, double, double, double)
+     */
+    public void setChipParam(int chipId, int paramId, double v0, double v1, double v2, double v3) {
+        synchronized (this) {
+            mPendingChipParams.put(getChipKey(chipId, paramId), new double[]{v0, v1, v2, v3});
+        }
+        schedule();
+    }
+
+    /**
+     * 立即发送所有没有发送的值
+     */
+    public void flush() {
+        synchronized (mSendLock) {
+            int[] ids;
+            int[] values;
+            SparseArray<Float> buildIns;
+            SparseArray<Float> secondaryBuildIns;
+            SparseArray<double[]> chipParams;
+            synchronized (this) {
+                mHandler.removeCallbacks(mFlushRunnable);
+                mScheduled = false;
+                mLastFlushTime = SystemClock.uptimeMillis();
+
+                ids = new int[mPendingParams.size()];
+                values = new int[ids.length];
+                for (int i = 0; i < ids.length; ++i) {
+                    ids[i] = mPendingParams.keyAt(i);
+                    values[i] = mPendingParams.valueAt(i);
+                }
+                mPendingParams.clear();
+                buildIns = takeAll(mPendingBuildIns);
+                secondaryBuildIns = takeAll(mPendingSecondaryBuildIns);
+                chipParams = takeAll(mPendingChipParams);
+            }
+
+            if (ids.length > 0) {
+                mManager.setParams(ids, values, mRampDuration);
+            }
+            for (int i = 0; buildIns != null && i < buildIns.size(); ++i) {
+                mManager.setBuildInPreVolume(buildIns.keyAt(i), buildIns.valueAt(i));
+            }
+            for (int i = 0; secondaryBuildIns != null && i < secondaryBuildIns.size(); ++i) {
+                mManager.setSecondaryBuildInPreVolume(secondaryBuildIns.keyAt(i), secondaryBuildIns.valueAt(i));
+            }
+            for (int i = 0; chipParams != null && i < chipParams.size(); ++i) {
+                final int key = chipParams.keyAt(i);
+                final double[] v = chipParams.valueAt(i);
+                mManager.setChipParam(key >>> 16, key & 0xffff, v[0], v[1], v[2], v[3]);
+            }
+        }
+    }
+
+    /**
+     * 释放，没有发送的值会立即发送
+     */
+    public void release() {
+        flush();
+    }
+
+    private void schedule() {
+        long delay;
+        synchronized (this) {
+            if (mScheduled) {
+                return;
+            }
+            delay = mLastFlushTime + mInterval - SystemClock.uptimeMillis();
+            if (delay > 0) {
+                mScheduled = true;
+                mHandler.postDelayed(mFlushRunnable, delay);
+                return;
+            }
+        }
+        flush(); // 距离上次发送已经超过间隔，立即发送
+    }
+
+    private static int getChipKey(int chipId, int paramId) {
+        return (chipId << 16) | (paramId & 0xffff);
+    }
+
+    private static <T> SparseArray<T> takeAll(SparseArray<T> pending) {
+        if (pending.size() == 0) {
+            return null;
+        }
+        SparseArray<T> result = new SparseArray<>(pending.size());
+        for (int i = 0; i < pending.size(); ++i) {
+            result.append(pending.keyAt(i), pending.valueAt(i));
+        }
+        pending.clear();
+        return result;
+    }
+}
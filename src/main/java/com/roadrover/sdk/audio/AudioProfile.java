@@ -0,0 +1,324 @@
+package com.roadrover.sdk.audio;
+
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+/**
+ * 音频预设，保存一组 {@link AudioParam} 和 {@link IVIAudio.Channel} 的值，用于切换驾驶员配置、EQ预设等 </br>
+ * 1. {@link #capture(IVIAudioManager)} 从服务重新读取当前的全部参数，读取过程中参数被修改时会重新读取，不会读到一半新一半旧的值 </br>
+ * 2. {@link #diff(IVIAudioManager)} 从服务重新读取参数之后计算差异，应用时只发送有变化的参数 </br>
+ * 3. {@link #apply(IVIAudioManager)} 通过 {@link IVIAudioManager#setParams(int[], int[])} 一次设置全部变化的参数，
+ *    应用过程持有 IVIAudioManager 的参数写入锁，其他预设、setParam 和 {@link AudioParamWriter} 的写入都会等待 </br>
+ * 4. {@link #applyIfUnchanged(IVIAudioManager)} 只有在读取或者上次应用之后参数没有被其他地方修改时才应用，
+ *    避免覆盖其他人的修改，通过 set 系列方法构造的预设没有读取过，和 apply 相同 </br>
+ */
+public class AudioProfile {
+
+    /**
+     * 读取参数时，参数一直在变化的最大重试次数
+     */
+    private static final int MAX_CAPTURE_RETRY = 3;
+
+    private final SparseIntArray mParams = new SparseIntArray();
+    private final SparseArray<Float> mBuildIns = new SparseArray<>();
+    private final SparseArray<Float> mSecondaryBuildIns = new SparseArray<>();
+
+    /**
+     * 读取或者上次应用时服务中的值，{@link #applyIfUnchanged(IVIAudioManager)} 用来判断参数是否被其他地方修改
+     */
+    private final SparseIntArray mBaseParams = new SparseIntArray();
+    private final SparseArray<Float> mBaseBuildIns = new SparseArray<>();
+    private final SparseArray<Float> mBaseSecondaryBuildIns = new SparseArray<>();
+
+    /**
+     * 读取或者应用时参数的版本号，见 {@link IVIAudioManager#getParamVersion()}
+     */
+    private int mVersion = -1;
+
+    /**
+     * 构造一个空的预设，通过 set 系列方法添加参数
+     */
+    public AudioProfile() {
+    }
+
+    /**
+     * 读取当前的全部参数
+     * @param manager 音频管理对象
+     * @return 服务没有连接时返回空的预设
+     */
+    public static AudioProfile capture(IVIAudioManager manager) {
+        AudioProfile profile = new AudioProfile();
+        if (manager == null) {
+            return profile;
+        }
+
+        manager.reloadParamTable();
+        for (int retry = 0; retry < MAX_CAPTURE_RETRY; ++retry) {
+            profile.clear();
+            final int version = manager.getParamVersion();
+            for (int id : AudioParamTable.getParamIds()) {
+                if (manager.isParamAvailable(id)) {
+                    profile.mParams.put(id, manager.getParamValue(id));
+                }
+            }
+            for (int channel : AudioParamTable.getChannels()) {
+                if (manager.isBuildInPreVolumeAvailable(channel)) {
+                    profile.mBuildIns.put(channel, manager.getBuildInPreVolumeValue(channel));
+                }
+                if (manager.isSecondaryBuildInPreVolumeAvailable(channel)) {
+                    profile.mSecondaryBuildIns.put(channel, manager.getSecondaryBuildInPreVolumeValue(channel));
+                }
+            }
+            profile.mVersion = version;
+            if (version == manager.getParamVersion()) {
+                break;
+            }
+        }
+        profile.setBase(profile);
+        return profile;
+    }
+
+    /**
+     * 设置预设中的参数
+     * @param id {@link AudioParam.Id}
+     * @param value 参数值
+     * @return 预设本身，可以连续设置
+     */
+    public AudioProfile setParam(int id, int value) {
+        mParams.put(id, value);
+        return this;
+    }
+
+    /**
+     * 设置十段EQ的增益，一般为 {@link IVIAudioManager#getEqGains(int)} 的返回值
+     * @param gains 每段的增益，从 band0 开始
+     * @return
+     */
+    public AudioProfile setEqGains(int[] gains) {
+        if (gains != null) {
+            for (int band = 0; band < gains.length; ++band) {
+                mParams.put(AudioParam.Id.getEqGainId(band), gains[band]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 设置预设中主通道的 BuildInPreVolume
+     * @param channel {@link IVIAudio.Channel}
+     * @param value 增益数值
+     * @return 预设本身，可以连续设置
+     */
+    public AudioProfile setBuildInPreVolume(int channel, float value) {
+        mBuildIns.put(channel, value);
+        return this;
+    }
+
+    /**
+     * 设置预设中辅助通道的 BuildInPreVolume
+     * @param channel {@link IVIAudio.Channel}
+     * @param value 增益数值
+     * @return 预设本身，可以连续设置
+     */
+    public AudioProfile setSecondaryBuildInPreVolume(int channel, float value) {
+        mSecondaryBuildIns.put(channel, value);
+        return this;
+    }
+
+    /**
+     * 获取预设中的参数值
+     * @param id {@link AudioParam.Id}
+     * @param defaultValue 预设中没有该参数时返回的值
+     * @return
+     */
+    public int getParam(int id, int defaultValue) {
+        return mParams.get(id, defaultValue);
+    }
+
+    /**
+     * 预设中是否包含该参数
+     * @param id {@link AudioParam.Id}
+     * @return
+     */
+    public boolean hasParam(int id) {
+        return mParams.indexOfKey(id) >= 0;
+    }
+
+    /**
+     * 获取读取或者上次应用时的参数版本号
+     * @return 没有读取和应用过返回-1
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * 预设中参数的个数
+     * @return
+     */
+    public int size() {
+        return mParams.size() + mBuildIns.size() + mSecondaryBuildIns.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 清除预设中的全部参数和读取时的值，之后 {@link #applyIfUnchanged(IVIAudioManager)} 和 apply 相同
+     */
+    public void clear() {
+        mParams.clear();
+        mBuildIns.clear();
+        mSecondaryBuildIns.clear();
+        mBaseParams.clear();
+        mBaseBuildIns.clear();
+        mBaseSecondaryBuildIns.clear();
+        mVersion = -1;
+    }
+
+    /**
+     * 从服务重新读取参数之后，计算和当前参数的差异，当前无效的参数会被忽略
+     * @param manager 音频管理对象
+     * @return 只包含有变化的参数的预设
+     */
+    public AudioProfile diff(IVIAudioManager manager) {
+        if (manager == null) {
+            return new AudioProfile();
+        }
+        synchronized (manager.getProfileLock()) {
+            manager.reloadParamTable();
+            return diffLocked(manager);
+        }
+    }
+
+    private AudioProfile diffLocked(IVIAudioManager manager) {
+        AudioProfile diff = new AudioProfile();
+        diff.mVersion = manager.getParamVersion();
+
+        for (int i = 0; i < mParams.size(); ++i) {
+            final int id = mParams.keyAt(i);
+            final int value = mParams.valueAt(i);
+            if (manager.isParamAvailable(id) && manager.getParamValue(id) != value) {
+                diff.mParams.put(id, value);
+            }
+        }
+        for (int i = 0; i < mBuildIns.size(); ++i) {
+            final int channel = mBuildIns.keyAt(i);
+            final float value = mBuildIns.valueAt(i);
+            if (manager.isBuildInPreVolumeAvailable(channel) && manager.getBuildInPreVolumeValue(channel) != value) {
+                diff.mBuildIns.put(channel, value);
+            }
+        }
+        for (int i = 0; i < mSecondaryBuildIns.size(); ++i) {
+            final int channel = mSecondaryBuildIns.keyAt(i);
+            final float value = mSecondaryBuildIns.valueAt(i);
+            if (manager.isSecondaryBuildInPreVolumeAvailable(channel) &&
+                    manager.getSecondaryBuildInPreVolumeValue(channel) != value) {
+                diff.mSecondaryBuildIns.put(channel, value);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * 应用预设，只发送有变化的参数
+     * @param manager 音频管理对象
+     * @return 应用了的参数个数
+     */
+    public int apply(IVIAudioManager manager) {
+        return apply(manager, false);
+    }
+
+    /**
+     * 只有在 {@link #capture(IVIAudioManager)} 或者上次应用之后参数没有被修改时才应用，
+     * 用于读取-修改-写回的场景，避免覆盖其他人在这期间的修改 </br>
+     * 和服务中当前的值比较，只检查预设中包含的参数；没有读取和应用过的预设直接应用
+     * @param manager 音频管理对象
+     * @return 应用了的参数个数，参数已经被修改返回-1
+     */
+    public int applyIfUnchanged(IVIAudioManager manager) {
+        return apply(manager, true);
+    }
+
+    private int apply(IVIAudioManager manager, boolean checkVersion) {
+        if (manager == null) {
+            return 0;
+        }
+
+        synchronized (manager.getProfileLock()) {
+            manager.reloadParamTable();
+            if (checkVersion && isModified(manager)) {
+                return -1;
+            }
+
+            AudioProfile diff = diffLocked(manager);
+            if (diff.mParams.size() > 0) {
+                int[] ids = new int[diff.mParams.size()];
+                int[] values = new int[ids.length];
+                for (int i = 0; i < ids.length; ++i) {
+                    ids[i] = diff.mParams.keyAt(i);
+                    values[i] = diff.mParams.valueAt(i);
+                }
+                manager.setParams(ids, values);
+            }
+            // BuildInPreVolume 没有批量接口，逐个设置
+            for (int i = 0; i < diff.mBuildIns.size(); ++i) {
+                manager.setBuildInPreVolume(diff.mBuildIns.keyAt(i), diff.mBuildIns.valueAt(i));
+            }
+            for (int i = 0; i < diff.mSecondaryBuildIns.size(); ++i) {
+                manager.setSecondaryBuildInPreVolume(diff.mSecondaryBuildIns.keyAt(i),
+                        diff.mSecondaryBuildIns.valueAt(i));
+            }
+
+            setBase(this);
+            mVersion = manager.getParamVersion();
+            return diff.size();
+        }
+    }
+
+    /**
+     * 读取或者上次应用之后，预设中的参数在服务中是否被修改了
+     */
+    private boolean isModified(IVIAudioManager manager) {
+        for (int i = 0; i < mBaseParams.size(); ++i) {
+            final int id = mBaseParams.keyAt(i);
+            if (hasParam(id) && manager.isParamAvailable(id) && manager.getParamValue(id) != mBaseParams.valueAt(i)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < mBaseBuildIns.size(); ++i) {
+            final int channel = mBaseBuildIns.keyAt(i);
+            if (mBuildIns.indexOfKey(channel) >= 0 && manager.isBuildInPreVolumeAvailable(channel) &&
+                    manager.getBuildInPreVolumeValue(channel) != mBaseBuildIns.valueAt(i)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < mBaseSecondaryBuildIns.size(); ++i) {
+            final int channel = mBaseSecondaryBuildIns.keyAt(i);
+            if (mSecondaryBuildIns.indexOfKey(channel) >= 0 && manager.isSecondaryBuildInPreVolumeAvailable(channel) &&
+                    manager.getSecondaryBuildInPreVolumeValue(channel) != mBaseSecondaryBuildIns.valueAt(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 记录服务中的值，读取之后为读取的值，应用之后为预设的值
+     */
+    private void setBase(AudioProfile values) {
+        mBaseParams.clear();
+        mBaseBuildIns.clear();
+        mBaseSecondaryBuildIns.clear();
+        for (int i = 0; i < values.mParams.size(); ++i) {
+            mBaseParams.put(values.mParams.keyAt(i), values.mParams.valueAt(i));
+        }
+        for (int i = 0; i < values.mBuildIns.size(); ++i) {
+            mBaseBuildIns.put(values.mBuildIns.keyAt(i), values.mBuildIns.valueAt(i));
+        }
+        for (int i = 0; i < values.mSecondaryBuildIns.size(); ++i) {
+            mBaseSecondaryBuildIns.put(values.mSecondaryBuildIns.keyAt(i), values.mSecondaryBuildIns.valueAt(i));
+        }
+    }
+}
@@ -14,6 +14,9 @@ import com.roadrover.sdk.utils.Logcat;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * IVI 音频管理
  */
@@ -22,6 +25,9 @@ public class IVIAudioManager extends BaseManager {
     private AudioListener mAudioListener;
     private VolumeBarListener mVolumeBarListener;
     private SparseIntArray mValueCaches = new SparseIntArray();
+    private final AudioParamTable mParamTable = new AudioParamTable();
+    private final AtomicInteger mParamVersion = new AtomicInteger(0);
+    private final Object mProfileLock = new Object();
 
     /**
      * 音频监听
@@ -78,6 +84,7 @@ public class IVIAudioManager extends BaseManager {
         mAudioListener = null;
         mVolumeBarListener = null;
         mValueCaches = null;
+        mParamTable.clear();
         super.disconnect();
     }
 
@@ -89,6 +96,8 @@ public class IVIAudioManager extends BaseManager {
     @Override
     protected void onServiceConnected(IBinder service) {
         mAudioInterface = IAudio.Stub.asInterface(service);
+        mParamTable.clear();
+        mParamVersion.incrementAndGet();
         if (mAudioCallback != null) {
             registerCallback(mAudioCallback);
         }
@@ -97,6 +106,7 @@ public class IVIAudioManager extends BaseManager {
     @Override
     protected void onServiceDisconnected() {
         mAudioInterface = null;
+        mParamTable.clear();
     }
 
     @Override
@@ -193,17 +203,7 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回参数是否有效
      */
     public boolean isParamAvailable(int id) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.isParamAvailable(id);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return false;
+        return getCachedParam(id) != null;
     }
 
     /**
@@ -212,17 +212,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回指定参数的最小值
      */
     public int getParamMinValue(int id) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getParamMinValue(id);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0;
+        AudioParam param = getCachedParam(id);
+        return (param != null) ? param.mMin : 0;
     }
 
     /**
@@ -231,17 +222,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回指定参数的最大值
      */
     public int getParamMaxValue(int id) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getParamMaxValue(id);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0;
+        AudioParam param = getCachedParam(id);
+        return (param != null) ? param.mMax : 0;
     }
 
     /**
@@ -250,38 +232,24 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回指定参数的默认值
      */
     public int getParamDefaultValue(int id) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getParamDefaultValue(id);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0;
+        AudioParam param = getCachedParam(id);
+        return (param != null) ? param.mDefault : 0;
     }
 
     /**
-     * 获取指定id的参数的当前值，例：主音量
+     * 获取指定id的参数的当前值，例：主音量 </br>
+     * 当前值来自参数表，只在本地设置和服务回调（音量、静音）时更新，服务内部修改了其他参数时可能不是最新的值，
+     * 需要时调用 {@link #refreshParamTable()}；设置 {@link AudioParam.Id#EQ_MODE} 之后参数表会自动重新加载
      * @param id {@link com.roadrover.sdk.audio.AudioParam.Id}
      * @return 指定id参数的值
      */
     public int getParamValue(int id) {
-        if (mAudioInterface != null) {
-            try {
-                int value = mAudioInterface.getParam(id);
-                updateCache(id, value);
-                return value;
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
+        AudioParam param = getCachedParam(id);
+        if (param == null) {
+            return 0;
         }
-
-        return 0;
+        updateCache(id, param.mValue);
+        return param.mValue;
     }
 
     /**
@@ -290,18 +258,81 @@ public class IVIAudioManager extends BaseManager {
      * @param value 音量值
      */
     public void setParam(int id, int value) {
-        if (!updateCache(id, value)) {
-            return;
+        synchronized (mProfileLock) {
+            if (!updateCache(id, value)) {
+                return;
+            }
+
+            if (mAudioInterface != null) {
+                try {
+                    mAudioInterface.setParam(id, value);
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                Logcat.d("Service not connected");
+            }
+            invalidateIfEqMode(id);
         }
+    }
 
-        if (mAudioInterface != null) {
-            try {
-                mAudioInterface.setParam(id, value);
-            } catch (RemoteException e) {
-                e.printStackTrace();
+    /**
+     * 批量设置参数，只发送值有变化的参数，一次 IPC 完成，服务端一次应用全部参数 </br>
+     * 服务端不支持批量接口时，逐个调用 setParam
+     * @param ids 参数id数组 {@link com.roadrover.sdk.audio.AudioParam.Id}
+     * @param values 对应的值，长度和 ids 相同
+     */
+    public void setParams(int[] ids, int[] values) {
+        setParams(ids, values, 0);
+    }
+
+    /**
+     * 批量设置参数，只发送值有变化的参数，一次 IPC 完成 </br>
+     * 服务端不支持批量接口时，逐个调用 setParam，不支持渐变，直接设置为目标值
+     * @param ids 参数id数组 {@link com.roadrover.sdk.audio.AudioParam.Id}
+     * @param values 对应的值，长度和 ids 相同
+     * @param rampMs 大于0时服务端在该时间内平滑过渡到目标值，例如旋钮调节音量，0表示立即生效
+     */
+    public void setParams(int[] ids, int[] values, int rampMs) {
+        synchronized (mProfileLock) {
+            if (ids == null || values == null || ids.length != values.length) {
+                return;
+            }
+
+            int count = 0;
+            int[] changedIds = new int[ids.length];
+            int[] changedValues = new int[ids.length];
+            for (int i = 0; i < ids.length; ++i) {
+                if (updateCache(ids[i], values[i])) {
+                    changedIds[count] = ids[i];
+                    changedValues[count] = values[i];
+                    ++count;
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+            if (count < ids.length) {
+                changedIds = Arrays.copyOf(changedIds, count);
+                changedValues = Arrays.copyOf(changedValues, count);
+            }
+
+            if (mAudioInterface != null) {
+                try {
+                    if (!mAudioInterface.setParams(changedIds, changedValues, Math.max(rampMs, 0))) {
+                        for (int i = 0; i < count; ++i) {
+                            mAudioInterface.setParam(changedIds[i], changedValues[i]);
+                        }
+                    }
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                Logcat.d("Service not connected");
+            }
+            for (int i = 0; i < count; ++i) {
+                invalidateIfEqMode(changedIds[i]);
             }
-        } else {
-            Logcat.d("Service not connected");
         }
     }
 
@@ -328,34 +359,17 @@ public class IVIAudioManager extends BaseManager {
     }
 
     /**
-     * 获取一个声音参数setBalanceFade
+     * 获取一个声音参数setBalanceFade </br>
+     * 当前值和 {@link #getParamValue(int)} 一样来自参数表，可能不是最新的值
      * @param id {@link com.roadrover.sdk.audio.AudioParam.Id}
      * @return 整个音频的参数，例：主音量，{@link AudioParam}
      */
     public AudioParam getParam(int id) {
-        if (mAudioInterface != null) {
-            try {
-                if (!mAudioInterface.isParamAvailable(id)) {
-                    return null;
-                }
-
-                int minValue = mAudioInterface.getParamMinValue(id);
-                int maxValue = mAudioInterface.getParamMaxValue(id);
-                int defaultValue = mAudioInterface.getParamDefaultValue(id);
-                int value = mAudioInterface.getParam(id);
-
-                AudioParam param = new AudioParam(id, minValue, maxValue, defaultValue);
-                param.mValue = value;
-                return param;
-
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
+        AudioParam param = getCachedParam(id);
+        if (param == null) {
+            return null;
         }
-
-        return null;
+        return new AudioParam(param.mId, param.mMin, param.mMax, param.mDefault, param.mValue);
     }
 
     /**
@@ -364,17 +378,7 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回参数是否有效
      */
     public boolean isBuildInPreVolumeAvailable(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.isBuildInPreVolumeAvailable(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return false;
+        return getCachedBuildInPreVolume(channel) != null;
     }
 
     /**
@@ -383,17 +387,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回指定参数的最小值
      */
     public float getBuildInPreVolumeMinValue(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getBuildInPreVolumeMinValue(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0.0f;
+        IVIAudio.Channel param = getCachedBuildInPreVolume(channel);
+        return (param != null) ? param.mMin : 0.0f;
     }
 
     /**
@@ -402,17 +397,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回指定参数的最大值
      */
     public float getBuildInPreVolumeMaxValue(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getBuildInPreVolumeMaxValue(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0.0f;
+        IVIAudio.Channel param = getCachedBuildInPreVolume(channel);
+        return (param != null) ? param.mMax : 0.0f;
     }
 
     /**
@@ -421,17 +407,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回指定参数的默认值
      */
     public float getBuildInPreVolumeDefaultValue(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getBuildInPreVolumeDefaultValue(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0.0f;
+        IVIAudio.Channel param = getCachedBuildInPreVolume(channel);
+        return (param != null) ? param.mDefault : 0.0f;
     }
 
     /**
@@ -440,17 +417,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 指定channel参数的值
      */
     public float getBuildInPreVolumeValue(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getBuildInPreVolumeValue(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0.0f;
+        IVIAudio.Channel param = getCachedBuildInPreVolume(channel);
+        return (param != null) ? param.mValue : 0.0f;
     }
 
     /**
@@ -459,14 +427,19 @@ public class IVIAudioManager extends BaseManager {
      * @param value   增益数值
      */
     public void setBuildInPreVolume(int channel, float value) {
-        if (mAudioInterface != null) {
-            try {
-                mAudioInterface.setBuildInPreVolumeValue(channel, value);
-            } catch (RemoteException e) {
-                e.printStackTrace();
+        synchronized (mProfileLock) {
+            if (mAudioInterface != null) {
+                try {
+                    mAudioInterface.setBuildInPreVolumeValue(channel, value);
+                    if (mParamTable.updateBuildInPreVolume(channel, value)) {
+                        mParamVersion.incrementAndGet();
+                    }
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                Logcat.d("Service not connected");
             }
-        } else {
-            Logcat.d("Service not connected");
         }
     }
 
@@ -474,14 +447,18 @@ public class IVIAudioManager extends BaseManager {
      * 重设参数
      */
     public void resetBuildInPreVolume() {
-        if (mAudioInterface != null) {
-            try {
-                mAudioInterface.resetBuildInPreVolumeValue();
-            } catch (RemoteException e) {
-                e.printStackTrace();
+        synchronized (mProfileLock) {
+            if (mAudioInterface != null) {
+                try {
+                    mAudioInterface.resetBuildInPreVolumeValue();
+                    mParamTable.invalidateBuildInPreVolume();
+                    mParamVersion.incrementAndGet();
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                Logcat.d("Service not connected");
             }
-        } else {
-            Logcat.d("Service not connected");
         }
     }
 
@@ -513,29 +490,7 @@ public class IVIAudioManager extends BaseManager {
      * @return 整个音频的参数，例：PC
      */
     public IVIAudio.Channel getBuildInPreVolume(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                if (!mAudioInterface.isBuildInPreVolumeAvailable(channel)) {
-                    return null;
-                }
-
-                float minValue = mAudioInterface.getBuildInPreVolumeMinValue(channel);
-                float maxValue = mAudioInterface.getBuildInPreVolumeMaxValue(channel);
-                float defaultValue = mAudioInterface.getBuildInPreVolumeDefaultValue(channel);
-                float value = mAudioInterface.getBuildInPreVolumeValue(channel);
-
-                IVIAudio.Channel param = new IVIAudio.Channel(channel, minValue, maxValue, defaultValue);
-                param.mValue = value;
-                return param;
-
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return null;
+        return copyChannel(getCachedBuildInPreVolume(channel));
     }
 
     /**
@@ -544,17 +499,7 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回参数是否有效
      */
     public boolean isSecondaryBuildInPreVolumeAvailable(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.isSecondaryBuildInPreVolumeAvailable(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return false;
+        return getCachedSecondaryBuildInPreVolume(channel) != null;
     }
 
     /**
@@ -563,17 +508,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回指定参数的最小值
      */
     public float getSecondaryBuildInPreVolumeMinValue(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getSecondaryBuildInPreVolumeMinValue(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0.0f;
+        IVIAudio.Channel param = getCachedSecondaryBuildInPreVolume(channel);
+        return (param != null) ? param.mMin : 0.0f;
     }
 
     /**
@@ -582,17 +518,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回指定参数的最大值
      */
     public float getSecondaryBuildInPreVolumeMaxValue(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getSecondaryBuildInPreVolumeMaxValue(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0.0f;
+        IVIAudio.Channel param = getCachedSecondaryBuildInPreVolume(channel);
+        return (param != null) ? param.mMax : 0.0f;
     }
 
     /**
@@ -601,17 +528,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 返回指定参数的默认值
      */
     public float getSecondaryBuildInPreVolumeDefaultValue(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getSecondaryBuildInPreVolumeDefaultValue(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0.0f;
+        IVIAudio.Channel param = getCachedSecondaryBuildInPreVolume(channel);
+        return (param != null) ? param.mDefault : 0.0f;
     }
 
     /**
@@ -620,17 +538,8 @@ public class IVIAudioManager extends BaseManager {
      * @return 指定channel参数的值
      */
     public float getSecondaryBuildInPreVolumeValue(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                return mAudioInterface.getSecondaryBuildInPreVolumeValue(channel);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0.0f;
+        IVIAudio.Channel param = getCachedSecondaryBuildInPreVolume(channel);
+        return (param != null) ? param.mValue : 0.0f;
     }
 
     /**
@@ -639,14 +548,19 @@ public class IVIAudioManager extends BaseManager {
      * @param value   增益值
      */
     public void setSecondaryBuildInPreVolume(int channel, float value) {
-        if (mAudioInterface != null) {
-            try {
-                mAudioInterface.setSecondaryBuildInPreVolumeValue(channel, value);
-            } catch (RemoteException e) {
-                e.printStackTrace();
+        synchronized (mProfileLock) {
+            if (mAudioInterface != null) {
+                try {
+                    mAudioInterface.setSecondaryBuildInPreVolumeValue(channel, value);
+                    if (mParamTable.updateSecondaryBuildInPreVolume(channel, value)) {
+                        mParamVersion.incrementAndGet();
+                    }
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                Logcat.d("Service not connected");
             }
-        } else {
-            Logcat.d("Service not connected");
         }
     }
 
@@ -654,14 +568,18 @@ public class IVIAudioManager extends BaseManager {
      * 重设参数
      */
     public void resetSecondaryBuildInPreVolume() {
-        if (mAudioInterface != null) {
-            try {
-                mAudioInterface.resetSecondaryBuildInPreVolumeValue();
-            } catch (RemoteException e) {
-                e.printStackTrace();
+        synchronized (mProfileLock) {
+            if (mAudioInterface != null) {
+                try {
+                    mAudioInterface.resetSecondaryBuildInPreVolumeValue();
+                    mParamTable.invalidateSecondaryBuildInPreVolume();
+                    mParamVersion.incrementAndGet();
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                Logcat.d("Service not connected");
             }
-        } else {
-            Logcat.d("Service not connected");
         }
     }
 
@@ -693,29 +611,7 @@ public class IVIAudioManager extends BaseManager {
      * @return 整个音频的参数，例：PC，见{@link com.roadrover.sdk.audio.IVIAudio.Channel}
      */
     public IVIAudio.Channel getSecondaryBuildInPreVolume(int channel) {
-        if (mAudioInterface != null) {
-            try {
-                if (!mAudioInterface.isSecondaryBuildInPreVolumeAvailable(channel)) {
-                    return null;
-                }
-
-                float minValue = mAudioInterface.getSecondaryBuildInPreVolumeMinValue(channel);
-                float maxValue = mAudioInterface.getSecondaryBuildInPreVolumeMaxValue(channel);
-                float defaultValue = mAudioInterface.getSecondaryBuildInPreVolumeDefaultValue(channel);
-                float value = mAudioInterface.getSecondaryBuildInPreVolumeValue(channel);
-
-                IVIAudio.Channel param = new IVIAudio.Channel(channel, minValue, maxValue, defaultValue);
-                param.mValue = value;
-                return param;
-
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return null;
+        return copyChannel(getCachedSecondaryBuildInPreVolume(channel));
     }
 
     /**
@@ -1118,6 +1014,114 @@ public class IVIAudioManager extends BaseManager {
         mVolumeBarListener = listener;
     }
 
+    /**
+     * 从参数表获取参数，参数表第一次使用时一次加载全部参数
+     * @param id {@link com.roadrover.sdk.audio.AudioParam.Id}
+     * @return 参数无效或者服务没有连接返回null，返回的对象不能修改
+     */
+    private AudioParam getCachedParam(int id) {
+        if (mAudioInterface != null) {
+            try {
+                return mParamTable.getParam(mAudioInterface, id);
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+        } else {
+            Logcat.d("Service not connected");
+        }
+
+        return null;
+    }
+
+    private IVIAudio.Channel getCachedBuildInPreVolume(int channel) {
+        if (mAudioInterface != null) {
+            try {
+                return mParamTable.getBuildInPreVolume(mAudioInterface, channel);
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+        } else {
+            Logcat.d("Service not connected");
+        }
+
+        return null;
+    }
+
+    private IVIAudio.Channel getCachedSecondaryBuildInPreVolume(int channel) {
+        if (mAudioInterface != null) {
+            try {
+                return mParamTable.getSecondaryBuildInPreVolume(mAudioInterface, channel);
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+        } else {
+            Logcat.d("Service not connected");
+        }
+
+        return null;
+    }
+
+    private static IVIAudio.Channel copyChannel(IVIAudio.Channel channel) {
+        if (channel == null) {
+            return null;
+        }
+        IVIAudio.Channel param = new IVIAudio.Channel(channel.mId, channel.mMin, channel.mMax, channel.mDefault);
+        param.mValue = channel.mValue;
+        return param;
+    }
+
+    /**
+     * 重新加载参数表，服务端的参数范围发生变化时调用，例如切换了功放或者DSP配置
+     */
+    public void refreshParamTable() {
+        mParamTable.clear();
+        mParamVersion.incrementAndGet();
+    }
+
+    /**
+     * 服务切换EQ模式时会改写EQ各段的参数，并且不会回调通知，参数表需要重新加载
+     * @param id 已经设置的参数
+     */
+    private void invalidateIfEqMode(int id) {
+        if (id != AudioParam.Id.EQ_MODE) {
+            return;
+        }
+        mParamTable.invalidateParams();
+        final SparseIntArray caches = mValueCaches;
+        if (caches != null) {
+            for (int band = 0; band <= AudioParam.Id.EQ_BAND9_GAIN - AudioParam.Id.EQ_BAND0_GAIN; ++band) {
+                caches.delete(AudioParam.Id.getEqGainId(band));
+                caches.delete(AudioParam.Id.getEqQId(band));
+                caches.delete(AudioParam.Id.getEqCenterFreqId(band));
+            }
+        }
+        mParamVersion.incrementAndGet();
+    }
+
+    /**
+     * 获取参数的版本号，参数表中的值发生变化（本地设置或者服务端回调）都会加1，用于判断参数在两次读取之间是否被修改
+     * @return 版本号
+     */
+    public int getParamVersion() {
+        return mParamVersion.get();
+    }
+
+    /**
+     * 参数写入锁，setParam、setParams、BuildInPreVolume 的设置和 {@link AudioProfile} 的应用都持有该锁，
+     * 预设应用过程中其他地方（包括 {@link AudioParamWriter}）的写入会等待预设应用完成
+     * @return
+     */
+    Object getProfileLock() {
+        return mProfileLock;
+    }
+
+    /**
+     * 重新从服务读取参数表，不改变版本号，{@link AudioProfile} 读取和比较之前调用，避免使用过时的值
+     */
+    void reloadParamTable() {
+        mParamTable.clear();
+    }
+
     /**
      * 更新缓存
      * @param id
@@ -1130,6 +1134,9 @@ public class IVIAudioManager extends BaseManager {
         }
         if (mValueCaches.indexOfKey(id) < 0 || value != mValueCaches.get(id)) {
             mValueCaches.put(id, value);
+            if (mParamTable.updateParam(id, value)) {
+                mParamVersion.incrementAndGet();
+            }
             return true;
         } else {
             return false;
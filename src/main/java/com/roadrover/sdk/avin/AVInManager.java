@@ -2,10 +2,16 @@ package com.roadrover.sdk.avin;
 
 import android.content.Context;
 import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 
 import com.roadrover.sdk.BaseManager;
+import com.roadrover.sdk.car.IVICar;
 import com.roadrover.sdk.system.IVIConfig;
 import com.roadrover.services.avin.IAVIn;
 import com.roadrover.services.avin.IAVInCallback;
@@ -31,6 +37,62 @@ public class AVInManager extends BaseManager {
     /**媒体是否打开*/
     private boolean mMediaIsOpen = false;
 
+    /**预先打开的摄像头超过该时间没有被 openAndroidCamera 取走就释放，单位毫秒*/
+    private static final int PREWARM_TIMEOUT = 5000;
+    /**openAndroidCamera 等待正在预先打开的摄像头时，每等待该时间打印一次，单位毫秒*/
+    private static final int PREWARM_WAIT_TIMEOUT = 2000;
+    /**预览尺寸缓存，key 见{@link #getPreviewSizeKey(int, int)}，value 为{宽, 高}，摄像头支持的尺寸不会变化，进程内共用*/
+    private static final SparseArray<int[]> sPreviewSizes = new SparseArray<>();
+
+    private final Object mCameraLock = new Object();
+    /**预先打开摄像头的线程*/
+    private HandlerThread mCameraThread = null;
+    private Handler mCameraHandler = null;
+    /**预先打开的摄像头对应的AVIN ID*/
+    private int mPrewarmAvId = IVIAVIn.Id.NONE;
+    /**是否正在预先打开摄像头*/
+    private boolean mPrewarmOpening = false;
+    /**正在后台线程 Camera.open 的摄像头INDEX，打开完成（包括被取消之后释放）之前不能再次打开，没有为-1*/
+    private int mPrewarmOpeningIndex = -1;
+    /**预先打开已经通知了服务即将打开摄像头，没有被 openAndroidCamera 取走时需要通知服务关闭*/
+    private boolean mPrewarmPrepared = false;
+    /**预先打开完成的摄像头*/
+    private Camera mPrewarmCamera = null;
+    /**预先打开的时间点记录，为null表示没有预先打开或者已经取消*/
+    private CameraTimeline mPrewarmTimeline = null;
+    /**最近一次 openAndroidCamera 的时间点记录*/
+    private CameraTimeline mCameraTimeline = null;
+
+    /**视频参数的最小发送间隔，单位毫秒，拖动亮度、对比度等滑块时只发送最后的值*/
+    public static final int PARAM_WRITE_INTERVAL = 50;
+
+    /**视频参数表，连接服务时一次加载*/
+    private final VideoParamTable mParamTable = new VideoParamTable();
+    /**还没有发送的视频参数，同一个参数只保留最后的值*/
+    private final SparseIntArray mPendingParams = new SparseIntArray();
+    private boolean mParamFlushScheduled = false;
+    private long mLastParamFlushTime = 0;
+    /**保证视频参数按设置的先后发送*/
+    private final Object mParamSendLock = new Object();
+    /**发送视频参数的线程，避免阻塞UI线程*/
+    private HandlerThread mParamThread = null;
+    private Handler mParamHandler = null;
+
+    /**视频信号和CVBS制式的防抖，只有稳定的变化才通知应用*/
+    private final VideoSignalFilter mSignalFilter = new VideoSignalFilter(new VideoSignalFilter.Listener() {
+        @Override
+        public void onSignalChanged(int avId, int signal) {
+            Logcat.d(IVIAVIn.Id.getName(avId) + " signal is " + IVIAVIn.Signal.getName(signal));
+            post(new IVIAVIn.EventVideoSignalChanged(avId, signal));
+        }
+
+        @Override
+        public void onCvbsTypeChanged(int avId, int cvbsType) {
+            Logcat.d(IVIAVIn.Id.getName(avId) + " cvbs type is " + VideoParam.CvbsType.getName(cvbsType));
+            post(new IVIAVIn.EventCvbsTypeChanged(avId, cvbsType));
+        }
+    });
+
     /**请求视频信号EventBus事件类*/
     private static class EventRequestVideoSignal {
         /**{@link com.roadrover.sdk.avin.IVIAVIn.Id}*/
@@ -49,8 +111,12 @@ public class AVInManager extends BaseManager {
         }
 
         int signal = getVideoSignal(event.mAvId);
-        Logcat.d(IVIAVIn.Id.getName(event.mAvId) + " signal is " + IVIAVIn.Signal.getName(signal));
-        post(new IVIAVIn.EventVideoSignalChanged(event.mAvId, signal));
+        if (!mSignalFilter.updateSignal(event.mAvId, signal)) {
+            // 信号没有稳定地变化，回传当前稳定的信号
+            signal = mSignalFilter.getSignal(event.mAvId);
+            Logcat.d(IVIAVIn.Id.getName(event.mAvId) + " signal is " + IVIAVIn.Signal.getName(signal));
+            post(new IVIAVIn.EventVideoSignalChanged(event.mAvId, signal));
+        }
     }
 
     /**
@@ -90,6 +156,25 @@ public class AVInManager extends BaseManager {
         mAVInInterface = null;
         mAvInListener = null;
         mAVInCallback = null;
+        mSignalFilter.release();
+        mParamTable.clear();
+        synchronized (mPendingParams) {
+            mPendingParams.clear();
+            if (mParamThread != null) {
+                mParamThread.quit();
+                mParamThread = null;
+                mParamHandler = null;
+            }
+        }
+
+        synchronized (mCameraLock) {
+            releasePrewarmLocked();
+            if (mCameraThread != null) {
+                mCameraThread.quit();
+                mCameraThread = null;
+                mCameraHandler = null;
+            }
+        }
 
         super.disconnect();
     }
@@ -103,6 +188,7 @@ public class AVInManager extends BaseManager {
     protected void onServiceConnected(IBinder service) {
         mAVInInterface = IAVIn.Stub.asInterface(service);
         registerCallback();
+        refreshParamTable();
 
         // 对是媒体类型的AVIN，重新打开它
         if (mMediaIsOpen) {
@@ -113,6 +199,7 @@ public class AVInManager extends BaseManager {
     @Override
     protected void onServiceDisconnected() {
         mAVInInterface = null;
+        mParamTable.clear();
     }
 
     @Subscribe(threadMode = ThreadMode.MAIN)
@@ -195,7 +282,7 @@ public class AVInManager extends BaseManager {
     private IAVInCallback mAVInCallback = new IAVInCallback.Stub() {
         @Override
         public void onVideoSignalChanged(int avId, int signal) {
-            post(new IVIAVIn.EventVideoSignalChanged(avId, signal));
+            mSignalFilter.updateSignal(avId, signal);
         }
 
         @Override
@@ -237,7 +324,8 @@ public class AVInManager extends BaseManager {
 
         @Override
         public void onCvbsTypeChanged(int avId, int cvbsType) {
-            post(new IVIAVIn.EventCvbsTypeChanged(avId, cvbsType));
+            mParamTable.updateParam(VideoParam.makeId(avId, VideoParam.SubId.CVBS_TYPE), cvbsType);
+            mSignalFilter.updateCvbsType(avId, cvbsType);
         }
 
         @Override
@@ -254,6 +342,7 @@ public class AVInManager extends BaseManager {
     public void close(int avId) {
         mAvId = IVIAVIn.Id.NONE;
         mMediaIsOpen = false;
+        mSignalFilter.reset(avId);
 
         if (mAVInInterface != null) {
             try {
@@ -290,17 +379,7 @@ public class AVInManager extends BaseManager {
      * @return
      */
     public boolean isParamAvailable(int id) {
-        if (mAVInInterface != null) {
-            try {
-                return mAVInInterface.isParamAvailable(id);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return false;
+        return getCachedParam(id) != null;
     }
 
     /**
@@ -309,17 +388,8 @@ public class AVInManager extends BaseManager {
      * @return
      */
     public int getParamMinValue(int id) {
-        if (mAVInInterface != null) {
-            try {
-                return mAVInInterface.getParamMinValue(id);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0;
+        VideoParam param = getCachedParam(id);
+        return (param != null) ? param.mMin : 0;
     }
 
     /**
@@ -328,17 +398,8 @@ public class AVInManager extends BaseManager {
      * @return
      */
     public int getParamMaxValue(int id) {
-        if (mAVInInterface != null) {
-            try {
-                return mAVInInterface.getParamMaxValue(id);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
-        }
-
-        return 0;
+        VideoParam param = getCachedParam(id);
+        return (param != null) ? param.mMax : 0;
     }
 
     /**
@@ -347,28 +408,79 @@ public class AVInManager extends BaseManager {
      * @return
      */
     public int getParamDefaultValue(int id) {
+        VideoParam param = getCachedParam(id);
+        return (param != null) ? param.mDefault : 0;
+    }
+
+    /**
+     * 获取视频参数当前值
+     * @param id 视频ID，通过{@link VideoParam#makeId(int, int)}获得
+     * @return
+     */
+    public int getParamValue(int id) {
+        VideoParam param = getCachedParam(id);
+        return (param != null) ? param.mValue : 0;
+    }
+
+    /**
+     * 设置视频参数，参数表立即更新，在后台线程按{@link #PARAM_WRITE_INTERVAL}限频发送，同一个参数只发送最后的值 </br>
+     * <b>注意：亮度、对比度等调节参数返回时服务可能还没有收到，{@link VideoParam.SubId#CVBS_TYPE} 等配置参数在返回之前发送，
+     * 需要确认已经发送时调用 {@link #flushParams()}，打开摄像头之前会自动发送</b>
+     * @param id    视频ID，通过{@link VideoParam#makeId(int, int)}获得
+     * @param value 参数值
+     */
+    public void setParam(int id, int value) {
+        if (mAVInInterface == null) {
+            Logcat.d("Service not connected");
+            return;
+        }
+
+        mParamTable.updateParam(id, value);
+        synchronized (mPendingParams) {
+            mPendingParams.put(id, value);
+            if (!mParamFlushScheduled) {
+                mParamFlushScheduled = true;
+                final long delay = mLastParamFlushTime + PARAM_WRITE_INTERVAL - SystemClock.uptimeMillis();
+                getParamHandler().postDelayed(mFlushParamsRunnable, Math.max(delay, 0));
+            }
+        }
+        if (VideoParam.getSubId(id) == VideoParam.SubId.CVBS_TYPE) { // 配置参数影响之后打开的摄像头，同步发送
+            flushParams();
+        }
+    }
+
+    /**
+     * 在调用线程立即发送还没有发送的视频参数，返回之后服务已经收到了全部设置过的参数
+     */
+    public void flushParams() {
+        sendPendingParams();
+    }
+
+    /**
+     * 重新加载视频参数表，其他应用修改了视频参数时调用
+     */
+    public void refreshParamTable() {
         if (mAVInInterface != null) {
             try {
-                return mAVInInterface.getParamDefaultValue(id);
+                mParamTable.load(mAVInInterface);
             } catch (RemoteException e) {
                 e.printStackTrace();
+                mParamTable.clear();
             }
         } else {
             Logcat.d("Service not connected");
         }
-
-        return 0;
     }
 
     /**
-     * 获取视频参数当前值
+     * 从参数表获取参数
      * @param id 视频ID，通过{@link VideoParam#makeId(int, int)}获得
-     * @return
+     * @return 参数无效或者服务没有连接返回null，返回的对象不能修改
      */
-    public int getParamValue(int id) {
+    private VideoParam getCachedParam(int id) {
         if (mAVInInterface != null) {
             try {
-                return mAVInInterface.getParam(id);
+                return mParamTable.get(mAVInInterface, id);
             } catch (RemoteException e) {
                 e.printStackTrace();
             }
@@ -376,23 +488,60 @@ public class AVInManager extends BaseManager {
             Logcat.d("Service not connected");
         }
 
-        return 0;
+        return null;
+    }
+
+    private Handler getParamHandler() {
+        if (mParamHandler == null) {
+            mParamThread = new HandlerThread("AVInParam");
+            mParamThread.start();
+            mParamHandler = new Handler(mParamThread.getLooper());
+        }
+        return mParamHandler;
     }
 
     /**
-     * 设置视频参数
-     * @param id    视频ID，通过{@link VideoParam#makeId(int, int)}获得
-     * @param value 参数值
+     * 限频之后在后台线程发送视频参数
      */
-    public void setParam(int id, int value) {
-        if (mAVInInterface != null) {
+    private final Runnable mFlushParamsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sendPendingParams();
+        }
+    };
+
+    /**
+     * 发送没有发送的视频参数，服务端支持时一次批量发送
+     */
+    private void sendPendingParams() {
+        synchronized (mParamSendLock) {
+            int[] ids;
+            int[] values;
+            synchronized (mPendingParams) {
+                mParamFlushScheduled = false;
+                mLastParamFlushTime = SystemClock.uptimeMillis();
+                ids = new int[mPendingParams.size()];
+                values = new int[ids.length];
+                for (int i = 0; i < ids.length; ++i) {
+                    ids[i] = mPendingParams.keyAt(i);
+                    values[i] = mPendingParams.valueAt(i);
+                }
+                mPendingParams.clear();
+            }
+
+            final IAVIn avin = mAVInInterface;
+            if (ids.length == 0 || avin == null) {
+                return;
+            }
             try {
-                mAVInInterface.setParam(id, value);
+                if (!avin.setParams(ids, values)) {
+                    for (int i = 0; i < ids.length; ++i) {
+                        avin.setParam(ids[i], values[i]);
+                    }
+                }
             } catch (RemoteException e) {
                 e.printStackTrace();
             }
-        } else {
-            Logcat.d("Service not connected");
         }
     }
 
@@ -434,29 +583,14 @@ public class AVInManager extends BaseManager {
      * @return
      */
     public VideoParam getParam(int id) {
-        if (mAVInInterface != null) {
-            try {
-                if (!mAVInInterface.isParamAvailable(id)) {
-                    return null;
-                }
-
-                int minValue = mAVInInterface.getParamMinValue(id);
-                int maxValue = mAVInInterface.getParamMaxValue(id);
-                int defaultValue = mAVInInterface.getParamDefaultValue(id);
-                int value = mAVInInterface.getParam(id);
-
-                VideoParam param = new VideoParam(id, minValue, maxValue, defaultValue);
-                param.mValue = value;
-                return param;
-
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-        } else {
-            Logcat.d("Service not connected");
+        VideoParam param = getCachedParam(id);
+        if (param == null) {
+            return null;
         }
 
-        return null;
+        VideoParam result = new VideoParam(param.mId, param.mMin, param.mMax, param.mDefault);
+        result.mValue = param.mValue;
+        return result;
     }
 
     /**
@@ -533,65 +667,262 @@ public class AVInManager extends BaseManager {
      *
      * <b>开始安卓摄像头预览（在AVIN视频有信号的前提下）</br>
      * <b>step1.获取视频制式，NTSC或PAL</br>
-     * <b>step2.根据视频制式，获取支持的分辨率，设置视频预览尺寸</br>
+     * <b>step2.根据视频制式，获取支持的分辨率，设置视频预览尺寸，同一个AVIN和制式的预览尺寸只查找一次</br>
      * <b>step3.打开预览图像</br>
      *
+     * 如果已经通过{@link #prewarmAndroidCamera(int)}预先打开了该AVIN的摄像头，直接返回预先打开的摄像头，
+     * 还在打开中时等待打开完成，不会对同一个INDEX再次 Camera.open，各阶段的耗时见{@link #getCameraTimeline()} </br>
+     * <b>注意：预先打开的摄像头是在 AVInCamera 线程打开的，Camera 的回调（setErrorCallback、预览回调等）在该线程执行，
+     * 而不是调用本函数的线程，该线程在 {@link #disconnect()} 时退出</b>
+     *
      * @param avId AVIN ID，见{@link com.roadrover.sdk.avin.IVIAVIn.Id}
      * @return 打开成功，返回Camera对象，否则返回 null
      */
     public Camera openAndroidCamera(int avId) {
-        int index = getAndroidCameraIndex(avId);
+        final int index = getAndroidCameraIndex(avId);
+        Camera camera = null;
+        CameraTimeline timeline = null;
+        synchronized (mCameraLock) {
+            if (mPrewarmAvId == avId && mPrewarmTimeline != null) {
+                if (!waitPrewarmLocked(true, index)) {
+                    return null;
+                }
+                if (mPrewarmCamera != null) {
+                    camera = mPrewarmCamera;
+                    timeline = mPrewarmTimeline;
+                    mPrewarmCamera = null;
+                    mPrewarmTimeline = null;
+                    mPrewarmPrepared = false;
+                    mPrewarmAvId = IVIAVIn.Id.NONE;
+                }
+            }
+
+            // 没有预先打开，或者预先打开的是其他AVIN，释放之后重新打开
+            releasePrewarmLocked();
+            // 被取消的预先打开还在 Camera.open 同一个摄像头，等它打开并释放之后再打开
+            if (!waitPrewarmLocked(false, index)) {
+                return null;
+            }
+        }
+
+        if (timeline == null) {
+            timeline = new CameraTimeline(avId);
+        }
+        timeline.mark(CameraTimeline.Stage.REQUEST);
+        mCameraTimeline = timeline;
+
+        if (camera == null) {
+            camera = openCamera(avId, index, timeline);
+        } else {
+            Logcat.d("use prewarmed camera " + IVIAVIn.Id.getName(avId));
+        }
+
+        if (camera != null) {
+            // 通知Service Android Camera打开了
+            setAndroidCameraOpen(avId, true);
+            timeline.mark(CameraTimeline.Stage.NOTIFIED);
+
+            // 强制请求信号有无检测
+            requestVideoSignalEvent(avId);
+            watchFirstFrame(camera, timeline);
+        }
+
+        return camera;
+    }
+
+    /**
+     * 在后台线程预先打开指定AVIN的安卓摄像头，并设置好预览尺寸，之后调用{@link #openAndroidCamera(int)}时直接返回该摄像头 </br>
+     * 预先打开的摄像头超过一定时间没有被使用会自动释放，并通知服务摄像头已经关闭 </br>
+     * 摄像头在 AVInCamera 线程打开，Camera 的回调在该线程执行
+     * @param avId AVIN ID，见{@link com.roadrover.sdk.avin.IVIAVIn.Id}
+     */
+    public void prewarmAndroidCamera(final int avId) {
+        synchronized (mCameraLock) {
+            if (mPrewarmAvId == avId && mPrewarmTimeline != null) {
+                return; // 已经在预先打开
+            }
+            releasePrewarmLocked();
+
+            final CameraTimeline timeline = new CameraTimeline(avId);
+            timeline.mark(CameraTimeline.Stage.HINT);
+            mPrewarmAvId = avId;
+            mPrewarmOpening = true;
+            mPrewarmTimeline = timeline;
+
+            Handler handler = getCameraHandler();
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    final int index = getAndroidCameraIndex(avId);
+                    synchronized (mCameraLock) {
+                        if (mPrewarmTimeline != timeline) { // 开始打开之前被取消了
+                            return;
+                        }
+                        mPrewarmOpeningIndex = index;
+                    }
+
+                    Camera camera = openCamera(avId, index, timeline);
+                    synchronized (mCameraLock) {
+                        mPrewarmOpeningIndex = -1;
+                        if (mPrewarmTimeline != timeline) { // 打开过程中被取消了
+                            if (camera != null) {
+                                camera.release();
+                            }
+                            setAndroidCameraOpen(avId, false); // 撤销 setAndroidCameraOpenPrepared
+                        } else {
+                            mPrewarmOpening = false;
+                            mPrewarmPrepared = true;
+                            mPrewarmCamera = camera;
+                        }
+                        mCameraLock.notifyAll();
+                    }
+                }
+            });
+            handler.removeCallbacks(mPrewarmExpireRunnable);
+            handler.postDelayed(mPrewarmExpireRunnable, PREWARM_TIMEOUT);
+        }
+    }
+
+    /**
+     * 取消预先打开的摄像头，已经打开的会被释放
+     */
+    public void cancelPrewarmAndroidCamera() {
+        synchronized (mCameraLock) {
+            releasePrewarmLocked();
+        }
+    }
+
+    /**
+     * 档位变化的提示，挂入倒档时预先打开后视摄像头，离开倒档时释放没有被使用的摄像头，
+     * 应用收到档位变化时调用，可以节省倒车影像的打开时间
+     * @param gear 档位，见{@link com.roadrover.sdk.car.IVICar.Gear}
+     */
+    public void onGearHint(int gear) {
+        if (gear == IVICar.Gear.R) {
+            prewarmAndroidCamera(IVIAVIn.Id.REAR);
+        } else {
+            cancelPrewarmAndroidCamera();
+        }
+    }
+
+    /**
+     * 倒车状态变化的提示，进入倒车时预先打开后视摄像头，退出倒车时释放没有被使用的摄像头
+     * @param status 倒车状态，见{@link com.roadrover.sdk.car.IVICar.Ccd.Status}
+     */
+    public void onCcdHint(int status) {
+        if (status == IVICar.Ccd.Status.ON || status == IVICar.Ccd.Status.ALREADY_ON) {
+            prewarmAndroidCamera(IVIAVIn.Id.REAR);
+        } else if (status == IVICar.Ccd.Status.OFF) {
+            cancelPrewarmAndroidCamera();
+        }
+    }
+
+    /**
+     * 获取最近一次{@link #openAndroidCamera(int)}各阶段的时间点
+     * @return 没有打开过返回null
+     */
+    public CameraTimeline getCameraTimeline() {
+        return mCameraTimeline;
+    }
+
+    /**
+     * 预先打开的摄像头超时没有使用，释放
+     */
+    private final Runnable mPrewarmExpireRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mCameraLock) {
+                if (mPrewarmTimeline != null) {
+                    Logcat.d("prewarmed camera " + IVIAVIn.Id.getName(mPrewarmAvId) + " not used, release it");
+                    releasePrewarmLocked();
+                }
+            }
+        }
+    };
+
+    /**
+     * 释放预先打开的摄像头并通知服务摄像头已经关闭，正在打开的会在打开完成之后释放，需要持有 mCameraLock
+     */
+    private void releasePrewarmLocked() {
+        if (mPrewarmCamera != null) {
+            mPrewarmCamera.release();
+            mPrewarmCamera = null;
+        }
+        if (mPrewarmPrepared) { // 撤销预先打开时的 setAndroidCameraOpenPrepared
+            mPrewarmPrepared = false;
+            setAndroidCameraOpen(mPrewarmAvId, false);
+        }
+        if (mCameraHandler != null) {
+            mCameraHandler.removeCallbacks(mPrewarmExpireRunnable);
+        }
+        mPrewarmAvId = IVIAVIn.Id.NONE;
+        mPrewarmOpening = false;
+        mPrewarmTimeline = null;
+        mCameraLock.notifyAll();
+    }
+
+    /**
+     * 等待预先打开，需要持有 mCameraLock
+     * @param sameAvId true 等待该AVIN的预先打开完成，false 等待正在 Camera.open 的同一个INDEX的摄像头打开完成
+     * @param index 摄像头INDEX
+     * @return 被中断返回false
+     */
+    private boolean waitPrewarmLocked(boolean sameAvId, int index) {
+        while (sameAvId ? mPrewarmOpening : mPrewarmOpeningIndex == index) {
+            try {
+                final long start = SystemClock.elapsedRealtime();
+                mCameraLock.wait(PREWARM_WAIT_TIMEOUT);
+                if (SystemClock.elapsedRealtime() - start >= PREWARM_WAIT_TIMEOUT) {
+                    Logcat.w("camera " + index + " is still opening, keep waiting");
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Handler getCameraHandler() {
+        if (mCameraHandler == null) {
+            mCameraThread = new HandlerThread("AVInCamera");
+            mCameraThread.start();
+            mCameraHandler = new Handler(mCameraThread.getLooper());
+        }
+        return mCameraHandler;
+    }
+
+    /**
+     * 打开摄像头并设置预览尺寸，不通知服务摄像头已经打开
+     * @param avId AVIN ID，见{@link com.roadrover.sdk.avin.IVIAVIn.Id}
+     * @param index 摄像头INDEX
+     * @param timeline 记录各阶段的时间点
+     * @return 打开失败返回null
+     */
+    private Camera openCamera(int avId, int index, CameraTimeline timeline) {
+        flushParams(); // 摄像头使用最新的视频参数
         Logcat.d("open camera " + IVIAVIn.Id.getName(avId) + ", camera index = " + index);
 
         setAndroidCameraOpenPrepared(avId);
+        timeline.mark(CameraTimeline.Stage.PREPARED);
 
         Camera camera = null;
         try {
             camera = Camera.open(index);
             if (camera != null) {
+                timeline.mark(CameraTimeline.Stage.OPENED);
+
                 // 设置预览视频尺寸
                 try {
                     Camera.Parameters cameraParams = camera.getParameters();
-                    List<Camera.Size> supportedSizes = cameraParams.getSupportedPreviewSizes();
-                    final int cvbsType = getCvbsType(avId);
-                    int width = VideoParam.CvbsType.getVideoWidth(cvbsType);
-                    int height = VideoParam.CvbsType.getVideoHeight(cvbsType);
-
-                    boolean found = false;
-                    for (Camera.Size size : supportedSizes) {
-                        final int _width = size.width;
-                        final int _height = size.height;
-                        Logcat.d(IVIAVIn.Id.getName(avId) + " camera available size (" + _width + "x" + _height + ")");
-                        if (width == _width && height == _height) {
-                            found = true;
-                        }
-                    }
-
-                    if (!found) {
-                        Logcat.d(IVIAVIn.Id.getName(avId) + " CVBS type size not support, select the first available size.");
-                        final int size = supportedSizes.size();
-                        if (size > 0) {
-                            Camera.Size cameraSize = supportedSizes.get(0);
-                            if (cameraSize != null) {
-                                width = cameraSize.width;
-                                height = cameraSize.height;
-                            }
-                        }
-                    }
-
-                    Logcat.d(IVIAVIn.Id.getName(avId) + " set CVBS type to " + VideoParam.CvbsType.getName(cvbsType) +
-                            ", size (" + width + ", " + height + ").");
-                    cameraParams.setPreviewSize(width, height);
+                    final int[] size = getPreviewSize(avId, cameraParams);
+                    cameraParams.setPreviewSize(size[0], size[1]);
                     camera.setParameters(cameraParams);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
-
-                // 通知Service Android Camera打开了
-                setAndroidCameraOpen(avId, true);
-
-                // 强制请求信号有无检测
-                requestVideoSignalEvent(avId);
+                timeline.mark(CameraTimeline.Stage.CONFIGURED);
             } else {
                 Logcat.e("open camera " + index + " failed!");
             }
@@ -600,12 +931,87 @@ public class AVInManager extends BaseManager {
 
             if (camera != null) {
                 camera.release();
+                camera = null;
             }
         }
 
         return camera;
     }
 
+    /**
+     * 获取预览尺寸，优先使用制式对应的尺寸，摄像头不支持时使用第一个支持的尺寸，结果按AVIN和制式缓存
+     * @param avId AVIN ID，见{@link com.roadrover.sdk.avin.IVIAVIn.Id}
+     * @param cameraParams 摄像头参数
+     * @return {宽, 高}
+     */
+    private int[] getPreviewSize(int avId, Camera.Parameters cameraParams) {
+        final int cvbsType = getCvbsType(avId);
+        final int key = getPreviewSizeKey(avId, cvbsType);
+        synchronized (sPreviewSizes) {
+            final int[] size = sPreviewSizes.get(key);
+            if (size != null) {
+                return size;
+            }
+        }
+
+        List<Camera.Size> supportedSizes = cameraParams.getSupportedPreviewSizes();
+        int width = VideoParam.CvbsType.getVideoWidth(cvbsType);
+        int height = VideoParam.CvbsType.getVideoHeight(cvbsType);
+
+        boolean found = false;
+        for (Camera.Size size : supportedSizes) {
+            final int _width = size.width;
+            final int _height = size.height;
+            Logcat.d(IVIAVIn.Id.getName(avId) + " camera available size (" + _width + "x" + _height + ")");
+            if (width == _width && height == _height) {
+                found = true;
+            }
+        }
+
+        if (!found) {
+            Logcat.d(IVIAVIn.Id.getName(avId) + " CVBS type size not support, select the first available size.");
+            final int size = supportedSizes.size();
+            if (size > 0) {
+                Camera.Size cameraSize = supportedSizes.get(0);
+                if (cameraSize != null) {
+                    width = cameraSize.width;
+                    height = cameraSize.height;
+                }
+            }
+        }
+
+        Logcat.d(IVIAVIn.Id.getName(avId) + " set CVBS type to " + VideoParam.CvbsType.getName(cvbsType) +
+                ", size (" + width + ", " + height + ").");
+        final int[] size = new int[]{width, height};
+        if (!supportedSizes.isEmpty()) {
+            synchronized (sPreviewSizes) {
+                sPreviewSizes.put(key, size);
+            }
+        }
+        return size;
+    }
+
+    private static int getPreviewSizeKey(int avId, int cvbsType) {
+        return (avId << 8) | (cvbsType & 0xff);
+    }
+
+    /**
+     * 收到第一帧预览图像时记录时间点，打印各阶段的耗时
+     */
+    private void watchFirstFrame(Camera camera, final CameraTimeline timeline) {
+        try {
+            camera.setOneShotPreviewCallback(new Camera.PreviewCallback() {
+                @Override
+                public void onPreviewFrame(byte[] data, Camera camera) {
+                    timeline.mark(CameraTimeline.Stage.FIRST_FRAME);
+                    Logcat.d(timeline.toString());
+                }
+            });
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * 通知service avId对应的Android Camera已经被关闭，
      * 如果已经调用了AVInManager.close，可以不用调用该函数
@@ -613,9 +1019,19 @@ public class AVInManager extends BaseManager {
      * @param avId AVIN ID，见{@link com.roadrover.sdk.avin.IVIAVIn.Id}
      */
     public void closeAndroidCamera(int avId) {
+        mSignalFilter.reset(avId);
         setAndroidCameraOpen(avId, false);
     }
 
+    /**
+     * 获取AVIN最近的视频信号和CVBS制式的上报记录，用于分析信号抖动
+     * @param avId AVIN ID，见{@link com.roadrover.sdk.avin.IVIAVIn.Id}
+     * @return 按时间先后排列
+     */
+    public List<VideoSignalFilter.Record> getVideoSignalHistory(int avId) {
+        return mSignalFilter.getHistory(avId);
+    }
+
     /**
      * 通知Service，应用已经打开或者关闭了Android的摄像头
      *
@@ -0,0 +1,128 @@
+package com.roadrover.sdk.avin;
+
+import android.os.SystemClock;
+
+import com.roadrover.sdk.utils.LogNameUtil;
+
+import java.util.Arrays;
+
+/**
+ * 安卓摄像头打开过程的各阶段时间点，用于统计从挂倒档到显示第一帧图像的耗时 </br>
+ * 时间为 {@link SystemClock#elapsedRealtime()}，没有经过的阶段为0
+ */
+public class CameraTimeline {
+
+    /**
+     * 打开过程的阶段
+     */
+    public static class Stage {
+        /**
+         * 收到倒档或者倒车信号，开始预先打开摄像头，其值 {@value}
+         */
+        public static final int HINT = 0;
+        /**
+         * 应用调用 openAndroidCamera，其值 {@value}
+         */
+        public static final int REQUEST = 1;
+        /**
+         * 通知服务准备打开摄像头，切换视频通道完成，其值 {@value}
+         */
+        public static final int PREPARED = 2;
+        /**
+         * Camera.open 完成，其值 {@value}
+         */
+        public static final int OPENED = 3;
+        /**
+         * 预览尺寸设置完成，其值 {@value}
+         */
+        public static final int CONFIGURED = 4;
+        /**
+         * 通知服务摄像头已经打开，其值 {@value}
+         */
+        public static final int NOTIFIED = 5;
+        /**
+         * 收到第一帧预览图像，其值 {@value}
+         */
+        public static final int FIRST_FRAME = 6;
+
+        static final int COUNT = 7;
+
+        public static String getName(int stage) {
+            return LogNameUtil.getName(stage, Stage.class, "Unknown stage " + stage);
+        }
+    }
+
+    private final int mAvId;
+    private final long[] mTimes = new long[Stage.COUNT];
+
+    public CameraTimeline(int avId) {
+        mAvId = avId;
+    }
+
+    public int getAvId() {
+        return mAvId;
+    }
+
+    /**
+     * 记录当前阶段的时间点
+     * @param stage {@link Stage}
+     */
+    public synchronized void mark(int stage) {
+        if (stage >= 0 && stage < Stage.COUNT) {
+            mTimes[stage] = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * 获取阶段的时间点
+     * @param stage {@link Stage}
+     * @return 没有经过该阶段返回0
+     */
+    public synchronized long getTime(int stage) {
+        return (stage >= 0 && stage < Stage.COUNT) ? mTimes[stage] : 0;
+    }
+
+    /**
+     * 获取两个阶段之间的耗时
+     * @param from 开始阶段 {@link Stage}
+     * @param to 结束阶段 {@link Stage}
+     * @return 单位毫秒，任一阶段没有经过返回-1
+     */
+    public synchronized long getDuration(int from, int to) {
+        final long start = getTime(from);
+        final long end = getTime(to);
+        return (start > 0 && end > 0) ? end - start : -1;
+    }
+
+    /**
+     * 获取第一个经过的阶段的时间点
+     * @return
+     */
+    public synchronized long getStartTime() {
+        for (long time : mTimes) {
+            if (time > 0) {
+                return time;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 清除所有阶段的时间点
+     */
+    public synchronized void reset() {
+        Arrays.fill(mTimes, 0);
+    }
+
+    @Override
+    public synchronized String toString() {
+        final long start = getStartTime();
+        StringBuilder builder = new StringBuilder(IVIAVIn.Id.getName(mAvId));
+        for (int stage = 0; stage < Stage.COUNT; ++stage) {
+            if (mTimes[stage] > 0) {
+                builder.append(' ').append(Stage.getName(stage)).append(":+").append(mTimes[stage] - start).append("ms");
+            }
+        }
+        return builder.toString();
+    }
+}
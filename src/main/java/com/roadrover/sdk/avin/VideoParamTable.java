@@ -0,0 +1,94 @@
+package com.roadrover.sdk.avin;
+
+import android.os.RemoteException;
+import android.util.SparseBooleanArray;
+
+import com.roadrover.sdk.utils.Logcat;
+import com.roadrover.sdk.utils.ParamTable;
+import com.roadrover.services.avin.IAVIn;
+
+/**
+ * 视频参数表，缓存全部 {@link VideoParam} 的有效性、最小值、最大值、默认值和当前值 </br>
+ * 1. 通过 IAVIn.getParamTable 一次取回全部AVIN的全部参数，服务不支持批量接口时退化为逐个获取，获取过的不会再获取，
+ *    加载过程和音频参数表一样由 {@link ParamTable} 实现 </br>
+ * 2. 当前值由 {@link AVInManager} 在设置参数和收到CVBS制式变化时更新 </br>
+ * 返回的是表内部的对象，调用者不能修改
+ */
+class VideoParamTable extends ParamTable<IAVIn, VideoParam> {
+
+    private static int[] sParamIds = null;
+
+    /**
+     * 更新参数的当前值，参数还没有获取时不处理
+     * @param id 视频ID，通过{@link VideoParam#makeId(int, int)}获得
+     * @param value 当前值
+     */
+    synchronized void updateParam(int id, int value) {
+        VideoParam param = peek(id);
+        if (param != null) {
+            param.mValue = value;
+        }
+    }
+
+    @Override
+    protected int[] getIds() {
+        return getParamIds();
+    }
+
+    @Override
+    protected boolean fetchAll(IAVIn avin, int[] ids) throws RemoteException {
+        final int[] values = avin.getParamTable(ids);
+        if (values == null || values.length != ids.length * FIELD_COUNT) {
+            return false;
+        }
+
+        for (int i = 0; i < ids.length; ++i) {
+            final int base = i * FIELD_COUNT;
+            VideoParam param = null;
+            if (values[base + FIELD_AVAILABLE] != 0) {
+                param = new VideoParam(ids[i], values[base + FIELD_MIN], values[base + FIELD_MAX],
+                        values[base + FIELD_DEFAULT]);
+                param.mValue = values[base + FIELD_VALUE];
+            }
+            put(ids[i], param);
+        }
+        Logcat.d("load " + ids.length + " video params");
+        return true;
+    }
+
+    @Override
+    protected VideoParam fetch(IAVIn avin, int id) throws RemoteException {
+        if (!avin.isParamAvailable(id)) {
+            return null;
+        }
+        VideoParam param = new VideoParam(id, avin.getParamMinValue(id), avin.getParamMaxValue(id),
+                avin.getParamDefaultValue(id));
+        param.mValue = avin.getParam(id);
+        return param;
+    }
+
+    /**
+     * 获取全部AVIN的全部视频参数ID
+     * @return
+     */
+    private static synchronized int[] getParamIds() {
+        if (sParamIds == null) {
+            SparseBooleanArray ids = new SparseBooleanArray();
+            for (Integer avId : IVIAVIn.Id.getIds()) {
+                if (avId == IVIAVIn.Id.NONE) {
+                    continue;
+                }
+                for (Integer subId : VideoParam.SubId.getSubIds()) {
+                    if (subId != VideoParam.SubId.NONE) {
+                        ids.put(VideoParam.makeId(avId, subId), true);
+                    }
+                }
+            }
+            sParamIds = new int[ids.size()];
+            for (int i = 0; i < sParamIds.length; ++i) {
+                sParamIds[i] = ids.keyAt(i);
+            }
+        }
+        return sParamIds;
+    }
+}
@@ -0,0 +1,346 @@
+package com.roadrover.sdk.avin;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.roadrover.sdk.system.IVIConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AVIN视频信号和CVBS制式的防抖状态机，每个AVIN独立 </br>
+ * 1. 新的值需要保持一段时间不变才被接受，中间变回原来的值或者变为不稳定时取消，信号抖动不会通知 </br>
+ * 2. 从无到有使用 {@link IVIConfig#getAVInSignalDebounceTime(int)}，从有到无使用更长的
+ *    {@link IVIConfig#getAVInSignalLostTime(int)}，形成迟滞 </br>
+ * 3. CVBS制式的防抖时间为 {@link IVIConfig#getAVInChangeCVBSTypeCount(int)} 次检测的时间 </br>
+ * 4. 状态未知时（刚打开或者 {@link #reset(int)} 之后）第一个稳定的值立即接受，不影响打开摄像头的速度 </br>
+ * 5. 每个AVIN保存最近 {@link #HISTORY_SIZE} 次输入，用于分析信号抖动 </br>
+ * 防抖到期的通知在主线程回调，立即接受的通知在调用线程回调
+ */
+public class VideoSignalFilter {
+
+    /**
+     * 默认的从无到有的防抖时间，单位毫秒
+     */
+    public static final int DEFAULT_DEBOUNCE_TIME = 300;
+
+    /**
+     * 默认的从有到无的防抖时间，单位毫秒
+     */
+    public static final int DEFAULT_LOST_TIME = 1000;
+
+    /**
+     * 默认的CVBS制式检测次数
+     */
+    public static final int DEFAULT_CVBS_TYPE_COUNT = 2;
+
+    /**
+     * 服务端检测CVBS制式的间隔，单位毫秒
+     */
+    public static final int CVBS_DETECT_INTERVAL = 500;
+
+    /**
+     * 每个AVIN保存的历史记录个数
+     */
+    public static final int HISTORY_SIZE = 16;
+
+    /**
+     * 防抖之后的状态变化监听
+     */
+    public interface Listener {
+        /**
+         * 视频信号稳定地发生了变化
+         * @param avId {@link IVIAVIn.Id}
+         * @param signal {@link IVIAVIn.Signal}
+         */
+        void onSignalChanged(int avId, int signal);
+
+        /**
+         * CVBS制式稳定地发生了变化
+         * @param avId {@link IVIAVIn.Id}
+         * @param cvbsType {@link VideoParam.CvbsType}
+         */
+        void onCvbsTypeChanged(int avId, int cvbsType);
+    }
+
+    /**
+     * 一次输入的记录
+     */
+    public static class Record {
+        public static final int TYPE_SIGNAL = 0;
+        public static final int TYPE_CVBS_TYPE = 1;
+
+        /** 输入的时间，{@link SystemClock#elapsedRealtime()} */
+        public final long mTime;
+        /** {@link #TYPE_SIGNAL} 或者 {@link #TYPE_CVBS_TYPE} */
+        public final int mType;
+        /** 输入的值 */
+        public final int mValue;
+        /** 输入之后的稳定状态 */
+        public final int mStableValue;
+
+        Record(long time, int type, int value, int stableValue) {
+            mTime = time;
+            mType = type;
+            mValue = value;
+            mStableValue = stableValue;
+        }
+
+        @Override
+        public String toString() {
+            if (mType == TYPE_SIGNAL) {
+                return mTime + " signal " + IVIAVIn.Signal.getName(mValue) + " -> " + IVIAVIn.Signal.getName(mStableValue);
+            }
+            return mTime + " cvbs " + VideoParam.CvbsType.getName(mValue) + " -> " + VideoParam.CvbsType.getName(mStableValue);
+        }
+    }
+
+    /**
+     * 一个值的防抖状态
+     */
+    private class Debouncer implements Runnable {
+        private final int mAvId;
+        private final int mType;
+        private final int mUnknown;
+        private int mStable;
+        private int mPending;
+        private boolean mHasPending = false;
+
+        Debouncer(int avId, int type, int unknown) {
+            mAvId = avId;
+            mType = type;
+            mUnknown = unknown;
+            mStable = unknown;
+        }
+
+        /**
+         * @return 立即接受了新的值返回true
+         */
+        boolean update(int value, boolean unstable) {
+            if (unstable || value == mStable) {
+                cancel();
+                return false;
+            }
+            if (mStable == mUnknown) {
+                cancel();
+                mStable = value;
+                return true;
+            }
+            if (!mHasPending || mPending != value) {
+                cancel();
+                mPending = value;
+                mHasPending = true;
+                mHandler.postDelayed(this, getWindow(value));
+            }
+            return false;
+        }
+
+        void cancel() {
+            if (mHasPending) {
+                mHandler.removeCallbacks(this);
+                mHasPending = false;
+            }
+        }
+
+        void reset() {
+            cancel();
+            mStable = mUnknown;
+        }
+
+        private long getWindow(int value) {
+            if (mType == Record.TYPE_CVBS_TYPE) {
+                return mCvbsTypeTime;
+            }
+            return IVIAVIn.Signal.hasSignal(value) ? mDebounceTime : mLostTime;
+        }
+
+        @Override
+        public void run() {
+            final int value;
+            synchronized (VideoSignalFilter.this) {
+                if (!mHasPending) {
+                    return;
+                }
+                mHasPending = false;
+                mStable = mPending;
+                value = mStable;
+            }
+            notifyChanged(mAvId, mType, value);
+        }
+    }
+
+    /**
+     * 一个AVIN的状态
+     */
+    private class State {
+        final Debouncer mSignal;
+        final Debouncer mCvbsType;
+        final Record[] mHistory = new Record[HISTORY_SIZE];
+        int mHistoryIndex = 0;
+        int mHistoryCount = 0;
+
+        State(int avId) {
+            mSignal = new Debouncer(avId, Record.TYPE_SIGNAL, IVIAVIn.Signal.UNSTABLE_SIGNAL);
+            mCvbsType = new Debouncer(avId, Record.TYPE_CVBS_TYPE, -1);
+        }
+
+        void addHistory(Record record) {
+            mHistory[mHistoryIndex] = record;
+            mHistoryIndex = (mHistoryIndex + 1) % HISTORY_SIZE;
+            if (mHistoryCount < HISTORY_SIZE) {
+                ++mHistoryCount;
+            }
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final SparseArray<State> mStates = new SparseArray<>();
+    private final Listener mListener;
+    private final int mDebounceTime;
+    private final int mLostTime;
+    private final int mCvbsTypeTime;
+
+    /**
+     * 构造函数，防抖时间从 {@link IVIConfig} 读取
+     * @param listener 状态变化监听
+     */
+    public VideoSignalFilter(Listener listener) {
+        this(listener, IVIConfig.getAVInSignalDebounceTime(DEFAULT_DEBOUNCE_TIME),
+                IVIConfig.getAVInSignalLostTime(DEFAULT_LOST_TIME),
+                IVIConfig.getAVInChangeCVBSTypeCount(DEFAULT_CVBS_TYPE_COUNT) * CVBS_DETECT_INTERVAL);
+    }
+
+    /**
+     * 构造函数
+     * @param listener 状态变化监听
+     * @param debounceTime 从无到有的防抖时间，单位毫秒
+     * @param lostTime 从有到无的防抖时间，单位毫秒
+     * @param cvbsTypeTime CVBS制式的防抖时间，单位毫秒
+     */
+    public VideoSignalFilter(Listener listener, int debounceTime, int lostTime, int cvbsTypeTime) {
+        mListener = listener;
+        mDebounceTime = Math.max(debounceTime, 0);
+        mLostTime = Math.max(lostTime, 0);
+        mCvbsTypeTime = Math.max(cvbsTypeTime, 0);
+    }
+
+    /**
+     * 输入服务上报的视频信号
+     * @param avId {@link IVIAVIn.Id}
+     * @param signal {@link IVIAVIn.Signal}
+     * @return 立即接受并且已经通知了返回true
+     */
+    public boolean updateSignal(int avId, int signal) {
+        final boolean accepted;
+        synchronized (this) {
+            State state = getState(avId);
+            accepted = state.mSignal.update(signal, !IVIAVIn.Signal.isSignalStable(signal));
+            state.addHistory(new Record(SystemClock.elapsedRealtime(), Record.TYPE_SIGNAL, signal, state.mSignal.mStable));
+        }
+        if (accepted) {
+            notifyChanged(avId, Record.TYPE_SIGNAL, signal);
+        }
+        return accepted;
+    }
+
+    /**
+     * 输入服务上报的CVBS制式
+     * @param avId {@link IVIAVIn.Id}
+     * @param cvbsType {@link VideoParam.CvbsType}
+     */
+    public void updateCvbsType(int avId, int cvbsType) {
+        final boolean accepted;
+        synchronized (this) {
+            State state = getState(avId);
+            accepted = state.mCvbsType.update(cvbsType, false);
+            state.addHistory(new Record(SystemClock.elapsedRealtime(), Record.TYPE_CVBS_TYPE, cvbsType,
+                    state.mCvbsType.mStable));
+        }
+        if (accepted) {
+            notifyChanged(avId, Record.TYPE_CVBS_TYPE, cvbsType);
+        }
+    }
+
+    /**
+     * 获取稳定的视频信号
+     * @param avId {@link IVIAVIn.Id}
+     * @return 状态未知时返回 {@link IVIAVIn.Signal#UNSTABLE_SIGNAL}
+     */
+    public synchronized int getSignal(int avId) {
+        State state = mStates.get(avId);
+        return (state != null) ? state.mSignal.mStable : IVIAVIn.Signal.UNSTABLE_SIGNAL;
+    }
+
+    /**
+     * 获取稳定的CVBS制式
+     * @param avId {@link IVIAVIn.Id}
+     * @return 状态未知时返回-1
+     */
+    public synchronized int getCvbsType(int avId) {
+        State state = mStates.get(avId);
+        return (state != null) ? state.mCvbsType.mStable : -1;
+    }
+
+    /**
+     * 获取最近的输入记录
+     * @param avId {@link IVIAVIn.Id}
+     * @return 按时间先后排列
+     */
+    public synchronized List<Record> getHistory(int avId) {
+        List<Record> records = new ArrayList<>();
+        State state = mStates.get(avId);
+        if (state != null) {
+            final int start = (state.mHistoryIndex - state.mHistoryCount + HISTORY_SIZE) % HISTORY_SIZE;
+            for (int i = 0; i < state.mHistoryCount; ++i) {
+                records.add(state.mHistory[(start + i) % HISTORY_SIZE]);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 状态重置为未知，AVIN关闭时调用，下次打开时第一个稳定的值立即接受，历史记录保留
+     * @param avId {@link IVIAVIn.Id}
+     */
+    public synchronized void reset(int avId) {
+        State state = mStates.get(avId);
+        if (state != null) {
+            state.mSignal.reset();
+            state.mCvbsType.reset();
+        }
+    }
+
+    /**
+     * 释放，取消所有没有到期的防抖
+     */
+    public synchronized void release() {
+        for (int i = 0; i < mStates.size(); ++i) {
+            mStates.valueAt(i).mSignal.cancel();
+            mStates.valueAt(i).mCvbsType.cancel();
+        }
+        mStates.clear();
+    }
+
+    private State getState(int avId) {
+        State state = mStates.get(avId);
+        if (state == null) {
+            state = new State(avId);
+            mStates.put(avId, state);
+        }
+        return state;
+    }
+
+    private void notifyChanged(int avId, int type, int value) {
+        if (mListener == null) {
+            return;
+        }
+        if (type == Record.TYPE_SIGNAL) {
+            mListener.onSignalChanged(avId, value);
+        } else {
+            mListener.onCvbsTypeChanged(avId, value);
+        }
+    }
+}
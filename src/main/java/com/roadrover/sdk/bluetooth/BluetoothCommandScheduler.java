@@ -0,0 +1,567 @@
+package com.roadrover.sdk.bluetooth;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.roadrover.sdk.utils.LogNameUtil;
+import com.roadrover.sdk.utils.Logcat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 蓝牙命令调度类，按优先级分通道，只有大数据命令排队 </br>
+ * 1. 通话控制和音频控制命令不排队，加入时立即发送，不等待前一条命令的结果，同一通道可以同时有多条在执行 </br>
+ * 2. 电话本同步和设备搜索都是大数据命令，同一时间只执行一条，按先后顺序执行，通话控制命令执行期间也不开始 </br>
+ * 3. 通话控制命令如果遇到正在执行的大数据命令，会先打断 </br>
+ * 4. 每条命令有各自的超时时间，超时后通知失败，大数据命令接着执行下一条 </br>
+ * 5. 每次执行分配一个新的执行序号，打断之后重新执行的命令可以通过序号忽略上一次执行的迟到回调 </br>
+ * 6. 每条命令执行完成时统计排队时间和执行时间 </br>
+ * 发送命令、通知失败和统计回调都在释放调度锁之后执行
+ */
+public class BluetoothCommandScheduler {
+
+    /**
+     * 通道，值越小优先级越高
+     */
+    public static class Lane {
+        /**
+         * 通话控制，其值为 {@value}
+         */
+        public static final int CALL      = 0;
+
+        /**
+         * 音频控制，其值为 {@value}
+         */
+        public static final int AUDIO     = 1;
+
+        /**
+         * 电话本，通话记录同步，其值为 {@value}
+         */
+        public static final int SYNC      = 2;
+
+        /**
+         * 设备搜索，其值为 {@value}
+         */
+        public static final int DISCOVERY = 3;
+
+        /**
+         * 通道个数
+         */
+        public static final int COUNT     = 4;
+
+        /**
+         * 通过通道获取名字，一般用作打印 log
+         * @param lane {@link Lane}
+         * @return 例：0 返回 "CALL"
+         */
+        public static String getName(int lane) {
+            return LogNameUtil.getName(lane, Lane.class, "Unknown lane: " + lane);
+        }
+
+        /**
+         * 是否是大数据命令的通道
+         * @param lane {@link Lane}
+         * @return
+         */
+        static boolean isBulk(int lane) {
+            return lane == SYNC || lane == DISCOVERY;
+        }
+    }
+
+    /**
+     * 命令执行成功，其值为 {@value}
+     */
+    public static final int RESULT_SUCCESS   = 0;
+
+    /**
+     * 命令被取消，其值为 {@value}
+     */
+    public static final int RESULT_CANCELLED = -1;
+
+    /**
+     * 命令被高优先级命令打断，其值为 {@value}
+     */
+    public static final int RESULT_PREEMPTED = -2;
+
+    /**
+     * 一条命令
+     */
+    public static abstract class Command {
+        private final String mName;
+        private final int mLane;
+        private final int mTimeout;
+        private long mEnqueueTime;
+        private long mStartTime;
+        private boolean mFinished = false;
+        private int mAttemptId = 0;
+        private Runnable mTimeoutRunnable = null;
+
+        /**
+         * 构造函数
+         * @param name 命令名字，用于打印
+         * @param lane 通道 {@link Lane}
+         * @param timeout 超时时间，单位毫秒，小于等于0表示不检测超时
+         */
+        public Command(String name, int lane, int timeout) {
+            mName = name;
+            mLane = lane;
+            mTimeout = timeout;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getLane() {
+            return mLane;
+        }
+
+        /**
+         * 获取当前执行的序号，每次执行（包括打断之后重新执行）都不同，在 {@link #execute()} 中获取
+         * @return 还没有执行返回0
+         */
+        public int getAttemptId() {
+            return mAttemptId;
+        }
+
+        /**
+         * 发送命令到服务
+         * @throws Exception 发送失败，命令会以 {@link IVIBluetooth.BluetoothExecErrorMsg#ERROR_TASK} 结束
+         */
+        protected abstract void execute() throws Exception;
+
+        /**
+         * 命令没有正常完成，需要通知应用
+         * @param errorCode {@link IVIBluetooth.BluetoothExecErrorMsg} 或者 {@link #RESULT_CANCELLED}
+         */
+        protected abstract void onFailure(int errorCode);
+
+        /**
+         * 是否是可以被打断的大数据命令，例：电话本下载
+         * @return
+         */
+        protected boolean isPreemptible() {
+            return false;
+        }
+
+        /**
+         * 命令被打断，在调度锁之外调用
+         * @return 返回true，命令重新放回通道最前面，稍后重新执行；返回false，命令结束
+         */
+        protected boolean onPreempted() {
+            return false;
+        }
+    }
+
+    /**
+     * 命令执行的统计回调
+     */
+    public interface LatencyListener {
+        /**
+         * 一条命令执行结束
+         * @param name 命令名字
+         * @param lane 通道 {@link Lane}
+         * @param waitTime 排队时间，单位毫秒
+         * @param execTime 执行时间，单位毫秒
+         * @param result {@link #RESULT_SUCCESS}，{@link #RESULT_CANCELLED}，{@link #RESULT_PREEMPTED}
+         *               或者 {@link IVIBluetooth.BluetoothExecErrorMsg}
+         */
+        void onCommandFinished(String name, int lane, long waitTime, long execTime, int result);
+    }
+
+    /**
+     * 在调度锁之外执行的操作，在锁内收集
+     */
+    private static class Work {
+        boolean mStopService = false;
+        final List<Command> mPreempted = new ArrayList<>();
+        final List<Command> mStarts = new ArrayList<>();
+        final List<Command> mFailures = new ArrayList<>();
+        final List<Integer> mErrorCodes = new ArrayList<>();
+        final List<Finished> mFinished = new ArrayList<>();
+
+        void fail(Command command, int errorCode) {
+            mFailures.add(command);
+            mErrorCodes.add(errorCode);
+        }
+    }
+
+    /**
+     * 结束的命令的统计
+     */
+    private static class Finished {
+        final String mName;
+        final int mLane;
+        final long mWaitTime;
+        final long mExecTime;
+        final int mResult;
+
+        Finished(String name, int lane, long waitTime, long execTime, int result) {
+            mName = name;
+            mLane = lane;
+            mWaitTime = waitTime;
+            mExecTime = execTime;
+            mResult = result;
+        }
+    }
+
+    private final ArrayDeque<Command>[] mLanes;
+    private final List<Command>[] mRunning; // 每个通道正在执行的命令，大数据通道最多一条
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mStopCurrentCommand;
+    private LatencyListener mLatencyListener = null;
+    private int mNextAttemptId = 1;
+
+    /**
+     * 构造函数
+     * @param stopCurrentCommand 打断大数据命令时调用，通知服务停止当前命令
+     */
+    @SuppressWarnings("unchecked")
+    public BluetoothCommandScheduler(Runnable stopCurrentCommand) {
+        mStopCurrentCommand = stopCurrentCommand;
+        mLanes = new ArrayDeque[Lane.COUNT];
+        mRunning = new List[Lane.COUNT];
+        for (int i = 0; i < Lane.COUNT; ++i) {
+            mLanes[i] = new ArrayDeque<>();
+            mRunning[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * 设置命令执行的统计回调，不设置时统计结果打印到 log
+     * @param listener
+     */
+    public synchronized void setLatencyListener(LatencyListener listener) {
+        mLatencyListener = listener;
+    }
+
+    /**
+     * 添加一条命令
+     * @param command 命令
+     */
+    public void enqueue(Command command) {
+        if (command == null || command.mLane < 0 || command.mLane >= Lane.COUNT) {
+            return;
+        }
+        final Work work = new Work();
+        synchronized (this) {
+            command.mEnqueueTime = SystemClock.elapsedRealtime();
+            command.mFinished = false;
+            mLanes[command.mLane].addLast(command);
+            schedule(work);
+        }
+        run(work);
+    }
+
+    /**
+     * 命令执行完成，由命令的回调调用
+     * @param command 命令
+     * @param result {@link #RESULT_SUCCESS} 或者 {@link IVIBluetooth.BluetoothExecErrorMsg}
+     * @return 命令已经因为超时、取消等原因结束时返回false，此时不要再通知应用
+     */
+    public boolean complete(Command command, int result) {
+        return complete(command, (command != null) ? command.mAttemptId : 0, result);
+    }
+
+    /**
+     * 命令的某一次执行完成，被打断之前的执行的迟到回调会被忽略
+     * @param command 命令
+     * @param attemptId 执行序号 {@link Command#getAttemptId()}
+     * @param result {@link #RESULT_SUCCESS} 或者 {@link IVIBluetooth.BluetoothExecErrorMsg}
+     * @return 命令已经结束或者不是当前的执行时返回false，此时不要再通知应用
+     */
+    public boolean complete(Command command, int attemptId, int result) {
+        final Work work = new Work();
+        synchronized (this) {
+            if (command == null || command.mFinished || command.mAttemptId != attemptId ||
+                    !removeRunning(command)) {
+                return false;
+            }
+            finish(command, result, work);
+            schedule(work);
+        }
+        run(work);
+        return true;
+    }
+
+    /**
+     * 获取指定通道最早开始执行的命令
+     * @param lane {@link Lane}
+     * @return 没有返回null
+     */
+    public synchronized Command getRunning(int lane) {
+        return (lane >= 0 && lane < Lane.COUNT && !mRunning[lane].isEmpty()) ? mRunning[lane].get(0) : null;
+    }
+
+    /**
+     * 取消正在执行的大数据命令，一般在 stopCurrentCommand 时调用，
+     * 服务只停止当前的大数据命令，通话控制和音频控制命令不受影响
+     */
+    public void cancelRunning() {
+        final Work work = new Work();
+        synchronized (this) {
+            for (int lane = 0; lane < Lane.COUNT; ++lane) {
+                if (!Lane.isBulk(lane)) {
+                    continue;
+                }
+                for (Command command : mRunning[lane]) {
+                    finish(command, RESULT_CANCELLED, work);
+                    work.fail(command, IVIBluetooth.BluetoothExecErrorMsg.ERROR_TASK);
+                }
+                mRunning[lane].clear();
+            }
+            schedule(work);
+        }
+        run(work);
+    }
+
+    /**
+     * 取消指定通道所有的命令，包括正在执行的
+     * @param lane {@link Lane}
+     * @param errorCode 通知应用的错误码 {@link IVIBluetooth.BluetoothExecErrorMsg}
+     */
+    public void cancelLane(int lane, int errorCode) {
+        if (lane < 0 || lane >= Lane.COUNT) {
+            return;
+        }
+        final Work work = new Work();
+        synchronized (this) {
+            for (Command running : mRunning[lane]) {
+                if (running.isPreemptible()) {
+                    work.mStopService = true; // 大数据命令需要通知服务停止
+                }
+                finish(running, RESULT_CANCELLED, work);
+                work.fail(running, errorCode);
+            }
+            mRunning[lane].clear();
+            for (Command command : mLanes[lane]) {
+                finish(command, RESULT_CANCELLED, work);
+                work.fail(command, errorCode);
+            }
+            mLanes[lane].clear();
+            schedule(work);
+        }
+        run(work);
+    }
+
+    /**
+     * 取消一条命令，正在执行的大数据命令会通知服务停止，不通知应用
+     * @param command 命令
+     * @return 命令还没有结束返回true
+     */
+    public boolean cancel(Command command) {
+        if (command == null || command.mLane < 0 || command.mLane >= Lane.COUNT) {
+            return false;
+        }
+        final Work work = new Work();
+        synchronized (this) {
+            if (command.mFinished) {
+                return false;
+            }
+            if (mRunning[command.mLane].remove(command)) {
+                if (command.isPreemptible()) {
+                    work.mStopService = true;
+                }
+            } else if (!mLanes[command.mLane].remove(command)) {
+                return false;
+            }
+            finish(command, RESULT_CANCELLED, work);
+            schedule(work);
+        }
+        run(work);
+        return true;
+    }
+
+    /**
+     * 清空所有命令，不通知应用，一般在断开服务时调用
+     */
+    public void clear() {
+        final Work work = new Work();
+        synchronized (this) {
+            for (int lane = 0; lane < Lane.COUNT; ++lane) {
+                for (Command command : mRunning[lane]) {
+                    finish(command, RESULT_CANCELLED, work);
+                }
+                mRunning[lane].clear();
+                for (Command command : mLanes[lane]) {
+                    command.mFinished = true;
+                }
+                mLanes[lane].clear();
+            }
+        }
+        run(work);
+    }
+
+    /**
+     * 调度，通话控制和音频控制命令全部开始，大数据通道空闲时执行下一条命令，需要在锁内调用
+     */
+    private void schedule(Work work) {
+        for (int lane = 0; lane < Lane.COUNT; ++lane) {
+            if (mLanes[lane].isEmpty()) {
+                continue;
+            }
+
+            if (!Lane.isBulk(lane)) {
+                if (lane == Lane.CALL) {
+                    preempt(work);
+                }
+                while (!mLanes[lane].isEmpty()) {
+                    start(mLanes[lane].pollFirst(), work);
+                }
+            } else if (mRunning[Lane.CALL].isEmpty() && !isBulkRunning()) {
+                start(mLanes[lane].pollFirst(), work); // 通话控制期间和其他大数据命令执行期间不开始
+            }
+        }
+    }
+
+    private void start(Command command, Work work) {
+        command.mStartTime = SystemClock.elapsedRealtime();
+        command.mAttemptId = mNextAttemptId++;
+        mRunning[command.mLane].add(command);
+        startTimeout(command);
+        work.mStarts.add(command);
+    }
+
+    private boolean isBulkRunning() {
+        for (int lane = 0; lane < Lane.COUNT; ++lane) {
+            if (Lane.isBulk(lane) && !mRunning[lane].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 打断正在执行的大数据命令，打断之后是否重新执行在锁外决定
+     */
+    private void preempt(Work work) {
+        for (int lane = 0; lane < Lane.COUNT; ++lane) {
+            for (int i = mRunning[lane].size() - 1; i >= 0; --i) {
+                final Command command = mRunning[lane].get(i);
+                if (!command.isPreemptible()) {
+                    continue;
+                }
+                work.mStopService = true;
+                mRunning[lane].remove(i);
+                cancelTimeout(command);
+                work.mPreempted.add(command);
+            }
+        }
+    }
+
+    /**
+     * 在锁外执行收集的操作，执行过程中产生的新操作继续执行
+     */
+    private void run(Work work) {
+        while (work != null) {
+            if (work.mStopService && mStopCurrentCommand != null) {
+                mStopCurrentCommand.run();
+            }
+            report(work.mFinished);
+            for (int i = 0; i < work.mFailures.size(); ++i) {
+                work.mFailures.get(i).onFailure(work.mErrorCodes.get(i));
+            }
+
+            final Work next = new Work();
+            boolean hasNext = false;
+            for (Command command : work.mPreempted) {
+                final boolean retry = command.onPreempted();
+                synchronized (this) {
+                    if (command.mFinished) {
+                        continue;
+                    }
+                    if (retry) {
+                        Logcat.d(command.mName + " preempted, retry later");
+                        mLanes[command.mLane].addFirst(command);
+                    } else {
+                        finish(command, RESULT_PREEMPTED, next);
+                    }
+                    schedule(next);
+                    hasNext = true;
+                }
+            }
+            for (Command command : work.mStarts) {
+                try {
+                    command.execute();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    synchronized (this) {
+                        if (command.mFinished || !removeRunning(command)) {
+                            continue;
+                        }
+                        finish(command, IVIBluetooth.BluetoothExecErrorMsg.ERROR_TASK, next);
+                        next.fail(command, IVIBluetooth.BluetoothExecErrorMsg.ERROR_TASK);
+                        schedule(next);
+                        hasNext = true;
+                    }
+                }
+            }
+            work = hasNext ? next : null;
+        }
+    }
+
+    private void onTimeout(Command command, int attemptId) {
+        final Work work = new Work();
+        synchronized (this) {
+            if (command.mFinished || command.mAttemptId != attemptId || !removeRunning(command)) {
+                return;
+            }
+            Logcat.w(command.mName + " timeout");
+            finish(command, IVIBluetooth.BluetoothExecErrorMsg.ERROR_TIMER_OUT, work);
+            work.fail(command, IVIBluetooth.BluetoothExecErrorMsg.ERROR_TIMER_OUT);
+            schedule(work);
+        }
+        run(work);
+    }
+
+    private boolean removeRunning(Command command) {
+        return mRunning[command.mLane].remove(command);
+    }
+
+    private void startTimeout(final Command command) {
+        if (command.mTimeout > 0) {
+            final int attemptId = command.mAttemptId;
+            command.mTimeoutRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    onTimeout(command, attemptId);
+                }
+            };
+            mHandler.postDelayed(command.mTimeoutRunnable, command.mTimeout);
+        }
+    }
+
+    private void cancelTimeout(Command command) {
+        if (command.mTimeoutRunnable != null) {
+            mHandler.removeCallbacks(command.mTimeoutRunnable);
+            command.mTimeoutRunnable = null;
+        }
+    }
+
+    private void finish(Command command, int result, Work work) {
+        cancelTimeout(command);
+        command.mFinished = true;
+        final long now = SystemClock.elapsedRealtime();
+        final long startTime = (command.mStartTime > 0) ? command.mStartTime : now;
+        work.mFinished.add(new Finished(command.mName, command.mLane, startTime - command.mEnqueueTime,
+                now - startTime, result));
+    }
+
+    private void report(List<Finished> finished) {
+        final LatencyListener listener;
+        synchronized (this) {
+            listener = mLatencyListener;
+        }
+        for (Finished f : finished) {
+            if (listener != null) {
+                listener.onCommandFinished(f.mName, f.mLane, f.mWaitTime, f.mExecTime, f.mResult);
+            } else {
+                Logcat.d(f.mName + " lane:" + Lane.getName(f.mLane) + " wait:" + f.mWaitTime +
+                        "ms exec:" + f.mExecTime + "ms result:" + f.mResult);
+            }
+        }
+    }
+}
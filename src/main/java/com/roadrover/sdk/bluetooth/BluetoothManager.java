@@ -36,6 +36,15 @@ public class BluetoothManager extends BaseManager {
     // 蓝牙执行命令超时的定时器
     private TimerUtil mBtCommandTimerUtil = null;
     private static final int BT_COMMAND_EXEC_TIME = 20 * 1000; // 一条命令最多执行的时间
+    private static final int SEARCH_DEVICE_TIME = 60 * 1000; // 搜索设备最多执行的时间
+
+    // 蓝牙命令调度，通话控制 > 音频控制 > 电话本同步 > 设备搜索
+    private BluetoothCommandScheduler mCommandScheduler = new BluetoothCommandScheduler(new Runnable() {
+        @Override
+        public void run() {
+            stopServiceCurrentCommand();
+        }
+    });
     private boolean mModuleOpened = false;
 
     private IBluetoothExecCallback.Stub mLinkDeviceCallback; // 连接设备的定时器
@@ -75,7 +84,11 @@ public class BluetoothManager extends BaseManager {
         mUserBluetoothStateCallback = null;
         mBluetoothDeleteDeviceCallback = null;
         mBluetoothStateCallback = null;
-        mVCardListeners = null;
+        mCommandScheduler.clear();
+        mRunningVCardCommand = null;
+        synchronized (mVCardCommands) {
+            mVCardCommands.clear();
+        }
         if (mGetVCardTimerUtil != null) {
             mGetVCardTimerUtil.stop();
             mGetVCardTimerUtil = null;
@@ -85,7 +98,6 @@ public class BluetoothManager extends BaseManager {
         mBluetoothNameCallback = null;
         mBluetoothPinCallback = null;
         mAppVCardCallback = null;
-        mIBluetoothVCardCallback = null;
         mAppSearchDeviceCallback = null;
         mUserDeviceCallback = null;
         mUserBluetoothNameCallback = null;
@@ -616,11 +628,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void addVolume(IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.addVolume(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("addVolume", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.addVolume(callback);
+                }
+            });
         }
     }
 
@@ -630,11 +643,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void delVolume(IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.delVolume(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("delVolume", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.delVolume(callback);
+                }
+            });
         }
     }
 
@@ -643,13 +657,14 @@ public class BluetoothManager extends BaseManager {
      * @param isMute
      * @param callback
      */
-    public void muteBluetoothModule(boolean isMute, IBluetoothExecCallback.Stub callback) {
+    public void muteBluetoothModule(final boolean isMute, IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.muteBluetoothModule(isMute, callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("muteBluetoothModule", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.muteBluetoothModule(isMute, callback);
+                }
+            });
         }
     }
 
@@ -658,13 +673,14 @@ public class BluetoothManager extends BaseManager {
      * @param phoneNumber 指定电话号码
      * @param callback
      */
-    public void callPhone(String phoneNumber, IBluetoothExecCallback.Stub callback) {
+    public void callPhone(final String phoneNumber, IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.callPhone(phoneNumber, callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("callPhone", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.callPhone(phoneNumber, callback);
+                }
+            });
         }
     }
 
@@ -674,11 +690,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void recallPhone(IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.recallPhone(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("recallPhone", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.recallPhone(callback);
+                }
+            });
         }
     }
 
@@ -688,11 +705,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void hangPhone(IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.hangPhone(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("hangPhone", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.hangPhone(callback);
+                }
+            });
         }
     }
 
@@ -702,11 +720,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void rejectPhone(IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.rejectPhone(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("rejectPhone", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.rejectPhone(callback);
+                }
+            });
         }
     }
 
@@ -716,11 +735,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void listenPhone(IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.listenPhone(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("listenPhone", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.listenPhone(callback);
+                }
+            });
         }
     }
 
@@ -730,11 +750,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void voiceDial(IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.voiceDial(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("voiceDial", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.voiceDial(callback);
+                }
+            });
         }
     }
 
@@ -744,11 +765,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void transferCall(IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.transferCall(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("transferCall", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.transferCall(callback);
+                }
+            });
         }
     }
 
@@ -757,13 +779,14 @@ public class BluetoothManager extends BaseManager {
      * @param type
      * @param callback
      */
-    public void waitCall(int type, IBluetoothExecCallback.Stub callback) {
+    public void waitCall(final int type, IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.waitCall(type, callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("waitCall", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.waitCall(type, callback);
+                }
+            });
         }
     }
 
@@ -772,13 +795,14 @@ public class BluetoothManager extends BaseManager {
      * @param code {@link com.roadrover.sdk.bluetooth.IVIBluetooth.BluetoothDTMFCode}
      * @param callback
      */
-    public void requestDTMF(int code, IBluetoothExecCallback.Stub callback) {
+    public void requestDTMF(final int code, IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.requestDTMF(code, callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("requestDTMF", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.requestDTMF(code, callback);
+                }
+            });
         }
     }
 
@@ -787,13 +811,14 @@ public class BluetoothManager extends BaseManager {
      * @param isMute 是否是mute
      * @param callback
      */
-    public void muteMic(boolean isMute, IBluetoothExecCallback.Stub callback) {
+    public void muteMic(final boolean isMute, IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.muteMic(isMute, callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("muteMic", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.muteMic(isMute, callback);
+                }
+            });
         }
     }
 
@@ -970,13 +995,15 @@ public class BluetoothManager extends BaseManager {
         public int type;
         public IBluetoothVCardCallback.Stub callback;
     }
-    private List<VCardListener> mVCardListeners = new ArrayList<>(); // 命令列表
+    private volatile VCardCommand mRunningVCardCommand = null; // 正在执行的获取命令，服务回调线程也会读取
+    private final List<VCardCommand> mVCardCommands = new ArrayList<>(); // 还没有结束的获取命令
     private static final int GET_PHONE_CONTACTS         = 0; // 获取联系人
     private static final int GET_RECEIVED_PHONE_BOOK    = 1; // 获取已接
     private static final int GET_DIALED_PHONE_BOOK      = 2; // 获取已拨
     private static final int GET_MISSED_PHONE_BOOK      = 3; // 获取未接
     private static final int GET_ALL_HISTORY_PHONE_BOOK = 4; // 获取所有通话记录
     private TimerUtil mGetVCardTimerUtil = null;
+    private int mVCardAttemptId = 0; // 无数据定时器对应的执行序号
     private static final int VCARD_TIMER_OUT = 30 * 1000; // 连续 VCARD_TIMER_OUT 没有数据过来，认为获取数据超时
 
     /**
@@ -988,7 +1015,7 @@ public class BluetoothManager extends BaseManager {
                 @Override
                 public void timeout() {
                     stopGetVCardTimer();
-                    post(new IVIBluetooth.EventVCard(IVIBluetooth.EventVCard.ON_FAILURE,
+                    post(new IVIBluetooth.EventVCard(mVCardAttemptId, IVIBluetooth.EventVCard.ON_FAILURE,
                             IVIBluetooth.BluetoothExecErrorMsg.ERROR_TIMER_OUT, "", null)); // 超时
                 }
             }, false);
@@ -1008,43 +1035,46 @@ public class BluetoothManager extends BaseManager {
     /**
      * 执行VCardCmd
      * @param vCardListener
+     * @param attemptId 执行序号，每次执行使用新的服务回调，被打断之前的执行的回调会被忽略
      */
-    private void execVCardCmd(VCardListener vCardListener) {
+    private void execVCardCmd(VCardListener vCardListener, int attemptId) {
+        mVCardAttemptId = attemptId;
         startGetVCardTimer(); // 开启检测定时器
-        if (null != vCardListener) {
+        if (null != vCardListener && null != mIBluetooth) {
             mAppVCardCallback = vCardListener.callback;
+            final IBluetoothVCardCallback.Stub callback = new VCardCallback(attemptId);
             switch (vCardListener.type) {
                 case GET_PHONE_CONTACTS: // 获取联系人
                     try {
-                        mIBluetooth.getPhoneContacts(mIBluetoothVCardCallback);
+                        mIBluetooth.getPhoneContacts(callback);
                     } catch (RemoteException e) {
                         e.printStackTrace();
                     }
                     break;
                 case GET_RECEIVED_PHONE_BOOK: // 获取已接
                     try {
-                        mIBluetooth.getReceivedCallRecord(mIBluetoothVCardCallback);
+                        mIBluetooth.getReceivedCallRecord(callback);
                     } catch (RemoteException e) {
                         e.printStackTrace();
                     }
                     break;
                 case GET_DIALED_PHONE_BOOK: // 获取已拨
                     try {
-                        mIBluetooth.getDialedCallRecord(mIBluetoothVCardCallback);
+                        mIBluetooth.getDialedCallRecord(callback);
                     } catch (RemoteException e) {
                         e.printStackTrace();
                     }
                     break;
                 case GET_MISSED_PHONE_BOOK: // 获取未接
                     try {
-                        mIBluetooth.getMissedCallRecord(mIBluetoothVCardCallback);
+                        mIBluetooth.getMissedCallRecord(callback);
                     } catch (RemoteException e) {
                         e.printStackTrace();
                     }
                     break;
                 case GET_ALL_HISTORY_PHONE_BOOK: // 获取所有通话记录
                     try {
-                        mIBluetooth.getAllCallRecord(mIBluetoothVCardCallback);
+                        mIBluetooth.getAllCallRecord(callback);
                     } catch (RemoteException e) {
                         e.printStackTrace();
                     }
@@ -1059,13 +1089,7 @@ public class BluetoothManager extends BaseManager {
      */
     public void getPhoneContacts(IBluetoothVCardCallback.Stub callback) {
         if (isSendToService(callback)) {
-            putVCardCallback(GET_PHONE_CONTACTS, callback); // push 到命令列表
-            if (mVCardListeners != null) {
-                Logcat.d("mVCardListeners.size:" + mVCardListeners.size());
-                if (mVCardListeners.size() == 1) {
-                    execVCardCmd(getVCardCallback());
-                }
-            }
+            putVCardCallback(GET_PHONE_CONTACTS, callback); // 放到同步通道排队执行
         }
     }
 
@@ -1075,12 +1099,7 @@ public class BluetoothManager extends BaseManager {
      */
     public void getReceivedCallRecord(IBluetoothVCardCallback.Stub callback) {
         if (isSendToService(callback)) {
-            putVCardCallback(GET_RECEIVED_PHONE_BOOK, callback); // push 到命令列表
-            if (mVCardListeners != null) {
-                if (mVCardListeners.size() == 1) {
-                    execVCardCmd(getVCardCallback());
-                }
-            }
+            putVCardCallback(GET_RECEIVED_PHONE_BOOK, callback); // 放到同步通道排队执行
         }
     }
 
@@ -1090,12 +1109,7 @@ public class BluetoothManager extends BaseManager {
      */
     public void getDialedCallRecord(IBluetoothVCardCallback.Stub callback) {
         if (isSendToService(callback)) {
-            putVCardCallback(GET_DIALED_PHONE_BOOK, callback); // push 到命令列表
-            if (mVCardListeners != null) {
-                if (mVCardListeners.size() == 1) {
-                    execVCardCmd(getVCardCallback());
-                }
-            }
+            putVCardCallback(GET_DIALED_PHONE_BOOK, callback); // 放到同步通道排队执行
         }
     }
 
@@ -1105,12 +1119,7 @@ public class BluetoothManager extends BaseManager {
      */
     public void getMissedCallRecord(IBluetoothVCardCallback.Stub callback) {
         if (isSendToService(callback)) {
-            putVCardCallback(GET_MISSED_PHONE_BOOK, callback); // push 到命令列表
-            if (mVCardListeners != null) {
-                if (mVCardListeners.size() == 1) {
-                    execVCardCmd(getVCardCallback());
-                }
-            }
+            putVCardCallback(GET_MISSED_PHONE_BOOK, callback); // 放到同步通道排队执行
         }
     }
 
@@ -1120,17 +1129,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void getAllCallRecord(IBluetoothVCardCallback.Stub callback) {
         if (isSendToService(callback)) {
-            putVCardCallback(GET_ALL_HISTORY_PHONE_BOOK, callback); // push 到命令列表
-            if (mVCardListeners != null) {
-                if (mVCardListeners.size() == 1) {
-                    execVCardCmd(getVCardCallback());
-                }
-            }
+            putVCardCallback(GET_ALL_HISTORY_PHONE_BOOK, callback); // 放到同步通道排队执行
         }
     }
 
     /**
-     * put 一个命令道堆栈
+     * put 一个命令到同步通道
      * @param type 类型
      * @param callback
      */
@@ -1138,18 +1142,99 @@ public class BluetoothManager extends BaseManager {
         VCardListener vCardListener = new VCardListener();
         vCardListener.callback = callback;
         vCardListener.type = type;
-        if (mVCardListeners != null) {
-            mVCardListeners.add(vCardListener);
+        VCardCommand command = new VCardCommand(vCardListener);
+        synchronized (mVCardCommands) {
+            mVCardCommands.add(command);
         }
+        mCommandScheduler.enqueue(command);
     }
 
-    private VCardListener getVCardCallback() {
-        if (mVCardListeners != null) {
-            if (!ListUtils.isEmpty(mVCardListeners)) {
-                return mVCardListeners.get(0);
+    /**
+     * 取消使用该回调的电话本、通话记录获取命令，排队的直接移除，正在执行的通知服务停止 </br>
+     * 取消之后该回调不会再收到数据，也不会收到 onFailure
+     * @param callback 获取时传入的回调
+     */
+    public void cancelVCardRequest(IBluetoothVCardCallback.Stub callback) {
+        if (callback == null) {
+            return;
+        }
+        final List<VCardCommand> commands = new ArrayList<>();
+        synchronized (mVCardCommands) {
+            for (VCardCommand command : mVCardCommands) {
+                if (command.mVCardListener.callback == callback) {
+                    commands.add(command);
+                }
+            }
+            mVCardCommands.removeAll(commands);
+        }
+        for (VCardCommand command : commands) {
+            command.detach();
+            mCommandScheduler.cancel(command);
+        }
+    }
+
+    /**
+     * 获取电话本，通话记录的命令，数据量大，允许被通话控制命令打断 </br>
+     * 超时由 {@link #VCARD_TIMER_OUT} 的无数据定时器检测
+     */
+    private class VCardCommand extends BluetoothCommandScheduler.Command {
+        private final VCardListener mVCardListener;
+        private boolean mDelivered = false; // 是否已经有数据返回给应用
+
+        VCardCommand(VCardListener vCardListener) {
+            super("vCard:" + vCardListener.type, BluetoothCommandScheduler.Lane.SYNC, 0);
+            mVCardListener = vCardListener;
+        }
+
+        @Override
+        protected void execute() throws Exception {
+            mRunningVCardCommand = this;
+            mDelivered = false;
+            execVCardCmd(mVCardListener, getAttemptId());
+        }
+
+        @Override
+        protected void onFailure(int errorCode) {
+            detach();
+            remove();
+            CmdExecResultUtil.execError(mVCardListener.callback, errorCode);
+        }
+
+        @Override
+        protected boolean isPreemptible() {
+            return true;
+        }
+
+        @Override
+        protected boolean onPreempted() {
+            detach();
+            if (!mDelivered) { // 还没有数据返回，稍后重新获取，应用不会收到重复的数据
+                return true;
+            }
+            remove();
+            CmdExecResultUtil.execError(mVCardListener.callback, IVIBluetooth.BluetoothExecErrorMsg.ERROR_TASK);
+            return false;
+        }
+
+        /**
+         * 不再接收该命令的数据
+         */
+        private void detach() {
+            if (mRunningVCardCommand == this) {
+                mRunningVCardCommand = null;
+                mAppVCardCallback = null;
+                stopGetVCardTimer();
+            }
+        }
+
+        /**
+         * 命令结束，不再可以取消
+         */
+        private void remove() {
+            synchronized (mVCardCommands) {
+                mVCardCommands.remove(this);
             }
         }
-        return null;
     }
 
     /*********************vCard 获取接口结束*****************************/
@@ -1260,23 +1345,44 @@ public class BluetoothManager extends BaseManager {
                 e.printStackTrace();
             }
         }
+
+        // 通知应用之后再结束命令，避免下一条搜索命令替换掉 mAppSearchDeviceCallback
+        if (event != null && event.mType != EventSearchDevice.PROGRESS_TYPE && mSearchDeviceCommand != null) {
+            BluetoothCommandScheduler.Command command = mSearchDeviceCommand;
+            mSearchDeviceCommand = null;
+            mCommandScheduler.complete(command, (event.mType == EventSearchDevice.SUCCESS_TYPE) ?
+                    BluetoothCommandScheduler.RESULT_SUCCESS : event.mErrorCode);
+        }
     }
     /**
      * 搜索设备
      * @param deviceType 设备类型，该参数暂时未定义，直接传0就可以
      * @param callback 结果通过callback异步返回
      */
-    public void searchNewDevice(int deviceType, ISearchDeviceCallback.Stub callback) {
+    public void searchNewDevice(final int deviceType, final ISearchDeviceCallback.Stub callback) {
         if (isSendToService(callback)) {
-            mAppSearchDeviceCallback = callback;
-            try {
-                mIBluetooth.searchNewDevice(deviceType, mISearchDeviceCallback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new BluetoothCommandScheduler.Command("searchNewDevice",
+                    BluetoothCommandScheduler.Lane.DISCOVERY, SEARCH_DEVICE_TIME) {
+                @Override
+                protected void execute() throws Exception {
+                    mAppSearchDeviceCallback = callback;
+                    mSearchDeviceCommand = this;
+                    mIBluetooth.searchNewDevice(deviceType, mISearchDeviceCallback);
+                }
+
+                @Override
+                protected void onFailure(int errorCode) {
+                    if (mSearchDeviceCommand == this) {
+                        mSearchDeviceCommand = null;
+                    }
+                    CmdExecResultUtil.execError(callback, errorCode);
+                }
+            });
         }
     }
 
+    private BluetoothCommandScheduler.Command mSearchDeviceCommand = null; // 正在执行的搜索命令
+
     // 获取配对列表
     private IDeviceCallback.Stub mIDeviceCallback = new IDeviceCallback.Stub() {
         @Override
@@ -1381,10 +1487,27 @@ public class BluetoothManager extends BaseManager {
     }
 
     /**
-     * 停止当前命令
+     * 停止当前命令，正在执行的电话本同步或者设备搜索命令会以 {@link IVIBluetooth.BluetoothExecErrorMsg#ERROR_TASK} 结束，
+     * 通话控制和音频控制命令不受影响
      * APP可以不要调用
      */
     public void stopCurrentCommand() {
+        mCommandScheduler.cancelRunning();
+        stopServiceCurrentCommand();
+    }
+
+    /**
+     * 设置蓝牙命令执行的统计回调，可以获取每条命令的排队时间和执行时间，不设置时打印到 log
+     * @param listener
+     */
+    public void setCommandLatencyListener(BluetoothCommandScheduler.LatencyListener listener) {
+        mCommandScheduler.setLatencyListener(listener);
+    }
+
+    /**
+     * 通知服务停止当前命令，不修改调度的状态
+     */
+    private void stopServiceCurrentCommand() {
         if (null != mIBluetooth) {
             try {
                 mIBluetooth.stopCurrentCommand();
@@ -1600,11 +1723,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void nextBtMusic(IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.nextBtMusic(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("nextBtMusic", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.nextBtMusic(callback);
+                }
+            });
         }
     }
 
@@ -1614,11 +1738,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void prevBtMusic(IBluetoothExecCallback callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.prevBtMusic(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("prevBtMusic", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.prevBtMusic(callback);
+                }
+            });
         }
     }
 
@@ -1628,11 +1753,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void playAndPause(IBluetoothExecCallback callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.playAndPause(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("playAndPause", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.playAndPause(callback);
+                }
+            });
         }
     }
 
@@ -1642,11 +1768,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void playBtMusic(IBluetoothExecCallback callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.playBtMusic(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("playBtMusic", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.playBtMusic(callback);
+                }
+            });
         }
     }
 
@@ -1656,11 +1783,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void pauseBtMusic(IBluetoothExecCallback callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.pauseBtMusic(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("pauseBtMusic", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.pauseBtMusic(callback);
+                }
+            });
         }
     }
 
@@ -1683,13 +1811,14 @@ public class BluetoothManager extends BaseManager {
      * @param volume 值 0.0-1.0
      * @param callback 执行结果返回
      */
-    public void setBtMusicVolumePercent(float volume, IBluetoothExecCallback.Stub callback) {
+    public void setBtMusicVolumePercent(final float volume, IBluetoothExecCallback.Stub callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.setBtMusicVolumePercent(volume, callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("setBtMusicVolumePercent", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.setBtMusicVolumePercent(volume, callback);
+                }
+            });
         }
     }
 
@@ -1699,11 +1828,12 @@ public class BluetoothManager extends BaseManager {
      */
     public void stopBtMusic(IBluetoothExecCallback callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.stopBtMusic(callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("stopBtMusic", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.stopBtMusic(callback);
+                }
+            });
         }
     }
     // AVRCP 控制指令，停止
@@ -1729,6 +1859,52 @@ public class BluetoothManager extends BaseManager {
         return true;
     }
 
+    /**
+     * 通过 {@link BluetoothCommandScheduler} 执行的蓝牙命令，服务的结果先结束调度中的命令，再通知应用
+     */
+    private abstract class ExecCommand extends BluetoothCommandScheduler.Command {
+        private final IBluetoothExecCallback mUserCallback;
+        private final IBluetoothExecCallback.Stub mCallback = new IBluetoothExecCallback.Stub() {
+            @Override
+            public void onSuccess(String msg) throws RemoteException {
+                if (mCommandScheduler.complete(ExecCommand.this, BluetoothCommandScheduler.RESULT_SUCCESS)) {
+                    CmdExecResultUtil.execSuccess(mUserCallback, msg);
+                }
+            }
+
+            @Override
+            public void onFailure(int errorCode) throws RemoteException {
+                if (mCommandScheduler.complete(ExecCommand.this, errorCode)) {
+                    CmdExecResultUtil.execError(mUserCallback, errorCode);
+                }
+            }
+        };
+
+        ExecCommand(String name, int lane, IBluetoothExecCallback callback) {
+            super(name, lane, BT_COMMAND_EXEC_TIME);
+            mUserCallback = callback;
+        }
+
+        /**
+         * 发送命令到服务
+         * @param callback 调度使用的回调，必须传给服务
+         */
+        protected abstract void send(IBluetoothExecCallback callback) throws RemoteException;
+
+        @Override
+        protected void execute() throws Exception {
+            if (null == mIBluetooth) {
+                throw new IllegalStateException("service disconnected");
+            }
+            send(mCallback);
+        }
+
+        @Override
+        protected void onFailure(int errorCode) {
+            CmdExecResultUtil.execError(mUserCallback, errorCode);
+        }
+    }
+
     /**
      * 蓝牙连接状态的EventBus通知
      * @param event
@@ -1740,9 +1916,9 @@ public class BluetoothManager extends BaseManager {
             switch (event.status) {
                 case IVIBluetooth.BluetoothConnectStatus.CONNECTFAIL: // 连接失败，或者连接成功，都停止定时器
                 case IVIBluetooth.BluetoothConnectStatus.DISCONNECTED:
-                    if (mVCardListeners != null) {
-                        mVCardListeners.clear(); // 断开了，清空获取电话本，通话记录列表
-                    }
+                    // 断开了，清空获取电话本，通话记录列表
+                    mCommandScheduler.cancelLane(BluetoothCommandScheduler.Lane.SYNC,
+                            IVIBluetooth.BluetoothExecErrorMsg.ERROR_DISCONNECT);
                     // 继续往下执行
                 case IVIBluetooth.BluetoothConnectStatus.CONNECTED:
                     stopLinkDeviceTimer();
@@ -1810,38 +1986,69 @@ public class BluetoothManager extends BaseManager {
     // 蓝牙联系人同步
     private IBluetoothVCardCallback.Stub mAppVCardCallback = null;
 
-    // 实际传递给服务器的VCard回调
-    private IBluetoothVCardCallback.Stub mIBluetoothVCardCallback = new IBluetoothVCardCallback.Stub() {
+    /**
+     * 实际传递给服务器的VCard回调，每次执行一个，事件带上执行序号
+     */
+    private class VCardCallback extends IBluetoothVCardCallback.Stub {
+        private final int mAttemptId;
+
+        VCardCallback(int attemptId) {
+            mAttemptId = attemptId;
+        }
+
         @Override
         public void onProgress(List<BluetoothVCardBook> books) throws RemoteException {
             Logcat.d("books.size:" + books.size());
-            startGetVCardTimer();
-            post(new IVIBluetooth.EventVCard(IVIBluetooth.EventVCard.ON_PROGRESS, -1, "", books));
+            if (isCurrentVCardAttempt(mAttemptId)) {
+                startGetVCardTimer();
+            }
+            post(new IVIBluetooth.EventVCard(mAttemptId, IVIBluetooth.EventVCard.ON_PROGRESS, -1, "", books));
         }
 
         @Override
         public void onFailure(int errorCode) throws RemoteException {
-            stopGetVCardTimer();
-
-            post(new IVIBluetooth.EventVCard(IVIBluetooth.EventVCard.ON_FAILURE, errorCode, "", null));
+            if (isCurrentVCardAttempt(mAttemptId)) {
+                stopGetVCardTimer();
+            }
+            post(new IVIBluetooth.EventVCard(mAttemptId, IVIBluetooth.EventVCard.ON_FAILURE, errorCode, "", null));
         }
 
         @Override
         public void onSuccess(String msg) throws RemoteException {
-            stopGetVCardTimer();
-
-            post(new IVIBluetooth.EventVCard(IVIBluetooth.EventVCard.ON_SUCCESS, -1, msg, null));
+            if (isCurrentVCardAttempt(mAttemptId)) {
+                stopGetVCardTimer();
+            }
+            post(new IVIBluetooth.EventVCard(mAttemptId, IVIBluetooth.EventVCard.ON_SUCCESS, -1, msg, null));
         }
-    };
+    }
+
+    /**
+     * 是否是正在执行的获取命令的本次执行
+     * @param attemptId 执行序号
+     * @return
+     */
+    private boolean isCurrentVCardAttempt(int attemptId) {
+        final VCardCommand command = mRunningVCardCommand;
+        return command != null && command.getAttemptId() == attemptId;
+    }
 
     /**
      * 电话本传递
-     * 调用位置：mIBluetoothVCardCallback onProgress, onFailure, onSuccess
+     * 调用位置：VCardCallback onProgress, onFailure, onSuccess
      * @param event
      */
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEventVCard(IVIBluetooth.EventVCard event) {
-        if (null != event && null != mAppVCardCallback) {
+        if (null == event) {
+            return;
+        }
+
+        if (!isCurrentVCardAttempt(event.attemptId)) { // 已经结束或者被打断的执行的迟到回调
+            Logcat.d("ignore vCard event of attempt " + event.attemptId);
+            return;
+        }
+
+        if (null != mAppVCardCallback) {
             switch (event.type) {
                 case IVIBluetooth.EventVCard.ON_PROGRESS:
                     try {
@@ -1856,18 +2063,6 @@ public class BluetoothManager extends BaseManager {
                     } catch (RemoteException e) {
                         e.printStackTrace();
                     }
-                    if (mVCardListeners != null) {
-                        if (mVCardListeners.size() != 0) {
-                            mVCardListeners.remove(0); // 执行完一条命令，从列表删除一个
-                        }
-
-                        Logcat.d("mVCardListeners.size:" + mVCardListeners.size());
-
-                        // 执行下一条指令
-                        if (mVCardListeners.size() != 0) {
-                            execVCardCmd(getVCardCallback());
-                        }
-                    }
                     break;
                 case IVIBluetooth.EventVCard.ON_SUCCESS:
                     try {
@@ -1875,24 +2070,24 @@ public class BluetoothManager extends BaseManager {
                     } catch (RemoteException e) {
                         e.printStackTrace();
                     }
-                    if (mVCardListeners != null) {
-                        if (mVCardListeners.size() != 0) {
-                            mVCardListeners.remove(0); // 执行完一条命令，从列表删除一个
-                        }
-
-                        Logcat.d("mVCardListeners.size:" + mVCardListeners.size());
-
-                        // 执行下一条指令
-                        if (mVCardListeners.size() != 0) {
-                            execVCardCmd(getVCardCallback());
-                        }
-                    }
                     break;
 
                 default:
                     break;
             }
         }
+
+        if (null != mRunningVCardCommand) {
+            if (event.type == IVIBluetooth.EventVCard.ON_PROGRESS) {
+                mRunningVCardCommand.mDelivered = true;
+            } else { // 执行完一条命令，调度执行下一条
+                VCardCommand command = mRunningVCardCommand;
+                mRunningVCardCommand = null;
+                command.remove();
+                mCommandScheduler.complete(command, event.attemptId, (event.type == IVIBluetooth.EventVCard.ON_SUCCESS) ?
+                        BluetoothCommandScheduler.RESULT_SUCCESS : event.errorCode);
+            }
+        }
     }
 
     @Subscribe(threadMode = ThreadMode.MAIN)
@@ -1991,13 +2186,14 @@ public class BluetoothManager extends BaseManager {
      * @param action {@link com.roadrover.sdk.bluetooth.IVIBluetooth.ThreePartyCallCtrl}
      * @param callback
      */
-    public void threePartyCallCtrl(int action, IBluetoothExecCallback callback) {
+    public void threePartyCallCtrl(final int action, IBluetoothExecCallback callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.threePartyCallCtrl(action, callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("threePartyCallCtrl", BluetoothCommandScheduler.Lane.CALL, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.threePartyCallCtrl(action, callback);
+                }
+            });
         }
     }
 
@@ -2063,13 +2259,14 @@ public class BluetoothManager extends BaseManager {
      * 设置蓝牙音乐静音，该接口部分平台可支持
      * @param isMute 是否静音
      */
-    public void muteBtMusic(boolean isMute, IBluetoothExecCallback callback) {
+    public void muteBtMusic(final boolean isMute, IBluetoothExecCallback callback) {
         if (isSendToService(callback)) {
-            try {
-                mIBluetooth.muteBtMusic(isMute, callback);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
+            mCommandScheduler.enqueue(new ExecCommand("muteBtMusic", BluetoothCommandScheduler.Lane.AUDIO, callback) {
+                @Override
+                protected void send(IBluetoothExecCallback callback) throws RemoteException {
+                    mIBluetooth.muteBtMusic(isMute, callback);
+                }
+            });
         }
     }
 
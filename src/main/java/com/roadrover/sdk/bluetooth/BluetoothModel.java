@@ -13,7 +13,9 @@ import com.roadrover.sdk.utils.ListUtils;
 import com.roadrover.sdk.utils.Logcat;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 获取蓝牙应用里面的数据.
@@ -93,31 +95,267 @@ public class BluetoothModel {
         return "";
     }
 
+    /**
+     * 通过电话号码索引，获取联系人名字，通话记录等需要大量查询的地方建议使用该方法
+     * @param phoneNumber 电话号码
+     * @param index 联系人索引 {@link #getContactIndex(Context)}
+     * @return 返回联系人名字，找不到返回""
+     */
+    public static String getContactName(String phoneNumber, ContactIndex index) {
+        if (index != null) {
+            Contact contact = index.find(phoneNumber);
+            if (contact != null) {
+                return contact.mName;
+            }
+        }
+        return "";
+    }
 
     /**
-     * 判断两个电话号码是否完全相等
+     * 判断两个电话号码是否完全相等，忽略空格，有些地区会在前面+86等，所以两个号码都超过7位时只判断最后7位 </br>
+     * 从后往前逐个字符比较，不会创建临时字符串
      * @param src 源电话号码
      * @param dest 目标电话号码
      * @return 相等返回true，否则返回false
      */
     public static boolean isPhoneNumberEquals(String src, String dest) {
-        if (src != null && dest != null) {
-            String srcCompare = src.replace(" ", "");
-            String destCompare = dest.replace(" ", ""); // 去掉空格之后再比较
+        if (src == null || dest == null) {
+            return false;
+        }
 
-            if (TextUtils.equals(srcCompare, destCompare)) { // 完全相等
+        int i = src.length() - 1;
+        int j = dest.length() - 1;
+        int matched = 0;
+        while (true) {
+            while (i >= 0 && src.charAt(i) == ' ') {
+                --i;
+            }
+            while (j >= 0 && dest.charAt(j) == ' ') {
+                --j;
+            }
+            if (i < 0 || j < 0) { // 有一个号码已经比较完，两个都比较完说明去掉空格后完全相等
+                return i < 0 && j < 0;
+            }
+            if (src.charAt(i) != dest.charAt(j)) {
+                return false;
+            }
+            if (++matched >= EQUALS_PHONE_NUMBER_COUNT) { // 最后7位相等
                 return true;
             }
+            --i;
+            --j;
+        }
+    }
+
+    /**
+     * 计算电话号码索引的 key，去掉空格后取最后7位计算，不足7位使用全部号码
+     * @param phoneNumber 电话号码
+     * @return 空号码返回0
+     */
+    private static long getPhoneNumberKey(String phoneNumber) {
+        long hash = 0;
+        int count = 0;
+        if (phoneNumber != null) {
+            for (int i = phoneNumber.length() - 1; i >= 0 && count < EQUALS_PHONE_NUMBER_COUNT; --i) {
+                final char c = phoneNumber.charAt(i);
+                if (c != ' ') {
+                    hash = hash * 31 + c;
+                    ++count;
+                }
+            }
+        }
+        return (hash << 3) | count; // 位数不同的号码不可能相等，一起放到 key 里面
+    }
+
+    /**
+     * 联系人电话号码索引，按号码最后7位建立哈希表，查询时间和联系人个数无关，查询过程不创建对象 </br>
+     * 多个联系人号码相同时，和 {@link #getContactName(String, List)} 一样返回列表中第一个联系人
+     */
+    public static class ContactIndex {
+        private static class Entry {
+            Contact mContact;
+            Entry mNext;
+        }
+
+        private long[] mKeys = new long[0];
+        private Entry[] mEntries = new Entry[0];
+        private int mMask = -1;
+        private int mSize = 0;
+        private List<Contact> mContacts = new ArrayList<>();
+
+        /**
+         * 号码到 key 的缓存，联系人更新时没有变化的号码不需要重新计算
+         */
+        private Map<String, Long> mKeyCache = new HashMap<>();
+
+        /**
+         * 构造函数
+         * @param contacts 联系人列表
+         */
+        public ContactIndex(List<Contact> contacts) {
+            update(contacts);
+        }
+
+        /**
+         * 联系人列表改变时更新索引，列表没有变化时直接返回
+         * @param contacts 新的联系人列表
+         */
+        public synchronized void update(List<Contact> contacts) {
+            if (contacts == null) {
+                contacts = new ArrayList<>();
+            }
+            if (isSameContacts(mContacts, contacts)) {
+                return;
+            }
+
+            int capacity = 16;
+            while (capacity < contacts.size() * 2) {
+                capacity <<= 1;
+            }
+            final long[] keys = new long[capacity];
+            final Entry[] entries = new Entry[capacity];
+            final Entry[] tails = new Entry[capacity];
+            final Map<String, Long> keyCache = new HashMap<>();
+            final int mask = capacity - 1;
+            int size = 0;
+            int reused = 0;
+
+            for (Contact contact : contacts) {
+                if (contact == null || contact.mPhoneNumber == null) {
+                    continue;
+                }
+
+                Long key = keyCache.get(contact.mPhoneNumber);
+                if (key == null) {
+                    key = mKeyCache.get(contact.mPhoneNumber);
+                    if (key == null) {
+                        key = getPhoneNumberKey(contact.mPhoneNumber);
+                    } else {
+                        ++reused;
+                    }
+                    keyCache.put(contact.mPhoneNumber, key);
+                }
+                if ((key & 0x7) == 0) { // 空号码
+                    continue;
+                }
+
+                Entry entry = new Entry();
+                entry.mContact = contact;
+                int slot = indexOf(keys, entries, mask, key);
+                if (entries[slot] == null) {
+                    keys[slot] = key;
+                    entries[slot] = entry;
+                    ++size;
+                } else { // 保持列表中的顺序，放到最后
+                    tails[slot].mNext = entry;
+                }
+                tails[slot] = entry;
+            }
+
+            mKeys = keys;
+            mEntries = entries;
+            mMask = mask;
+            mSize = size;
+            mContacts = new ArrayList<>(contacts);
+            mKeyCache = keyCache;
+            Logcat.d("contacts:" + contacts.size() + " keys:" + size + " reused:" + reused);
+        }
+
+        /**
+         * 通过电话号码查找联系人
+         * @param phoneNumber 电话号码
+         * @return 找不到返回null
+         */
+        public synchronized Contact find(String phoneNumber) {
+            if (TextUtils.isEmpty(phoneNumber) || mSize == 0) {
+                return null;
+            }
 
-            // 有些地区会在前面+86等，所以只判断最后7位
-            if (srcCompare.length() >= EQUALS_PHONE_NUMBER_COUNT && destCompare.length() >= EQUALS_PHONE_NUMBER_COUNT) {
-                String lastNumberCount = destCompare.substring(destCompare.length() - EQUALS_PHONE_NUMBER_COUNT);
-                if (srcCompare.endsWith(lastNumberCount)) {
-                    return true;
+            final long key = getPhoneNumberKey(phoneNumber);
+            Entry entry = mEntries[indexOf(mKeys, mEntries, mMask, key)];
+            for (; entry != null; entry = entry.mNext) {
+                if (isPhoneNumberEquals(phoneNumber, entry.mContact.mPhoneNumber)) { // 排除哈希冲突
+                    return entry.mContact;
                 }
             }
+            return null;
+        }
+
+        /**
+         * 获取索引中的联系人个数
+         * @return
+         */
+        public synchronized int getContactCount() {
+            return mContacts.size();
+        }
+
+        /**
+         * 开放寻址查找 key 所在的位置
+         * @return key 所在的位置，不存在返回可以插入的空位置
+         */
+        private static int indexOf(long[] keys, Entry[] entries, int mask, long key) {
+            int slot = (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+            while (entries[slot] != null && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static boolean isSameContacts(List<Contact> src, List<Contact> dest) {
+            if (src.size() != dest.size() || src.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < src.size(); ++i) {
+                Contact a = src.get(i);
+                Contact b = dest.get(i);
+                if (a != b && (a == null || b == null ||
+                        !TextUtils.equals(a.mName, b.mName) ||
+                        !TextUtils.equals(a.mPhoneNumber, b.mPhoneNumber))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static ContactIndex sContactIndex = null;
+    private static ContentObserver sContactIndexObserver = null;
+
+    /**
+     * 获取联系人电话号码索引，第一次调用时读取数据库建立索引，之后联系人数据库改变时自动更新
+     * @param context 上下文
+     * @return 索引对象，进程内共享
+     */
+    public static synchronized ContactIndex getContactIndex(final Context context) {
+        if (sContactIndex == null) {
+            sContactIndex = new ContactIndex(getContactList(context));
+            if (context != null) {
+                final Context appContext = context.getApplicationContext();
+                sContactIndexObserver = new ContentObserver(new Handler()) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        ContactIndex index = sContactIndex;
+                        if (index != null) {
+                            index.update(getContactList(appContext));
+                        }
+                    }
+                };
+                appContext.getContentResolver().registerContentObserver(Provider.URI, false, sContactIndexObserver);
+            }
+        }
+        return sContactIndex;
+    }
+
+    /**
+     * 释放联系人电话号码索引，不再监听数据库改变
+     * @param context 上下文
+     */
+    public static synchronized void releaseContactIndex(Context context) {
+        if (context != null && sContactIndexObserver != null) {
+            context.getApplicationContext().getContentResolver().unregisterContentObserver(sContactIndexObserver);
         }
-        return false;
+        sContactIndexObserver = null;
+        sContactIndex = null;
     }
 
     /**
@@ -0,0 +1,475 @@
+package com.roadrover.sdk.bluetooth;
+
+import android.os.RemoteException;
+import android.text.TextUtils;
+
+import com.roadrover.btservice.bluetooth.BluetoothVCardBook;
+import com.roadrover.btservice.bluetooth.IBluetoothVCardCallback;
+import com.roadrover.sdk.utils.ListUtils;
+import com.roadrover.sdk.utils.Logcat;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 通话记录的合并存储类，已接、已拨、未接三种记录各下载一次，之后的分页查询都在内存中完成 </br>
+ * 1. 收到记录时解析通话时间，并通过 {@link BluetoothModel.ContactIndex} 查找联系人名字，查询时不再解析 </br>
+ * 2. 每种记录按时间倒序保存，全部记录通过多路归并得到，只在记录变化后归并一次 </br>
+ * 3. 通过 {@link #getPage(int, int, int)} 分页查询，滚动列表不会重新下载或者重新排序 </br>
+ * <b>该类的回调在主线程执行</b></br>
+ */
+public class CallHistoryStore {
+
+    /**
+     * 查询全部类型的记录，其值为 {@value}
+     */
+    public static final int STATUS_ALL = -1;
+
+    /**
+     * 支持的记录类型，合并时时间相同的记录按该顺序排列
+     */
+    private static final int[] STATUS_TYPES = new int[] {
+            IVIBluetooth.BluetoothCallHistoryStatus.MISS_STATUS,
+            IVIBluetooth.BluetoothCallHistoryStatus.CALLED_STATUS,
+            IVIBluetooth.BluetoothCallHistoryStatus.LISTEN_STATUS
+    };
+
+    private static final int TIME_DIGITS = 14; // 20170109T211652 中的数字个数
+
+    /**
+     * 一条通话记录
+     */
+    public static class Record {
+        private final BluetoothVCardBook mBook;
+        private final int mStatus;
+        private final long mTime;
+        private final String mContactName;
+
+        Record(BluetoothVCardBook book, int status, String contactName) {
+            mBook = book;
+            mStatus = status;
+            mTime = parseTime(book.callTime);
+            mContactName = (contactName != null) ? contactName : "";
+        }
+
+        public BluetoothVCardBook getBook() {
+            return mBook;
+        }
+
+        /**
+         * 获取记录类型
+         * @return {@link IVIBluetooth.BluetoothCallHistoryStatus}
+         */
+        public int getStatus() {
+            return mStatus;
+        }
+
+        /**
+         * 获取通话时间
+         * @return 例：20170109T211652 返回 20170109211652，时间格式不对返回0
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        /**
+         * 获取通话时间的毫秒数，按本地时区计算
+         * @return 时间格式不对返回0
+         */
+        public long getTimeMillis() {
+            if (mTime <= 0) {
+                return 0;
+            }
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set((int) (mTime / 10000000000L), (int) (mTime / 100000000L % 100) - 1,
+                    (int) (mTime / 1000000L % 100), (int) (mTime / 10000L % 100),
+                    (int) (mTime / 100L % 100), (int) (mTime % 100));
+            return calendar.getTimeInMillis();
+        }
+
+        /**
+         * 获取本地联系人中的名字
+         * @return 找不到返回""
+         */
+        public String getContactName() {
+            return mContactName;
+        }
+
+        /**
+         * 获取显示的名字，优先使用本地联系人名字，其次使用记录中的名字，都没有时显示电话号码
+         * @return
+         */
+        public String getDisplayName() {
+            if (!TextUtils.isEmpty(mContactName)) {
+                return mContactName;
+            }
+            if (!TextUtils.isEmpty(mBook.name)) {
+                return mBook.name;
+            }
+            return (mBook.phoneNumber != null) ? mBook.phoneNumber : "";
+        }
+
+        @Override
+        public String toString() {
+            return IVIBluetooth.BluetoothCallHistoryStatus.getName(mStatus) + " " + mTime + " " + getDisplayName();
+        }
+    }
+
+    /**
+     * 加载结果的回调
+     */
+    public interface Listener {
+        /**
+         * 一种记录下载完成
+         * @param status 记录类型 {@link IVIBluetooth.BluetoothCallHistoryStatus}
+         * @param count 该类型的记录数
+         */
+        void onLoaded(int status, int count);
+
+        /**
+         * 一种记录下载失败，之前的记录会保留
+         * @param status 记录类型 {@link IVIBluetooth.BluetoothCallHistoryStatus}
+         * @param errorCode {@link IVIBluetooth.BluetoothExecErrorMsg}
+         */
+        void onFailure(int status, int errorCode);
+    }
+
+    /**
+     * 时间倒序，时间相同按类型顺序
+     */
+    private static final Comparator<Record> TIME_COMPARATOR = new Comparator<Record>() {
+        @Override
+        public int compare(Record lhs, Record rhs) {
+            if (lhs.mTime != rhs.mTime) {
+                return (lhs.mTime > rhs.mTime) ? -1 : 1;
+            }
+            return statusOrder(lhs.mStatus) - statusOrder(rhs.mStatus);
+        }
+    };
+
+    private final List<List<Record>> mRecords = new ArrayList<>(); // 每种类型一个列表，和 STATUS_TYPES 对应
+    private final boolean[] mLoaded = new boolean[STATUS_TYPES.length];
+    private final Loader[] mLoaders = new Loader[STATUS_TYPES.length];
+    private List<Record> mMerged = null; // 归并后的全部记录，记录变化时置为null
+
+    private BluetoothManager mBluetoothManager;
+    private BluetoothModel.ContactIndex mContactIndex;
+    private Listener mListener;
+
+    /**
+     * 构造函数
+     * @param bluetoothManager 已经连接的蓝牙管理类
+     * @param contactIndex 联系人索引 {@link BluetoothModel#getContactIndex}，为null时不查找联系人名字
+     * @param listener 加载结果的回调
+     */
+    public CallHistoryStore(BluetoothManager bluetoothManager, BluetoothModel.ContactIndex contactIndex,
+                            Listener listener) {
+        mBluetoothManager = bluetoothManager;
+        mContactIndex = contactIndex;
+        mListener = listener;
+        for (int i = 0; i < STATUS_TYPES.length; ++i) {
+            mRecords.add(new ArrayList<Record>());
+        }
+    }
+
+    /**
+     * 加载一种记录，已经加载过或者正在加载时不会重新下载
+     * @param status 记录类型 {@link IVIBluetooth.BluetoothCallHistoryStatus}，传 {@link #STATUS_ALL} 加载全部类型
+     */
+    public void load(int status) {
+        request(status, false);
+    }
+
+    /**
+     * 重新下载一种记录，一般在通话结束之后调用
+     * @param status 记录类型 {@link IVIBluetooth.BluetoothCallHistoryStatus}，传 {@link #STATUS_ALL} 刷新全部类型
+     */
+    public void refresh(int status) {
+        request(status, true);
+    }
+
+    /**
+     * 写入已经获取到的一种记录，替换该类型之前的记录
+     * @param status 记录类型 {@link IVIBluetooth.BluetoothCallHistoryStatus}
+     * @param books 记录列表
+     */
+    public synchronized void ingest(int status, List<BluetoothVCardBook> books) {
+        final int type = indexOfStatus(status);
+        if (type < 0) {
+            Logcat.w("unsupported status " + status);
+            return;
+        }
+
+        List<Record> records = new ArrayList<>();
+        if (!ListUtils.isEmpty(books)) {
+            for (BluetoothVCardBook book : books) {
+                if (book != null) {
+                    records.add(new Record(book, status,
+                            BluetoothModel.getContactName(book.phoneNumber, mContactIndex)));
+                }
+            }
+        }
+        if (!isSorted(records)) { // 手机返回的记录一般已经是倒序
+            Collections.sort(records, TIME_COMPARATOR);
+        }
+        mRecords.set(type, records);
+        mLoaded[type] = true;
+        mMerged = null;
+    }
+
+    /**
+     * 获取记录数
+     * @param status 记录类型 {@link IVIBluetooth.BluetoothCallHistoryStatus} 或者 {@link #STATUS_ALL}
+     * @return
+     */
+    public synchronized int getCount(int status) {
+        List<Record> records = getRecords(status);
+        return (records != null) ? records.size() : 0;
+    }
+
+    /**
+     * 分页查询记录，按时间倒序
+     * @param status 记录类型 {@link IVIBluetooth.BluetoothCallHistoryStatus} 或者 {@link #STATUS_ALL}
+     * @param offset 从第几条开始，从0开始
+     * @param count 最多返回的条数
+     * @return 超出范围返回空列表
+     */
+    public synchronized List<Record> getPage(int status, int offset, int count) {
+        List<Record> records = getRecords(status);
+        if (records == null || offset < 0 || count <= 0 || offset >= records.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(records.subList(offset, Math.min(records.size(), offset + count)));
+    }
+
+    /**
+     * 是否已经加载过
+     * @param status 记录类型 {@link IVIBluetooth.BluetoothCallHistoryStatus}，传 {@link #STATUS_ALL} 表示全部类型
+     * @return
+     */
+    public synchronized boolean isLoaded(int status) {
+        if (status == STATUS_ALL) {
+            for (boolean loaded : mLoaded) {
+                if (!loaded) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        final int type = indexOfStatus(status);
+        return type >= 0 && mLoaded[type];
+    }
+
+    /**
+     * 清空所有记录，一般在蓝牙断开时调用 </br>
+     * 正在下载的记录通过 {@link BluetoothManager#cancelVCardRequest} 取消，之后返回的结果不会再写入
+     */
+    public void clear() {
+        final List<Loader> stopped = new ArrayList<>();
+        final BluetoothManager bluetoothManager;
+        synchronized (this) {
+            for (int i = 0; i < STATUS_TYPES.length; ++i) {
+                mRecords.set(i, new ArrayList<Record>());
+                mLoaded[i] = false;
+                if (mLoaders[i] != null) {
+                    mLoaders[i].mStopped = true;
+                    stopped.add(mLoaders[i]);
+                    mLoaders[i] = null;
+                }
+            }
+            mMerged = null;
+            bluetoothManager = mBluetoothManager;
+        }
+
+        // 不在锁内调用，服务的回调线程会等待该对象的锁
+        if (bluetoothManager != null) {
+            for (Loader loader : stopped) {
+                bluetoothManager.cancelVCardRequest(loader.mCallback);
+            }
+        }
+    }
+
+    /**
+     * 释放资源，释放之后该对象不能再使用
+     */
+    public void release() {
+        clear();
+        mBluetoothManager = null;
+        mContactIndex = null;
+        mListener = null;
+    }
+
+    /**
+     * 解析通话时间
+     * @param callTime 例：20170109T211652
+     * @return 例：20170109211652，格式不对返回0
+     */
+    public static long parseTime(String callTime) {
+        if (callTime == null) {
+            return 0;
+        }
+        long time = 0;
+        int digits = 0;
+        for (int i = 0; i < callTime.length() && digits < TIME_DIGITS; ++i) {
+            final char c = callTime.charAt(i);
+            if (c >= '0' && c <= '9') {
+                time = time * 10 + (c - '0');
+                ++digits;
+            }
+        }
+        return (digits == TIME_DIGITS) ? time : 0;
+    }
+
+    private void request(int status, boolean force) {
+        if (status == STATUS_ALL) {
+            for (int type : STATUS_TYPES) {
+                request(type, force);
+            }
+            return;
+        }
+
+        final Loader loader;
+        synchronized (this) {
+            final int type = indexOfStatus(status);
+            if (type < 0 || mBluetoothManager == null) {
+                return;
+            }
+            if (mLoaders[type] != null || (mLoaded[type] && !force)) {
+                return;
+            }
+            loader = new Loader(status, type);
+            mLoaders[type] = loader;
+        }
+
+        switch (status) {
+            case IVIBluetooth.BluetoothCallHistoryStatus.MISS_STATUS:
+                mBluetoothManager.getMissedCallRecord(loader.mCallback);
+                break;
+            case IVIBluetooth.BluetoothCallHistoryStatus.CALLED_STATUS:
+                mBluetoothManager.getDialedCallRecord(loader.mCallback);
+                break;
+            case IVIBluetooth.BluetoothCallHistoryStatus.LISTEN_STATUS:
+                mBluetoothManager.getReceivedCallRecord(loader.mCallback);
+                break;
+        }
+    }
+
+    private List<Record> getRecords(int status) {
+        if (status == STATUS_ALL) {
+            if (mMerged == null) {
+                mMerged = merge();
+            }
+            return mMerged;
+        }
+        final int type = indexOfStatus(status);
+        return (type >= 0) ? mRecords.get(type) : null;
+    }
+
+    /**
+     * 多路归并每种类型的有序记录
+     */
+    private List<Record> merge() {
+        int total = 0;
+        for (List<Record> records : mRecords) {
+            total += records.size();
+        }
+
+        List<Record> merged = new ArrayList<>(total);
+        final int[] heads = new int[mRecords.size()];
+        while (merged.size() < total) {
+            int best = -1;
+            for (int i = 0; i < heads.length; ++i) {
+                if (heads[i] < mRecords.get(i).size() && (best < 0 ||
+                        TIME_COMPARATOR.compare(mRecords.get(i).get(heads[i]), mRecords.get(best).get(heads[best])) < 0)) {
+                    best = i;
+                }
+            }
+            merged.add(mRecords.get(best).get(heads[best]++));
+        }
+        return merged;
+    }
+
+    private static boolean isSorted(List<Record> records) {
+        for (int i = 1; i < records.size(); ++i) {
+            if (TIME_COMPARATOR.compare(records.get(i - 1), records.get(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOfStatus(int status) {
+        for (int i = 0; i < STATUS_TYPES.length; ++i) {
+            if (STATUS_TYPES[i] == status) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int statusOrder(int status) {
+        final int index = indexOfStatus(status);
+        return (index >= 0) ? index : STATUS_TYPES.length;
+    }
+
+    /**
+     * 一种记录的一次下载
+     */
+    private class Loader {
+        private final int mStatus;
+        private final int mType;
+        private final List<BluetoothVCardBook> mBooks = new ArrayList<>();
+        private boolean mStopped = false;
+
+        private final IBluetoothVCardCallback.Stub mCallback = new IBluetoothVCardCallback.Stub() {
+            @Override
+            public void onProgress(List<BluetoothVCardBook> books) throws RemoteException {
+                if (!mStopped && books != null) {
+                    mBooks.addAll(books);
+                }
+            }
+
+            @Override
+            public void onFailure(int errorCode) throws RemoteException {
+                if (finish()) {
+                    Logcat.w(IVIBluetooth.BluetoothCallHistoryStatus.getName(mStatus) + " load failed, errorCode:" + errorCode);
+                    if (mListener != null) {
+                        mListener.onFailure(mStatus, errorCode);
+                    }
+                }
+            }
+
+            @Override
+            public void onSuccess(String msg) throws RemoteException {
+                if (finish()) {
+                    ingest(mStatus, mBooks);
+                    if (mListener != null) {
+                        mListener.onLoaded(mStatus, getCount(mStatus));
+                    }
+                }
+            }
+        };
+
+        Loader(int status, int type) {
+            mStatus = status;
+            mType = type;
+        }
+
+        /**
+         * @return 下载没有被取消返回true
+         */
+        private boolean finish() {
+            synchronized (CallHistoryStore.this) {
+                if (mStopped || mLoaders[mType] != this) {
+                    return false;
+                }
+                mLoaders[mType] = null;
+                return true;
+            }
+        }
+    }
+}
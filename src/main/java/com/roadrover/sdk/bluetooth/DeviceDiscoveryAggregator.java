@@ -0,0 +1,502 @@
+package com.roadrover.sdk.bluetooth;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.roadrover.btservice.bluetooth.BluetoothDevice;
+import com.roadrover.btservice.bluetooth.ISearchDeviceCallback;
+import com.roadrover.sdk.utils.Logcat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 蓝牙搜索结果的汇总类，搜索时同一个设备会被上报很多次，由该类按地址去重后再通知界面 </br>
+ * 1. 同一地址只保留一条记录，名字为空或者等于地址时使用之前收到的名字 </br>
+ * 2. 信号强度做指数平滑，变化小于 {@link #RSSI_REPORT_DELTA} 不算更新 </br>
+ * 3. 新增、更新、删除的设备先累积，最多每 {@link #setMinNotifyInterval(int)} 毫秒通知一次 </br>
+ * 4. 设备列表按比较器保持有序，每次变化只移动变化的设备，不重新排序整个列表 </br>
+ * 使用方法：searchNewDevice(0, aggregator.getSearchCallback()) </br>
+ * <b>该类所有方法和回调都在主线程执行</b></br>
+ */
+public class DeviceDiscoveryAggregator {
+
+    /**
+     * 未知的信号强度，服务没有上报信号强度时使用，其值为 {@value}
+     */
+    public static final int RSSI_UNKNOWN = Integer.MIN_VALUE;
+
+    /**
+     * 平滑后的信号强度变化超过该值才通知更新，单位dBm
+     */
+    public static final int RSSI_REPORT_DELTA = 3;
+
+    /**
+     * 默认的最小通知间隔，单位毫秒
+     */
+    public static final int DEFAULT_NOTIFY_INTERVAL = 500;
+
+    /**
+     * 信号强度平滑系数的倒数，新值占 1/4
+     */
+    private static final int RSSI_SMOOTH_FACTOR = 4;
+
+    /**
+     * 一个搜索到的设备
+     */
+    public static class Entry {
+        private final String mAddr;
+        private String mName = "";
+        private int mRssi = RSSI_UNKNOWN;       // 通知出去的信号强度，用于排序
+        private int mSmoothRssi = RSSI_UNKNOWN; // 平滑后的信号强度
+        private long mFirstSeenTime;
+        private long mLastSeenTime;
+        private int mSeenCount = 0;
+        private int mScanId;
+
+        Entry(String addr) {
+            mAddr = addr;
+        }
+
+        public String getAddr() {
+            return mAddr;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * 获取平滑后的信号强度，只在变化超过 {@link #RSSI_REPORT_DELTA} 时更新
+         * @return 没有信号强度返回 {@link #RSSI_UNKNOWN}
+         */
+        public int getRssi() {
+            return mRssi;
+        }
+
+        public long getFirstSeenTime() {
+            return mFirstSeenTime;
+        }
+
+        public long getLastSeenTime() {
+            return mLastSeenTime;
+        }
+
+        /**
+         * 获取被上报的次数
+         * @return
+         */
+        public int getSeenCount() {
+            return mSeenCount;
+        }
+
+        /**
+         * 转换成 {@link BluetoothDevice}，用于连接等接口
+         * @return
+         */
+        public BluetoothDevice toDevice() {
+            return BluetoothDevice.createDevice(mAddr, mName);
+        }
+
+        @Override
+        public String toString() {
+            return mAddr + " " + mName + " rssi:" + mRssi + " seen:" + mSeenCount;
+        }
+    }
+
+    /**
+     * 设备列表变化的回调
+     */
+    public interface Listener {
+        /**
+         * 设备列表变化
+         * @param added 新增的设备
+         * @param updated 名字或者信号强度变化的设备
+         * @param removed 删除的设备
+         * @param devices 变化之后的有序设备列表，只读
+         */
+        void onChanged(List<Entry> added, List<Entry> updated, List<Entry> removed, List<Entry> devices);
+
+        /**
+         * 搜索结束
+         * @param success 是否成功结束
+         * @param errorCode 失败时的错误码 {@link IVIBluetooth.BluetoothExecErrorMsg}
+         */
+        void onFinish(boolean success, int errorCode);
+    }
+
+    /**
+     * 默认的排序，信号强的在前，信号相同按名字，最后按地址
+     */
+    public static final Comparator<Entry> DEFAULT_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            if (lhs.mRssi != rhs.mRssi) {
+                return (lhs.mRssi > rhs.mRssi) ? -1 : 1;
+            }
+            int result = lhs.mName.compareTo(rhs.mName);
+            if (result != 0) {
+                return result;
+            }
+            return lhs.mAddr.compareTo(rhs.mAddr);
+        }
+    };
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private final List<Entry> mSorted = new ArrayList<>();
+    private Comparator<Entry> mComparator = DEFAULT_COMPARATOR;
+
+    // 等待通知的变化，以地址为 key，保持先后顺序
+    private final Map<String, Entry> mPendingAdded = new LinkedHashMap<>();
+    private final Map<String, Entry> mPendingUpdated = new LinkedHashMap<>();
+    private final Map<String, Entry> mPendingRemoved = new LinkedHashMap<>();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Listener mListener;
+    private int mMinNotifyInterval = DEFAULT_NOTIFY_INTERVAL;
+    private long mLastNotifyTime = 0;
+    private boolean mNotifyPosted = false;
+    private int mScanId = 0;
+
+    private final Runnable mNotifyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mNotifyPosted = false;
+            notifyChanged();
+        }
+    };
+
+    private final ISearchDeviceCallback.Stub mSearchCallback = new ISearchDeviceCallback.Stub() {
+        @Override
+        public void onSuccess(BluetoothDevice bluetoothDevice) throws RemoteException {
+            if (bluetoothDevice != null) {
+                onDeviceFound(bluetoothDevice.addr, bluetoothDevice.name, RSSI_UNKNOWN);
+                bluetoothDevice.recycle(); // 地址和名字已经保存，对象放回对象池
+            }
+            finishScan(true, 0);
+        }
+
+        @Override
+        public void onProgress(BluetoothDevice bluetoothDevice) throws RemoteException {
+            if (bluetoothDevice != null) {
+                onDeviceFound(bluetoothDevice.addr, bluetoothDevice.name, RSSI_UNKNOWN);
+                bluetoothDevice.recycle(); // 地址和名字已经保存，对象放回对象池
+            }
+        }
+
+        @Override
+        public void onFailure(int errorCode) throws RemoteException {
+            finishScan(false, errorCode);
+        }
+    };
+
+    /**
+     * 构造函数
+     * @param listener 设备列表变化的回调
+     */
+    public DeviceDiscoveryAggregator(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 获取传给 {@link BluetoothManager#searchNewDevice} 的回调，每次调用 searchNewDevice 前需要先调用 {@link #startScan()}
+     * @return
+     */
+    public ISearchDeviceCallback.Stub getSearchCallback() {
+        return mSearchCallback;
+    }
+
+    /**
+     * 设置最小通知间隔
+     * @param interval 单位毫秒，小于等于0表示每次变化都马上通知
+     */
+    public void setMinNotifyInterval(int interval) {
+        mMinNotifyInterval = interval;
+    }
+
+    /**
+     * 设置排序的比较器，设置之后整个列表重新排序一次 </br>
+     * 比较器只能使用名字、信号强度、地址和第一次搜到的时间，这些值变化时才会调整位置
+     * @param comparator 为null时使用 {@link #DEFAULT_COMPARATOR}
+     */
+    public void setComparator(Comparator<Entry> comparator) {
+        mComparator = (comparator != null) ? comparator : DEFAULT_COMPARATOR;
+        Collections.sort(mSorted, mComparator);
+        if (mListener != null) {
+            mListener.onChanged(new ArrayList<Entry>(), new ArrayList<Entry>(), new ArrayList<Entry>(),
+                    Collections.unmodifiableList(mSorted));
+        }
+    }
+
+    /**
+     * 开始一次新的搜索，搜索成功结束时，本次没有搜到的设备会被删除
+     */
+    public void startScan() {
+        ++mScanId;
+    }
+
+    /**
+     * 收到一个设备，服务上报信号强度时也可以由应用直接调用
+     * @param addr 设备地址
+     * @param name 设备名字
+     * @param rssi 信号强度，没有传 {@link #RSSI_UNKNOWN}
+     */
+    public void onDeviceFound(String addr, String name, int rssi) {
+        if (TextUtils.isEmpty(addr)) {
+            return;
+        }
+
+        final long now = SystemClock.elapsedRealtime();
+        Entry entry = mEntries.get(addr);
+        if (entry == null) {
+            entry = new Entry(addr);
+            entry.mFirstSeenTime = now;
+            mergeName(entry, name);
+            mergeRssi(entry, rssi);
+            entry.mRssi = entry.mSmoothRssi;
+            entry.mLastSeenTime = now;
+            entry.mSeenCount = 1;
+            entry.mScanId = mScanId;
+            mEntries.put(addr, entry);
+            insertSorted(entry);
+            if (mPendingRemoved.remove(addr) != null) {
+                mPendingUpdated.put(addr, entry);
+            } else {
+                mPendingAdded.put(addr, entry);
+            }
+            scheduleNotify();
+            return;
+        }
+
+        entry.mLastSeenTime = now;
+        ++entry.mSeenCount;
+        entry.mScanId = mScanId;
+
+        final int index = indexOfSorted(entry);
+        boolean changed = mergeName(entry, name);
+        mergeRssi(entry, rssi);
+        if (entry.mSmoothRssi != entry.mRssi &&
+                (entry.mRssi == RSSI_UNKNOWN || Math.abs(entry.mSmoothRssi - entry.mRssi) >= RSSI_REPORT_DELTA)) {
+            entry.mRssi = entry.mSmoothRssi;
+            changed = true;
+        }
+
+        if (changed) {
+            moveSorted(entry, index);
+            if (!mPendingAdded.containsKey(addr)) {
+                mPendingUpdated.put(addr, entry);
+            }
+            scheduleNotify();
+        }
+    }
+
+    /**
+     * 删除长时间没有搜到的设备
+     * @param maxAge 最后一次搜到距今超过该时间的设备会被删除，单位毫秒
+     */
+    public void removeStale(long maxAge) {
+        final long now = SystemClock.elapsedRealtime();
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.mLastSeenTime > maxAge) {
+                iterator.remove();
+                removeFromSorted(entry);
+            }
+        }
+        scheduleNotify();
+    }
+
+    /**
+     * 清空所有设备，并马上通知
+     */
+    public void clear() {
+        for (Entry entry : mSorted) {
+            removePending(entry);
+        }
+        mEntries.clear();
+        mSorted.clear();
+        flush();
+    }
+
+    /**
+     * 获取当前有序的设备列表
+     * @return 只读列表
+     */
+    public List<Entry> getDevices() {
+        return Collections.unmodifiableList(mSorted);
+    }
+
+    /**
+     * 通过地址获取设备
+     * @param addr 设备地址
+     * @return 没有返回null
+     */
+    public Entry getDevice(String addr) {
+        return mEntries.get(addr);
+    }
+
+    /**
+     * 马上通知累积的变化
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mNotifyRunnable);
+        mNotifyPosted = false;
+        notifyChanged();
+    }
+
+    /**
+     * 释放资源，释放之后不再回调
+     */
+    public void release() {
+        mHandler.removeCallbacks(mNotifyRunnable);
+        mNotifyPosted = false;
+        mListener = null;
+    }
+
+    private void finishScan(boolean success, int errorCode) {
+        if (success) {
+            Iterator<Entry> iterator = mEntries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.mScanId != mScanId) {
+                    iterator.remove();
+                    removeFromSorted(entry);
+                }
+            }
+        }
+        flush();
+        Logcat.d("scan finish, success:" + success + " devices:" + mSorted.size());
+        if (mListener != null) {
+            mListener.onFinish(success, errorCode);
+        }
+    }
+
+    /**
+     * 合并名字，名字为空或者只是地址时保留之前的名字
+     * @return 名字变化返回true
+     */
+    private static boolean mergeName(Entry entry, String name) {
+        if (TextUtils.isEmpty(name) || TextUtils.equals(name, entry.mAddr) || TextUtils.equals(name, entry.mName)) {
+            return false;
+        }
+        entry.mName = name;
+        return true;
+    }
+
+    private static void mergeRssi(Entry entry, int rssi) {
+        if (rssi == RSSI_UNKNOWN) {
+            return;
+        }
+        if (entry.mSmoothRssi == RSSI_UNKNOWN) {
+            entry.mSmoothRssi = rssi;
+        } else {
+            entry.mSmoothRssi += (rssi - entry.mSmoothRssi) / RSSI_SMOOTH_FACTOR;
+        }
+    }
+
+    private void insertSorted(Entry entry) {
+        int index = Collections.binarySearch(mSorted, entry, mComparator);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        mSorted.add(index, entry);
+    }
+
+    /**
+     * 在排序列表中查找设备，需要在修改排序字段之前调用
+     */
+    private int indexOfSorted(Entry entry) {
+        int index = Collections.binarySearch(mSorted, entry, mComparator);
+        if (index >= 0) {
+            for (int i = index; i >= 0 && mComparator.compare(mSorted.get(i), entry) == 0; --i) {
+                if (mSorted.get(i) == entry) {
+                    return i;
+                }
+            }
+            for (int i = index + 1; i < mSorted.size() && mComparator.compare(mSorted.get(i), entry) == 0; ++i) {
+                if (mSorted.get(i) == entry) {
+                    return i;
+                }
+            }
+        }
+        // 比较器不稳定时退回线性查找
+        for (int i = 0; i < mSorted.size(); ++i) {
+            if (mSorted.get(i) == entry) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 设备的排序字段变化之后，如果和前后的设备顺序不对，移动到正确的位置
+     */
+    private void moveSorted(Entry entry, int index) {
+        if (index < 0) {
+            insertSorted(entry);
+            return;
+        }
+        final boolean afterPrev = (index == 0) || mComparator.compare(mSorted.get(index - 1), entry) <= 0;
+        final boolean beforeNext = (index == mSorted.size() - 1) || mComparator.compare(entry, mSorted.get(index + 1)) <= 0;
+        if (afterPrev && beforeNext) {
+            return;
+        }
+        mSorted.remove(index);
+        insertSorted(entry);
+    }
+
+    private void removeFromSorted(Entry entry) {
+        final int index = indexOfSorted(entry);
+        if (index >= 0) {
+            mSorted.remove(index);
+        }
+        removePending(entry);
+    }
+
+    private void removePending(Entry entry) {
+        mPendingUpdated.remove(entry.mAddr);
+        if (mPendingAdded.remove(entry.mAddr) == null) { // 还没通知新增的设备，不需要通知删除
+            mPendingRemoved.put(entry.mAddr, entry);
+        }
+    }
+
+    private void scheduleNotify() {
+        if (mNotifyPosted) {
+            return;
+        }
+        final long delay = mLastNotifyTime + mMinNotifyInterval - SystemClock.elapsedRealtime();
+        if (delay <= 0) {
+            notifyChanged();
+        } else {
+            mNotifyPosted = true;
+            mHandler.postDelayed(mNotifyRunnable, delay);
+        }
+    }
+
+    private void notifyChanged() {
+        if (mPendingAdded.isEmpty() && mPendingUpdated.isEmpty() && mPendingRemoved.isEmpty()) {
+            return;
+        }
+
+        final List<Entry> added = new ArrayList<>(mPendingAdded.values());
+        final List<Entry> updated = new ArrayList<>(mPendingUpdated.values());
+        final List<Entry> removed = new ArrayList<>(mPendingRemoved.values());
+        mPendingAdded.clear();
+        mPendingUpdated.clear();
+        mPendingRemoved.clear();
+        mLastNotifyTime = SystemClock.elapsedRealtime();
+        if (mListener != null) {
+            mListener.onChanged(added, updated, removed, Collections.unmodifiableList(mSorted));
+        }
+    }
+}
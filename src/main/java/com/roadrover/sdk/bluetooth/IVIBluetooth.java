@@ -826,6 +826,11 @@ public class IVIBluetooth {
          */
         public String msg;
 
+        /**
+         * 产生该事件的获取命令的执行序号，用于忽略被打断之前的执行的迟到回调，0表示不区分
+         */
+        public int attemptId = 0;
+
         /**
          * 构造函数
          * @param type 类型，{@link EventVCard}
@@ -841,6 +846,19 @@ public class IVIBluetooth {
             this.errorCode = errorCode;
             this.msg = msg;
         }
+
+        /**
+         * 构造函数
+         * @param attemptId 获取命令的执行序号
+         * @param type 类型，{@link EventVCard}
+         * @param errorCode 错误码，{@link BluetoothExecErrorMsg}
+         * @param msg 消息体
+         * @param books 电话本或者通话记录列表
+         */
+        public EventVCard(int attemptId, int type, int errorCode, String msg, List<BluetoothVCardBook> books) {
+            this(type, errorCode, msg, books);
+            this.attemptId = attemptId;
+        }
     }
 
     /**
@@ -0,0 +1,331 @@
+package com.roadrover.sdk.bluetooth;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import com.roadrover.btservice.bluetooth.BluetoothVCardBook;
+import com.roadrover.sdk.utils.Logcat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 蓝牙电话本的本地持久化存储，按设备地址分别保存 </br>
+ * 每条记录以内容哈希作为 key，每次同步使用一个新的同步代数，同步完成后删除旧代数的记录 </br>
+ * 数据保存在应用私有目录的数据库中 </br>
+ */
+public class PhoneBookStore extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "phone_book_store.db";
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE_BOOK = "tbl_phone_book";
+    private static final String ADDR       = "addr";
+    private static final String HASH       = "hash";
+    private static final String SEQ        = "seq";
+    private static final String GENERATION = "generation";
+    private static final String CODING     = "coding";
+    private static final String NAME       = "name";
+    private static final String TYPE       = "type";
+    private static final String NUMBER     = "number";
+    private static final String TIME       = "time";
+
+    private static final String TABLE_STATE = "tbl_sync_state";
+    private static final String COMPLETE    = "complete";
+    private static final String COUNT       = "count";
+
+    private static PhoneBookStore sInstance = null;
+
+    /**
+     * 一个设备的同步状态
+     */
+    public static class SyncState {
+        /**
+         * 当前的同步代数
+         */
+        public int mGeneration;
+
+        /**
+         * 上一次同步是否完整结束，没有结束的同步下次继续使用同一个代数
+         */
+        public boolean mComplete;
+
+        /**
+         * 当前代数已经写入的记录数
+         */
+        public int mCount;
+    }
+
+    /**
+     * 获取存储对象，进程内唯一
+     * @param context 上下文
+     * @return
+     */
+    public static synchronized PhoneBookStore getInstance(Context context) {
+        if (sInstance == null && context != null) {
+            sInstance = new PhoneBookStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PhoneBookStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_BOOK + " (" +
+                ADDR + " TEXT, " +
+                HASH + " INTEGER, " +
+                SEQ + " INTEGER, " +
+                GENERATION + " INTEGER, " +
+                CODING + " TEXT, " +
+                NAME + " TEXT, " +
+                TYPE + " TEXT, " +
+                NUMBER + " TEXT, " +
+                TIME + " TEXT, " +
+                "PRIMARY KEY (" + ADDR + ", " + HASH + "))");
+        db.execSQL("CREATE TABLE " + TABLE_STATE + " (" +
+                ADDR + " TEXT PRIMARY KEY, " +
+                GENERATION + " INTEGER, " +
+                COMPLETE + " INTEGER, " +
+                COUNT + " INTEGER)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOK);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_STATE);
+        onCreate(db);
+    }
+
+    /**
+     * 读取设备缓存的电话本，按上一次下载的顺序排列
+     * @param addr 设备地址
+     * @return
+     */
+    public synchronized List<BluetoothVCardBook> query(String addr) {
+        List<BluetoothVCardBook> books = new ArrayList<>();
+        if (TextUtils.isEmpty(addr)) {
+            return books;
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE_BOOK, new String[]{CODING, NAME, TYPE, NUMBER, TIME},
+                    ADDR + "=?", new String[]{addr}, null, null, SEQ);
+            if (cursor != null) {
+                while (cursor.moveToNext()) { // 列的顺序和上面查询的顺序一致
+                    books.add(BluetoothVCardBook.createVCardBook(cursor.getString(0), cursor.getString(1),
+                            cursor.getString(2), cursor.getString(3), cursor.getString(4)));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return books;
+    }
+
+    /**
+     * 读取设备缓存的所有记录的内容哈希和写入时的同步代数
+     * @param addr 设备地址
+     * @return 以内容哈希为 key 的同步代数表
+     */
+    public synchronized Map<Long, Integer> queryGenerations(String addr) {
+        Map<Long, Integer> generations = new HashMap<>();
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE_BOOK, new String[]{HASH, GENERATION},
+                    ADDR + "=?", new String[]{addr}, null, null, null);
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    generations.put(cursor.getLong(0), cursor.getInt(1));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * 开始一次同步，上一次同步没有完成时继续使用上一次的代数，已经写入的记录不会在结束时被删除
+     * @param addr 设备地址
+     * @return 本次同步的状态
+     */
+    public synchronized SyncState beginSync(String addr) {
+        SyncState state = getSyncState(addr);
+        if (state.mComplete) {
+            ++state.mGeneration;
+            state.mCount = 0;
+            state.mComplete = false;
+        }
+        putSyncState(addr, state);
+        return state;
+    }
+
+    /**
+     * 写入一批下载到的记录，在一个事务中完成
+     * @param addr 设备地址
+     * @param generation 同步代数
+     * @param books 需要写入的记录
+     * @param hashes 每条记录的内容哈希，和 books 一一对应
+     * @param seqs 每条记录在电话本中的顺序号，和 books 一一对应
+     * @param receivedCount 本次同步到目前为止收到的记录总数
+     */
+    public synchronized void apply(String addr, int generation, List<BluetoothVCardBook> books,
+                                   long[] hashes, int[] seqs, int receivedCount) {
+        SQLiteDatabase db = null;
+        try {
+            db = getWritableDatabase();
+            db.beginTransaction();
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < books.size(); ++i) {
+                BluetoothVCardBook book = books.get(i);
+                values.clear();
+                values.put(ADDR, addr);
+                values.put(HASH, hashes[i]);
+                values.put(SEQ, seqs[i]);
+                values.put(GENERATION, generation);
+                values.put(CODING, book.codingType);
+                values.put(NAME, book.name);
+                values.put(TYPE, book.type);
+                values.put(NUMBER, book.phoneNumber);
+                values.put(TIME, book.callTime);
+                db.replace(TABLE_BOOK, null, values);
+            }
+
+            values.clear();
+            values.put(ADDR, addr);
+            values.put(GENERATION, generation);
+            values.put(COMPLETE, 0);
+            values.put(COUNT, receivedCount);
+            db.replace(TABLE_STATE, null, values);
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (db != null) {
+                try {
+                    db.endTransaction();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 同步完成，删除本次同步没有收到的记录
+     * @param addr 设备地址
+     * @param generation 同步代数
+     * @return 被删除的记录
+     */
+    public synchronized List<BluetoothVCardBook> finishSync(String addr, int generation) {
+        List<BluetoothVCardBook> removed = new ArrayList<>();
+        SQLiteDatabase db = null;
+        Cursor cursor = null;
+        try {
+            db = getWritableDatabase();
+            db.beginTransaction();
+            final String where = ADDR + "=? AND " + GENERATION + "<?";
+            final String[] whereArgs = new String[]{addr, String.valueOf(generation)};
+            cursor = db.query(TABLE_BOOK, new String[]{CODING, NAME, TYPE, NUMBER, TIME},
+                    where, whereArgs, null, null, SEQ);
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    removed.add(BluetoothVCardBook.createVCardBook(cursor.getString(0), cursor.getString(1),
+                            cursor.getString(2), cursor.getString(3), cursor.getString(4)));
+                }
+            }
+            db.delete(TABLE_BOOK, where, whereArgs);
+
+            ContentValues values = new ContentValues();
+            values.put(COMPLETE, 1);
+            db.update(TABLE_STATE, values, ADDR + "=?", new String[]{addr});
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            if (db != null) {
+                try {
+                    db.endTransaction();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 删除设备的所有缓存，一般在删除配对设备时调用
+     * @param addr 设备地址，为空表示清空全部
+     */
+    public synchronized void remove(String addr) {
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            if (TextUtils.isEmpty(addr)) {
+                db.delete(TABLE_BOOK, null, null);
+                db.delete(TABLE_STATE, null, null);
+            } else {
+                db.delete(TABLE_BOOK, ADDR + "=?", new String[]{addr});
+                db.delete(TABLE_STATE, ADDR + "=?", new String[]{addr});
+            }
+        } catch (Exception e) {
+            Logcat.e("remove " + addr + " failed, " + e);
+        }
+    }
+
+    private SyncState getSyncState(String addr) {
+        SyncState state = new SyncState();
+        state.mComplete = true;
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE_STATE, new String[]{GENERATION, COMPLETE, COUNT},
+                    ADDR + "=?", new String[]{addr}, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                state.mGeneration = cursor.getInt(0);
+                state.mComplete = cursor.getInt(1) != 0;
+                state.mCount = cursor.getInt(2);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return state;
+    }
+
+    private void putSyncState(String addr, SyncState state) {
+        try {
+            ContentValues values = new ContentValues();
+            values.put(ADDR, addr);
+            values.put(GENERATION, state.mGeneration);
+            values.put(COMPLETE, state.mComplete ? 1 : 0);
+            values.put(COUNT, state.mCount);
+            getWritableDatabase().replace(TABLE_STATE, null, values);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.roadrover.sdk.bluetooth;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.text.TextUtils;
+
+import com.roadrover.btservice.bluetooth.BluetoothVCardBook;
+import com.roadrover.btservice.bluetooth.IBluetoothVCardCallback;
+import com.roadrover.sdk.utils.ListUtils;
+import com.roadrover.sdk.utils.Logcat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 蓝牙电话本同步类，电话本按设备地址保存在 {@link PhoneBookStore} 中 </br>
+ * 1. {@link #start(String)} 之后先在 onCacheLoaded 返回上一次保存的电话本，界面可以马上显示 </br>
+ * 2. 同时通过 {@link BluetoothManager#getPhoneContacts} 在后台刷新，每收到一批数据就写入本地，
+ *    通过内容哈希判断是否是新的记录，只把新增的记录通过 onChanged 返回 </br>
+ * 3. 下载完成后删除手机上已经不存在的记录，通过 onFinish 返回 </br>
+ * 4. 下载中途断开或者超时，已经写入的记录会保留，下次同步继续使用同一个同步代数，不会重复通知 </br>
+ * <b>回调都在主线程执行，断开连接时需要调用 {@link #stop()}</b></br>
+ */
+public class PhoneBookSync {
+
+    /**
+     * 同步结果的回调
+     */
+    public interface Listener {
+        /**
+         * 本地缓存的电话本读取完成
+         * @param addr 设备地址
+         * @param books 缓存的电话本，没有缓存时为空列表
+         */
+        void onCacheLoaded(String addr, List<BluetoothVCardBook> books);
+
+        /**
+         * 收到新增或者内容改变的记录
+         * @param addr 设备地址
+         * @param added 新增的记录
+         */
+        void onChanged(String addr, List<BluetoothVCardBook> added);
+
+        /**
+         * 同步结束
+         * @param addr 设备地址
+         * @param success 是否下载完成
+         * @param removed 手机上已经删除的记录，下载失败时为空列表
+         * @param errorCode 失败时的错误码 {@link IVIBluetooth.BluetoothExecErrorMsg}
+         */
+        void onFinish(String addr, boolean success, List<BluetoothVCardBook> removed, int errorCode);
+    }
+
+    private BluetoothManager mBluetoothManager;
+    private PhoneBookStore mStore;
+    private Listener mListener;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private Session mSession = null;
+
+    /**
+     * 构造函数
+     * @param context 上下文
+     * @param bluetoothManager 已经连接的蓝牙管理类
+     * @param listener 结果回调
+     */
+    public PhoneBookSync(Context context, BluetoothManager bluetoothManager, Listener listener) {
+        mStore = PhoneBookStore.getInstance(context);
+        mBluetoothManager = bluetoothManager;
+        mListener = listener;
+    }
+
+    /**
+     * 开始同步设备的电话本，正在同步的其他设备会被停止
+     * @param addr 设备地址
+     */
+    public void start(String addr) {
+        if (TextUtils.isEmpty(addr) || mStore == null) {
+            return;
+        }
+
+        stop();
+        final Session session = new Session(addr);
+        mSession = session;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                session.load();
+            }
+        });
+        if (mBluetoothManager != null) {
+            mBluetoothManager.getPhoneContacts(session.mCallback);
+        }
+    }
+
+    /**
+     * 停止同步，已经收到的数据会保留，下次同步继续 </br>
+     * 还在排队或者正在下载的电话本命令会被取消，不会继续占用同步通道
+     */
+    public void stop() {
+        if (mSession != null) {
+            mSession.mStopped = true;
+            if (mBluetoothManager != null) {
+                mBluetoothManager.cancelVCardRequest(mSession.mCallback);
+            }
+            mSession = null;
+        }
+    }
+
+    /**
+     * 释放资源，释放之后该对象不能再使用
+     */
+    public void release() {
+        stop();
+        mExecutor.shutdown();
+        mBluetoothManager = null;
+        mListener = null;
+    }
+
+    /**
+     * 计算一条记录的内容哈希，64位 FNV-1a
+     * @param book 记录
+     * @return
+     */
+    public static long getContentHash(BluetoothVCardBook book) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hash(hash, book.codingType);
+        hash = hash(hash, book.name);
+        hash = hash(hash, book.type);
+        hash = hash(hash, book.phoneNumber);
+        hash = hash(hash, book.callTime);
+        return hash;
+    }
+
+    private static long hash(long hash, String string) {
+        if (string != null) {
+            for (int i = 0; i < string.length(); ++i) {
+                hash ^= string.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        hash ^= 0xffff; // 字段分隔，避免 "ab"+"c" 和 "a"+"bc" 相同
+        hash *= 0x100000001b3L;
+        return hash;
+    }
+
+    /**
+     * 一次同步过程，数据库操作都在 mExecutor 中按顺序执行
+     */
+    private class Session {
+        private final String mAddr;
+        private volatile boolean mStopped = false;
+        private PhoneBookStore.SyncState mState;
+        private Map<Long, Integer> mGenerations = new HashMap<>();
+        private int mReceivedCount = 0;
+
+        private final IBluetoothVCardCallback.Stub mCallback = new IBluetoothVCardCallback.Stub() {
+            @Override
+            public void onProgress(final List<BluetoothVCardBook> books) throws RemoteException {
+                if (!mStopped && !ListUtils.isEmpty(books)) {
+                    final List<BluetoothVCardBook> chunk = new ArrayList<>(books);
+                    mExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            applyChunk(chunk);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onFailure(final int errorCode) throws RemoteException {
+                if (!mStopped) {
+                    mExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            Logcat.w(mAddr + " sync failed, errorCode:" + errorCode + " received:" + mReceivedCount);
+                            notifyFinish(false, new ArrayList<BluetoothVCardBook>(), errorCode);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onSuccess(String msg) throws RemoteException {
+                if (!mStopped) {
+                    mExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            finish();
+                        }
+                    });
+                }
+            }
+        };
+
+        Session(String addr) {
+            mAddr = addr;
+        }
+
+        void load() {
+            final List<BluetoothVCardBook> books = mStore.query(mAddr);
+            mGenerations = mStore.queryGenerations(mAddr);
+            mState = mStore.beginSync(mAddr);
+            Logcat.d(mAddr + " cached:" + books.size() + " generation:" + mState.mGeneration +
+                    (mState.mCount > 0 ? " resume after:" + mState.mCount : ""));
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mStopped && mListener != null) {
+                        mListener.onCacheLoaded(mAddr, books);
+                    }
+                }
+            });
+        }
+
+        void applyChunk(List<BluetoothVCardBook> chunk) {
+            if (mStopped) {
+                return;
+            }
+
+            final int generation = mState.mGeneration;
+            final int size = chunk.size();
+            final List<BluetoothVCardBook> writes = new ArrayList<>(size);
+            final long[] hashes = new long[size];
+            final int[] seqs = new int[size];
+            final List<BluetoothVCardBook> added = new ArrayList<>();
+            for (BluetoothVCardBook book : chunk) {
+                final int seq = mReceivedCount++;
+                if (book == null) {
+                    continue;
+                }
+                final long hash = getContentHash(book);
+                Integer stored = mGenerations.put(hash, generation);
+                if (stored == null) {
+                    added.add(book);
+                } else if (stored == generation) { // 中断的同步已经写入过，不需要再写
+                    continue;
+                }
+                hashes[writes.size()] = hash;
+                seqs[writes.size()] = seq;
+                writes.add(book);
+            }
+
+            if (!writes.isEmpty()) {
+                mStore.apply(mAddr, generation, writes, hashes, seqs, mReceivedCount);
+            }
+            if (!added.isEmpty()) {
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mStopped && mListener != null) {
+                            mListener.onChanged(mAddr, added);
+                        }
+                    }
+                });
+            }
+        }
+
+        void finish() {
+            List<BluetoothVCardBook> removed = mStore.finishSync(mAddr, mState.mGeneration);
+            Logcat.d(mAddr + " sync finish, received:" + mReceivedCount + " removed:" + removed.size());
+            notifyFinish(true, removed, 0);
+        }
+
+        void notifyFinish(final boolean success, final List<BluetoothVCardBook> removed, final int errorCode) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mStopped && mListener != null) {
+                        mListener.onFinish(mAddr, success, removed, errorCode);
+                    }
+                    if (mSession == Session.this) {
+                        mSession = null;
+                    }
+                }
+            });
+        }
+    }
+}
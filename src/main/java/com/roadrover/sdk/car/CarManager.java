@@ -15,6 +15,7 @@ import com.roadrover.sdk.system.IVIKey;
 import com.roadrover.services.car.ICar;
 import com.roadrover.services.car.ICarCallback;
 import com.roadrover.services.car.IMcuUpgradeCallback;
+import com.roadrover.sdk.utils.ByteFrame;
 import com.roadrover.sdk.utils.Logcat;
 
 import org.greenrobot.eventbus.Subscribe;
@@ -859,6 +860,16 @@ public class CarManager extends BaseManager {
         }
     }
 
+    /**
+     * 设置外设参数，数据通过 {@link ByteFrame} 组包
+     * @param frame 外设参数，调用之后可以马上 recycle
+     */
+    public void setExtraDevice(int carId, int deviceId, ByteFrame frame) {
+        if (frame != null) {
+            setExtraDevice(carId, deviceId, frame.toByteArray());
+        }
+    }
+
     /**
      * 设置氛围灯音频参数
      */
@@ -898,6 +909,16 @@ public class CarManager extends BaseManager {
         }
     }
 
+    /**
+     * 设置CMD_PARAM参数，数据通过 {@link ByteFrame} 组包
+     * @param frame 参数，调用之后可以马上 recycle
+     */
+    public void setCmdParam(int id, ByteFrame frame) {
+        if (frame != null) {
+            setCmdParam(id, frame.toByteArray());
+        }
+    }
+
     /**
      * 请求发送所有service端缓存的CMD_PARAM参数，通过CarListener回调或者EventBus获取
      */
@@ -1396,6 +1417,16 @@ public class CarManager extends BaseManager {
         }
     }
 
+    /**
+     * 发送数据给仪表，数据通过 {@link ByteFrame} 组包
+     * @param frame 参数，调用之后可以马上 recycle
+     */
+    public void setClusterParam(ByteFrame frame) {
+        if (frame != null) {
+            setClusterParam(frame.toByteArray());
+        }
+    }
+
     /**
      * 上位机系统升级和恢复时需暂停心跳
      */
@@ -2,6 +2,8 @@ package com.roadrover.sdk.media;
 
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
 import android.text.TextUtils;
 
 import com.roadrover.sdk.audio.IVIAudio;
@@ -296,7 +298,8 @@ public class IVIMedia {
     }
 
     /**
-     * 用于传递歌手图片，专辑图片的类
+     * 用于传递歌手图片，专辑图片的类 </br>
+     * 图片内容通过 {@link #getKey()} 计算出内容哈希，接收端按哈希缓存 Bitmap，相同的图片只会创建一次 </br>
      */
     public static class ArtImage {
 
@@ -304,10 +307,36 @@ public class IVIMedia {
          * 图片的最大尺寸，单位像素
          */
         public static final int MAX_SIZE = 240;
+
+        /**
+         * 接收端 Bitmap 缓存的最大字节数，能容纳 4 张最大尺寸的 ARGB_8888 图片
+         */
+        public static final int CACHE_MAX_BYTES = MAX_SIZE * MAX_SIZE * 4 * 4;
+
+        /**
+         * 无效的内容哈希，值为 {@value}
+         */
+        public static final long INVALID_KEY = 0;
+
         public int mWidth;
         public int mHeight;
         public byte[] mPixels;
 
+        /**
+         * 图片内容哈希，第一次调用 {@link #getKey()} 时计算
+         */
+        private long mKey = INVALID_KEY;
+
+        /**
+         * 按内容哈希缓存的 Bitmap，进程内共享
+         */
+        private static final LruCache<Long, Bitmap> sBitmapCache = new LruCache<Long, Bitmap>(CACHE_MAX_BYTES) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+
         /**
          * 构造函数
          * @param width 图片宽度
@@ -355,25 +384,77 @@ public class IVIMedia {
         }
 
         /**
-         * 获取当前的歌手图片
+         * 图片是否有效
+         * @return 宽高和像素数据都有效返回true
+         */
+        public boolean isValid() {
+            return mWidth > 0 && mHeight > 0 && mPixels != null && mPixels.length > 0;
+        }
+
+        /**
+         * 获取图片的内容哈希，相同的宽高和像素得到相同的值，用作缓存的key
+         * @return 无效图片返回 {@link #INVALID_KEY}
+         */
+        public long getKey() {
+            if (mKey == INVALID_KEY && isValid()) {
+                // FNV-1a 64位哈希，宽高一起参与计算
+                long hash = 0xcbf29ce484222325L;
+                hash = (hash ^ mWidth) * 0x100000001b3L;
+                hash = (hash ^ mHeight) * 0x100000001b3L;
+                for (int i = 0; i < mPixels.length; ++i) {
+                    hash = (hash ^ (mPixels[i] & 0xff)) * 0x100000001b3L;
+                }
+                mKey = (hash == INVALID_KEY) ? 1 : hash;
+            }
+            return mKey;
+        }
+
+        /**
+         * 获取可以修改的歌手图片副本，调用者可以修改或者 recycle()，只需要显示时使用 {@link #getBitmap()} 避免复制
+         * @return
+         */
+        public Bitmap copyBitmap() {
+            Bitmap image = getBitmap();
+            return (image != null) ? image.copy(image.getConfig(), true) : null;
+        }
+
+        /**
+         * 获取当前的歌手图片，相同内容的图片返回同一个缓存的 Bitmap 对象 </br>
+         * <b>返回的 Bitmap 是不可修改的并且进程内共享，调用者不能对其调用 recycle()，需要修改时使用 {@link #copyBitmap()}</b></br>
          * @return
          */
         public Bitmap getBitmap() {
-            if (mWidth <= 0 || mHeight <= 0 || mPixels == null) {
+            if (!isValid()) {
                 return null;
             }
 
+            final long key = getKey();
+            Bitmap image = sBitmapCache.get(key);
+            if (image != null && !image.isRecycled()) {
+                return image;
+            }
+
             // 根据mPixels的长度来决定bitmap的格式
             Bitmap.Config config = Bitmap.Config.ARGB_8888;
             if (mPixels.length == mWidth * mHeight * 2) {
                 config = Bitmap.Config.RGB_565;
             }
 
-            Bitmap image = Bitmap.createBitmap(mWidth, mHeight, config);
-            image.copyPixelsFromBuffer(ByteBuffer.wrap(mPixels));
+            Bitmap pixels = Bitmap.createBitmap(mWidth, mHeight, config);
+            pixels.copyPixelsFromBuffer(ByteBuffer.wrap(mPixels));
+            image = pixels.copy(config, false); // 缓存不可修改的副本，不会被调用者改写
+            pixels.recycle();
+            sBitmapCache.put(key, image);
             return image;
         }
 
+        /**
+         * 清空接收端的 Bitmap 缓存，一般在内存紧张(onTrimMemory)时调用
+         */
+        public static void clearCache() {
+            sBitmapCache.evictAll();
+        }
+
         @Override
         public boolean equals(Object o) {
             if (o == this) {
@@ -383,6 +464,7 @@ public class IVIMedia {
                 ArtImage other = (ArtImage) o;
                 if (other.mHeight == mHeight &&
                         other.mWidth == mWidth &&
+                        other.getKey() == getKey() &&
                         ByteUtil.equals(other.mPixels, mPixels)) {
                     return true;
                 }
@@ -390,6 +472,12 @@ public class IVIMedia {
 
             return false;
         }
+
+        @Override
+        public int hashCode() {
+            final long key = getKey();
+            return (int) (key ^ (key >>> 32));
+        }
     }
 
     /**
@@ -498,16 +586,33 @@ public class IVIMedia {
          * 播放状态
          */
         public static final int PLAYING = 3;
+
+        /**
+         * 判断进度连续时允许的误差，单位秒
+         */
+        public static final int POSITION_TOLERANCE = 1;
+
         public int mMediaType;
         public int mState;
         public int mPosition;
         public int mDuration;
 
+        /**
+         * mPosition 对应的时间点，{@link SystemClock#elapsedRealtime()}
+         */
+        public long mTimestamp;
+
+        /**
+         * 播放速率，播放状态为1，其他状态为0
+         */
+        public float mPlayRate;
+
         /**
          * 默认构造函数
          */
         public MediaState() {
             mMediaType = Type.NONE;
+            mTimestamp = SystemClock.elapsedRealtime();
         }
 
         /**
@@ -522,6 +627,8 @@ public class IVIMedia {
             mState = state;
             mPosition = position;
             mDuration = duration;
+            mTimestamp = SystemClock.elapsedRealtime();
+            mPlayRate = (state == PLAYING) ? 1.0f : 0.0f;
         }
 
         /**
@@ -532,6 +639,44 @@ public class IVIMedia {
             return mMediaType != Type.NONE;
         }
 
+        /**
+         * 获取指定时间点的播放进度，通过 mPosition 和播放速率推算
+         * @param timestamp 时间点，{@link SystemClock#elapsedRealtime()}
+         * @return 播放进度，单位秒，不会超过总时间
+         */
+        public int getPositionAt(long timestamp) {
+            if (mPlayRate == 0 || timestamp <= mTimestamp) {
+                return mPosition;
+            }
+            int position = mPosition + (int) ((timestamp - mTimestamp) * mPlayRate / 1000);
+            if (mDuration > 0 && position > mDuration) {
+                position = mDuration;
+            }
+            return position;
+        }
+
+        /**
+         * 获取当前的播放进度，媒体服务只在播放状态、进度跳转、切换歌曲时更新 MediaState，
+         * 显示进度的界面需要自己定时调用该方法刷新
+         * @return 播放进度，单位秒
+         */
+        public int getCurrentPosition() {
+            return getPositionAt(SystemClock.elapsedRealtime());
+        }
+
+        /**
+         * 判断该状态是否可以由上一个状态推算出来，可以推算的状态不需要再通知
+         * @param last 上一个状态
+         * @return 类型、状态、总时间相同，并且进度和推算的进度误差在 {@link #POSITION_TOLERANCE} 内返回true
+         */
+        public boolean isContinuousWith(MediaState last) {
+            return last != null &&
+                    last.mMediaType == mMediaType &&
+                    last.mState == mState &&
+                    last.mDuration == mDuration &&
+                    Math.abs(mPosition - last.getPositionAt(mTimestamp)) <= POSITION_TOLERANCE;
+        }
+
         /**
          * 当前是否是播放状态
          * @return 播放状态返回true，其他返回false
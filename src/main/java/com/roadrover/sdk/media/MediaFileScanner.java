@@ -0,0 +1,310 @@
+package com.roadrover.sdk.media;
+
+import android.text.TextUtils;
+
+import com.roadrover.sdk.system.IVIConfig;
+import com.roadrover.sdk.utils.Logcat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端的盘符快速扫描类，在 {@link MediaManager.EventMount} 之后，不等服务扫描完成就可以先拿到文件列表 </br>
+ * 1. 多个线程从同一个目录队列中取目录并行遍历，新发现的子目录放到队头，优先深度遍历 </br>
+ * 2. 按 {@link IVIConfig#getMusicFormats()} 等配置的后缀过滤文件，每个目录扫描完成就回调一次 </br>
+ * 3. 上次播放的目录最先扫描，扫描完成后通过 onPriorityDirScanned 通知，应用可以马上恢复播放 </br>
+ * <b>回调在扫描线程执行，不能直接刷新UI</b></br>
+ */
+public class MediaFileScanner {
+
+    /**
+     * 记忆配置 {@link IVIConfig#getMemoryPackageNameString()} 中表示上次播放文件的参数名，必须是最后一个参数，
+     * 例：com.roadrover.music/path:/storage/udisk0/music/a.mp3
+     */
+    public static final String MEMORY_PATH_EXTRA = "path";
+
+    /**
+     * 最大扫描线程数
+     */
+    private static final int MAX_THREADS = 4;
+
+    /**
+     * 空闲线程等待新目录的时间，单位毫秒
+     */
+    private static final int POLL_TIMEOUT = 20;
+
+    /**
+     * 扫描结果的回调
+     */
+    public interface Listener {
+        /**
+         * 扫描到一个目录下的媒体文件
+         * @param root 扫描的盘符
+         * @param sqlType 文件类型 {@link IVIMedia.MediaSqlDataType}
+         * @param paths 文件路径列表
+         */
+        void onFound(String root, int sqlType, List<String> paths);
+
+        /**
+         * 上次播放的目录已经扫描完成
+         * @param root 扫描的盘符
+         * @param dir 上次播放的目录
+         */
+        void onPriorityDirScanned(String root, String dir);
+
+        /**
+         * 整个盘符扫描完成
+         * @param root 扫描的盘符
+         * @param count 扫描到的媒体文件总数
+         * @param cancelled 是否被取消
+         */
+        void onFinish(String root, int count, boolean cancelled);
+    }
+
+    private final Map<String, Integer> mFormats = new HashMap<>();
+    private final ExecutorService mExecutor;
+    private final int mThreads;
+    private final List<AtomicBoolean> mCancelFlags = new ArrayList<>();
+
+    /**
+     * 构造函数，使用配置文件中的音乐、视频、图片格式
+     */
+    public MediaFileScanner() {
+        addFormats(IVIConfig.getMusicFormats(), IVIMedia.MediaSqlDataType.AUDIO_TYPE);
+        addFormats(IVIConfig.getVideoFormats(), IVIMedia.MediaSqlDataType.VIDEO_TYPE);
+        addFormats(IVIConfig.getImageFormats(), IVIMedia.MediaSqlDataType.IMAGE_TYPE);
+
+        final int processors = Runtime.getRuntime().availableProcessors();
+        mThreads = Math.max(2, Math.min(MAX_THREADS, processors));
+        mExecutor = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * 获取记忆配置中上次播放文件所在的目录
+     * @return 没有配置返回null
+     */
+    public static String getMemoryDir() {
+        return getMemoryDir(IVIConfig.getMemoryPackageNameString());
+    }
+
+    /**
+     * 从记忆配置中解析上次播放文件所在的目录，路径中带有 /，不能通过 {@link IVIConfig.MemoryPackageName} 解析
+     * @param config 例：com.roadrover.music/path:/storage/udisk0/music/a.mp3
+     * @return 路径为目录时返回该目录，否则返回所在的目录，没有 path 参数返回null
+     */
+    static String getMemoryDir(String config) {
+        if (config == null) {
+            return null;
+        }
+        final String key = "/" + MEMORY_PATH_EXTRA + ":";
+        final int index = config.indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        final String path = config.substring(index + key.length()).trim();
+        if (path.length() == 0) {
+            return null;
+        }
+        File file = new File(path);
+        return file.isDirectory() ? file.getPath() : file.getParent();
+    }
+
+    /**
+     * 扫描盘符，优先扫描记忆配置中上次播放的目录
+     * @param root 盘符路径，例：/storage/udisk0
+     * @param listener 结果回调
+     */
+    public void scan(String root, Listener listener) {
+        scan(root, getMemoryDir(), listener);
+    }
+
+    /**
+     * 扫描盘符
+     * @param root 盘符路径，例：/storage/udisk0
+     * @param priorityDir 需要最先扫描的目录，一般为上次播放的目录，不在 root 下面、等于 root 或者为空则忽略
+     * @param listener 结果回调
+     */
+    public void scan(String root, String priorityDir, final Listener listener) {
+        if (TextUtils.isEmpty(root) || listener == null) {
+            return;
+        }
+
+        // 去掉末尾和重复的分隔符，保证和遍历得到的目录路径可以直接比较
+        root = new File(root).getPath();
+        if (!TextUtils.isEmpty(priorityDir)) {
+            priorityDir = new File(priorityDir).getPath();
+            final String prefix = root.endsWith(File.separator) ? root : root + File.separator;
+            if (!priorityDir.startsWith(prefix)) {
+                priorityDir = null; // 等于 root 或者不在 root 下面，例：root 为 /mnt/usb 时的 /mnt/usb2
+            }
+        } else {
+            priorityDir = null;
+        }
+
+        final Walk walk = new Walk(root, priorityDir, listener);
+        synchronized (mCancelFlags) {
+            mCancelFlags.add(walk.mCancel);
+        }
+        try {
+            for (int i = 0; i < mThreads; ++i) {
+                mExecutor.execute(walk);
+            }
+        } catch (Exception e) {
+            Logcat.e("scan " + root + " failed, " + e);
+        }
+    }
+
+    /**
+     * 取消所有正在进行的扫描，一般在盘符卸载的时候调用
+     */
+    public void cancel() {
+        synchronized (mCancelFlags) {
+            for (AtomicBoolean flag : mCancelFlags) {
+                flag.set(true);
+            }
+        }
+    }
+
+    /**
+     * 释放资源，释放之后该对象不能再使用
+     */
+    public void release() {
+        cancel();
+        mExecutor.shutdownNow();
+    }
+
+    private void addFormats(String[] formats, int sqlType) {
+        if (formats != null) {
+            for (String format : formats) {
+                if (!TextUtils.isEmpty(format)) {
+                    mFormats.put(format.trim().toLowerCase(Locale.US), sqlType);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取文件的类型
+     * @return 不需要的文件返回 {@link IVIMedia.MediaSqlDataType#UNKNOWN_TYPE}
+     */
+    private int getSqlType(String name) {
+        final int index = name.lastIndexOf('.');
+        if (index > 0 && index < name.length() - 1) {
+            Integer type = mFormats.get(name.substring(index + 1).toLowerCase(Locale.US));
+            if (type != null) {
+                return type;
+            }
+        }
+        return IVIMedia.MediaSqlDataType.UNKNOWN_TYPE;
+    }
+
+    /**
+     * 一次盘符扫描，所有扫描线程共享同一个目录队列
+     */
+    private class Walk implements Runnable {
+        private final String mRoot;
+        private final String mPriorityDir;
+        private final Listener mListener;
+        private final LinkedBlockingDeque<String> mDirs = new LinkedBlockingDeque<>();
+        private final AtomicInteger mPending = new AtomicInteger(0); // 已入队还没有遍历完成的目录数
+        private final AtomicInteger mRunning;
+        private final AtomicInteger mCount = new AtomicInteger(0);
+        private final AtomicBoolean mCancel = new AtomicBoolean(false);
+
+        Walk(String root, String priorityDir, Listener listener) {
+            mRoot = root;
+            mPriorityDir = priorityDir;
+            mListener = listener;
+            mRunning = new AtomicInteger(mThreads);
+            if (priorityDir != null) {
+                push(priorityDir);
+            }
+            mDirs.addLast(root);
+            mPending.incrementAndGet();
+        }
+
+        private void push(String dir) {
+            mPending.incrementAndGet();
+            mDirs.addFirst(dir);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!mCancel.get() && mPending.get() > 0) {
+                    String dir = mDirs.pollFirst(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (dir != null) {
+                        try {
+                            walk(dir);
+                        } finally {
+                            mPending.decrementAndGet();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                mCancel.set(true);
+            } finally {
+                if (mRunning.decrementAndGet() == 0) {
+                    synchronized (mCancelFlags) {
+                        mCancelFlags.remove(mCancel);
+                    }
+                    Logcat.d(mRoot + " count:" + mCount.get() + " cancelled:" + mCancel.get());
+                    mListener.onFinish(mRoot, mCount.get(), mCancel.get());
+                }
+            }
+        }
+
+        private void walk(String dir) {
+            File[] files = new File(dir).listFiles();
+            if (files != null) {
+                Map<Integer, List<String>> found = null;
+                for (File file : files) {
+                    final String name = file.getName();
+                    if (name.startsWith(".")) { // 隐藏文件和目录不扫描
+                        continue;
+                    }
+                    if (file.isDirectory()) {
+                        final String path = file.getPath();
+                        if (!TextUtils.equals(path, mPriorityDir) && !"LOST.DIR".equals(name)) {
+                            push(path);
+                        }
+                    } else {
+                        final int type = getSqlType(name);
+                        if (type != IVIMedia.MediaSqlDataType.UNKNOWN_TYPE) {
+                            if (found == null) {
+                                found = new HashMap<>();
+                            }
+                            List<String> paths = found.get(type);
+                            if (paths == null) {
+                                paths = new ArrayList<>();
+                                found.put(type, paths);
+                            }
+                            paths.add(file.getPath());
+                        }
+                    }
+                }
+
+                if (found != null && !mCancel.get()) {
+                    for (Map.Entry<Integer, List<String>> entry : found.entrySet()) {
+                        mCount.addAndGet(entry.getValue().size());
+                        mListener.onFound(mRoot, entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+
+            if (TextUtils.equals(dir, mPriorityDir)) {
+                mListener.onPriorityDirScanned(mRoot, dir);
+            }
+        }
+    }
+}
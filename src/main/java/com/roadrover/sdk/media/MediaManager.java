@@ -2,11 +2,13 @@ package com.roadrover.sdk.media;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.Build;
 import android.os.IBinder;
 import android.os.RemoteException;
 import android.text.TextUtils;
 
 import com.roadrover.sdk.BaseManager;
+import com.roadrover.sdk.system.IVIConfig;
 import com.roadrover.sdk.utils.LogNameUtil;
 import com.roadrover.services.media.IGetMediaListCallback;
 import com.roadrover.services.media.IMedia;
@@ -70,6 +72,22 @@ public class MediaManager extends BaseManager {
     private int mMediaType = IVIMedia.Type.NONE; // 记录 mediaType，如果服务挂掉了，重新open
     private int mMediaZone = IVIMedia.Zone.UNKNOWN;
 
+    // 上一次 setMediaInfo 发送的数据，用于过滤重复的媒体信息和专辑图片
+    private IVIMedia.MediaInfo mLastMediaInfo = null;
+    private Bitmap mLastArtBitmap = null;
+    private int mLastArtGenerationId = 0;
+    private IVIMedia.ArtImage mLastArtImage = null;
+    private MediaPrefetcher mMediaPrefetcher = null;
+
+    // 上一次通过 setMediaState 发送给服务的状态，进度可以推算出来时不再发送
+    private IVIMedia.MediaState mLastMediaState = null;
+    private final boolean mNeedMediaPlayTime = IVIConfig.getNeedMediaPlayTime();
+
+    /**
+     * 播放中不发送 setMediaState 的最长时间，单位毫秒，防止推算的进度和实际进度偏差太久
+     */
+    private static final int MEDIA_STATE_SYNC_TIME = 30 * 1000;
+
     /**
      * 媒体扫描回调的接口类
      */
@@ -616,6 +634,19 @@ public class MediaManager extends BaseManager {
         mMediaControlListener = null;
         mGetAllMediaListCallback = null;
         mAppGetAllMediaListCallback = null;
+        mLastMediaInfo = null;
+        mLastArtBitmap = null;
+        mLastArtImage = null;
+        mLastMediaState = null;
+        mLocalMediaListCallbackMaps = null;
+        if (mMediaTagExtractor != null) {
+            mMediaTagExtractor.release();
+            mMediaTagExtractor = null;
+        }
+        if (mMediaPrefetcher != null) {
+            mMediaPrefetcher.release();
+            mMediaPrefetcher = null;
+        }
     }
 
     @Override
@@ -626,6 +657,8 @@ public class MediaManager extends BaseManager {
     @Override
     protected void onServiceConnected(IBinder service) {
         mMediaInterface = IMedia.Stub.asInterface(service);
+        mLastMediaInfo = null; // 服务可能重启过，媒体信息需要重新发送
+        mLastMediaState = null;
         registerScannerCallback();
 
         if (mMediaInfoListeners != null) {
@@ -860,6 +893,44 @@ public class MediaManager extends BaseManager {
         }
     };
 
+    /**
+     * 在客户端本地获取指定目录下(包含子目录)所有音频的ID3信息，不依赖服务的解析</br>
+     * 1) 文件没有变化的，直接从本地缓存 {@link MediaTagCache} 一次性返回</br>
+     * 2) 其他文件按盘符限制并发数进行解析，每解析 {@link MediaTagExtractor#BATCH_SIZE} 个通过 onProgress 返回</br>
+     * 3) 最后剩余的数据通过 onFinish 返回，U盘重新插入时，未修改的文件不需要再次解析</br>
+     * <b>注：文件列表来自媒体数据库，需要在onScanFinish回调之后调用</b></br>
+     * @param startWithPath 获取的路径，例：/mnt/sdcard/，为空表示全部
+     * @param callback 回调监听结果返回，在主线程回调
+     */
+    public void getLocalMediaList(String startWithPath, IGetMediaListCallback.Stub callback) {
+        if (mContext == null || mLocalMediaListCallbackMaps == null) {
+            return;
+        }
+
+        final String path = (startWithPath == null) ? "" : startWithPath;
+        mLocalMediaListCallbackMaps.put(path, callback);
+        if (mMediaTagExtractor == null) {
+            mMediaTagExtractor = new MediaTagExtractor(mContext);
+        }
+        mMediaTagExtractor.extract(path, null, new MediaTagExtractor.Listener() {
+            @Override
+            public void onProgress(List<StMusic> musics, String path) {
+                post(new EventGetMediaListCallback(EventGetMediaListCallback.PROGRESS_TYPE,
+                        EventGetMediaListCallback.GET_LOCAL_MEDIA, musics, path));
+            }
+
+            @Override
+            public void onFinish(List<StMusic> musics, String path) {
+                post(new EventGetMediaListCallback(EventGetMediaListCallback.FINISH_TYPE,
+                        EventGetMediaListCallback.GET_LOCAL_MEDIA, musics, path));
+            }
+        });
+    }
+
+    // 客户端本地获取媒体列表的回调，key为请求的路径
+    private Map<String, IGetMediaListCallback.Stub> mLocalMediaListCallbackMaps = new HashMap<>();
+    private MediaTagExtractor mMediaTagExtractor = null;
+
     /**
      * 获取媒体的ID3信息列表的Event类
      */
@@ -885,6 +956,11 @@ public class MediaManager extends BaseManager {
          * 获取当前目录以及所有子目录，调用 getAllMediaList 接口
          */
         public static final int GET_APP_MEDIA    = 1;
+
+        /**
+         * 客户端本地解析，调用 getLocalMediaList 接口
+         */
+        public static final int GET_LOCAL_MEDIA  = 2;
         public int mUserType;
 
         /**
@@ -937,6 +1013,12 @@ public class MediaManager extends BaseManager {
                             }
                         }
                         break;
+
+                    case EventGetMediaListCallback.GET_LOCAL_MEDIA: // 客户端本地解析的媒体
+                        if (mLocalMediaListCallbackMaps != null) {
+                            callback = mLocalMediaListCallbackMaps.get(event.mPath == null ? "" : event.mPath);
+                        }
+                        break;
                 }
 
                 switch (event.mType) {
@@ -962,6 +1044,11 @@ public class MediaManager extends BaseManager {
                                 }
                             }
                         }
+
+                        if (event.mUserType == EventGetMediaListCallback.GET_LOCAL_MEDIA &&
+                                mLocalMediaListCallbackMaps != null) {
+                            mLocalMediaListCallbackMaps.remove(event.mPath == null ? "" : event.mPath);
+                        }
                         break;
                 }
             } catch (RemoteException e) {
@@ -1145,6 +1232,7 @@ public class MediaManager extends BaseManager {
      */
     public void open(int mediaType) {
         mMediaType = mediaType;
+        mLastMediaInfo = null; // 期间其他应用可能占用过媒体，重新打开之后媒体信息需要重新发送
         if (mMediaInterface != null) {
             try {
                 mMediaInterface.open(mediaType, mMediaControlCallback, mContext.getPackageName());
@@ -1204,10 +1292,28 @@ public class MediaManager extends BaseManager {
      * @param popup 是否弹出媒体信息小窗口，一般在上下曲的时候为true，其他为false
      */
     public void setMediaInfo(int mediaType, String name, String info, Bitmap artImage, int index, int totalCount, boolean popup) {
+        if (mMediaPrefetcher != null) {
+            mMediaPrefetcher.onMediaInfo(index, totalCount);
+        }
+
         if (mMediaInterface != null) {
             try {
-                IVIMedia.ArtImage image = new IVIMedia.ArtImage(artImage);
+                IVIMedia.ArtImage image = getArtImage(artImage);
+                IVIMedia.MediaInfo mediaInfo = new IVIMedia.MediaInfo();
+                mediaInfo.mMediaType = mediaType;
+                mediaInfo.mName = name;
+                mediaInfo.mInfo = info;
+                mediaInfo.mArtImage = image;
+                mediaInfo.mIndex = index;
+                mediaInfo.mTotalCount = totalCount;
+                mediaInfo.mPopup = popup;
+                if (!popup && mediaInfo.equals(mLastMediaInfo) && mediaInfo.mTotalCount == mLastMediaInfo.mTotalCount) {
+                    // 和上一次发送的信息完全相同，服务端已经有该数据，不再重复传输图片
+                    return;
+                }
+
                 mMediaInterface.setMediaInfo(mediaType, name, info, image.mWidth, image.mHeight, image.mPixels, index, totalCount, popup);
+                mLastMediaInfo = mediaInfo;
             } catch (RemoteException e) {
                 e.printStackTrace();
             }
@@ -1215,15 +1321,72 @@ public class MediaManager extends BaseManager {
     }
 
     /**
-     * 设置当前播放状态
+     * 将 Bitmap 转换成传输用的 ArtImage，同一张未修改过的 Bitmap 直接复用上一次转换的结果，不再重复缩放和拷贝像素 </br>
+     * 是否修改过通过 getGenerationId 判断，API 12 以下不能判断，每次都重新转换
+     * @param artImage 专辑图片
+     * @return
+     */
+    private IVIMedia.ArtImage getArtImage(Bitmap artImage) {
+        final boolean canReuse = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1;
+        if (canReuse && artImage != null && artImage == mLastArtBitmap && !artImage.isRecycled() &&
+                artImage.getGenerationId() == mLastArtGenerationId && mLastArtImage != null) {
+            return mLastArtImage;
+        }
+
+        IVIMedia.ArtImage image = new IVIMedia.ArtImage(artImage);
+        if (canReuse) {
+            mLastArtBitmap = artImage;
+            mLastArtGenerationId = (artImage != null) ? artImage.getGenerationId() : 0;
+            mLastArtImage = image;
+        }
+        return image;
+    }
+
+    /**
+     * 设置预读的播放列表，设置之后 setMediaInfo 和 setMediaState 会驱动预读上一曲和下一曲 </br>
+     * 预读的数据和专辑图片通过 {@link #getMediaPrefetcher()} 获取
+     * @param paths 播放列表的文件路径，传null清空
+     * @param indexBase 列表第一个文件对应 setMediaInfo 的 index，例：index 从1开始，传1
+     */
+    public void setPrefetchPlaylist(List<String> paths, int indexBase) {
+        if (mMediaPrefetcher == null) {
+            mMediaPrefetcher = new MediaPrefetcher();
+        }
+        mMediaPrefetcher.setPlaylist(paths, indexBase);
+    }
+
+    /**
+     * 获取播放列表预读对象
+     * @return 没有调用过 {@link #setPrefetchPlaylist(List, int)} 返回null
+     */
+    public MediaPrefetcher getMediaPrefetcher() {
+        return mMediaPrefetcher;
+    }
+
+    /**
+     * 设置当前播放状态 </br>
+     * 播放过程中进度连续变化时不再发送给服务，只有状态改变、进度跳转、总时间改变时才发送，
+     * 接收端通过 {@link IVIMedia.MediaState#getCurrentPosition()} 推算当前进度 </br>
+     * 配置文件 needPlayTime 为 true 时，每次调用都会发送 </br>
      * @param playState {@link IVIMedia.MediaState}
      * @param position 当前播放进度 （单位秒）
      * @param duration 总时间 (单位秒）
      */
     public void setMediaState(int mediaType, int playState, int position, int duration) {
+        if (mMediaPrefetcher != null) {
+            mMediaPrefetcher.onMediaState(playState);
+        }
+
         if (mMediaInterface != null) {
             try {
+                IVIMedia.MediaState mediaState = new IVIMedia.MediaState(mediaType, playState, position, duration);
+                if (!mNeedMediaPlayTime && mediaState.isContinuousWith(mLastMediaState) &&
+                        mediaState.mTimestamp - mLastMediaState.mTimestamp < MEDIA_STATE_SYNC_TIME) {
+                    return;
+                }
+
                 mMediaInterface.setMediaState(mediaType, playState, position, duration);
+                mLastMediaState = mediaState;
             } catch (RemoteException e) {
                 e.printStackTrace();
             }
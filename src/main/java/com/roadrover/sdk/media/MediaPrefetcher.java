@@ -0,0 +1,383 @@
+package com.roadrover.sdk.media;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+
+import com.roadrover.sdk.system.IVIConfig;
+import com.roadrover.sdk.utils.ListUtils;
+import com.roadrover.sdk.utils.Logcat;
+
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 播放列表预读类，U盘上切换歌曲时第一次读文件需要等待磁盘寻道和唤醒，提前把上一曲和下一曲读到内存 </br>
+ * 1. 应用通过 {@link MediaManager#setPrefetchPlaylist(List, int)} 设置播放列表 </br>
+ * 2. {@link MediaManager#setMediaInfo} 的 index 变化或者进入播放状态时，后台线程读取上一曲和下一曲的文件头，
+ *    同时读取文件末尾的少量数据，并解码专辑图片 </br>
+ * 3. 预读的数据放在固定个数的缓冲区中，缓冲区个数和大小由 {@link IVIConfig#getMediaPrefetchBufferCount(int)}
+ *    和 {@link IVIConfig#getMediaPrefetchBufferSize(int)} 配置 </br>
+ * 4. 停止播放时释放预读的数据，缓冲区保留复用 </br>
+ */
+public class MediaPrefetcher {
+
+    /**
+     * 默认的缓冲区个数，上一曲和下一曲各一个，另外两个用于切歌过程中的交替
+     */
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+
+    /**
+     * 默认每个缓冲区的大小，单位KB
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    /**
+     * 文件末尾预读的大小，部分mp4/m4a文件的索引和id3v1信息在文件末尾
+     */
+    private static final int TAIL_SIZE = 16 * 1024;
+
+    /**
+     * 专辑图片缓存的最大字节数
+     */
+    private static final int ART_CACHE_MAX_BYTES = IVIMedia.ArtImage.CACHE_MAX_BYTES;
+
+    private final int mBufferCount;
+    private final int mBufferSize;
+
+    private final ArrayDeque<byte[]> mFreeBuffers = new ArrayDeque<>();
+    private final Map<String, Prefetched> mPrefetched = new HashMap<>();
+    private int mAllocatedCount = 0;
+    private byte[] mTailBuffer = null; // 只在预读线程中使用，读取文件末尾时复用
+
+    private final LruCache<String, Bitmap> mArtCache = new LruCache<String, Bitmap>(ART_CACHE_MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger mGeneration = new AtomicInteger(0);
+
+    private List<String> mPlaylist = new ArrayList<>();
+    private int mIndexBase = 0;
+    private int mIndex = -1;
+    private int mState = IVIMedia.MediaState.STOPPED;
+
+    /**
+     * 预读的一个文件
+     */
+    private static class Prefetched {
+        byte[] mBuffer;
+        int mLength;
+    }
+
+    /**
+     * 构造函数，缓冲区个数和大小从配置文件读取
+     */
+    public MediaPrefetcher() {
+        int count = IVIConfig.getMediaPrefetchBufferCount(DEFAULT_BUFFER_COUNT);
+        int size = IVIConfig.getMediaPrefetchBufferSize(DEFAULT_BUFFER_SIZE);
+        mBufferCount = count > 0 ? count : DEFAULT_BUFFER_COUNT;
+        mBufferSize = (size > 0 ? size : DEFAULT_BUFFER_SIZE) * 1024;
+    }
+
+    /**
+     * 设置播放列表
+     * @param paths 文件路径列表
+     * @param indexBase 列表第一个文件对应的 index，例：setMediaInfo 的 index 从1开始，传1
+     */
+    public synchronized void setPlaylist(List<String> paths, int indexBase) {
+        mPlaylist = (paths != null) ? new ArrayList<>(paths) : new ArrayList<String>();
+        mIndexBase = indexBase;
+        mIndex = -1;
+        releasePrefetched(null);
+    }
+
+    /**
+     * 当前播放的歌曲变化，一般在 setMediaInfo 中调用
+     * @param index 当前第几首
+     * @param totalCount 总歌曲数，和播放列表个数不一致时说明列表已经变化，不预读
+     */
+    public void onMediaInfo(int index, int totalCount) {
+        synchronized (this) {
+            if (index == mIndex) {
+                return;
+            }
+            mIndex = index;
+            if (totalCount != mPlaylist.size()) {
+                Logcat.w("playlist size " + mPlaylist.size() + " not match totalCount " + totalCount);
+                return;
+            }
+        }
+        prefetch();
+    }
+
+    /**
+     * 播放状态变化，一般在 setMediaState 中调用
+     * @param state {@link IVIMedia.MediaState}
+     */
+    public void onMediaState(int state) {
+        final int lastState;
+        synchronized (this) {
+            lastState = mState;
+            mState = state;
+        }
+        if (state == lastState) {
+            return;
+        }
+
+        if (state == IVIMedia.MediaState.PLAYING) {
+            prefetch();
+        } else if (state == IVIMedia.MediaState.STOPPED) {
+            mGeneration.incrementAndGet();
+            synchronized (this) {
+                releasePrefetched(null);
+            }
+        }
+    }
+
+    /**
+     * 获取预读的文件头数据的长度
+     * @param path 文件路径
+     * @return 没有预读返回-1
+     */
+    public synchronized int getPrefetchedLength(String path) {
+        Prefetched prefetched = mPrefetched.get(path);
+        return (prefetched != null) ? prefetched.mLength : -1;
+    }
+
+    /**
+     * 读取预读的文件头数据，播放器可以先从这里读取，避免切歌时的磁盘等待 </br>
+     * 参数和 MediaDataSource.readAt 一致，只拷贝调用者需要的部分到调用者的缓冲区，预读的缓冲区不会交给调用者
+     * @param path 文件路径
+     * @param position 文件中的位置
+     * @param buffer 调用者的缓冲区
+     * @param offset 写入 buffer 的起始位置
+     * @param size 需要读取的字节数
+     * @return 读取的字节数，没有预读或者 position 超出预读的范围返回-1，调用者需要从文件读取
+     */
+    public synchronized int readPrefetchedData(String path, long position, byte[] buffer, int offset, int size) {
+        Prefetched prefetched = mPrefetched.get(path);
+        if (prefetched == null || buffer == null || position < 0 || position >= prefetched.mLength) {
+            return -1;
+        }
+        final int count = (int) Math.min(Math.min(size, buffer.length - offset), prefetched.mLength - position);
+        if (count <= 0) {
+            return 0;
+        }
+        System.arraycopy(prefetched.mBuffer, (int) position, buffer, offset, count);
+        return count;
+    }
+
+    /**
+     * 获取预先解码好的专辑图片
+     * @param path 文件路径
+     * @return 没有预读或者文件没有专辑图片返回null，<b>图片为共享对象，不能 recycle</b>
+     */
+    public Bitmap getArtBitmap(String path) {
+        if (TextUtils.isEmpty(path)) {
+            return null;
+        }
+        return mArtCache.get(path);
+    }
+
+    /**
+     * 释放资源，释放之后该对象不能再使用
+     */
+    public void release() {
+        mGeneration.incrementAndGet();
+        mExecutor.shutdownNow();
+        synchronized (this) {
+            releasePrefetched(null);
+            mFreeBuffers.clear();
+            mAllocatedCount = 0;
+        }
+        mArtCache.evictAll();
+    }
+
+    /**
+     * 根据当前的 index 预读上一曲和下一曲
+     */
+    private void prefetch() {
+        final List<String> targets = new ArrayList<>();
+        final String current;
+        synchronized (this) {
+            if (mState != IVIMedia.MediaState.PLAYING || ListUtils.isEmpty(mPlaylist)) {
+                return;
+            }
+            final int position = mIndex - mIndexBase;
+            final int size = mPlaylist.size();
+            if (position < 0 || position >= size) {
+                return;
+            }
+            addTarget(targets, mPlaylist.get((position + 1) % size));
+            addTarget(targets, mPlaylist.get((position - 1 + size) % size));
+            current = mPlaylist.get(position);
+            targets.remove(current);
+
+            // 当前歌曲的预读数据播放器可能正在使用，保留到下一次切歌
+            List<String> keeps = new ArrayList<>(targets);
+            keeps.add(current);
+            releasePrefetched(keeps);
+        }
+
+        final int generation = mGeneration.incrementAndGet();
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!TextUtils.isEmpty(current)) { // 当前歌曲已经在播放，只需要保证专辑图片
+                        warmArt(current);
+                    }
+                    for (String path : targets) {
+                        if (generation != mGeneration.get()) {
+                            return;
+                        }
+                        readAhead(path, generation);
+                        warmArt(path);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            Logcat.e("prefetch failed, " + e);
+        }
+    }
+
+    private static void addTarget(List<String> targets, String path) {
+        if (!TextUtils.isEmpty(path) && !targets.contains(path)) {
+            targets.add(path);
+        }
+    }
+
+    /**
+     * 释放不需要的预读数据，缓冲区放回空闲列表
+     * @param keeps 需要保留的文件，为null表示全部释放
+     */
+    private void releasePrefetched(List<String> keeps) {
+        Iterator<Map.Entry<String, Prefetched>> iterator = mPrefetched.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Prefetched> entry = iterator.next();
+            if (keeps == null || !keeps.contains(entry.getKey())) {
+                mFreeBuffers.push(entry.getValue().mBuffer);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 获取一个空闲缓冲区
+     * @return 缓冲区已经全部使用返回null
+     */
+    private synchronized byte[] obtainBuffer() {
+        if (!mFreeBuffers.isEmpty()) {
+            return mFreeBuffers.pop();
+        }
+        if (mAllocatedCount < mBufferCount) {
+            ++mAllocatedCount;
+            return new byte[mBufferSize];
+        }
+        return null;
+    }
+
+    private void readAhead(String path, int generation) {
+        synchronized (this) {
+            if (mPrefetched.containsKey(path)) {
+                return;
+            }
+        }
+
+        byte[] buffer = obtainBuffer();
+        if (buffer == null) {
+            Logcat.w("no free buffer for " + path);
+            return;
+        }
+
+        int length = 0;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(path, "r");
+            final long fileLength = file.length();
+            int read;
+            while (length < buffer.length && (read = file.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+
+            if (fileLength > length + TAIL_SIZE) { // 只读取到系统缓存，不保存
+                if (mTailBuffer == null) {
+                    mTailBuffer = new byte[TAIL_SIZE];
+                }
+                file.seek(fileLength - TAIL_SIZE);
+                file.readFully(mTailBuffer);
+            }
+        } catch (Exception e) {
+            Logcat.w(path + " read ahead failed, " + e);
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (length > 0 && generation == mGeneration.get() && !mPrefetched.containsKey(path)) {
+                Prefetched prefetched = new Prefetched();
+                prefetched.mBuffer = buffer;
+                prefetched.mLength = length;
+                mPrefetched.put(path, prefetched);
+            } else {
+                mFreeBuffers.push(buffer);
+            }
+        }
+    }
+
+    private void warmArt(String path) {
+        if (mArtCache.get(path) != null) {
+            return;
+        }
+
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(path);
+            byte[] picture = retriever.getEmbeddedPicture();
+            if (picture != null) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+                int sampleSize = 1;
+                while (options.outWidth / (sampleSize * 2) >= IVIMedia.ArtImage.MAX_SIZE &&
+                        options.outHeight / (sampleSize * 2) >= IVIMedia.ArtImage.MAX_SIZE) {
+                    sampleSize *= 2;
+                }
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = sampleSize;
+                Bitmap bitmap = BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+                if (bitmap != null) {
+                    mArtCache.put(path, bitmap);
+                }
+            }
+        } catch (Exception e) {
+            Logcat.w(path + " warm art failed, " + e);
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
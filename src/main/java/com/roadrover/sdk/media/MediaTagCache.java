@@ -0,0 +1,198 @@
+package com.roadrover.sdk.media;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import com.roadrover.sdk.utils.ListUtils;
+import com.roadrover.sdk.utils.Logcat;
+import com.roadrover.services.media.StMusic;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 媒体 id3 信息的本地持久化缓存 </br>
+ * 以 (路径, 文件大小, 修改时间) 作为 key，文件没有变化时直接使用缓存的 id3 信息，U盘重新插入时不需要再次解析 </br>
+ * 数据保存在应用私有目录的数据库中 </br>
+ */
+public class MediaTagCache extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "media_tag_cache.db";
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE_NAME = "tbl_media_tag";
+    private static final String PATH     = "path";
+    private static final String SIZE     = "size";
+    private static final String MTIME    = "mtime";
+    private static final String TRACK    = "track";
+    private static final String ALBUM    = "album";
+    private static final String ARTIST   = "artist";
+    private static final String NAME     = "name";
+    private static final String DURATION = "duration";
+
+    private static MediaTagCache sInstance = null;
+
+    /**
+     * 缓存的一条记录
+     */
+    public static class Entry {
+        public long mSize;
+        public long mModifiedTime;
+        public StMusic mMusic;
+
+        /**
+         * 判断记录对应的文件是否没有变化
+         * @param file 当前的文件
+         * @return 大小和修改时间都相同返回true
+         */
+        public boolean isValid(File file) {
+            return file != null && file.length() == mSize && file.lastModified() == mModifiedTime;
+        }
+    }
+
+    /**
+     * 获取缓存对象，进程内唯一
+     * @param context 上下文
+     * @return
+     */
+    public static synchronized MediaTagCache getInstance(Context context) {
+        if (sInstance == null && context != null) {
+            sInstance = new MediaTagCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private MediaTagCache(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NAME + " (" +
+                PATH + " TEXT PRIMARY KEY, " +
+                SIZE + " INTEGER, " +
+                MTIME + " INTEGER, " +
+                TRACK + " TEXT, " +
+                ALBUM + " TEXT, " +
+                ARTIST + " TEXT, " +
+                NAME + " TEXT, " +
+                DURATION + " INTEGER)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+        onCreate(db);
+    }
+
+    /**
+     * 一次性读取指定目录下所有的缓存记录
+     * @param startWithPath 目录，例：/storage/udisk0，为空表示读取全部
+     * @return 以路径为 key 的记录表
+     */
+    public synchronized Map<String, Entry> query(String startWithPath) {
+        Map<String, Entry> entries = new HashMap<>();
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = getReadableDatabase();
+            String selection = null;
+            String[] selectionArgs = null;
+            if (!TextUtils.isEmpty(startWithPath)) {
+                selection = PATH + " like ?";
+                selectionArgs = new String[]{startWithPath + "%"};
+            }
+            cursor = db.query(TABLE_NAME, new String[]{PATH, SIZE, MTIME, TRACK, ALBUM, ARTIST, NAME, DURATION},
+                    selection, selectionArgs, null, null, null);
+            if (cursor != null) {
+                while (cursor.moveToNext()) { // 列的顺序和上面查询的顺序一致
+                    Entry entry = new Entry();
+                    entry.mSize = cursor.getLong(1);
+                    entry.mModifiedTime = cursor.getLong(2);
+                    entry.mMusic = StMusic.createStMusic(cursor.getString(0),
+                            getString(cursor, 3), getString(cursor, 4), getString(cursor, 5),
+                            getString(cursor, 6), cursor.getLong(7));
+                    entries.put(entry.mMusic.mPath, entry);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 批量写入解析到的 id3 信息，在一个事务中完成
+     * @param musics id3 信息列表
+     */
+    public synchronized void put(List<StMusic> musics) {
+        if (ListUtils.isEmpty(musics)) {
+            return;
+        }
+
+        SQLiteDatabase db = null;
+        try {
+            db = getWritableDatabase();
+            db.beginTransaction();
+            ContentValues values = new ContentValues();
+            for (StMusic music : musics) {
+                if (music == null || TextUtils.isEmpty(music.mPath)) {
+                    continue;
+                }
+                File file = new File(music.mPath);
+                values.clear();
+                values.put(PATH, music.mPath);
+                values.put(SIZE, file.length());
+                values.put(MTIME, file.lastModified());
+                values.put(TRACK, music.mTrack);
+                values.put(ALBUM, music.mAlbum);
+                values.put(ARTIST, music.mArtist);
+                values.put(NAME, music.mName);
+                values.put(DURATION, music.mDuration);
+                db.replace(TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (db != null) {
+                try {
+                    db.endTransaction();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 删除指定目录下的缓存记录
+     * @param startWithPath 目录，为空表示清空全部
+     */
+    public synchronized void remove(String startWithPath) {
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            if (TextUtils.isEmpty(startWithPath)) {
+                db.delete(TABLE_NAME, null, null);
+            } else {
+                db.delete(TABLE_NAME, PATH + " like ?", new String[]{startWithPath + "%"});
+            }
+        } catch (Exception e) {
+            Logcat.e("remove " + startWithPath + " failed, " + e);
+        }
+    }
+
+    private static String getString(Cursor cursor, int index) {
+        String string = cursor.getString(index);
+        return string == null ? "" : string;
+    }
+}
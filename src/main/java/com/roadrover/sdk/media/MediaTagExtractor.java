@@ -0,0 +1,343 @@
+package com.roadrover.sdk.media;
+
+import android.content.Context;
+import android.media.MediaMetadataRetriever;
+import android.text.TextUtils;
+
+import com.roadrover.sdk.system.IVIConfig;
+import com.roadrover.sdk.utils.EnvironmentUtils;
+import com.roadrover.sdk.utils.ListUtils;
+import com.roadrover.sdk.utils.Logcat;
+import com.roadrover.services.media.StMusic;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 客户端的媒体 id3 信息解析流水线 </br>
+ * 1. 先从 {@link MediaTagCache} 读取文件没有变化的 id3 信息，一次性返回 </br>
+ * 2. 剩下的文件按盘符分组，每个盘符同时只有 {@link IVIConfig#getMediaTagExtractThreads(int)} 个线程在读，避免U盘带宽被打满 </br>
+ * 3. 每解析到 {@link #BATCH_SIZE} 个文件通过 onProgress 返回一次，并写入缓存，最后剩余的数据通过 onFinish 返回 </br>
+ * <b>回调在子线程执行，不能直接刷新UI</b></br>
+ */
+public class MediaTagExtractor {
+
+    /**
+     * 每次进度回调的数据个数
+     */
+    public static final int BATCH_SIZE = 20;
+
+    /**
+     * 每个盘符默认的解析线程数
+     */
+    public static final int DEFAULT_THREADS_PER_DEVICE = 2;
+
+    /**
+     * 同时解析的最大盘符数，超过的盘符会排队
+     */
+    private static final int MAX_DEVICES = 4;
+
+    /**
+     * 解析结果的回调
+     */
+    public interface Listener {
+        /**
+         * 解析进度
+         * @param musics 本次解析到的 id3 信息
+         * @param path 请求的目录
+         */
+        void onProgress(List<StMusic> musics, String path);
+
+        /**
+         * 解析完成，APP需要将 onProgress 的数据和 onFinish 的数据综合起来
+         * @param musics 最后一批 id3 信息
+         * @param path 请求的目录
+         */
+        void onFinish(List<StMusic> musics, String path);
+    }
+
+    private Context mContext;
+    private final int mThreadsPerDevice;
+    private final ExecutorService mRequestExecutor;
+    private final ThreadPoolExecutor mWorkerExecutor;
+    private final List<AtomicBoolean> mCancelFlags = new ArrayList<>();
+
+    /**
+     * 构造函数
+     * @param context 上下文
+     */
+    public MediaTagExtractor(Context context) {
+        if (context != null) {
+            mContext = context.getApplicationContext();
+        }
+        int threads = IVIConfig.getMediaTagExtractThreads(DEFAULT_THREADS_PER_DEVICE);
+        mThreadsPerDevice = threads > 0 ? threads : DEFAULT_THREADS_PER_DEVICE;
+        mRequestExecutor = Executors.newSingleThreadExecutor();
+        final int maxThreads = mThreadsPerDevice * MAX_DEVICES;
+        mWorkerExecutor = new ThreadPoolExecutor(maxThreads, maxThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mWorkerExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 解析一批文件的 id3 信息，请求按调用的顺序依次执行
+     * @param path 请求的目录，回调时原样返回
+     * @param files 需要解析的文件路径列表，传null表示从媒体数据库查询 path 目录下所有的音频文件
+     * @param listener 结果回调
+     */
+    public void extract(final String path, final List<String> files, final Listener listener) {
+        if (listener == null) {
+            return;
+        }
+
+        final AtomicBoolean cancel = new AtomicBoolean(false);
+        synchronized (mCancelFlags) {
+            mCancelFlags.add(cancel);
+        }
+
+        try {
+            mRequestExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        doExtract(path, files, listener, cancel);
+                    } finally {
+                        synchronized (mCancelFlags) {
+                            mCancelFlags.remove(cancel);
+                        }
+                    }
+                }
+            });
+        } catch (Exception e) {
+            Logcat.e("extract " + path + " failed, " + e);
+        }
+    }
+
+    /**
+     * 取消所有未完成的解析请求，已经解析到的结果依然会写入缓存
+     */
+    public void cancel() {
+        synchronized (mCancelFlags) {
+            for (AtomicBoolean flag : mCancelFlags) {
+                flag.set(true);
+            }
+        }
+    }
+
+    /**
+     * 释放资源，释放之后该对象不能再使用
+     */
+    public void release() {
+        cancel();
+        mRequestExecutor.shutdownNow();
+        mWorkerExecutor.shutdownNow();
+        mContext = null;
+    }
+
+    private void doExtract(String path, List<String> files, Listener listener, final AtomicBoolean cancel) {
+        List<StMusic> hits = new ArrayList<>();
+        Map<String, ConcurrentLinkedQueue<String>> misses = new HashMap<>();
+        MediaTagCache cache = MediaTagCache.getInstance(mContext);
+
+        if (files == null && mContext != null) {
+            files = new MediaSqlManager(mContext).query(IVIMedia.MediaSqlDataType.AUDIO_TYPE, path);
+        }
+
+        if (!ListUtils.isEmpty(files)) {
+            Map<String, MediaTagCache.Entry> entries = (cache != null) ?
+                    cache.query(path) : new HashMap<String, MediaTagCache.Entry>();
+            List<String> roots = getStorageRoots();
+            for (String file : files) {
+                if (TextUtils.isEmpty(file)) {
+                    continue;
+                }
+                MediaTagCache.Entry entry = entries.get(file);
+                if (entry != null && entry.isValid(new File(file))) {
+                    hits.add(entry.mMusic);
+                } else {
+                    final String root = getRoot(roots, file);
+                    ConcurrentLinkedQueue<String> queue = misses.get(root);
+                    if (queue == null) {
+                        queue = new ConcurrentLinkedQueue<>();
+                        misses.put(root, queue);
+                    }
+                    queue.add(file);
+                }
+            }
+        }
+
+        Logcat.d(path + " cached:" + hits.size() + " devices to extract:" + misses.size());
+        if (misses.isEmpty()) {
+            listener.onFinish(hits, path);
+            return;
+        }
+
+        if (!hits.isEmpty()) {
+            listener.onProgress(hits, path);
+        }
+
+        final Batch batch = new Batch(path, listener, cache);
+        final CountDownLatch latch = new CountDownLatch(misses.size() * mThreadsPerDevice);
+        for (final ConcurrentLinkedQueue<String> queue : misses.values()) {
+            for (int i = 0; i < mThreadsPerDevice; ++i) {
+                try {
+                    mWorkerExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                String file;
+                                while (!cancel.get() && (file = queue.poll()) != null) {
+                                    StMusic music = extractTag(file);
+                                    if (music != null) {
+                                        batch.add(music);
+                                    }
+                                }
+                            } finally {
+                                latch.countDown();
+                            }
+                        }
+                    });
+                } catch (Exception e) {
+                    Logcat.e("execute failed, " + e);
+                    latch.countDown();
+                }
+            }
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            cancel.set(true);
+        }
+        listener.onFinish(batch.drain(), path);
+    }
+
+    /**
+     * 解析单个文件的 id3 信息
+     * @param path 文件路径
+     * @return 解析失败返回null
+     */
+    private static StMusic extractTag(String path) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(path);
+            String name = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
+            if (TextUtils.isEmpty(name)) {
+                name = getFileTitle(path);
+            }
+            long duration = 0;
+            String durationString = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (!TextUtils.isEmpty(durationString)) {
+                try {
+                    duration = Long.parseLong(durationString);
+                } catch (NumberFormatException e) {
+                    e.printStackTrace();
+                }
+            }
+            return StMusic.createStMusic(path,
+                    notNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_CD_TRACK_NUMBER)),
+                    notNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM)),
+                    notNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST)),
+                    name, duration);
+        } catch (Exception e) {
+            Logcat.w(path + " extract failed, " + e);
+            return StMusic.createStMusic(path, "", "", "", getFileTitle(path), 0);
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private List<String> getStorageRoots() {
+        List<String> roots = null;
+        if (mContext != null) {
+            roots = new EnvironmentUtils(mContext).getStoragePaths();
+        }
+        return roots != null ? roots : new ArrayList<String>();
+    }
+
+    /**
+     * 获取文件所在的盘符，找不到配置的盘符时使用文件的前两级目录
+     */
+    private static String getRoot(List<String> roots, String file) {
+        for (String root : roots) {
+            if (!TextUtils.isEmpty(root) && file.startsWith(root)) {
+                return root;
+            }
+        }
+        int index = file.indexOf('/', 1);
+        if (index > 0) {
+            index = file.indexOf('/', index + 1);
+        }
+        return index > 0 ? file.substring(0, index) : file;
+    }
+
+    private static String getFileTitle(String path) {
+        String name = new File(path).getName();
+        final int index = name.lastIndexOf('.');
+        return index > 0 ? name.substring(0, index) : name;
+    }
+
+    private static String notNull(String string) {
+        return string == null ? "" : string;
+    }
+
+    /**
+     * 汇总多个线程的解析结果，满 {@link #BATCH_SIZE} 个回调一次
+     */
+    private static class Batch {
+        private final String mPath;
+        private final Listener mListener;
+        private final MediaTagCache mCache;
+        private List<StMusic> mMusics = new ArrayList<>();
+
+        Batch(String path, Listener listener, MediaTagCache cache) {
+            mPath = path;
+            mListener = listener;
+            mCache = cache;
+        }
+
+        void add(StMusic music) {
+            List<StMusic> full = null;
+            synchronized (this) {
+                mMusics.add(music);
+                if (mMusics.size() >= BATCH_SIZE) {
+                    full = mMusics;
+                    mMusics = new ArrayList<>();
+                }
+            }
+            if (full != null) {
+                if (mCache != null) {
+                    mCache.put(full);
+                }
+                mListener.onProgress(full, mPath);
+            }
+        }
+
+        List<StMusic> drain() {
+            List<StMusic> rest;
+            synchronized (this) {
+                rest = mMusics;
+                mMusics = new ArrayList<>();
+            }
+            if (mCache != null) {
+                mCache.put(rest);
+            }
+            return rest;
+        }
+    }
+}
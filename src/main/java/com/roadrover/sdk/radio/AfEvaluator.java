@@ -0,0 +1,509 @@
+package com.roadrover.sdk.radio;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import com.roadrover.sdk.system.IVIConfig;
+import com.roadrover.sdk.utils.Logcat;
+
+/**
+ * 客户端的AF（替换频率）评估，根据 onSignalUpdate 上报的信号强度推荐或者自动切换到信号更好的频率 </br>
+ * 1. 每个频率保存最近 {@link #HISTORY_SIZE} 次信号强度，计算平滑后的信号强度和变化趋势（dBuV/秒） </br>
+ * 2. 当前频率平滑后的信号强度低于 {@link IVIConfig#getAFStartLevel(int)} 并且没有在变好时，
+ *    从候选频率中选择不低于 {@link IVIConfig#getMinSignalLevel(int)}、
+ *    并且比当前高出 {@link IVIConfig#getAFMinDeltaLevel(int)} 的最好的频率 </br>
+ * 3. 候选频率为 {@link #setCandidates(int[])} 设置的AF列表，以及 {@link #setRdsStore(RdsStore)} 中
+ *    收到过和当前频率相同PI的频率，都没有时不推荐也不切换，不会切换到其他电台 </br>
+ * 4. {@link #setAutoSwitch(boolean)} 打开时自动切换，否则只通知 {@link Listener}，切换之后一段时间内不再评估，避免来回切换 </br>
+ * 5. 记录从发起切换到收到频率变化的耗时和最近一小时的切换次数，用于调整参数 </br>
+ * 监听和切换都在主线程回调
+ */
+public class AfEvaluator {
+
+    /**
+     * 每个频率保存的信号强度个数
+     */
+    public static final int HISTORY_SIZE = 16;
+
+    public static final int DEFAULT_MIN_SIGNAL_LEVEL = 20;
+    public static final int DEFAULT_AF_START_LEVEL = 30;
+    public static final int DEFAULT_AF_MIN_DELTA_LEVEL = 10;
+
+    /**
+     * 没有信号强度时返回的值
+     */
+    public static final int NO_SIGNAL = RadioSpectrum.NO_SIGNAL;
+
+    /**
+     * 平滑系数，越大越接近最新的值
+     */
+    private static final float SMOOTH_FACTOR = 0.3f;
+
+    /**
+     * 参与评估需要的最少信号强度个数
+     */
+    private static final int MIN_SAMPLES = 3;
+
+    /**
+     * 当前频率的信号强度以超过该速度变好时不切换，单位 dBuV/秒
+     */
+    private static final float RISING_TREND = 2.0f;
+
+    /**
+     * 按变化趋势预测的时间，单位秒
+     */
+    private static final float PREDICT_TIME = 2.0f;
+
+    /**
+     * 候选频率的信号强度超过该时间没有更新时不再使用，单位毫秒
+     */
+    private static final int CANDIDATE_TIMEOUT = 10000;
+
+    /**
+     * 频率变化之后不评估的时间，单位毫秒
+     */
+    private static final int HOLD_TIME = 5000;
+
+    /**
+     * 发起切换之后超过该时间没有切换到目标频率认为切换失败，单位毫秒
+     */
+    private static final int SWITCH_TIMEOUT = 3000;
+
+    /**
+     * 两次评估的最小间隔，单位毫秒
+     */
+    private static final int EVALUATE_INTERVAL = 1000;
+
+    private static final int HOUR = 60 * 60 * 1000;
+
+    /**
+     * 保存切换时间的个数，用于计算最近一小时的切换次数
+     */
+    private static final int SWITCH_HISTORY_SIZE = 128;
+
+    /**
+     * 推荐监听
+     */
+    public interface Listener {
+        /**
+         * 推荐切换到信号更好的频率
+         * @param fromFreq 当前频率
+         * @param toFreq 推荐的频率
+         * @param fromLevel 当前频率平滑后的信号强度
+         * @param toLevel 推荐频率平滑后的信号强度
+         */
+        void onAfRecommended(int fromFreq, int toFreq, int fromLevel, int toLevel);
+    }
+
+    /**
+     * 执行切换，一般调用 {@link RadioManager#setFreq(int)}
+     */
+    public interface Switcher {
+        void switchTo(int freq);
+    }
+
+    /**
+     * 一个频率的信号强度记录
+     */
+    private static class History {
+        final int[] mLevels = new int[HISTORY_SIZE];
+        final long[] mTimes = new long[HISTORY_SIZE];
+        int mIndex = 0;
+        int mCount = 0;
+        float mSmoothed = 0;
+
+        void add(int level, long time) {
+            mLevels[mIndex] = level;
+            mTimes[mIndex] = time;
+            mIndex = (mIndex + 1) % HISTORY_SIZE;
+            mSmoothed = (mCount == 0) ? level : mSmoothed + (level - mSmoothed) * SMOOTH_FACTOR;
+            if (mCount < HISTORY_SIZE) {
+                ++mCount;
+            }
+        }
+
+        long getLastTime() {
+            return (mCount > 0) ? mTimes[(mIndex - 1 + HISTORY_SIZE) % HISTORY_SIZE] : 0;
+        }
+
+        /**
+         * 最小二乘法计算信号强度的变化趋势
+         * @return 单位 dBuV/秒
+         */
+        float getTrend() {
+            if (mCount < 2) {
+                return 0;
+            }
+            final int start = (mIndex - mCount + HISTORY_SIZE) % HISTORY_SIZE;
+            final long base = mTimes[start];
+            double sumT = 0, sumL = 0, sumTT = 0, sumTL = 0;
+            for (int i = 0; i < mCount; ++i) {
+                final int index = (start + i) % HISTORY_SIZE;
+                final double t = (mTimes[index] - base) / 1000.0;
+                sumT += t;
+                sumL += mLevels[index];
+                sumTT += t * t;
+                sumTL += t * mLevels[index];
+            }
+            final double denominator = mCount * sumTT - sumT * sumT;
+            return (denominator > 0) ? (float) ((mCount * sumTL - sumT * sumL) / denominator) : 0;
+        }
+
+        void clear() {
+            mIndex = 0;
+            mCount = 0;
+            mSmoothed = 0;
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Switcher mSwitcher;
+    private Listener mListener = null;
+    private boolean mAutoSwitch = false;
+
+    private final int mMinSignalLevel;
+    private final int mStartLevel;
+    private final int mMinDeltaLevel;
+
+    private final SparseArray<History> mHistories = new SparseArray<>();
+    private int[] mCandidates = null;
+    private RdsStore mRdsStore = null;
+    private int mCurrentFreq = 0;
+    private int mRecommendedFreq = 0;
+    private long mHoldUntil = 0;
+    private long mLastEvaluateTime = 0;
+
+    private int mSwitchTarget = 0;
+    private long mSwitchStartTime = 0;
+    private int mSwitchCount = 0;
+    private int mFailedSwitchCount = 0;
+    private long mLastSwitchLatency = -1;
+    private long mMaxSwitchLatency = -1;
+    private long mTotalSwitchLatency = 0;
+    private final long[] mSwitchTimes = new long[SWITCH_HISTORY_SIZE];
+    private int mSwitchTimeIndex = 0;
+
+    /**
+     * 构造函数，门限从 {@link IVIConfig} 读取
+     * @param switcher 执行切换，为null时只推荐
+     */
+    public AfEvaluator(Switcher switcher) {
+        this(switcher, IVIConfig.getMinSignalLevel(DEFAULT_MIN_SIGNAL_LEVEL),
+                IVIConfig.getAFStartLevel(DEFAULT_AF_START_LEVEL),
+                IVIConfig.getAFMinDeltaLevel(DEFAULT_AF_MIN_DELTA_LEVEL));
+    }
+
+    /**
+     * 构造函数
+     * @param switcher 执行切换，为null时只推荐
+     * @param minSignalLevel 有效电台的最低信号强度，单位 dBuV
+     * @param startLevel 低于这个信号强度就开始评估，单位 dBuV
+     * @param minDeltaLevel 候选频率比当前频率高出该值时才切换，单位 dBuV
+     */
+    public AfEvaluator(Switcher switcher, int minSignalLevel, int startLevel, int minDeltaLevel) {
+        mSwitcher = switcher;
+        mMinSignalLevel = minSignalLevel;
+        mStartLevel = startLevel;
+        mMinDeltaLevel = minDeltaLevel;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 设置是否自动切换
+     * @param autoSwitch false只通知推荐的频率
+     */
+    public synchronized void setAutoSwitch(boolean autoSwitch) {
+        mAutoSwitch = autoSwitch;
+    }
+
+    /**
+     * 设置候选频率，一般为当前电台的AF列表
+     * @param freqs 为null时只使用PI相同的频率，见 {@link #setRdsStore(RdsStore)}
+     */
+    public synchronized void setCandidates(int[] freqs) {
+        mCandidates = (freqs != null) ? freqs.clone() : null;
+    }
+
+    /**
+     * 设置RDS信息缓存，收到过和当前频率相同PI的频率也作为候选频率
+     * @param store 为null时只使用AF列表
+     */
+    public synchronized void setRdsStore(RdsStore store) {
+        mRdsStore = store;
+    }
+
+    /**
+     * 输入服务上报的信号强度，当前频率的信号强度会触发评估
+     * @param freq 频率
+     * @param level 信号强度，单位 dBuV
+     */
+    public void updateSignal(int freq, int level) {
+        final long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            History history = mHistories.get(freq);
+            if (history == null) {
+                history = new History();
+                mHistories.put(freq, history);
+            }
+            history.add(level, now);
+            if (freq != mCurrentFreq || now - mLastEvaluateTime < EVALUATE_INTERVAL) {
+                return;
+            }
+            mLastEvaluateTime = now;
+        }
+        evaluate(now);
+    }
+
+    /**
+     * 输入频率变化，一般为 onFreqChanged 上报的频率
+     * @param freq 当前频率
+     */
+    public synchronized void onFreqChanged(int freq) {
+        final long now = SystemClock.elapsedRealtime();
+        if (freq == mCurrentFreq) {
+            return;
+        }
+        mCurrentFreq = freq;
+        mRecommendedFreq = 0;
+        mHoldUntil = now + HOLD_TIME;
+
+        if (mSwitchTarget != 0) {
+            if (freq == mSwitchTarget && now - mSwitchStartTime <= SWITCH_TIMEOUT) {
+                recordSwitch(now, now - mSwitchStartTime);
+            } else {
+                ++mFailedSwitchCount;
+            }
+            mSwitchTarget = 0;
+        }
+    }
+
+    /**
+     * 切换到推荐的频率，记录切换耗时
+     * @param freq 目标频率
+     */
+    public void switchTo(int freq) {
+        final int fromFreq;
+        synchronized (this) {
+            if (mSwitchTarget != 0) {
+                ++mFailedSwitchCount; // 上次切换还没有完成
+            }
+            mSwitchTarget = freq;
+            mSwitchStartTime = SystemClock.elapsedRealtime();
+            mRecommendedFreq = 0;
+            fromFreq = mCurrentFreq;
+        }
+        Logcat.d("switch from " + fromFreq + " to " + freq);
+        if (mSwitcher != null) {
+            mSwitcher.switchTo(freq);
+        }
+    }
+
+    /**
+     * 获取频率平滑后的信号强度
+     * @param freq 频率
+     * @return 没有收到过返回 {@link #NO_SIGNAL}
+     */
+    public synchronized int getSmoothedLevel(int freq) {
+        History history = mHistories.get(freq);
+        return (history != null && history.mCount > 0) ? Math.round(history.mSmoothed) : NO_SIGNAL;
+    }
+
+    /**
+     * 获取频率信号强度的变化趋势
+     * @param freq 频率
+     * @return 单位 dBuV/秒，正数表示在变好
+     */
+    public synchronized float getTrend(int freq) {
+        History history = mHistories.get(freq);
+        return (history != null) ? history.getTrend() : 0;
+    }
+
+    /**
+     * 获取当前推荐的频率
+     * @return 没有推荐返回0
+     */
+    public synchronized int getRecommendedFreq() {
+        return mRecommendedFreq;
+    }
+
+    /**
+     * 获取成功切换的总次数
+     */
+    public synchronized int getSwitchCount() {
+        return mSwitchCount;
+    }
+
+    /**
+     * 获取切换失败的次数，包括超时和切换到了其他频率
+     */
+    public synchronized int getFailedSwitchCount() {
+        return mFailedSwitchCount;
+    }
+
+    /**
+     * 获取最近一小时的切换次数
+     */
+    public synchronized int getSwitchCountInLastHour() {
+        final long now = SystemClock.elapsedRealtime();
+        int count = 0;
+        for (long time : mSwitchTimes) {
+            if (time > 0 && now - time <= HOUR) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 获取最后一次切换的耗时
+     * @return 单位毫秒，没有切换过返回-1
+     */
+    public synchronized long getLastSwitchLatency() {
+        return mLastSwitchLatency;
+    }
+
+    /**
+     * 获取切换的最大耗时
+     * @return 单位毫秒，没有切换过返回-1
+     */
+    public synchronized long getMaxSwitchLatency() {
+        return mMaxSwitchLatency;
+    }
+
+    /**
+     * 获取切换的平均耗时
+     * @return 单位毫秒，没有切换过返回-1
+     */
+    public synchronized long getAverageSwitchLatency() {
+        return (mSwitchCount > 0) ? mTotalSwitchLatency / mSwitchCount : -1;
+    }
+
+    /**
+     * 清除全部信号强度记录，切换统计保留
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < mHistories.size(); ++i) {
+            mHistories.valueAt(i).clear();
+        }
+        mRecommendedFreq = 0;
+    }
+
+    /**
+     * 释放，取消没有发出的通知
+     */
+    public synchronized void release() {
+        mHandler.removeCallbacksAndMessages(null);
+        mListener = null;
+        mHistories.clear();
+    }
+
+    private void evaluate(long now) {
+        final int fromFreq;
+        final int toFreq;
+        final int fromLevel;
+        final int toLevel;
+        final boolean autoSwitch;
+        final Listener listener;
+        synchronized (this) {
+            if (mSwitchTarget != 0 && now - mSwitchStartTime > SWITCH_TIMEOUT) {
+                ++mFailedSwitchCount;
+                mSwitchTarget = 0;
+            }
+            if (mSwitchTarget != 0 || now < mHoldUntil) {
+                return;
+            }
+
+            final History current = mHistories.get(mCurrentFreq);
+            if (current == null || current.mCount < MIN_SAMPLES ||
+                    current.mSmoothed >= mStartLevel || current.getTrend() > RISING_TREND) {
+                mRecommendedFreq = 0;
+                return;
+            }
+
+            final int best = findBestCandidate(now, current.mSmoothed);
+            if (best == 0 || best == mRecommendedFreq) {
+                mRecommendedFreq = best;
+                return;
+            }
+            mRecommendedFreq = best;
+            fromFreq = mCurrentFreq;
+            toFreq = best;
+            fromLevel = Math.round(current.mSmoothed);
+            toLevel = Math.round(mHistories.get(best).mSmoothed);
+            autoSwitch = mAutoSwitch && mSwitcher != null;
+            listener = mListener;
+        }
+
+        Logcat.d("recommend " + toFreq + "(" + toLevel + ") instead of " + fromFreq + "(" + fromLevel + ")");
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (listener != null) {
+                    listener.onAfRecommended(fromFreq, toFreq, fromLevel, toLevel);
+                }
+                if (autoSwitch) {
+                    switchTo(toFreq);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按预测的信号强度选择最好的候选频率
+     * @return 没有合适的返回0
+     */
+    private int findBestCandidate(long now, float currentLevel) {
+        int best = 0;
+        float bestScore = 0;
+        for (int i = 0; i < mHistories.size(); ++i) {
+            final int freq = mHistories.keyAt(i);
+            final History history = mHistories.valueAt(i);
+            if (freq == mCurrentFreq || !isCandidate(freq) || history.mCount < MIN_SAMPLES ||
+                    now - history.getLastTime() > CANDIDATE_TIMEOUT) {
+                continue;
+            }
+            if (history.mSmoothed < mMinSignalLevel || history.mSmoothed - currentLevel < mMinDeltaLevel) {
+                continue;
+            }
+            final float score = history.mSmoothed + history.getTrend() * PREDICT_TIME;
+            if (best == 0 || score > bestScore) {
+                best = freq;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 是否是当前电台的候选频率，在AF列表中，或者和当前频率收到过相同的PI
+     */
+    private boolean isCandidate(int freq) {
+        if (mCandidates != null) {
+            for (int candidate : mCandidates) {
+                if (candidate == freq) {
+                    return true;
+                }
+            }
+        }
+        if (mRdsStore != null) {
+            final int pi = mRdsStore.getPI(mCurrentFreq);
+            return pi != IVIRadio.RDS.PI_UNKNOWN && pi == mRdsStore.getPI(freq);
+        }
+        return false;
+    }
+
+    private void recordSwitch(long now, long latency) {
+        ++mSwitchCount;
+        mLastSwitchLatency = latency;
+        mMaxSwitchLatency = Math.max(mMaxSwitchLatency, latency);
+        mTotalSwitchLatency += latency;
+        mSwitchTimes[mSwitchTimeIndex] = now;
+        mSwitchTimeIndex = (mSwitchTimeIndex + 1) % SWITCH_HISTORY_SIZE;
+        Logcat.d("switch to " + mCurrentFreq + " in " + latency + "ms, " + getSwitchCountInLastHour() + " in last hour");
+    }
+}
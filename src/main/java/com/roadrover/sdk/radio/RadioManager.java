@@ -6,6 +6,7 @@ import android.os.RemoteException;
 
 import com.roadrover.sdk.BaseManager;
 import com.roadrover.sdk.media.IVIMedia;
+import com.roadrover.sdk.system.IVIConfig;
 import com.roadrover.services.radio.IRadio;
 import com.roadrover.services.radio.IRadioCallback;
 import com.roadrover.sdk.utils.Logcat;
@@ -23,6 +24,11 @@ public class RadioManager extends BaseManager {
 	private int mFreq = -1;
 	private int mAudioZone = IVIMedia.Zone.UNKNOWN;
 	private RadioScanAbortListener mRadioScanAbortListener ;   // 直接监听 收音机 搜索过程中停止
+	private final RdsStore mRdsStore; // RDS信息缓存，去掉重复的PS、RT和Mask
+	private final AfEvaluator mAfEvaluator; // 客户端的AF评估
+	private final RadioSpectrum mSpectrum = new RadioSpectrum(IVIConfig.getRadioDefaultLocation()); // 信号强度频谱
+	private RadioStationCache mStationCache = null; // 站台数据库缓存，第一次使用时获取
+	private volatile boolean mSpectrumOnly = false; // 只更新频谱，不分发搜台结果和信号强度事件
 
 	public interface RadioListener {
 		void onFreqChanged(int freq);
@@ -61,6 +67,14 @@ public class RadioManager extends BaseManager {
 	public RadioManager(Context context, ConnectListener connectListener, RadioListener radioListener) {
 		super(context, connectListener, true);
 		mRadioListener = radioListener;
+		mRdsStore = new RdsStore(context);
+		mAfEvaluator = new AfEvaluator(new AfEvaluator.Switcher() {
+			@Override
+			public void switchTo(int freq) {
+				setFreq(freq);
+			}
+		});
+		mAfEvaluator.setRdsStore(mRdsStore);
 	}
 
 	@Override
@@ -69,6 +83,14 @@ public class RadioManager extends BaseManager {
 		mRadioListener = null;
 		mRadioCallback = null;
 		mRadioScanAbortListener = null;
+		mSpectrum.release();
+		mAfEvaluator.release();
+		synchronized (this) {
+			if (mStationCache != null) {
+				mStationCache.release();
+				mStationCache = null;
+			}
+		}
 		super.disconnect();
 	}
 
@@ -231,16 +253,24 @@ public class RadioManager extends BaseManager {
 	private IRadioCallback mRadioCallback = new IRadioCallback.Stub() {
 		@Override
 		public void onFreqChanged(int freq) {
+			mRdsStore.onFreqChanged(freq);
+			mAfEvaluator.onFreqChanged(freq);
 			post(new IVIRadio.EventFreqChanged(freq));
 		}
 
 		@Override
 		public void onScanResult(int freq, int signalStrength) {
-			post(new IVIRadio.EventScanResult(freq, signalStrength));
+			mSpectrum.updateScanResult(freq, signalStrength);
+			if (!mSpectrumOnly) {
+				post(new IVIRadio.EventScanResult(freq, signalStrength));
+			}
 		}
 
 		@Override
 		public void onScanStart(boolean isScanAll) {
+			if (isScanAll) {
+				mSpectrum.startScan();
+			}
 			post(new IVIRadio.EventScanStart(isScanAll));
 		}
 
@@ -260,7 +290,11 @@ public class RadioManager extends BaseManager {
 
 		@Override
 		public void onSignalUpdate(int freq, int signalStrength) {
-			post(new IVIRadio.EventSignalUpdate(freq, signalStrength));
+			mSpectrum.updateSignal(freq, signalStrength);
+			mAfEvaluator.updateSignal(freq, signalStrength);
+			if (!mSpectrumOnly) {
+				post(new IVIRadio.EventSignalUpdate(freq, signalStrength));
+			}
 		}
 
         @Override
@@ -332,17 +366,24 @@ public class RadioManager extends BaseManager {
 
 		@Override
 		public void onRdsPsChanged(int pi, int freq, String ps) {
-			post(new IVIRadio.EventRdsPs(pi, freq, ps));
+			if (mRdsStore.updatePs(pi, freq, ps)) {
+				post(new IVIRadio.EventRdsPs(pi, freq, ps));
+			}
 		}
 
 		@Override
 		public void onRdsRtChanged(int pi, int freq, String rt) {
-			post(new IVIRadio.EventRdsRt(pi, freq, rt));
+			final String newRt = mRdsStore.updateRt(pi, freq, rt);
+			if (newRt != null) {
+				post(new IVIRadio.EventRdsRt(pi, freq, newRt));
+			}
 		}
 
 		@Override
 		public void onRdsMaskChanged(int pi, int freq, int pty, int tp, int ta) {
-			post(new IVIRadio.EventRdsMask(pi, freq, pty, tp, ta));
+			if (mRdsStore.updateMask(pi, freq, pty, tp, ta)) {
+				post(new IVIRadio.EventRdsMask(pi, freq, pty, tp, ta));
+			}
 		}
 
 		@Override
@@ -375,6 +416,7 @@ public class RadioManager extends BaseManager {
 	 */
 	public void open() {
 		mIsOpen = true;
+		mRdsStore.clear(); // 重新打开之后服务上报的RDS信息都通知一次
 		if (mRadioInterface != null) {
 			try {
 				mRadioInterface.open(mRadioCallback, mContext.getPackageName());
@@ -470,6 +512,7 @@ public class RadioManager extends BaseManager {
 	 * 会自动终止上次未完成的搜索任务
 	 */
 	public void setLocation(int location) {
+		mSpectrum.setLocation(location);
 		if (null != mRadioInterface) {
 			try {
 				mRadioInterface.setLocation(location);
@@ -481,6 +524,24 @@ public class RadioManager extends BaseManager {
 		}
 	}
 
+	/**
+	 * 获取 收音机区域，为配置的默认区域或者最后一次 {@link #setLocation(int)} 的区域，频谱也按该区域划分 </br>
+	 * 不通过服务的 getLocation 获取，旧的服务没有实现该接口时会返回0（ASIA）
+	 * @return {@link com.roadrover.sdk.radio.IVIRadio.Location}
+	 */
+	public int getLocation() {
+		return mSpectrum.getLocation();
+	}
+
+	/**
+	 * 只使用频谱时可以不分发 {@link IVIRadio.EventScanResult} 和 {@link IVIRadio.EventSignalUpdate}，
+	 * 减少搜台时的事件，频谱和AF评估照常更新；默认分发，使用默认EventBus监听这两个事件时不能打开
+	 * @param spectrumOnly true 不分发
+	 */
+	public void setSpectrumOnly(boolean spectrumOnly) {
+		mSpectrumOnly = spectrumOnly;
+	}
+
 	/**
 	 * 上搜索
 	 * @param freqStart 搜索的起始位置
@@ -707,6 +768,7 @@ public class RadioManager extends BaseManager {
 	 */
 	public void openInZone(int zone) {
 		mIsOpen = true;
+		mRdsStore.clear(); // 重新打开之后服务上报的RDS信息都通知一次
 		mAudioZone = zone;
 		if (mRadioInterface != null) {
 			try {
@@ -722,11 +784,55 @@ public class RadioManager extends BaseManager {
 	}
 
 	/**
-	 * 获取PS文本
+	 * 获取信号强度频谱，搜台结果和 onSignalUpdate 的信号强度都会更新到频谱中，用于显示实时的信号强度图和搜台得到的电台列表
+	 * @return
+	 */
+	public RadioSpectrum getSpectrum() {
+		return mSpectrum;
+	}
+
+	/**
+	 * 获取站台数据库的缓存，用于查找预置站台和收藏，数据库在后台线程读取，读取完成之前查找返回空 </br>
+	 * {@link #disconnect()} 时释放
+	 * @return
+	 */
+	public synchronized RadioStationCache getStationCache() {
+		if (mStationCache == null) {
+			mStationCache = RadioStationCache.getInstance(mContext);
+		}
+		return mStationCache;
+	}
+
+	/**
+	 * 获取AF评估，可以监听推荐的频率或者打开自动切换，并获取切换耗时和次数，候选频率为AF列表和收到过相同PI的频率
+	 * @return
+	 */
+	public AfEvaluator getAfEvaluator() {
+		return mAfEvaluator;
+	}
+
+	/**
+	 * 获取RDS信息缓存
+	 * @return
+	 */
+	public RdsStore getRdsStore() {
+		return mRdsStore;
+	}
+
+	/**
+	 * 获取PS文本，先查找最后收到的PS和站台数据库中保存的PS名字，都没有时才通过服务获取
 	 * @param freq 指定频率
 	 */
 	public String getPSText(int freq) {
-		String ret = "";
+		String ret = mRdsStore.getPSText(freq);
+		if (ret == null) {
+			ret = getStationCache().getPSText(freq);
+		}
+		if (ret != null) {
+			return ret;
+		}
+
+		ret = "";
 		if (mRadioInterface != null) {
 			try {
 				ret = mRadioInterface.getPSText(freq);
@@ -20,6 +20,7 @@ import java.util.List;
 public class RadioModel {
 
     public static class Station {
+        public int mId; // 数据库ID
         public String mName; // 名字
         public int mFreq; // 频率
         public int mKind; // 频率
@@ -27,18 +28,19 @@ public class RadioModel {
         public int mPosition;//
         public int mIsLove;
         public String mDesp;//
+        public String mRdsName; // RDS PS名字，数据库没有该字段时为null
 
         @Override
         public String toString() {
-            return "mName = " + mName + ", mFreq = " + mFreq +
+            return "mId = " + mId + ", mName = " + mName + ", mFreq = " + mFreq +
                     ", mKind = " + mKind + ", mBand = " + mBand +
                     ", mPosition = " + mPosition + ", mIsLove = " + mIsLove +
-                    ", mDesp = " + mDesp;
+                    ", mDesp = " + mDesp + ", mRdsName = " + mRdsName;
         }
     }
 
     /**
-     * 获取收音机站台频率列表，该方法时直接获取收音机数据库的数据
+     * 获取收音机站台频率列表，该方法时直接获取收音机数据库的数据，需要频繁查找时使用 {@link RadioStationCache}
      *
      * @param context
      * @return
@@ -48,27 +50,34 @@ public class RadioModel {
         if (context != null && checkValidProvider(Provider.TableColumns.CONTENT_URI, context)) {
             Cursor cursor = null;
             try {
-                cursor = context.getContentResolver().query(Provider.TableColumns.CONTENT_URI,
-                        new String[]{Provider.TableColumns.KEY_ID
-                                , Provider.TableColumns.KEY_NAME, Provider.TableColumns.KEY_FREQ
-                                , Provider.TableColumns.KEY_DESP, Provider.TableColumns.KEY_BAND
-                                , Provider.TableColumns.KEY_KIND, Provider.TableColumns.KEY_POSITION
-                                , Provider.TableColumns.KEY_ISLOVE},
-                        null, null, null);
+                // 查询全部字段，旧的数据库没有 rdsname 字段时不会查询失败
+                cursor = context.getContentResolver().query(Provider.TableColumns.CONTENT_URI, null, null, null, null);
                 if (cursor != null && cursor.moveToFirst()) {
+                    // 字段的位置只获取一次
+                    final int idIndex = cursor.getColumnIndex(Provider.TableColumns.KEY_ID);
+                    final int nameIndex = cursor.getColumnIndex(Provider.TableColumns.KEY_NAME);
+                    final int freqIndex = cursor.getColumnIndex(Provider.TableColumns.KEY_FREQ);
+                    final int despIndex = cursor.getColumnIndex(Provider.TableColumns.KEY_DESP);
+                    final int bandIndex = cursor.getColumnIndex(Provider.TableColumns.KEY_BAND);
+                    final int kindIndex = cursor.getColumnIndex(Provider.TableColumns.KEY_KIND);
+                    final int positionIndex = cursor.getColumnIndex(Provider.TableColumns.KEY_POSITION);
+                    final int isLoveIndex = cursor.getColumnIndex(Provider.TableColumns.KEY_ISLOVE);
+                    final int rdsNameIndex = cursor.getColumnIndex(Provider.TableColumns.KEY_RDSNAME);
                     do { // 获取收音机站台频率数据
                         RadioModel.Station station = new RadioModel.Station();
-                        station.mName = cursor.getString(cursor.getColumnIndex(Provider.TableColumns.KEY_NAME));
-                        station.mFreq = cursor.getInt(cursor.getColumnIndex(Provider.TableColumns.KEY_FREQ));
-                        station.mDesp = cursor.getString(cursor.getColumnIndex(Provider.TableColumns.KEY_DESP));
-                        station.mBand = cursor.getInt(cursor.getColumnIndex(Provider.TableColumns.KEY_BAND));
-                        station.mKind = cursor.getInt(cursor.getColumnIndex(Provider.TableColumns.KEY_KIND));
-                        station.mPosition = cursor.getInt(cursor.getColumnIndex(Provider.TableColumns.KEY_POSITION));
-                        station.mIsLove = cursor.getInt(cursor.getColumnIndex(Provider.TableColumns.KEY_ISLOVE));
+                        station.mId = (idIndex >= 0) ? cursor.getInt(idIndex) : 0;
+                        station.mName = (nameIndex >= 0) ? cursor.getString(nameIndex) : null;
+                        station.mFreq = (freqIndex >= 0) ? cursor.getInt(freqIndex) : 0;
+                        station.mDesp = (despIndex >= 0) ? cursor.getString(despIndex) : null;
+                        station.mBand = (bandIndex >= 0) ? cursor.getInt(bandIndex) : IVIRadio.Band.NONE;
+                        station.mKind = (kindIndex >= 0) ? cursor.getInt(kindIndex) : 0;
+                        station.mPosition = (positionIndex >= 0) ? cursor.getInt(positionIndex) : 0;
+                        station.mIsLove = (isLoveIndex >= 0) ? cursor.getInt(isLoveIndex) : 0;
+                        station.mRdsName = (rdsNameIndex >= 0) ? cursor.getString(rdsNameIndex) : null;
                         stations.add(station);
-                        Logcat.d("station = " + station.toString());
                     } while (cursor.moveToNext());
                 }
+                Logcat.d("station count = " + stations.size());
             } catch (SQLException e) {
                 e.printStackTrace();
             } finally {
@@ -0,0 +1,332 @@
+package com.roadrover.sdk.radio;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 收音机波段的信号强度频谱，每个波段按 {@link IVIRadio#getFreqStep(int, int)} 划分，每个频率点一个位置 </br>
+ * 1. 信号强度保存在预先分配的int数组中，{@link #updateSignal(int, int)} 和 {@link #updateScanResult(int, int)} 不分配对象，
+ *    可以直接在服务的回调线程中调用 </br>
+ * 2. 搜台时 onScanResult 上报的频率会被标记，搜台结束后通过 {@link #getScanResults(int)} 获取电台列表 </br>
+ * 3. {@link #getSignals(int, int[])} 把信号强度复制到调用者的数组中，用于绘制实时的信号强度图 </br>
+ * 4. 变化按 {@link #setInterval(int)} 限频在主线程通知 {@link Listener}，只通知变化的范围 </br>
+ * 波段只有 {@link IVIRadio.Band#AM} 和 {@link IVIRadio.Band#FM}，地区变化时调用 {@link #setLocation(int)}
+ */
+public class RadioSpectrum {
+
+    /**
+     * 默认的最小通知间隔，单位毫秒
+     */
+    public static final int DEFAULT_INTERVAL = 100;
+
+    /**
+     * 没有收到过信号强度的频率点的值
+     */
+    public static final int NO_SIGNAL = Integer.MIN_VALUE;
+
+    private static final int BAND_COUNT = 2;
+
+    /**
+     * 频谱变化监听，在主线程回调
+     */
+    public interface Listener {
+        /**
+         * 频谱发生了变化
+         * @param band {@link IVIRadio.Band}
+         * @param fromIndex 变化的第一个位置
+         * @param toIndex 变化的最后一个位置，包含该位置
+         */
+        void onSpectrumChanged(int band, int fromIndex, int toIndex);
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new ArrayList<>();
+    private int mInterval = DEFAULT_INTERVAL;
+
+    private int mLocation;
+    private final int[] mStarts = new int[BAND_COUNT];
+    private final int[] mSteps = new int[BAND_COUNT];
+    private final int[][] mSignals = new int[BAND_COUNT][];
+    private final boolean[][] mScanResults = new boolean[BAND_COUNT][];
+    private boolean mClearScanResults = false; // 新的一次搜台，收到第一个结果时清除该波段上次的结果
+
+    private final int[] mDirtyFrom = new int[BAND_COUNT];
+    private final int[] mDirtyTo = new int[BAND_COUNT];
+    private long mLastNotifyTime = 0;
+    private boolean mScheduled = false;
+
+    private final Runnable mNotifyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            notifyChanged();
+        }
+    };
+
+    /**
+     * 构造函数
+     * @param location 地区 {@link IVIRadio.Location}
+     */
+    public RadioSpectrum(int location) {
+        Arrays.fill(mDirtyTo, -1); // mDirtyTo 小于 mDirtyFrom 表示没有变化
+        setLocation(location);
+    }
+
+    /**
+     * 设置地区，频率范围和步进变化时清除全部数据
+     * @param location {@link IVIRadio.Location}
+     */
+    public synchronized void setLocation(int location) {
+        mLocation = location;
+        for (int band = 0; band < BAND_COUNT; ++band) {
+            final int start = IVIRadio.getFreqStart(band, location);
+            final int step = IVIRadio.getFreqStep(band, location);
+            final int count = (IVIRadio.getFreqEnd(band, location) - start) / step + 1;
+            mStarts[band] = start;
+            mSteps[band] = step;
+            if (mSignals[band] == null || mSignals[band].length != count) {
+                mSignals[band] = new int[count];
+                mScanResults[band] = new boolean[count];
+            }
+            Arrays.fill(mSignals[band], NO_SIGNAL);
+            Arrays.fill(mScanResults[band], false);
+            markDirty(band, 0, count - 1);
+        }
+        schedule();
+    }
+
+    public synchronized int getLocation() {
+        return mLocation;
+    }
+
+    /**
+     * 设置最小的通知间隔
+     * @param interval 单位毫秒，小于等于0表示每次变化都通知
+     * @return
+     */
+    public RadioSpectrum setInterval(int interval) {
+        mInterval = Math.max(interval, 0);
+        return this;
+    }
+
+    public synchronized void addListener(Listener listener) {
+        if (listener != null && !mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 更新频率点的信号强度
+     * @param freq 频率
+     * @param signalStrength 信号强度
+     */
+    public void updateSignal(int freq, int signalStrength) {
+        update(freq, signalStrength, false);
+    }
+
+    /**
+     * 更新搜台结果，该频率点会被标记为电台
+     * @param freq 频率
+     * @param signalStrength 信号强度
+     */
+    public void updateScanResult(int freq, int signalStrength) {
+        update(freq, signalStrength, true);
+    }
+
+    /**
+     * 开始新的一次全部搜索，收到第一个搜台结果时清除该波段上次的搜台结果
+     */
+    public synchronized void startScan() {
+        mClearScanResults = true;
+    }
+
+    /**
+     * 获取波段的频率点个数
+     * @param band {@link IVIRadio.Band}
+     * @return 无效的波段返回0
+     */
+    public synchronized int getCount(int band) {
+        return isBandValid(band) ? mSignals[band].length : 0;
+    }
+
+    /**
+     * 获取频率对应的位置，不在步进上的频率取最近的位置
+     * @param band {@link IVIRadio.Band}
+     * @param freq 频率
+     * @return 超出波段范围返回-1
+     */
+    public synchronized int getIndex(int band, int freq) {
+        if (!isBandValid(band)) {
+            return -1;
+        }
+        final int index = (freq - mStarts[band] + mSteps[band] / 2) / mSteps[band];
+        return (freq >= mStarts[band] && index < mSignals[band].length) ? index : -1;
+    }
+
+    /**
+     * 获取位置对应的频率
+     * @param band {@link IVIRadio.Band}
+     * @param index 位置
+     * @return
+     */
+    public synchronized int getFreq(int band, int index) {
+        return isBandValid(band) ? mStarts[band] + index * mSteps[band] : 0;
+    }
+
+    /**
+     * 获取频率点的信号强度
+     * @param band {@link IVIRadio.Band}
+     * @param freq 频率
+     * @return 没有收到过返回 {@link #NO_SIGNAL}
+     */
+    public synchronized int getSignal(int band, int freq) {
+        final int index = getIndex(band, freq);
+        return (index >= 0) ? mSignals[band][index] : NO_SIGNAL;
+    }
+
+    /**
+     * 复制波段的全部信号强度，界面可以重复使用同一个数组
+     * @param band {@link IVIRadio.Band}
+     * @param out 长度不够时只复制前面的部分，没有收到过的为 {@link #NO_SIGNAL}
+     * @return 复制的个数
+     */
+    public synchronized int getSignals(int band, int[] out) {
+        if (!isBandValid(band) || out == null) {
+            return 0;
+        }
+        final int count = Math.min(out.length, mSignals[band].length);
+        System.arraycopy(mSignals[band], 0, out, 0, count);
+        return count;
+    }
+
+    /**
+     * 获取搜台得到的电台
+     * @param band {@link IVIRadio.Band}
+     * @return 电台频率，从小到大排列
+     */
+    public synchronized int[] getScanResults(int band) {
+        if (!isBandValid(band)) {
+            return new int[0];
+        }
+        final boolean[] results = mScanResults[band];
+        int count = 0;
+        for (boolean result : results) {
+            if (result) {
+                ++count;
+            }
+        }
+        int[] freqs = new int[count];
+        for (int i = 0, j = 0; i < results.length; ++i) {
+            if (results[i]) {
+                freqs[j++] = mStarts[band] + i * mSteps[band];
+            }
+        }
+        return freqs;
+    }
+
+    /**
+     * 清除波段的全部数据
+     * @param band {@link IVIRadio.Band}
+     */
+    public synchronized void clear(int band) {
+        if (isBandValid(band)) {
+            Arrays.fill(mSignals[band], NO_SIGNAL);
+            Arrays.fill(mScanResults[band], false);
+            markDirty(band, 0, mSignals[band].length - 1);
+            schedule();
+        }
+    }
+
+    /**
+     * 释放，取消没有发出的通知
+     */
+    public synchronized void release() {
+        mHandler.removeCallbacks(mNotifyRunnable);
+        mScheduled = false;
+        mListeners.clear();
+    }
+
+    private synchronized void update(int freq, int signalStrength, boolean scanResult) {
+        final int band = IVIRadio.getFreqBand(freq, mLocation);
+        final int index = getIndex(band, freq);
+        if (index < 0) {
+            return;
+        }
+
+        boolean changed = false;
+        if (scanResult) {
+            if (mClearScanResults) {
+                mClearScanResults = false;
+                Arrays.fill(mScanResults[band], false);
+                markDirty(band, 0, mScanResults[band].length - 1);
+                changed = true;
+            }
+            if (!mScanResults[band][index]) {
+                mScanResults[band][index] = true;
+                changed = true;
+            }
+        }
+        if (mSignals[band][index] != signalStrength) {
+            mSignals[band][index] = signalStrength;
+            changed = true;
+        }
+        if (changed) {
+            markDirty(band, index, index);
+            schedule();
+        }
+    }
+
+    private boolean isBandValid(int band) {
+        return band >= 0 && band < BAND_COUNT;
+    }
+
+    private void markDirty(int band, int from, int to) {
+        if (mDirtyTo[band] < mDirtyFrom[band]) {
+            mDirtyFrom[band] = from;
+            mDirtyTo[band] = to;
+        } else {
+            mDirtyFrom[band] = Math.min(mDirtyFrom[band], from);
+            mDirtyTo[band] = Math.max(mDirtyTo[band], to);
+        }
+    }
+
+    private void schedule() {
+        if (mScheduled || mListeners.isEmpty()) {
+            return;
+        }
+        mScheduled = true;
+        final long delay = mLastNotifyTime + mInterval - SystemClock.uptimeMillis();
+        mHandler.postDelayed(mNotifyRunnable, Math.max(delay, 0));
+    }
+
+    private void notifyChanged() {
+        for (int band = 0; band < BAND_COUNT; ++band) {
+            final int from;
+            final int to;
+            final Listener[] listeners;
+            synchronized (this) {
+                mScheduled = false;
+                mLastNotifyTime = SystemClock.uptimeMillis();
+                if (mDirtyTo[band] < mDirtyFrom[band]) {
+                    continue;
+                }
+                from = mDirtyFrom[band];
+                to = mDirtyTo[band];
+                mDirtyFrom[band] = 0;
+                mDirtyTo[band] = -1;
+                listeners = mListeners.toArray(new Listener[mListeners.size()]);
+            }
+            for (Listener listener : listeners) {
+                listener.onSpectrumChanged(band, from, to);
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.roadrover.sdk.radio;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import com.roadrover.sdk.utils.Logcat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 收音机站台数据库的缓存，进程内共用一份 </br>
+ * 1. 第一次使用时（或者 {@link #load()}）在后台线程读取整个数据库，不会阻塞调用线程；读取完成之前查找返回空，
+ *    读取完成后全部站台作为增加的站台通知给 {@link Listener}，见 {@link #isLoaded()} </br>
+ * 2. 读取之后按 (波段, 频率)、(波段, 预置位置) 和收藏建立索引，查找不再访问数据库 </br>
+ * 3. 数据库变化时在后台线程重新读取，和上一次的数据比较之后，只把增加、删除和修改的站台通知给 {@link Listener} </br>
+ * 4. 数据库有 rdsname 字段时，可以直接获取保存的PS名字，见 {@link #getPSText(int)} </br>
+ * 每次 {@link #getInstance(Context)} 之后不再使用时调用 {@link #release()}，全部释放之后停止后台线程和数据库监听 </br>
+ * 返回的是缓存内部的对象，调用者不能修改，数据库变化时会替换为新的对象
+ */
+public class RadioStationCache {
+
+    /**
+     * 站台变化监听，在主线程回调
+     */
+    public interface Listener {
+        /**
+         * 站台数据库发生了变化
+         * @param added 增加的站台
+         * @param removed 删除的站台，为删除前的数据
+         * @param changed 修改的站台，为修改后的数据
+         */
+        void onStationsChanged(List<RadioModel.Station> added, List<RadioModel.Station> removed,
+                               List<RadioModel.Station> changed);
+    }
+
+    private static RadioStationCache sInstance = null;
+    private static int sRefCount = 0;
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread mThread = null;
+    private Handler mHandler = null; // 后台线程，读取数据库
+    private ContentObserver mContentObserver = null;
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    private List<RadioModel.Station> mStations = new ArrayList<>(); // 数据库中的顺序
+    private final SparseArray<RadioModel.Station> mIdIndex = new SparseArray<>();
+    private final SparseArray<RadioModel.Station> mFreqIndex = new SparseArray<>();
+    private final SparseArray<RadioModel.Station> mPositionIndex = new SparseArray<>();
+    private final List<RadioModel.Station> mFavourites = new ArrayList<>();
+    private boolean mLoaded = false;
+
+    private final Runnable mLoadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            reload();
+        }
+    };
+
+    /**
+     * 获取站台缓存，不再使用时调用 {@link #release()}
+     * @param context
+     * @return
+     */
+    public static synchronized RadioStationCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new RadioStationCache(context.getApplicationContext());
+        }
+        ++sRefCount;
+        return sInstance;
+    }
+
+    private RadioStationCache(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * 获取全部站台
+     * @return 按数据库中的顺序排列
+     */
+    public synchronized List<RadioModel.Station> getStations() {
+        ensureLoaded();
+        return new ArrayList<>(mStations);
+    }
+
+    /**
+     * 获取收藏的站台
+     * @return
+     */
+    public synchronized List<RadioModel.Station> getFavourites() {
+        ensureLoaded();
+        return new ArrayList<>(mFavourites);
+    }
+
+    /**
+     * 查找站台
+     * @param band {@link IVIRadio.Band}
+     * @param freq 频率
+     * @return 没有返回null
+     */
+    public synchronized RadioModel.Station getStation(int band, int freq) {
+        ensureLoaded();
+        return mFreqIndex.get(getKey(band, freq));
+    }
+
+    /**
+     * 查找站台，FM和AM的频率范围不重叠，不需要指定波段
+     * @param freq 频率
+     * @return 没有返回null
+     */
+    public synchronized RadioModel.Station getStation(int freq) {
+        RadioModel.Station station = getStation(IVIRadio.Band.FM, freq);
+        return (station != null) ? station : getStation(IVIRadio.Band.AM, freq);
+    }
+
+    /**
+     * 查找预置位置上的站台
+     * @param band {@link IVIRadio.Band}
+     * @param position 预置位置
+     * @return 没有返回null
+     */
+    public synchronized RadioModel.Station getPreset(int band, int position) {
+        ensureLoaded();
+        return mPositionIndex.get(getKey(band, position));
+    }
+
+    /**
+     * 是否收藏了该频率
+     * @param band {@link IVIRadio.Band}
+     * @param freq 频率
+     * @return
+     */
+    public synchronized boolean isFavourite(int band, int freq) {
+        RadioModel.Station station = getStation(band, freq);
+        return station != null && station.mIsLove != 0;
+    }
+
+    /**
+     * 获取数据库中保存的PS名字
+     * @param freq 频率
+     * @return 没有保存返回null
+     */
+    public synchronized String getPSText(int freq) {
+        RadioModel.Station station = getStation(freq);
+        return (station != null && !TextUtils.isEmpty(station.mRdsName)) ? station.mRdsName : null;
+    }
+
+    public synchronized void addListener(Listener listener) {
+        if (listener != null && !mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 开始在后台线程读取数据库，已经开始时不处理，可以在需要查找之前提前调用
+     */
+    public synchronized void load() {
+        ensureLoaded();
+    }
+
+    /**
+     * 是否已经读取过数据库
+     * @return 还没有读取完成时返回false，查找都返回空
+     */
+    public synchronized boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * 在调用线程重新读取数据库，和上一次的数据有差异时通知监听者，还没有开始读取时不处理
+     */
+    public void reload() {
+        synchronized (this) {
+            if (mHandler == null) {
+                return;
+            }
+        }
+
+        final List<RadioModel.Station> stations = RadioModel.getStationList(mContext);
+        final List<RadioModel.Station> added = new ArrayList<>();
+        final List<RadioModel.Station> removed = new ArrayList<>();
+        final List<RadioModel.Station> changed = new ArrayList<>();
+        final List<Listener> listeners;
+        synchronized (this) {
+            final SparseArray<RadioModel.Station> oldIds = new SparseArray<>(mIdIndex.size());
+            for (int i = 0; i < mIdIndex.size(); ++i) {
+                oldIds.append(mIdIndex.keyAt(i), mIdIndex.valueAt(i));
+            }
+            setStations(stations);
+            mLoaded = true;
+
+            for (RadioModel.Station station : stations) {
+                RadioModel.Station old = oldIds.get(station.mId);
+                if (old == null) {
+                    added.add(station);
+                } else {
+                    oldIds.remove(station.mId);
+                    if (!isSame(old, station)) {
+                        changed.add(station);
+                    }
+                }
+            }
+            for (int i = 0; i < oldIds.size(); ++i) {
+                removed.add(oldIds.valueAt(i));
+            }
+            if (added.isEmpty() && removed.isEmpty() && changed.isEmpty()) {
+                return;
+            }
+            listeners = new ArrayList<>(mListeners);
+        }
+
+        Logcat.d("added " + added.size() + ", removed " + removed.size() + ", changed " + changed.size());
+        if (!listeners.isEmpty()) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Listener listener : listeners) {
+                        listener.onStationsChanged(added, removed, changed);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 释放，全部 {@link #getInstance(Context)} 都释放之后不再监听数据库的变化并停止后台线程
+     */
+    public void release() {
+        synchronized (RadioStationCache.class) {
+            if (sInstance != this) {
+                return;
+            }
+            if (--sRefCount > 0) {
+                return;
+            }
+            sInstance = null;
+            sRefCount = 0;
+        }
+        synchronized (this) {
+            if (mContentObserver != null) {
+                mContext.getContentResolver().unregisterContentObserver(mContentObserver);
+                mContentObserver = null;
+            }
+            if (mThread != null) {
+                mHandler.removeCallbacks(mLoadRunnable);
+                mThread.quit();
+                mThread = null;
+                mHandler = null;
+            }
+            mListeners.clear();
+            setStations(new ArrayList<RadioModel.Station>());
+            mLoaded = false;
+        }
+    }
+
+    /**
+     * 第一次使用时开始监听数据库的变化，并在后台线程读取数据库，不阻塞调用线程
+     */
+    private void ensureLoaded() {
+        if (mHandler != null) {
+            return;
+        }
+        mThread = new HandlerThread("RadioStation");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mContentObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                reload();
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(Provider.TableColumns.CONTENT_URI, false,
+                mContentObserver);
+        mHandler.post(mLoadRunnable);
+    }
+
+    /**
+     * 替换全部站台并重建索引，同一个位置有多个站台时使用第一个
+     */
+    private void setStations(List<RadioModel.Station> stations) {
+        mStations = stations;
+        mIdIndex.clear();
+        mFreqIndex.clear();
+        mPositionIndex.clear();
+        mFavourites.clear();
+        for (RadioModel.Station station : stations) {
+            mIdIndex.put(station.mId, station);
+            final int freqKey = getKey(station.mBand, station.mFreq);
+            if (mFreqIndex.get(freqKey) == null) {
+                mFreqIndex.put(freqKey, station);
+            }
+            final int positionKey = getKey(station.mBand, station.mPosition);
+            if (mPositionIndex.get(positionKey) == null) {
+                mPositionIndex.put(positionKey, station);
+            }
+            if (station.mIsLove != 0) {
+                mFavourites.add(station);
+            }
+        }
+    }
+
+    private static int getKey(int band, int value) {
+        return ((band & 0xff) << 24) | (value & 0xffffff);
+    }
+
+    private static boolean isSame(RadioModel.Station a, RadioModel.Station b) {
+        return a.mFreq == b.mFreq && a.mBand == b.mBand && a.mKind == b.mKind &&
+                a.mPosition == b.mPosition && a.mIsLove == b.mIsLove &&
+                TextUtils.equals(a.mName, b.mName) && TextUtils.equals(a.mDesp, b.mDesp) &&
+                TextUtils.equals(a.mRdsName, b.mRdsName);
+    }
+}
@@ -0,0 +1,290 @@
+package com.roadrover.sdk.radio;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.util.Map;
+
+/**
+ * RDS信息的缓存，按电台唯一编码PI保存PS、RT和节目类型等信息 </br>
+ * 1. 服务会重复上报相同的PS、RT和Mask，update 系列方法只有在内容变化时才返回true或者新的值，没有变化不需要通知界面 </br>
+ * 2. 频率变化时（{@link #onFreqChanged(int)} 或者收到其他频率的RDS信息）清除全部电台的PS、RT和Mask，
+ *    调回之前的频率时服务上报的信息都会重新通知 </br>
+ * 3. 新的RT收到就接受；收到当前RT的前一部分时可能是分段重复发送，连续收到 {@link #RT_CONFIRM_COUNT} 次才接受 </br>
+ * 4. 当前频率的PS已经 {@link #PS_STABLE_TIME} 没有变化时，在收到下一条RDS信息或者离开该频率时保存在
+ *    SharedPreferences 中，关机时正在收听的电台也会保存，重启之后 {@link #getPSText(int)} 可以立即返回，
+ *    滚动显示的动态PS不会保存 </br>
+ * 5. 记录每个频率收到的PI，用于查找同一个电台的其他频率，见 {@link #getPI(int)} </br>
+ * PI未知时按频率保存
+ */
+public class RdsStore {
+
+    /**
+     * 当前RT的前一部分需要连续收到的次数
+     */
+    public static final int RT_CONFIRM_COUNT = 2;
+
+    /**
+     * PS保持不变多长时间才保存，单位毫秒
+     */
+    public static final int PS_STABLE_TIME = 10 * 1000;
+
+    private static final String PREFERENCES_NAME = "com.roadrover.sdk.radio.rds";
+
+    /**
+     * 一个电台的RDS信息
+     */
+    public static class Info {
+        public final int mPI;     // 电台唯一编码
+        public int mFreq;         // 最后收到的频率
+        public String mPs;        // 电台名称
+        public String mRt;        // 稳定的电台文本信息
+        public int mPTY = IVIRadio.RDS.PTY_UNKNOWN;
+        public int mTP = IVIRadio.RDS.TP_UNKNOWN;
+        public int mTA = IVIRadio.RDS.TA_UNKNOWN;
+
+        private long mPsTime = 0;      // PS最后变化的时间
+        private boolean mPsSaved = false; // 当前PS已经保存
+        private String mRtPrefix;      // 收到的当前RT的前一部分
+        private int mRtPrefixCount = 0;
+
+        Info(int pi) {
+            mPI = pi;
+        }
+
+        /**
+         * 清除PS、RT和Mask，重新收到时都会通知
+         */
+        private void reset() {
+            mPs = null;
+            mPsTime = 0;
+            mPsSaved = false;
+            mRt = null;
+            mRtPrefix = null;
+            mRtPrefixCount = 0;
+            mPTY = IVIRadio.RDS.PTY_UNKNOWN;
+            mTP = IVIRadio.RDS.TP_UNKNOWN;
+            mTA = IVIRadio.RDS.TA_UNKNOWN;
+        }
+
+        @Override
+        public String toString() {
+            return "mPI = " + mPI + ", mFreq = " + mFreq + ", mPs = " + mPs + ", mRt = " + mRt +
+                    ", mPTY = " + mPTY + ", mTP = " + mTP + ", mTA = " + mTA;
+        }
+    }
+
+    private final SharedPreferences mPreferences;
+    private final SparseArray<Info> mInfos = new SparseArray<>();
+    private final SparseArray<String> mPsByFreq = new SparseArray<>(); // 保存的PS
+    private final SparseIntArray mPiByFreq = new SparseIntArray();
+    private boolean mPsLoaded = false;
+    private int mFreq = 0;          // 当前频率
+    private Info mCurrent = null;   // 当前频率最后收到的电台
+
+    /**
+     * 构造函数
+     * @param context 为null时不保存PS
+     */
+    public RdsStore(Context context) {
+        mPreferences = (context != null) ?
+                context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE) : null;
+    }
+
+    /**
+     * 更新PS
+     * @param pi 电台唯一编码
+     * @param freq 频率
+     * @param ps 电台名称
+     * @return 有变化返回true
+     */
+    public boolean updatePs(int pi, int freq, String ps) {
+        final String text = trim(ps);
+        synchronized (this) {
+            Info info = getInfo(pi, freq);
+            if (TextUtils.equals(info.mPs, text)) {
+                return false;
+            }
+            info.mPs = text;
+            info.mPsTime = SystemClock.elapsedRealtime();
+            info.mPsSaved = false;
+            return true;
+        }
+    }
+
+    /**
+     * 更新RT，当前RT的前一部分连续收到 {@link #RT_CONFIRM_COUNT} 次之后才接受
+     * @param pi 电台唯一编码
+     * @param freq 频率
+     * @param rt 电台文本信息
+     * @return RT有变化时返回新的RT，否则返回null
+     */
+    public String updateRt(int pi, int freq, String rt) {
+        final String text = trim(rt);
+        synchronized (this) {
+            Info info = getInfo(pi, freq);
+            if (TextUtils.isEmpty(text) || TextUtils.equals(info.mRt, text)) {
+                info.mRtPrefix = null;
+                info.mRtPrefixCount = 0;
+                return null;
+            }
+
+            if (info.mRt != null && info.mRt.startsWith(text)) {
+                // 分段重复发送时中间会夹着完整的文本，连续收到同一个前一部分说明电台换成了更短的文本
+                if (TextUtils.equals(info.mRtPrefix, text)) {
+                    ++info.mRtPrefixCount;
+                } else {
+                    info.mRtPrefix = text;
+                    info.mRtPrefixCount = 1;
+                }
+                if (info.mRtPrefixCount < RT_CONFIRM_COUNT) {
+                    return null;
+                }
+            }
+
+            info.mRt = text;
+            info.mRtPrefix = null;
+            info.mRtPrefixCount = 0;
+            return info.mRt;
+        }
+    }
+
+    /**
+     * 更新节目类型和交通广播标志
+     * @return 有变化返回true
+     */
+    public synchronized boolean updateMask(int pi, int freq, int pty, int tp, int ta) {
+        Info info = getInfo(pi, freq);
+        if (info.mPTY == pty && info.mTP == tp && info.mTA == ta) {
+            return false;
+        }
+        info.mPTY = pty;
+        info.mTP = tp;
+        info.mTA = ta;
+        return true;
+    }
+
+    /**
+     * 获取电台的RDS信息
+     * @param pi 电台唯一编码
+     * @return 没有收到过返回null，返回的是内部的对象，调用者不能修改
+     */
+    public synchronized Info getInfo(int pi) {
+        return (pi != IVIRadio.RDS.PI_UNKNOWN) ? mInfos.get(pi) : null;
+    }
+
+    /**
+     * 获取频率最后收到的PI
+     * @param freq 频率
+     * @return 没有收到过返回 {@link IVIRadio.RDS#PI_UNKNOWN}
+     */
+    public synchronized int getPI(int freq) {
+        return mPiByFreq.get(freq, IVIRadio.RDS.PI_UNKNOWN);
+    }
+
+    /**
+     * 获取频率的PS，当前频率返回最后收到的，其他频率返回之前保存的
+     * @param freq 频率
+     * @return 没有返回null
+     */
+    public synchronized String getPSText(int freq) {
+        if (mCurrent != null && mCurrent.mFreq == freq && !TextUtils.isEmpty(mCurrent.mPs)) {
+            return mCurrent.mPs;
+        }
+        loadPs();
+        return mPsByFreq.get(freq);
+    }
+
+    /**
+     * 频率变化，保存离开的频率上稳定的PS，并清除全部电台的PS、RT和Mask
+     * @param freq 新的频率
+     */
+    public synchronized void onFreqChanged(int freq) {
+        if (freq == mFreq) {
+            return;
+        }
+        saveStablePs();
+        for (int i = 0; i < mInfos.size(); ++i) {
+            mInfos.valueAt(i).reset();
+        }
+        mFreq = freq;
+        mCurrent = null;
+    }
+
+    /**
+     * 清除全部电台的RDS信息，保存的PS和每个频率的PI保留
+     */
+    public synchronized void clear() {
+        mInfos.clear();
+        mFreq = 0;
+        mCurrent = null;
+    }
+
+    private Info getInfo(int pi, int freq) {
+        onFreqChanged(freq); // 没有收到频率变化时，以RDS信息的频率为准
+
+        // PI未知时按频率保存，频率为正数，和PI不会重复
+        final int key = (pi != IVIRadio.RDS.PI_UNKNOWN) ? pi : -freq;
+        Info info = mInfos.get(key);
+        if (info == null) {
+            info = new Info(pi);
+            mInfos.put(key, info);
+        }
+        info.mFreq = freq;
+        if (pi != IVIRadio.RDS.PI_UNKNOWN) {
+            mPiByFreq.put(freq, pi);
+        }
+        mCurrent = info;
+        saveStablePs(); // 服务重复上报RDS信息，不需要等到频率变化
+        return info;
+    }
+
+    /**
+     * 当前频率的PS已经 {@link #PS_STABLE_TIME} 没有变化时保存，每个PS只保存一次
+     */
+    private void saveStablePs() {
+        if (mCurrent != null && mCurrent.mFreq == mFreq && !mCurrent.mPsSaved && !TextUtils.isEmpty(mCurrent.mPs) &&
+                SystemClock.elapsedRealtime() - mCurrent.mPsTime >= PS_STABLE_TIME) {
+            mCurrent.mPsSaved = true;
+            savePs(mFreq, mCurrent.mPs);
+        }
+    }
+
+    private void loadPs() {
+        if (mPsLoaded) {
+            return;
+        }
+        mPsLoaded = true;
+        if (mPreferences == null) {
+            return;
+        }
+        for (Map.Entry<String, ?> entry : mPreferences.getAll().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                try {
+                    mPsByFreq.put(Integer.parseInt(entry.getKey()), (String) entry.getValue());
+                } catch (NumberFormatException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void savePs(int freq, String ps) {
+        loadPs();
+        if (TextUtils.isEmpty(ps) || TextUtils.equals(mPsByFreq.get(freq), ps)) {
+            return;
+        }
+        mPsByFreq.put(freq, ps);
+        if (mPreferences != null) {
+            mPreferences.edit().putString(String.valueOf(freq), ps).apply();
+        }
+    }
+
+    private static String trim(String text) {
+        return (text != null) ? text.trim() : null;
+    }
+}
@@ -66,6 +66,10 @@ public class IVIConfig {
     private static final String AVIN_DEFAULT_CVBS_TYPE = "DefaultCVBSType";
     /** CVBS类型检测次数 */
     private static final String AVIN_CHANGE_CVBS_TYPE_COUNT = "ChangeCVBSTypeCount";
+    /** 视频信号从无到有的防抖时间 */
+    private static final String AVIN_SIGNAL_DEBOUNCE_TIME = "SignalDebounceTime";
+    /** 视频信号从有到无的防抖时间 */
+    private static final String AVIN_SIGNAL_LOST_TIME = "SignalLostTime";
     /** 默认亮度 */
     private static final String AVIN_DEFAULT_BRIGHTNESS = "DefaultBrightness";
     /** 默认对比度 */
@@ -312,6 +316,12 @@ public class IVIConfig {
     private static final String MEDIA_NEED_PLAYTIME = "needPlayTime";
     /** 获取媒体信息改变最小时间 */
     private static final String MEDIA_CHANGE_MIN_TIME = "ChangeMinTime";
+    /** 每个盘符同时解析 id3 信息的线程数 */
+    private static final String MEDIA_TAG_EXTRACT_THREADS = "TagExtractThreads";
+    /** 播放列表预读的缓冲区个数 */
+    private static final String MEDIA_PREFETCH_BUFFER_COUNT = "PrefetchBufferCount";
+    /** 播放列表预读的每个缓冲区大小，单位KB */
+    private static final String MEDIA_PREFETCH_BUFFER_SIZE = "PrefetchBufferSize";
     // 媒体类型定义 end
 
     // 音频 start
@@ -963,6 +973,24 @@ public class IVIConfig {
         return getInteger(SECTION_AVIN, AVIN_CHANGE_CVBS_TYPE_COUNT, def);
     }
 
+    /**
+     * 获取AVIN视频信号从无到有的防抖时间，有信号保持该时间才认为有信号
+     * @param def 默认值，单位毫秒
+     * @return 单位毫秒
+     */
+    public static int getAVInSignalDebounceTime(int def) {
+        return getInteger(SECTION_AVIN, AVIN_SIGNAL_DEBOUNCE_TIME, def);
+    }
+
+    /**
+     * 获取AVIN视频信号从有到无的防抖时间，一般比从无到有的时间长，避免信号抖动时反复切换
+     * @param def 默认值，单位毫秒
+     * @return 单位毫秒
+     */
+    public static int getAVInSignalLostTime(int def) {
+        return getInteger(SECTION_AVIN, AVIN_SIGNAL_LOST_TIME, def);
+    }
+
     public static int getPowerKeyLongAction() {
         return getInteger(SECTION_POWER, POWER_LONG_ACTION, IVIKey.PowerKeyAction.NONE);
     }
@@ -1840,6 +1868,33 @@ public class IVIConfig {
         return getInteger(SECTION_MEDIA, MEDIA_CHANGE_MIN_TIME, def);
     }
 
+    /**
+     * 获取每个盘符同时解析 id3 信息的线程数
+     * @param def 默认值
+     * @return
+     */
+    public static int getMediaTagExtractThreads(int def) {
+        return getInteger(SECTION_MEDIA, MEDIA_TAG_EXTRACT_THREADS, def);
+    }
+
+    /**
+     * 获取播放列表预读的缓冲区个数
+     * @param def 默认值
+     * @return
+     */
+    public static int getMediaPrefetchBufferCount(int def) {
+        return getInteger(SECTION_MEDIA, MEDIA_PREFETCH_BUFFER_COUNT, def);
+    }
+
+    /**
+     * 获取播放列表预读的每个缓冲区大小，单位KB
+     * @param def 默认值
+     * @return
+     */
+    public static int getMediaPrefetchBufferSize(int def) {
+        return getInteger(SECTION_MEDIA, MEDIA_PREFETCH_BUFFER_SIZE, def);
+    }
+
     /**
      * 获取配置的视频通道
      * @param avId 见{@link com.roadrover.sdk.avin.IVIAVIn.Id}
@@ -2279,6 +2334,14 @@ public class IVIConfig {
         return MemoryPackageName.obtain(getString(SECTION_MEMORY, MEMORY_PACKAGE_NAME));
     }
 
+    /**
+     * 获取记忆的包名信息的原始配置，参数值中带有 / 时（例如文件路径）{@link MemoryPackageName} 不能解析，需要自己解析
+     * @return 例：com.roadrover.music/path:/storage/udisk0/music/a.mp3
+     */
+    public static String getMemoryPackageNameString() {
+        return getString(SECTION_MEMORY, MEMORY_PACKAGE_NAME);
+    }
+
     /**
      * 获取记忆启动的包名信息
      * @return
@@ -0,0 +1,301 @@
+package com.roadrover.sdk.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * 字节帧的组包和解析类，用于 MCU、仪表、外设等数据的拼接 </br>
+ * 1. 组包：{@link #obtain(int)} 从缓冲池取出一个帧，通过 put 系列方法追加数据，容量不够时自动扩容，
+ *    使用完调用 {@link #recycle()} 放回缓冲池，不需要像 {@link ByteUtil#addBytes} 一样每次拼接都创建数组 </br>
+ * 2. 解析：{@link #wrap(byte[])} 包装已有的数据，通过 get 系列方法顺序读取，
+ *    {@link #slice(int)} 返回共享数据的视图，不会复制 </br>
+ * 默认大端字节序，可以通过 {@link #order(ByteOrder)} 修改 </br>
+ * <b>该类不是线程安全的，一个帧只能在一个线程使用</b></br>
+ */
+public class ByteFrame {
+
+    /**
+     * 默认的初始容量
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * 缓冲池最多保存的帧个数
+     */
+    private static final int MAX_POOL_SIZE = 8;
+
+    /**
+     * 超过该大小的缓冲区不放回缓冲池，避免长期占用内存
+     */
+    private static final int MAX_POOL_CAPACITY = 4096;
+
+    private static final ArrayDeque<ByteFrame> sPool = new ArrayDeque<>();
+
+    private ByteBuffer mBuffer;
+    private final boolean mPooled;
+
+    private ByteFrame(ByteBuffer buffer, boolean pooled) {
+        mBuffer = buffer;
+        mPooled = pooled;
+    }
+
+    /**
+     * 从缓冲池获取一个空的帧，用于组包
+     * @param capacity 预计的大小，不够时会自动扩容
+     * @return
+     */
+    public static ByteFrame obtain(int capacity) {
+        synchronized (sPool) {
+            ByteFrame frame = sPool.pollFirst();
+            if (frame != null) {
+                frame.ensureCapacity(capacity);
+                return frame;
+            }
+        }
+        return new ByteFrame(ByteBuffer.allocate(Math.max(capacity, DEFAULT_CAPACITY)), true);
+    }
+
+    /**
+     * 从缓冲池获取一个空的帧，用于组包
+     * @return
+     */
+    public static ByteFrame obtain() {
+        return obtain(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 包装已有的数据，用于解析，不会复制数据
+     * @param data 数据
+     * @return
+     */
+    public static ByteFrame wrap(byte[] data) {
+        return wrap(data, 0, (data != null) ? data.length : 0);
+    }
+
+    /**
+     * 包装已有数据的一部分，用于解析，不会复制数据
+     * @param data 数据
+     * @param offset 开始位置
+     * @param length 长度
+     * @return
+     */
+    public static ByteFrame wrap(byte[] data, int offset, int length) {
+        if (data == null) {
+            return new ByteFrame(ByteBuffer.allocate(0), false);
+        }
+        return new ByteFrame(ByteBuffer.wrap(data, offset, length).slice(), false);
+    }
+
+    /**
+     * 放回缓冲池，放回之后不能再使用该帧，包装的帧调用该方法没有作用
+     */
+    public void recycle() {
+        if (!mPooled || mBuffer.capacity() > MAX_POOL_CAPACITY) {
+            return;
+        }
+        mBuffer.clear();
+        mBuffer.order(ByteOrder.BIG_ENDIAN);
+        synchronized (sPool) {
+            if (sPool.size() < MAX_POOL_SIZE && !sPool.contains(this)) {
+                sPool.addFirst(this);
+            }
+        }
+    }
+
+    /**
+     * 设置字节序
+     * @param order 字节序
+     * @return 当前帧，用于链式调用
+     */
+    public ByteFrame order(ByteOrder order) {
+        mBuffer.order(order);
+        return this;
+    }
+
+    public ByteFrame put(byte value) {
+        ensureCapacity(1);
+        mBuffer.put(value);
+        return this;
+    }
+
+    public ByteFrame put(int value) {
+        return put((byte) value);
+    }
+
+    public ByteFrame put(byte[] data) {
+        return (data != null) ? put(data, 0, data.length) : this;
+    }
+
+    public ByteFrame put(byte[] data, int offset, int length) {
+        if (data != null && length > 0) {
+            ensureCapacity(length);
+            mBuffer.put(data, offset, length);
+        }
+        return this;
+    }
+
+    /**
+     * 追加另一个帧已经写入的内容，或者未读取的内容
+     * @param frame 帧
+     * @return
+     */
+    public ByteFrame put(ByteFrame frame) {
+        if (frame != null) {
+            ByteBuffer src = frame.content();
+            ensureCapacity(src.remaining());
+            mBuffer.put(src);
+        }
+        return this;
+    }
+
+    public ByteFrame putShort(int value) {
+        ensureCapacity(2);
+        mBuffer.putShort((short) value);
+        return this;
+    }
+
+    public ByteFrame putInt(int value) {
+        ensureCapacity(4);
+        mBuffer.putInt(value);
+        return this;
+    }
+
+    /**
+     * 在指定位置写入一个字节，不改变写入位置，一般用于回填长度或者校验和
+     * @param index 位置
+     * @param value 值
+     * @return
+     */
+    public ByteFrame set(int index, int value) {
+        mBuffer.put(index, (byte) value);
+        return this;
+    }
+
+    /**
+     * 已经写入的字节数，或者解析时剩余未读取的字节数
+     * @return
+     */
+    public int length() {
+        return mPooled ? mBuffer.position() : mBuffer.remaining();
+    }
+
+    /**
+     * 获取一个无符号字节
+     * @return
+     */
+    public int get() {
+        return mBuffer.get() & 0xff;
+    }
+
+    /**
+     * 获取一个无符号的 short
+     * @return
+     */
+    public int getShort() {
+        return mBuffer.getShort() & 0xffff;
+    }
+
+    public int getInt() {
+        return mBuffer.getInt();
+    }
+
+    /**
+     * 读取数据到指定数组
+     * @param dest 目标数组
+     * @param offset 目标数组的开始位置
+     * @param length 长度
+     */
+    public void get(byte[] dest, int offset, int length) {
+        mBuffer.get(dest, offset, length);
+    }
+
+    /**
+     * 获取指定位置的无符号字节，不改变读取位置
+     * @param index 相对当前读取位置的偏移
+     * @return
+     */
+    public int peek(int index) {
+        return mBuffer.get(mBuffer.position() + index) & 0xff;
+    }
+
+    /**
+     * 跳过指定的字节数
+     * @param count 字节数
+     */
+    public void skip(int count) {
+        mBuffer.position(mBuffer.position() + count);
+    }
+
+    /**
+     * 截取从当前读取位置开始的 length 个字节，共享数据，不会复制，读取位置后移 length
+     * @param length 长度
+     * @return 新的帧，用于继续解析
+     */
+    public ByteFrame slice(int length) {
+        ByteBuffer duplicate = mBuffer.duplicate();
+        duplicate.limit(duplicate.position() + length);
+        mBuffer.position(mBuffer.position() + length);
+        return new ByteFrame(duplicate.slice().order(mBuffer.order()), false);
+    }
+
+    /**
+     * 在未读取的内容中查找 tag
+     * @param tag 查找的内容
+     * @return 相对当前读取位置的偏移，没找到返回-1
+     */
+    public int indexOf(byte[] tag) {
+        if (tag == null || !mBuffer.hasArray()) {
+            return -1;
+        }
+        final int base = mBuffer.arrayOffset() + mBuffer.position();
+        final int pos = ByteUtil.search(tag, mBuffer.array(), base, base + mBuffer.remaining());
+        return (pos >= 0) ? pos - base : -1;
+    }
+
+    /**
+     * 获取内容的只读视图，组包时为已经写入的内容，解析时为未读取的内容，不会复制
+     * @return
+     */
+    public ByteBuffer content() {
+        ByteBuffer duplicate = mBuffer.duplicate();
+        if (mPooled) {
+            duplicate.flip();
+        }
+        return duplicate.asReadOnlyBuffer();
+    }
+
+    /**
+     * 复制内容到新的数组，一般用于传给 aidl 接口
+     * @return
+     */
+    public byte[] toByteArray() {
+        if (mPooled) {
+            return Arrays.copyOf(mBuffer.array(), mBuffer.position());
+        }
+        byte[] result = new byte[mBuffer.remaining()];
+        mBuffer.duplicate().get(result);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return ByteUtil.bytesToString(toByteArray());
+    }
+
+    private void ensureCapacity(int length) {
+        if (mBuffer.remaining() >= length) {
+            return;
+        }
+        if (!mPooled) {
+            throw new IllegalStateException("wrapped frame is read only");
+        }
+        final int required = mBuffer.position() + length;
+        final int capacity = Math.max(required, mBuffer.capacity() * 2);
+        ByteBuffer buffer = ByteBuffer.allocate(capacity).order(mBuffer.order());
+        mBuffer.flip();
+        buffer.put(mBuffer);
+        mBuffer = buffer;
+    }
+}
@@ -1,6 +1,12 @@
 package com.roadrover.sdk.utils;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.Arrays;
 
 /**
@@ -9,6 +15,26 @@ import java.util.Arrays;
 
 public class ByteUtil {
 
+    /**
+     * tag 长度小于该值时直接逐个比较，跳转表的开销比比较本身大
+     */
+    private static final int BMH_MIN_TAG_LENGTH = 4;
+
+    /**
+     * 查找范围小于该值时直接逐个比较，初始化 256 项跳转表的开销比查找本身大
+     */
+    private static final int BMH_MIN_RANGE = 256;
+
+    /**
+     * Boyer-Moore-Horspool 的跳转表，每个线程一份，避免每次查找都创建
+     */
+    private static final ThreadLocal<int[]> sSkipTable = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[256];
+        }
+    };
+
     /**
      * 转换命令为int
      * @param cmd
@@ -26,16 +52,14 @@ public class ByteUtil {
      */
     public static byte[] addByte(byte[] srcs, byte dest) {
         if (null == srcs) return new byte[]{dest};
-        byte[] results = new byte[srcs.length + 1];
-        for (int i = 0; i < srcs.length; ++i) {
-            results[i] = srcs[i];
-        }
+        byte[] results = Arrays.copyOf(srcs, srcs.length + 1);
         results[srcs.length] = dest;
         return results;
     }
 
     /**
-     * 在 srcs 数组上增加一个 dests
+     * 在 srcs 数组上增加一个 dests </br>
+     * 每次调用都会创建新的数组，需要多次拼接时建议使用 {@link ByteFrame}
      * @param srcs
      * @param dests
      * @return
@@ -149,25 +173,19 @@ public class ByteUtil {
         return indexOf(tag, src, index, src.length);
     }
 
+    /**
+     * tag 在 src 前 len 个字节内第一次出现的位置，index 参数没有使用，保留是为了兼容
+     * @param tag
+     * @param src
+     * @param index 没有使用，从0开始查找
+     * @param len 查找的长度，大于 src 的长度时返回-1
+     * @return 没找到返回-1
+     */
     public static int indexOf(byte[] tag, byte[] src, int index, int len) {
-        if (len <= src.length) {
-            int tagLen = tag.length;
-            byte[] tmp = new byte[tagLen];
-            for (int j = 0; j < len - tagLen + 1; j++) {
-                for (int i = 0; i < tagLen; i++) {
-                    tmp[i] = src[j + i];
-                }
-                for (int i = 0; i < tagLen; i++) {
-                    if (tmp[i] != tag[i])
-                        break;
-                    if (i == tagLen - 1) {
-                        return j;
-                    }
-                }
-
-            }
+        if (tag == null || src == null || len > src.length) {
+            return -1;
         }
-        return -1;
+        return search(tag, src, 0, len);
     }
 
     /**
@@ -181,55 +199,131 @@ public class ByteUtil {
     }
 
     public static int lastIndexOf(byte[] tag, byte[] src, int index) {
-        return lastIndexOf(tag, src, src.length);
+        return lastIndexOf(tag, src, index, src.length);
     }
 
+    /**
+     * tag 在 src 前 len 个字节内最后一次出现的位置，index 参数没有使用，保留是为了兼容
+     * @param tag
+     * @param src
+     * @param index 没有使用
+     * @param len 查找的长度，大于 src 的长度时返回-1
+     * @return 没找到返回-1
+     */
     public static int lastIndexOf(byte[] tag, byte[] src, int index, int len) {
-        if (len <= src.length) {
-            int tagLen = tag.length;
-            byte[] tmp = new byte[tagLen];
-            for (int j = len - tagLen; j >= 0; j--) {
-                for (int i = 0; i < tagLen; i++) {
-                    tmp[i] = src[j + i];
-
-                }
-                for (int i = 0; i < tagLen; i++) {
-                    if (tmp[i] != tag[i])
-                        break;
-                    if (i == tagLen - 1) {
-                        return j;
-                    }
-                }
-
-            }
+        if (tag == null || src == null || len > src.length) {
+            return -1;
         }
-        return -1;
+        return searchLast(tag, src, 0, len);
     }
 
     /**
-     * 获取tag和src两个相等的长度
+     * 获取 tag 在 src 中出现的次数，重叠的也计算在内
      * @param tag
      * @param src
      * @return
      */
     public static int size(byte[] tag, byte[] src) {
         int size = 0;
-        int tagLen = tag.length;
-        int srcLen = src.length;
-        byte[] tmp = new byte[tagLen];
-        for (int j = 0; j < srcLen - tagLen + 1; j++) {
-            for (int i = 0; i < tagLen; i++) {
-                tmp[i] = src[j + i];
+        if (tag == null || src == null) {
+            return size;
+        }
+        int from = 0;
+        int pos;
+        while ((pos = search(tag, src, from, src.length)) >= 0) {
+            ++size;
+            from = pos + 1;
+        }
+        return size;
+    }
+
+    /**
+     * 在 src 的 [start, end) 范围内查找 tag 第一次出现的位置，不会创建临时数组
+     * @param tag 查找的内容，为空时返回-1
+     * @param src 数据
+     * @param start 开始位置
+     * @param end 结束位置，不包含
+     * @return 在 src 中的位置，没找到返回-1
+     */
+    public static int search(byte[] tag, byte[] src, int start, int end) {
+        final int tagLen = tag.length;
+        if (start < 0) start = 0;
+        if (end > src.length) end = src.length;
+        if (tagLen == 0 || end - start < tagLen) {
+            return -1;
+        }
+
+        final int last = tagLen - 1;
+        if (tagLen < BMH_MIN_TAG_LENGTH || end - start < BMH_MIN_RANGE) {
+            final byte first = tag[0];
+            for (int j = start; j <= end - tagLen; ++j) {
+                if (src[j] == first && regionMatches(tag, src, j)) {
+                    return j;
+                }
+            }
+            return -1;
+        }
+
+        final int[] skip = sSkipTable.get();
+        Arrays.fill(skip, tagLen);
+        for (int i = 0; i < last; ++i) {
+            skip[tag[i] & 0xff] = last - i;
+        }
+        for (int j = start; j <= end - tagLen; j += skip[src[j + last] & 0xff]) {
+            if (src[j + last] == tag[last] && regionMatches(tag, src, j)) {
+                return j;
             }
-            for (int i = 0; i < tagLen; i++) {
-                if (tmp[i] != tag[i])
-                    break;
-                if (i == tagLen - 1) {
-                    size++;
+        }
+        return -1;
+    }
+
+    /**
+     * 在 src 的 [start, end) 范围内查找 tag 最后一次出现的位置，不会创建临时数组
+     * @param tag 查找的内容，为空时返回-1
+     * @param src 数据
+     * @param start 开始位置
+     * @param end 结束位置，不包含
+     * @return 在 src 中的位置，没找到返回-1
+     */
+    public static int searchLast(byte[] tag, byte[] src, int start, int end) {
+        final int tagLen = tag.length;
+        if (start < 0) start = 0;
+        if (end > src.length) end = src.length;
+        if (tagLen == 0 || end - start < tagLen) {
+            return -1;
+        }
+
+        if (tagLen < BMH_MIN_TAG_LENGTH || end - start < BMH_MIN_RANGE) {
+            final byte first = tag[0];
+            for (int j = end - tagLen; j >= start; --j) {
+                if (src[j] == first && regionMatches(tag, src, j)) {
+                    return j;
                 }
             }
+            return -1;
         }
-        return size;
+
+        // 反向的 Horspool，按窗口第一个字节跳转
+        final int[] skip = sSkipTable.get();
+        Arrays.fill(skip, tagLen);
+        for (int i = tagLen - 1; i > 0; --i) {
+            skip[tag[i] & 0xff] = i;
+        }
+        for (int j = end - tagLen; j >= start; j -= skip[src[j] & 0xff]) {
+            if (src[j] == tag[0] && regionMatches(tag, src, j)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(byte[] tag, byte[] src, int offset) {
+        for (int i = 0; i < tag.length; ++i) {
+            if (src[offset + i] != tag[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -252,55 +346,56 @@ public class ByteUtil {
      * @return true is UTF8, false is not UTF8
      */
     static boolean checkUTF8(byte[] buf) {
-        int i = 0;
-        int bytes = 0;
-        int chr;
-        int bAllAscii = 1;
-        int len = buf.length;
-
-        if (len <= 0) {
+        final int len = buf.length;
+        final int ascii = asciiLength(buf, 0, len);
+        if (ascii == len) { // 空数据或者全部是 ascii 不算 utf8
             return false;
         }
+        return isUTF8(buf, ascii, len);
+    }
 
-        for (i = 0; i < len; i++) {
-            chr = buf[i] & 0xff;
-            if ((chr & 0x0080) != 0) {
-                bAllAscii = -1;
-            }
+    /**
+     * 获取从 start 开始连续 ascii 字符的个数
+     */
+    private static int asciiLength(byte[] buf, int start, int end) {
+        int i = start;
+        while (i < end && buf[i] >= 0) {
+            ++i;
+        }
+        return i - start;
+    }
+
+    /**
+     * 检测 [start, end) 范围内是否是合法的 utf8 编码，遇到第一个非法字节马上返回
+     */
+    private static boolean isUTF8(byte[] buf, int start, int end) {
+        int bytes = 0;
+        for (int i = start; i < end; i++) {
+            final int chr = buf[i] & 0xff;
             if (bytes == 0) {
-                if (chr >= 0x0080) {
-                    if (chr >= 0x00fc && chr <= 0x00fd) {
-                        bytes = 6;
-                    }else if (chr >= 0x00f8) {
+                if (chr >= 0x80) {
+                    if (chr >= 0xfc && chr <= 0xfd) {
                         bytes = 5;
-                    }else if (chr >= 0x00f0) {
+                    } else if (chr >= 0xf8) {
                         bytes = 4;
-                    }else if (chr >= 0x00e0) {
+                    } else if (chr >= 0xf0) {
                         bytes = 3;
-                    }else if (chr >= 0x00c0) {
+                    } else if (chr >= 0xe0) {
                         bytes = 2;
-                    }else {
+                    } else if (chr >= 0xc0) {
+                        bytes = 1;
+                    } else {
                         return false;
                     }
-                    bytes --;
                 }
             } else {
-                if ((chr&0xc0) != 0x0080) {
+                if ((chr & 0xc0) != 0x80) {
                     return false;
                 }
-                bytes --;
+                bytes--;
             }
         }
-
-        if (bytes > 0) {
-            return false;
-        }
-
-        if (bAllAscii > 0) {
-            return false;
-        }
-
-        return true;
+        return bytes == 0;
     }
 
     /**
@@ -311,21 +406,113 @@ public class ByteUtil {
      * @throws UnsupportedEncodingException unsupport encoding exception.
      */
     public static String byte2Str(byte[] buf) throws UnsupportedEncodingException {
-        String str=null;
-
-        if (buf[0] == -1 && buf[1] == -2) {
-            str = new String(buf, 2, buf.length-2, "UTF-16LE");
-        } else if (buf[0] == -2 && buf[1] == -1) {
-            str = new String(buf, 2, buf.length-2, "UTF-16BE");
-        } else {
-            if (checkUTF8(buf)) {
-                str = new String(buf, 0, buf.length, "UTF-8");
-            }else {
-                str = new String(buf, 0, buf.length, "GBK");
+        return byte2Str(buf, 0, (buf != null) ? buf.length : 0);
+    }
+
+    /**
+     * 自动识别编码，把 buf 的一部分转换成字符串，用于 ID3、电话本等编码不确定的文字 </br>
+     * 1. 有 BOM 时按 BOM 的编码，支持 UTF-16LE、UTF-16BE、UTF-8 </br>
+     * 2. 全部是 ascii 时直接转换，不经过解码器 </br>
+     * 3. 是合法的 UTF-8 时按 UTF-8，否则按 GBK </br>
+     * 解码器和字符缓冲区每个线程缓存一份，批量转换时不会重复创建
+     * @param buf 数据
+     * @param offset 开始位置
+     * @param length 长度
+     * @return 字符串，没有数据返回""
+     * @throws UnsupportedEncodingException 系统不支持该编码
+     */
+    public static String byte2Str(byte[] buf, int offset, int length) throws UnsupportedEncodingException {
+        if (buf == null || length <= 0) {
+            return "";
+        }
+
+        final int end = offset + length;
+        if (length >= 2 && buf[offset] == -1 && buf[offset + 1] == -2) {
+            return TextDecoder.get().decode(TextDecoder.UTF_16LE, buf, offset + 2, end);
+        } else if (length >= 2 && buf[offset] == -2 && buf[offset + 1] == -1) {
+            return TextDecoder.get().decode(TextDecoder.UTF_16BE, buf, offset + 2, end);
+        } else if (length >= 3 && buf[offset] == (byte) 0xef && buf[offset + 1] == (byte) 0xbb &&
+                buf[offset + 2] == (byte) 0xbf) {
+            return TextDecoder.get().decode(TextDecoder.UTF_8, buf, offset + 3, end);
+        }
+
+        final int ascii = asciiLength(buf, offset, end);
+        if (ascii == length) {
+            return TextDecoder.get().decodeAscii(buf, offset, end);
+        }
+        return TextDecoder.get().decode(isUTF8(buf, offset + ascii, end) ? TextDecoder.UTF_8 : TextDecoder.GBK,
+                buf, offset, end);
+    }
+
+    /**
+     * 每个线程缓存的解码器和字符缓冲区
+     */
+    private static class TextDecoder {
+        static final int UTF_8    = 0;
+        static final int GBK      = 1;
+        static final int UTF_16LE = 2;
+        static final int UTF_16BE = 3;
+        private static final String[] NAMES = new String[] {"UTF-8", "GBK", "UTF-16LE", "UTF-16BE"};
+
+        private static final ThreadLocal<TextDecoder> sDecoder = new ThreadLocal<TextDecoder>() {
+            @Override
+            protected TextDecoder initialValue() {
+                return new TextDecoder();
+            }
+        };
+
+        private final CharsetDecoder[] mDecoders = new CharsetDecoder[NAMES.length];
+        private CharBuffer mChars = CharBuffer.allocate(256);
+
+        static TextDecoder get() {
+            return sDecoder.get();
+        }
+
+        String decodeAscii(byte[] buf, int start, int end) {
+            final char[] chars = obtainChars(end - start).array();
+            for (int i = start; i < end; ++i) {
+                chars[i - start] = (char) buf[i];
+            }
+            return new String(chars, 0, end - start);
+        }
+
+        String decode(int type, byte[] buf, int start, int end) throws UnsupportedEncodingException {
+            if (end <= start) {
+                return "";
+            }
+
+            CharsetDecoder decoder = mDecoders[type];
+            if (decoder == null) {
+                try {
+                    decoder = Charset.forName(NAMES[type]).newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                } catch (Exception e) {
+                    throw new UnsupportedEncodingException(NAMES[type]);
+                }
+                mDecoders[type] = decoder;
+            }
+
+            final int length = end - start;
+            final CharBuffer out = obtainChars((int) Math.ceil(length * (double) decoder.maxCharsPerByte()) + 1);
+            decoder.reset();
+            CoderResult result = decoder.decode(ByteBuffer.wrap(buf, start, length), out, true);
+            if (!result.isOverflow()) {
+                result = decoder.flush(out);
+            }
+            if (result.isOverflow()) { // 缓冲区估算不够，不应该出现
+                return new String(buf, start, length, NAMES[type]);
             }
+            return new String(out.array(), 0, out.position());
         }
 
-        return str;
+        private CharBuffer obtainChars(int capacity) {
+            if (mChars.capacity() < capacity) {
+                mChars = CharBuffer.allocate(Math.max(capacity, mChars.capacity() * 2));
+            }
+            mChars.clear();
+            return mChars;
+        }
     }
 
     /**
@@ -335,22 +522,6 @@ public class ByteUtil {
      * @return 相等返回true
      */
     public static boolean equals(byte[] srcs, byte[] dests) {
-        if (srcs == dests) {
-            return true;
-        }
-        boolean ret = false;
-        if (srcs != null && dests != null) {
-            if (srcs.length == dests.length) {
-                boolean isEqual = true;
-                for (int i = 0; i < srcs.length; ++i) {
-                    if (srcs[i] != dests[i]) {
-                        isEqual = false;
-                        break;
-                    }
-                }
-                ret = isEqual;
-            }
-        }
-        return ret;
+        return Arrays.equals(srcs, dests);
     }
 }
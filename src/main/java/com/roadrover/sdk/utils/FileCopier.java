@@ -0,0 +1,431 @@
+package com.roadrover.sdk.utils;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 文件拷贝类，用于地图、升级包、媒体文件在U盘和内部存储之间的拷贝 </br>
+ * 1. 默认通过 FileChannel.transferTo 拷贝，不经过应用层的缓冲区；需要校验时使用大块缓冲区，边拷贝边计算 CRC32 </br>
+ * 2. 先写到同目录下的临时文件，写完 fsync 之后再重命名为目标文件，掉电时不会留下不完整的目标文件 </br>
+ * 3. 进度回调按 {@link #setProgressInterval(int)} 限频，拷贝结束时一定会回调一次 </br>
+ * 4. {@link #copyDirectory(String, String)} 按 {@link #setThreadCount(int)} 多线程拷贝目录下的文件，
+ *    一个文件失败时只停止该目录剩下的文件 </br>
+ * 5. 每次拷贝的进度单独计算，同一个对象可以在多个线程同时拷贝 </br>
+ * 可以在其他线程调用 {@link #cancel()} 取消拷贝，取消之后的拷贝都会失败，重新使用之前调用 {@link #reset()}
+ */
+public class FileCopier {
+
+    /**
+     * 默认的进度回调最小间隔，单位毫秒
+     */
+    public static final int DEFAULT_PROGRESS_INTERVAL = 200;
+
+    /**
+     * 默认的缓冲区大小，单位字节
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * 默认的目录拷贝线程数
+     */
+    public static final int DEFAULT_THREAD_COUNT = 2;
+
+    /**
+     * transferTo 每次拷贝的大小，拷贝大文件时用于检查取消和回调进度
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final String TEMP_SUFFIX = ".copying";
+    private static final String BACKUP_SUFFIX = ".old";
+
+    private FileUtils.FileOptionProgressCallback mCallback = null;
+    private int mProgressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private int mBufferSize = DEFAULT_BUFFER_SIZE;
+    private int mThreadCount = DEFAULT_THREAD_COUNT;
+    private boolean mVerify = false;
+    private boolean mSync = true;
+    private volatile boolean mCancelled = false;
+
+    /**
+     * 一次拷贝的进度和状态
+     */
+    private class Task {
+        final long mTotalSize;
+        final AtomicLong mCopiedSize = new AtomicLong(0);
+        long mLastProgressTime = 0;
+        volatile boolean mStopped = false; // 目录中有文件失败，停止剩下的文件
+
+        Task(long totalSize) {
+            mTotalSize = totalSize;
+        }
+
+        boolean isStopped() {
+            return mCancelled || mStopped;
+        }
+    }
+
+    public FileCopier() {
+    }
+
+    /**
+     * 设置进度回调，回调在拷贝线程执行
+     * @param callback
+     * @return
+     */
+    public FileCopier setProgressCallback(FileUtils.FileOptionProgressCallback callback) {
+        mCallback = callback;
+        return this;
+    }
+
+    /**
+     * 设置进度回调的最小间隔
+     * @param interval 单位毫秒，小于等于0表示每次写入都回调
+     * @return
+     */
+    public FileCopier setProgressInterval(int interval) {
+        mProgressInterval = interval;
+        return this;
+    }
+
+    /**
+     * 设置校验时使用的缓冲区大小
+     * @param size 单位字节
+     * @return
+     */
+    public FileCopier setBufferSize(int size) {
+        if (size > 0) {
+            mBufferSize = size;
+        }
+        return this;
+    }
+
+    /**
+     * 设置拷贝目录时的线程数，源和目标在不同的存储设备上时，多线程可以让读写同时进行
+     * @param count 线程数
+     * @return
+     */
+    public FileCopier setThreadCount(int count) {
+        if (count > 0) {
+            mThreadCount = count;
+        }
+        return this;
+    }
+
+    /**
+     * 设置是否校验，校验时拷贝过程中计算源文件的 CRC32，写完之后重新读取目标文件比较
+     * @param verify
+     * @return
+     */
+    public FileCopier setVerify(boolean verify) {
+        mVerify = verify;
+        return this;
+    }
+
+    /**
+     * 设置写完之后是否 fsync，默认打开
+     * @param sync
+     * @return
+     */
+    public FileCopier setSync(boolean sync) {
+        mSync = sync;
+        return this;
+    }
+
+    /**
+     * 取消正在进行和之后开始的全部拷贝，正在写的临时文件会被删除
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * 清除取消状态，取消之后需要重新拷贝时调用
+     */
+    public void reset() {
+        mCancelled = false;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * 拷贝一个文件，目标文件存在时会被替换
+     * @param srcPath 源文件
+     * @param destPath 目标文件
+     * @return 成功返回true
+     */
+    public boolean copy(String srcPath, String destPath) {
+        if (TextUtils.isEmpty(srcPath) || TextUtils.isEmpty(destPath)) {
+            return false;
+        }
+        File srcFile = new File(srcPath);
+        final Task task = new Task(srcFile.length());
+        final boolean result = copyFile(task, srcFile, new File(destPath));
+        notifyProgress(task, true);
+        return result;
+    }
+
+    /**
+     * 拷贝整个目录，多个文件同时拷贝
+     * @param srcDir 源目录
+     * @param destDir 目标目录
+     * @return 全部成功返回true
+     */
+    public boolean copyDirectory(String srcDir, String destDir) {
+        if (TextUtils.isEmpty(srcDir) || TextUtils.isEmpty(destDir)) {
+            return false;
+        }
+        File src = new File(srcDir);
+        if (!src.isDirectory()) {
+            Logcat.w(srcDir + " is not directory");
+            return false;
+        }
+
+        final List<File[]> files = new ArrayList<>();
+        final long[] totalSize = new long[1];
+        if (!collect(src, new File(destDir), files, totalSize)) {
+            return false;
+        }
+        final Task task = new Task(totalSize[0]);
+
+        final long startTime = SystemClock.elapsedRealtime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(mThreadCount, Math.max(1, files.size())));
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (final File[] pair : files) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return !task.isStopped() && copyFile(task, pair[0], pair[1]);
+                }
+            }));
+        }
+
+        boolean result = true;
+        for (Future<Boolean> future : futures) {
+            try {
+                if (!future.get()) {
+                    result = false;
+                    task.mStopped = true; // 一个失败就停止该目录剩下的拷贝
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                result = false;
+                task.mStopped = true;
+            }
+        }
+        executor.shutdown();
+        notifyProgress(task, true);
+        Logcat.d(srcDir + " -> " + destDir + " files:" + files.size() + " size:" + task.mCopiedSize.get() +
+                " time:" + (SystemClock.elapsedRealtime() - startTime) + "ms result:" + result);
+        return result;
+    }
+
+    /**
+     * 遍历源目录，创建目标目录，收集需要拷贝的文件
+     */
+    private boolean collect(File src, File dest, List<File[]> files, long[] totalSize) {
+        if (!dest.exists() && !dest.mkdirs()) {
+            Logcat.w("mkdirs " + dest + " failed");
+            return false;
+        }
+        File[] children = src.listFiles();
+        if (children == null) {
+            return true;
+        }
+        for (File child : children) {
+            File target = new File(dest, child.getName());
+            if (child.isDirectory()) {
+                if (!collect(child, target, files, totalSize)) {
+                    return false;
+                }
+            } else {
+                totalSize[0] += child.length();
+                files.add(new File[]{child, target});
+            }
+        }
+        return true;
+    }
+
+    private boolean copyFile(Task task, File srcFile, File destFile) {
+        if (!srcFile.isFile()) {
+            Logcat.d("srcFile:" + srcFile + " not file!");
+            return false;
+        }
+        File parent = destFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return false;
+        }
+
+        File tempFile = new File(destFile.getPath() + TEMP_SUFFIX);
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        boolean success = false;
+        try {
+            in = new FileInputStream(srcFile);
+            out = new FileOutputStream(tempFile);
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            final long crc = mVerify ? copyWithChecksum(task, inChannel, outChannel) :
+                    transfer(task, inChannel, outChannel);
+            if (task.isStopped()) {
+                return false;
+            }
+            if (mSync) {
+                out.getFD().sync();
+            }
+            out.close();
+            out = null;
+
+            if (mVerify && crc != checksum(tempFile)) {
+                Logcat.e(destFile + " verify failed");
+                return false;
+            }
+            if (!replace(tempFile, destFile)) {
+                Logcat.e("rename " + tempFile + " failed");
+                return false;
+            }
+            success = true;
+            return true;
+        } catch (IOException e) {
+            Logcat.e("copy " + srcFile + " failed, " + e);
+            return false;
+        } finally {
+            close(in);
+            close(out);
+            if (!success) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * 用临时文件替换目标文件，部分文件系统不能覆盖已存在的文件，先把目标文件改名，替换失败时恢复
+     * @return 成功返回true
+     */
+    private static boolean replace(File tempFile, File destFile) {
+        if (tempFile.renameTo(destFile)) {
+            return true;
+        }
+        if (!destFile.exists()) {
+            return false;
+        }
+
+        File backupFile = new File(destFile.getPath() + BACKUP_SUFFIX);
+        backupFile.delete();
+        if (!destFile.renameTo(backupFile)) {
+            return false;
+        }
+        if (tempFile.renameTo(destFile)) {
+            backupFile.delete();
+            return true;
+        }
+        if (!backupFile.renameTo(destFile)) {
+            Logcat.e("restore " + destFile + " failed, old file is " + backupFile);
+        }
+        return false;
+    }
+
+    /**
+     * 通过 transferTo 拷贝
+     * @return 固定返回0
+     */
+    private long transfer(Task task, FileChannel in, FileChannel out) throws IOException {
+        final long size = in.size();
+        long position = 0;
+        while (position < size && !task.isStopped()) {
+            final long count = in.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), out);
+            if (count <= 0) {
+                break;
+            }
+            position += count;
+            addProgress(task, count);
+        }
+        if (position < size && !task.isStopped()) {
+            throw new IOException("transfer stopped at " + position + "/" + size);
+        }
+        return 0;
+    }
+
+    /**
+     * 通过缓冲区拷贝，同时计算 CRC32
+     * @return 源文件的 CRC32
+     */
+    private long copyWithChecksum(Task task, FileChannel in, FileChannel out) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(mBufferSize);
+        while (!task.isStopped() && in.read(buffer) > 0) {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            final int count = buffer.limit();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+            addProgress(task, count);
+        }
+        return crc.getValue();
+    }
+
+    private long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] buffer = new byte[mBufferSize];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, count);
+            }
+        } finally {
+            close(in);
+        }
+        return crc.getValue();
+    }
+
+    private void addProgress(Task task, long count) {
+        task.mCopiedSize.addAndGet(count);
+        notifyProgress(task, false);
+    }
+
+    private void notifyProgress(Task task, boolean force) {
+        final FileUtils.FileOptionProgressCallback callback = mCallback;
+        if (callback == null) {
+            return;
+        }
+        synchronized (task) {
+            final long now = SystemClock.elapsedRealtime();
+            if (!force && mProgressInterval > 0 && now - task.mLastProgressTime < mProgressInterval) {
+                return;
+            }
+            task.mLastProgressTime = now;
+            callback.onOptionProgress(task.mTotalSize, task.mCopiedSize.get());
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * 文件的工具类
@@ -19,6 +20,8 @@ import java.io.OutputStream;
  */
 public class FileUtils {
 
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     public FileUtils() {
         // TODO Auto-generated constructor stub
     }
@@ -61,7 +64,7 @@ public class FileUtils {
     }
 
     /**
-     * 使用文件通道的方式复制文件
+     * 使用文件通道的方式复制文件，in 为 FileInputStream 时通过 transferTo 拷贝，否则使用64K的缓冲区
      * @param in
      * @param destPath
      * @return
@@ -71,14 +74,32 @@ public class FileUtils {
             return false;
         }
 
-        OutputStream os = null;
+        FileOutputStream os = null;
+        boolean success = false;
         try {
             os = new FileOutputStream(destPath);
-            byte[] buffer = new byte[4096];
-            int len;
-            while((len = in.read(buffer)) != -1) {
-                os.write(buffer, 0, len);
+            if (in instanceof FileInputStream) {
+                FileChannel inChannel = ((FileInputStream) in).getChannel();
+                final long size = inChannel.size();
+                long position = inChannel.position();
+                while (position < size) {
+                    final long count = inChannel.transferTo(position, size - position, os.getChannel());
+                    if (count <= 0) {
+                        return false;
+                    }
+                    position += count;
+                }
+            } else {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    os.write(buffer, 0, len);
+                }
             }
+            os.flush();
+            os.close(); // 关闭失败也认为拷贝失败
+            os = null;
+            success = true;
             return true;
         } catch (FileNotFoundException e) {
             e.printStackTrace();
@@ -87,12 +108,14 @@ public class FileUtils {
         } finally {
             try {
                 if (os != null) {
-                    os.flush();
                     os.close();
                 }
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            if (!success) { // 删除不完整的目标文件
+                new File(destPath).delete();
+            }
 
             try {
                 if (in != null) {
@@ -120,7 +143,8 @@ public class FileUtils {
     }
 
     /**
-     * 拷贝文件
+     * 拷贝文件，通过 {@link FileCopier} 拷贝，先写临时文件，fsync 之后重命名为目标文件 </br>
+     * 进度回调最多每 {@link FileCopier#DEFAULT_PROGRESS_INTERVAL} 毫秒一次
      * @param srcPath 原目录
      * @param destPath 目标目录
      * @param overlay 覆盖文件
@@ -163,43 +187,18 @@ public class FileUtils {
             }
         }
 
-        long total = srcFile.length();
-        long pro = 0;
-
-        FileInputStream in = null;
-        FileOutputStream out = null;
-        int byteread = 0; // 读取的字节数
-        try {
-            in = new FileInputStream(srcPath);
-            out = new FileOutputStream(destPath);
-            byte[] buffer = new byte[8192];
+        return new FileCopier().setProgressCallback(callback).copy(srcPath, destPath);
+    }
 
-            while ((byteread = in.read(buffer)) != -1) {
-                out.write(buffer, 0, byteread);
-                if (callback != null) {
-                    pro += byteread;
-                    callback.onOptionProgress(total, pro);
-                }
-            }
-            return true;
-        } catch (FileNotFoundException e) {
-            return false;
-        } catch (IOException e) {
-            return false;
-        } finally {
-            try {
-                if (out != null)
-                    out.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            try {
-                if (in != null)
-                    in.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+    /**
+     * 拷贝整个目录，多个文件同时拷贝
+     * @param srcDir 源目录
+     * @param destDir 目标目录
+     * @param callback 进度回调，可以为null
+     * @return 全部成功返回true
+     */
+    public static boolean copyDirectory(String srcDir, String destDir, FileOptionProgressCallback callback) {
+        return new FileCopier().setProgressCallback(callback).copyDirectory(srcDir, destDir);
     }
 
     /**
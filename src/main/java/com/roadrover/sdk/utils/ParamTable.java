@@ -0,0 +1,120 @@
+package com.roadrover.sdk.utils;
+
+import android.os.RemoteException;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+/**
+ * 服务参数表的缓存，音频参数表和视频参数表共用 </br>
+ * 1. 第一次获取时通过 {@link #fetchAll(Object, int[])} 一次取回全部参数，服务不支持批量接口时退化为
+ *    {@link #fetch(Object, int)} 逐个获取 </br>
+ * 2. 获取过但是无效的参数也会记录，避免重复获取 </br>
+ * 3. 服务重新连接之后需要调用 {@link #clear()}，下次获取时重新加载 </br>
+ * 批量接口中每个参数占用 {@link #FIELD_COUNT} 个值，顺序见 FIELD_ 开头的常量
+ * @param <S> 服务接口
+ * @param <T> 参数
+ */
+public abstract class ParamTable<S, T> {
+
+    /**
+     * 批量接口中每个参数占用的个数：是否有效，最小值，最大值，默认值，当前值
+     */
+    public static final int FIELD_COUNT = 5;
+
+    public static final int FIELD_AVAILABLE = 0;
+    public static final int FIELD_MIN = 1;
+    public static final int FIELD_MAX = 2;
+    public static final int FIELD_DEFAULT = 3;
+    public static final int FIELD_VALUE = 4;
+
+    private final SparseArray<T> mValues = new SparseArray<>();
+    private final SparseBooleanArray mFetched = new SparseBooleanArray();
+    private boolean mLoaded = false;
+
+    /**
+     * 获取参数，第一次调用时批量加载整张参数表
+     * @param service 服务接口
+     * @param id 参数id
+     * @return 参数无效返回null
+     * @throws RemoteException
+     */
+    public synchronized T get(S service, int id) throws RemoteException {
+        if (!mLoaded) {
+            load(service);
+        }
+        if (!mFetched.get(id)) {
+            put(id, fetch(service, id));
+        }
+        return mValues.get(id);
+    }
+
+    /**
+     * 获取已经加载的参数，不访问服务
+     * @param id 参数id
+     * @return 还没有加载或者无效返回null
+     */
+    public synchronized T peek(int id) {
+        return mValues.get(id);
+    }
+
+    /**
+     * 清空参数表之后批量加载
+     * @param service 服务接口
+     * @throws RemoteException
+     */
+    public synchronized void load(S service) throws RemoteException {
+        clear();
+        mLoaded = true;
+        final int[] ids = getIds();
+        if (ids.length > 0 && !fetchAll(service, ids)) {
+            Logcat.d(getClass().getSimpleName() + " service not support batch fetch");
+        }
+    }
+
+    /**
+     * 清空参数表，下次获取时重新加载
+     */
+    public synchronized void clear() {
+        mValues.clear();
+        mFetched.clear();
+        mLoaded = false;
+    }
+
+    /**
+     * 记录获取到的参数，在 {@link #fetchAll(Object, int[])} 中调用
+     * @param id 参数id
+     * @param value 无效时为null
+     */
+    protected void put(int id, T value) {
+        mFetched.put(id, true);
+        if (value != null) {
+            mValues.put(id, value);
+        } else {
+            mValues.remove(id);
+        }
+    }
+
+    /**
+     * 全部参数的id
+     * @return
+     */
+    protected abstract int[] getIds();
+
+    /**
+     * 批量获取参数，获取到的通过 {@link #put(int, Object)} 记录
+     * @param service 服务接口
+     * @param ids 参数id
+     * @return 服务不支持批量接口返回false
+     * @throws RemoteException
+     */
+    protected abstract boolean fetchAll(S service, int[] ids) throws RemoteException;
+
+    /**
+     * 获取一个参数
+     * @param service 服务接口
+     * @param id 参数id
+     * @return 参数无效返回null
+     * @throws RemoteException
+     */
+    protected abstract T fetch(S service, int id) throws RemoteException;
+}
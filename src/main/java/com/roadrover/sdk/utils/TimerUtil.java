@@ -1,8 +1,5 @@
 package com.roadrover.sdk.utils;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 import android.os.Handler;
 import android.os.Message;
 
@@ -13,6 +10,7 @@ import android.os.Message;
  *                       该变量传true, 回调函数在主线程执行，可以刷新UI
  *         start(传定时时间); 当定时结束时，需要调用 stop();尤其是Activity的销毁，必须调用stop()
  *        如果只是做一次的延时处理，可以使用Handler的sendMessageDelayed处理
+ *        所有定时器共用 {@link TimerWheel} 的一个线程，不会每次 start 都创建线程
  * @author bin.xie
  * @修改时间 2015/7/22
  */
@@ -29,8 +27,7 @@ public class TimerUtil {
     private TimerCallback mTimerCallback = null; // 定时器时间到了的回调
 
     private final static int TIMER_MESSAGE_HANDLE = 0; // 定时器到了，发送消息
-    private Timer mTimer = null;
-    private TimerTask mTimerTask = null;
+    private TimerWheel.Timeout mTimeout = null;
     private Handler mHandler = null;
 
     private boolean mIsNeedHandler = true; // 是否需要通过handler转换到主线程，如果需要直接UI操作，需要该操作位true
@@ -57,24 +54,16 @@ public class TimerUtil {
                 }
             };
         }
-    }
-
-    private void initTimerTask() {
-        mTimerTask = new TimerTask() {
 
+        // 需要handler时由时间轮直接post到handler的线程，stop之后未执行的回调会被丢弃
+        mTimeout = new TimerWheel.Timeout(new Runnable() {
             @Override
             public void run() {
-                if (mIsNeedHandler) {
-                    // 定时器中不能刷新界面，所以发送message
-                    postHandler();
-                } else {
-                    // 不需要handler转换，直接调用
-                    if (null != mTimerCallback) {
-                        mTimerCallback.timeout();
-                    }
+                if (null != mTimerCallback) {
+                    mTimerCallback.timeout();
                 }
             }
-        };
+        }, mIsNeedHandler ? mHandler : null);
     }
 
     /**
@@ -96,13 +85,8 @@ public class TimerUtil {
             return;
         }
 
-        initTimerTask();
-
-        mTimer = new Timer();
         try {
-            mTimer.schedule(mTimerTask, nMesc, nMesc);
-        } catch (IllegalStateException e) {
-            e.printStackTrace();
+            TimerWheel.getInstance().schedule(mTimeout, nMesc, nMesc);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -113,15 +97,7 @@ public class TimerUtil {
      */
     public void stop() {
         try {
-            if (null != mTimer) {
-                mTimer.cancel();
-                mTimer = null;
-            }
-
-            if (null != mTimerTask) {
-                mTimerTask.cancel();
-                mTimerTask = null;
-            }
+            TimerWheel.getInstance().cancel(mTimeout);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -132,7 +108,7 @@ public class TimerUtil {
      * @return 激活状态返回true
      */
     public boolean isActive() {
-        return (mTimer != null);
+        return mTimeout.isActive();
     }
 
     private void postHandler() {
@@ -0,0 +1,348 @@
+package com.roadrover.sdk.utils;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 哈希时间轮定时器，进程内所有定时器共用一个线程 </br>
+ * 1. 时间按 {@link #TICK_MS} 划分刻度，定时器按到期刻度挂到 {@link #WHEEL_SIZE} 个槽中的一个，添加和取消都是 O(1) </br>
+ * 2. 线程只在最早的定时器到期时醒来，没有定时器时一直等待，不会按刻度空转 </br>
+ * 3. 定时器可以指定 Handler，回调通过 Handler 转到对应的线程执行；不指定时在回调线程池中执行，
+ *    一个回调耗时不会推迟其他定时器，同一个定时器上一次回调还没有结束时跳过这一次 </br>
+ * 4. {@link Timeout} 可以重复使用，反复 start/stop 不会创建新的线程和对象 </br>
+ */
+public class TimerWheel {
+
+    /**
+     * 时间轮的刻度，单位毫秒，定时的精度不会高于该值
+     */
+    public static final int TICK_MS = 10;
+
+    /**
+     * 时间轮的槽数，必须为2的幂
+     */
+    public static final int WHEEL_SIZE = 512;
+
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final long TICK_NS = TICK_MS * 1000000L;
+    private static final int CALLBACK_KEEP_ALIVE_SECONDS = 30;
+
+    private static final Object sLock = new Object(); // 不使用公开的 TimerWheel.class 作为锁
+    private static TimerWheel sInstance = null;
+
+    /**
+     * 一个定时任务，可以重复调度
+     */
+    public static class Timeout {
+        private final Runnable mTask;
+        private final Handler mHandler;
+        private long mDeadline;       // 到期的刻度
+        private long mPeriod;         // 周期，单位刻度，0表示只执行一次
+        private int mGeneration = 0;  // 每次调度和取消都会加1，用于丢弃已经过期的 Handler 消息
+        private boolean mScheduled = false;
+        private boolean mRunning = false; // 在回调线程池中执行中
+        private Timeout mPrev;
+        private Timeout mNext;
+
+        /**
+         * 构造函数
+         * @param task 到期执行的任务
+         * @param handler 任务执行的线程，传null在回调线程池中执行
+         */
+        public Timeout(Runnable task, Handler handler) {
+            mTask = task;
+            mHandler = handler;
+        }
+
+        /**
+         * 是否正在调度中
+         * @return 已经调度，并且没有取消，没有执行完（单次）返回true
+         */
+        public boolean isActive() {
+            synchronized (sLock) {
+                return mScheduled;
+            }
+        }
+    }
+
+    private final Timeout[] mBuckets = new Timeout[WHEEL_SIZE];
+    private final long mStartTime = System.nanoTime();
+    private long mTick = 0; // 下一个需要处理的刻度
+    private long mNextDeadline = Long.MAX_VALUE; // 最早到期的刻度，取消定时器时不更新，只会提前醒来
+    private int mCount = 0;
+    private Thread mThread = null;
+    private ExecutorService mCallbackExecutor = null; // 没有指定 Handler 的回调，第一次使用时创建
+
+    /**
+     * 获取时间轮，进程内唯一
+     * @return
+     */
+    public static TimerWheel getInstance() {
+        synchronized (sLock) {
+            if (sInstance == null) {
+                sInstance = new TimerWheel();
+            }
+            return sInstance;
+        }
+    }
+
+    private TimerWheel() {
+    }
+
+    /**
+     * 调度一个定时任务，如果该任务已经在调度中，先取消再重新调度
+     * @param timeout 定时任务
+     * @param delayMs 第一次执行的延时，单位毫秒
+     * @param periodMs 之后重复执行的周期，单位毫秒，小于等于0表示只执行一次
+     */
+    public void schedule(Timeout timeout, long delayMs, long periodMs) {
+        if (timeout == null) {
+            return;
+        }
+
+        synchronized (sLock) {
+            remove(timeout);
+            final long now = currentTick();
+            long deadline = now + (Math.max(delayMs, 0) + TICK_MS - 1) / TICK_MS;
+            if (deadline < mTick) {
+                deadline = mTick;
+            }
+            timeout.mDeadline = deadline;
+            timeout.mPeriod = (periodMs > 0) ? Math.max(1, (periodMs + TICK_MS - 1) / TICK_MS) : 0;
+            ++timeout.mGeneration;
+            add(timeout);
+            startThreadIfNeed();
+            if (deadline < mNextDeadline) { // 比线程等待的时间早，需要唤醒重新计算
+                mNextDeadline = deadline;
+                sLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 取消一个定时任务，已经发到 Handler 还没有执行的回调也不会再执行
+     * @param timeout 定时任务
+     * @return 任务在调度中返回true
+     */
+    public boolean cancel(Timeout timeout) {
+        if (timeout == null) {
+            return false;
+        }
+        synchronized (sLock) {
+            ++timeout.mGeneration;
+            return remove(timeout);
+        }
+    }
+
+    /**
+     * 获取当前调度中的定时任务数
+     * @return
+     */
+    public int getCount() {
+        synchronized (sLock) {
+            return mCount;
+        }
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - mStartTime) / TICK_NS;
+    }
+
+    private void add(Timeout timeout) {
+        final int index = (int) (timeout.mDeadline & WHEEL_MASK);
+        timeout.mPrev = null;
+        timeout.mNext = mBuckets[index];
+        if (timeout.mNext != null) {
+            timeout.mNext.mPrev = timeout;
+        }
+        mBuckets[index] = timeout;
+        timeout.mScheduled = true;
+        ++mCount;
+    }
+
+    private boolean remove(Timeout timeout) {
+        if (!timeout.mScheduled) {
+            return false;
+        }
+        if (timeout.mPrev != null) {
+            timeout.mPrev.mNext = timeout.mNext;
+        } else {
+            mBuckets[(int) (timeout.mDeadline & WHEEL_MASK)] = timeout.mNext;
+        }
+        if (timeout.mNext != null) {
+            timeout.mNext.mPrev = timeout.mPrev;
+        }
+        timeout.mPrev = null;
+        timeout.mNext = null;
+        timeout.mScheduled = false;
+        --mCount;
+        return true;
+    }
+
+    private void startThreadIfNeed() {
+        if (mThread == null) {
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop();
+                }
+            }, "TimerWheel");
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+    }
+
+    private void loop() {
+        final List<Timeout> expired = new ArrayList<>();
+        final List<Integer> generations = new ArrayList<>();
+        while (true) {
+            synchronized (sLock) {
+                try {
+                    while (mCount == 0) {
+                        mNextDeadline = Long.MAX_VALUE;
+                        sLock.wait();
+                        mTick = Math.max(mTick, currentTick());
+                    }
+
+                    final long now = currentTick();
+                    if (mNextDeadline > now) { // 等到最早的定时器到期，中间添加更早的定时器时会被唤醒
+                        final long waitMs = ((mNextDeadline * TICK_NS) - (System.nanoTime() - mStartTime)) / 1000000L;
+                        sLock.wait(Math.max(1, waitMs));
+                        continue;
+                    }
+
+                    if (now - mTick >= WHEEL_SIZE) { // 睡眠超过一圈，每个槽只需要处理一次
+                        for (int i = 0; i < WHEEL_SIZE; ++i) {
+                            collect(i, now, expired, generations);
+                        }
+                    } else {
+                        for (; mTick <= now; ++mTick) {
+                            collect((int) (mTick & WHEEL_MASK), mTick, expired, generations);
+                        }
+                    }
+                    mTick = now + 1;
+                    mNextDeadline = nextDeadline();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            for (int i = 0; i < expired.size(); ++i) {
+                deliver(expired.get(i), generations.get(i));
+            }
+            expired.clear();
+            generations.clear();
+        }
+    }
+
+    /**
+     * 取出一个槽中到 tick 为止到期的任务，周期任务重新挂到时间轮上
+     */
+    private void collect(int index, long tick, List<Timeout> expired, List<Integer> generations) {
+        Timeout timeout = mBuckets[index];
+        while (timeout != null) {
+            final Timeout next = timeout.mNext;
+            if (timeout.mDeadline <= tick) {
+                remove(timeout);
+                expired.add(timeout);
+                generations.add(timeout.mGeneration);
+                if (timeout.mPeriod > 0) {
+                    timeout.mDeadline = tick + timeout.mPeriod;
+                    add(timeout);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * 查找最早到期的刻度，从 {@link #mTick} 开始按刻度找，一圈之内有到期的定时器时不需要遍历全部
+     * @return 没有定时器时返回 Long.MAX_VALUE
+     */
+    private long nextDeadline() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < WHEEL_SIZE && mCount > 0; ++i) {
+            final long tick = mTick + i;
+            for (Timeout timeout = mBuckets[(int) (tick & WHEEL_MASK)]; timeout != null; timeout = timeout.mNext) {
+                if (timeout.mDeadline == tick) {
+                    return tick;
+                }
+                min = Math.min(min, timeout.mDeadline);
+            }
+        }
+        return min;
+    }
+
+    private void deliver(final Timeout timeout, final int generation) {
+        if (timeout.mHandler == null) {
+            synchronized (sLock) {
+                if (timeout.mRunning) { // 上一次回调还没有结束，跳过这一次
+                    return;
+                }
+                timeout.mRunning = true;
+            }
+            getCallbackExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runTask(timeout, generation);
+                    } finally {
+                        synchronized (sLock) {
+                            timeout.mRunning = false;
+                        }
+                    }
+                }
+            });
+        } else {
+            timeout.mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    runTask(timeout, generation);
+                }
+            });
+        }
+    }
+
+    /**
+     * 回调线程池，空闲的线程 {@link #CALLBACK_KEEP_ALIVE_SECONDS} 秒之后退出
+     */
+    private ExecutorService getCallbackExecutor() {
+        synchronized (sLock) {
+            if (mCallbackExecutor == null) {
+                mCallbackExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                        CALLBACK_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                        new ThreadFactory() {
+                            private int mIndex = 0;
+
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread thread = new Thread(r, "TimerWheel-Callback-" + (++mIndex));
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+            }
+            return mCallbackExecutor;
+        }
+    }
+
+    private void runTask(Timeout timeout, int generation) {
+        synchronized (sLock) {
+            if (generation != timeout.mGeneration) { // 已经被取消或者重新调度
+                return;
+            }
+        }
+        try {
+            timeout.mTask.run();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.roadrover.sdk.media;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * {@link MediaFileScanner} 记忆目录解析的测试
+ */
+public class MediaFileScannerTest {
+
+    @Test
+    public void memoryDirFromDocumentedConfig() {
+        assertEquals("/storage/udisk0/music",
+                MediaFileScanner.getMemoryDir("com.roadrover.music/path:/storage/udisk0/music/a.mp3"));
+    }
+
+    @Test
+    public void memoryDirAfterOtherExtras() {
+        assertEquals("/storage/udisk0",
+                MediaFileScanner.getMemoryDir("com.roadrover.music/index:3/path:/storage/udisk0/a.mp3"));
+    }
+
+    @Test
+    public void memoryDirWithoutPath() {
+        assertNull(MediaFileScanner.getMemoryDir(null));
+        assertNull(MediaFileScanner.getMemoryDir("com.roadrover.radio_v2/freq:87500"));
+        assertNull(MediaFileScanner.getMemoryDir("com.roadrover.music/path:"));
+    }
+}
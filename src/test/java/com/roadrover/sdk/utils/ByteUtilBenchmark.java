@@ -0,0 +1,143 @@
+package com.roadrover.sdk.utils;
+
+import java.util.Random;
+
+/**
+ * {@link ByteUtil} 和 {@link ByteFrame} 的性能测试，直接运行 main </br>
+ * 1. 组包：每次 {@link ByteUtil#addBytes} 拼接和通过 {@link ByteFrame} 组包比较 </br>
+ * 2. 查找：{@link ByteUtil#indexOf(byte[], byte[])} 和原来逐个位置比较的查找比较，tag 放在数据的最后 </br>
+ * 每项先预热，再取 {@link #ROUNDS} 轮中最快的一轮，结果为每次操作的纳秒数
+ */
+public class ByteUtilBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static volatile long sSink; // 防止结果被优化掉
+
+    private interface Op {
+        void run(int iterations);
+    }
+
+    public static void main(String[] args) {
+        benchFrame(8, 4);
+        benchFrame(32, 16);
+        for (int values : new int[]{4, 256}) {
+            benchSearch(64, 4, values);
+            benchSearch(256, 2, values);
+            benchSearch(4096, 8, values);
+            benchSearch(65536, 16, values);
+        }
+    }
+
+    /**
+     * 组包：一个帧由 parts 段，每段 partSize 字节
+     */
+    private static void benchFrame(final int parts, final int partSize) {
+        final byte[] part = randomBytes(partSize, 256, parts);
+        final int iterations = 200000;
+
+        final long concat = measure(iterations, new Op() {
+            @Override
+            public void run(int iterations) {
+                for (int i = 0; i < iterations; ++i) {
+                    byte[] frame = new byte[]{(byte) 0xAA};
+                    for (int p = 0; p < parts; ++p) {
+                        frame = ByteUtil.addBytes(frame, part);
+                    }
+                    sSink += frame.length;
+                }
+            }
+        });
+        final long frame = measure(iterations, new Op() {
+            @Override
+            public void run(int iterations) {
+                for (int i = 0; i < iterations; ++i) {
+                    ByteFrame frame = ByteFrame.obtain().put(0xAA);
+                    for (int p = 0; p < parts; ++p) {
+                        frame.put(part);
+                    }
+                    sSink += frame.toByteArray().length;
+                    frame.recycle();
+                }
+            }
+        });
+        System.out.println(String.format("frame %2d x %2d bytes   addBytes: %6d ns  ByteFrame: %6d ns",
+                parts, partSize, concat, frame));
+    }
+
+    /**
+     * 查找：在 size 字节的数据中查找最后的 tagSize 字节
+     * @param values 数据中不同字节值的个数，越少部分匹配越多
+     */
+    private static void benchSearch(final int size, final int tagSize, int values) {
+        final byte[] src = randomBytes(size, values, size);
+        final byte[] tag = new byte[tagSize];
+        System.arraycopy(src, size - tagSize, tag, 0, tagSize);
+        final int iterations = Math.max(100, 20000000 / size);
+
+        final long naive = measure(iterations, new Op() {
+            @Override
+            public void run(int iterations) {
+                for (int i = 0; i < iterations; ++i) {
+                    sSink += naiveIndexOf(tag, src);
+                }
+            }
+        });
+        final long horspool = measure(iterations, new Op() {
+            @Override
+            public void run(int iterations) {
+                for (int i = 0; i < iterations; ++i) {
+                    sSink += ByteUtil.indexOf(tag, src);
+                }
+            }
+        });
+        if (naiveIndexOf(tag, src) != ByteUtil.indexOf(tag, src)) {
+            throw new IllegalStateException("indexOf result mismatch");
+        }
+        System.out.println(String.format("indexOf %5d / %2d bytes, %3d values  naive: %7d ns  ByteUtil: %7d ns",
+                size, tagSize, values, naive, horspool));
+    }
+
+    private static long measure(int iterations, Op op) {
+        for (int i = 0; i < WARMUP_ROUNDS; ++i) {
+            op.run(iterations);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; ++i) {
+            final long start = System.nanoTime();
+            op.run(iterations);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / iterations;
+    }
+
+    /**
+     * 原来的实现，逐个位置比较
+     */
+    private static int naiveIndexOf(byte[] tag, byte[] src) {
+        for (int i = 0; i <= src.length - tag.length; ++i) {
+            int j = 0;
+            while (j < tag.length && src[i + j] == tag[j]) {
+                ++j;
+            }
+            if (j == tag.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 随机数据
+     * @param values 不同字节值的个数
+     */
+    private static byte[] randomBytes(int size, int values, long seed) {
+        byte[] data = new byte[size];
+        Random random = new Random(seed);
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) random.nextInt(values);
+        }
+        return data;
+    }
+}
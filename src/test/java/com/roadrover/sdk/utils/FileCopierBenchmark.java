@@ -0,0 +1,152 @@
+package com.roadrover.sdk.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * {@link FileCopier} 的吞吐量测试，直接运行 main </br>
+ * 参数：[源目录] [目标目录] [文件大小MB]，不传时都使用系统临时目录，源和目标在不同设备上（例如U盘和iNand）时结果更有意义 </br>
+ * 1. 单个文件：原来 8K 缓冲区的流拷贝、transferTo、带校验时不同的缓冲区大小 </br>
+ * 2. 目录：不同线程数拷贝多个文件 </br>
+ * 结果为 MB/s，测试文件在结束时删除；同一台设备上的结果受页缓存影响，只用于相互比较
+ */
+public class FileCopierBenchmark {
+
+    private static final int DEFAULT_FILE_MB = 64;
+    private static final int DIR_FILE_COUNT = 16;
+    private static final int LEGACY_BUFFER_SIZE = 8 * 1024;
+    private static final int[] BUFFER_SIZES = {64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024};
+    private static final int[] THREAD_COUNTS = {1, 2, 4};
+
+    private interface Copy {
+        boolean run(File src, File dest) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final File tmp = new File(System.getProperty("java.io.tmpdir"));
+        final File srcRoot = new File((args.length > 0) ? args[0] : tmp.getPath(), "FileCopierBenchmark-src");
+        final File destRoot = new File((args.length > 1) ? args[1] : tmp.getPath(), "FileCopierBenchmark-dest");
+        final int fileMb = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_FILE_MB;
+
+        try {
+            final File src = new File(srcRoot, "file.bin");
+            final File dest = new File(destRoot, "file.bin");
+            createFile(src, fileMb * 1024L * 1024L, 1);
+            System.out.println("file " + fileMb + " MB: " + src + " -> " + dest);
+
+            print("stream 8K nosync", src.length(), measure(src, dest, new Copy() {
+                @Override
+                public boolean run(File src, File dest) throws IOException {
+                    return legacyCopy(src, dest);
+                }
+            }));
+            print("transferTo", src.length(), measure(src, dest, copier(new FileCopier())));
+            print("transferTo nosync", src.length(), measure(src, dest, copier(new FileCopier().setSync(false))));
+            for (int size : BUFFER_SIZES) {
+                FileCopier copier = new FileCopier().setVerify(true).setBufferSize(size);
+                print("verify " + (size / 1024) + "K", src.length(), measure(src, dest, copier(copier)));
+            }
+
+            final File srcDir = new File(srcRoot, "dir");
+            final File destDir = new File(destRoot, "dir");
+            final long fileSize = Math.max(1, fileMb / 4) * 1024L * 1024L;
+            for (int i = 0; i < DIR_FILE_COUNT; ++i) {
+                createFile(new File(srcDir, "file" + i + ".bin"), fileSize, i + 2);
+            }
+            System.out.println("dir " + DIR_FILE_COUNT + " x " + (fileSize / 1024 / 1024) + " MB");
+            for (final int threads : THREAD_COUNTS) {
+                print("threads " + threads, fileSize * DIR_FILE_COUNT, measure(srcDir, destDir, new Copy() {
+                    @Override
+                    public boolean run(File src, File dest) throws IOException {
+                        return new FileCopier().setThreadCount(threads).copyDirectory(src.getPath(), dest.getPath());
+                    }
+                }));
+            }
+        } finally {
+            delete(srcRoot);
+            delete(destRoot);
+        }
+    }
+
+    private static Copy copier(final FileCopier copier) {
+        return new Copy() {
+            @Override
+            public boolean run(File src, File dest) throws IOException {
+                return copier.copy(src.getPath(), dest.getPath());
+            }
+        };
+    }
+
+    /**
+     * 先拷贝一次预热，再取三次中最快的一次
+     * @return 耗时，单位纳秒
+     */
+    private static long measure(File src, File dest, Copy copy) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 4; ++i) {
+            delete(dest);
+            final long start = System.nanoTime();
+            if (!copy.run(src, dest)) {
+                throw new IOException("copy " + src + " failed");
+            }
+            if (i > 0) {
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        return best;
+    }
+
+    private static void print(String name, long bytes, long elapsedNs) {
+        System.out.println(String.format("  %-18s %8.1f MB/s", name,
+                bytes / 1024.0 / 1024.0 / (elapsedNs / 1000000000.0)));
+    }
+
+    /**
+     * 原来 FileUtils.copyFile 的方式，8K 缓冲区的流拷贝
+     */
+    private static boolean legacyCopy(File src, File dest) throws IOException {
+        dest.getParentFile().mkdirs();
+        InputStream in = new FileInputStream(src);
+        OutputStream out = new FileOutputStream(dest);
+        try {
+            byte[] buffer = new byte[LEGACY_BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return true;
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static void createFile(File file, long size, long seed) throws IOException {
+        file.getParentFile().mkdirs();
+        byte[] buffer = new byte[1024 * 1024];
+        new Random(seed).nextBytes(buffer);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            for (long written = 0; written < size; written += buffer.length) {
+                out.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,94 @@
+package com.roadrover.sdk.utils;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * {@link TimerWheel} 的性能测试，直接运行 main </br>
+ * 模拟大量定时器反复 start/stop：每个定时器重新调度 {@link #RESTARTS} 次，
+ * 和原来 TimerUtil 每次 start 都创建一个 java.util.Timer 比较线程数和每次调度的耗时
+ */
+public class TimerWheelBenchmark {
+
+    private static final int TIMERS = 5000;
+    private static final int RESTARTS = 20;
+    private static final int ROUNDS = 5;
+    private static final long DELAY_MS = 60 * 1000; // 测试过程中不会到期
+
+    public static void main(String[] args) throws Exception {
+        final int timers = (args.length > 0) ? Integer.parseInt(args[0]) : TIMERS;
+        System.out.println("timers: " + timers + ", restarts: " + RESTARTS + ", base threads: " + Thread.activeCount());
+
+        for (int round = 0; round < ROUNDS; ++round) { // 第一轮为预热
+            benchTimerWheel(timers, round == ROUNDS - 1);
+        }
+        for (int round = 0; round < ROUNDS; ++round) {
+            benchJavaTimer(timers / 10, round == ROUNDS - 1); // 每次都创建线程，数量少一些
+        }
+    }
+
+    private static void benchTimerWheel(int timers, boolean print) {
+        final TimerWheel wheel = TimerWheel.getInstance();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        final TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[timers];
+        for (int i = 0; i < timers; ++i) {
+            timeouts[i] = new TimerWheel.Timeout(task, null);
+        }
+
+        int maxThreads = 0;
+        final long start = System.nanoTime();
+        for (int restart = 0; restart < RESTARTS; ++restart) {
+            for (TimerWheel.Timeout timeout : timeouts) {
+                wheel.cancel(timeout);
+                wheel.schedule(timeout, DELAY_MS + restart, DELAY_MS);
+            }
+            maxThreads = Math.max(maxThreads, Thread.activeCount());
+        }
+        final long elapsed = System.nanoTime() - start;
+        for (TimerWheel.Timeout timeout : timeouts) {
+            wheel.cancel(timeout);
+        }
+
+        if (print) {
+            print("TimerWheel", timers, elapsed, maxThreads);
+        }
+    }
+
+    private static void benchJavaTimer(int timers, boolean print) {
+        final Timer[] running = new Timer[timers];
+        int maxThreads = 0;
+        final long start = System.nanoTime();
+        for (int restart = 0; restart < RESTARTS; ++restart) {
+            for (int i = 0; i < timers; ++i) {
+                if (running[i] != null) {
+                    running[i].cancel();
+                }
+                running[i] = new Timer();
+                running[i].schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                    }
+                }, DELAY_MS + restart, DELAY_MS);
+            }
+            maxThreads = Math.max(maxThreads, Thread.activeCount());
+        }
+        final long elapsed = System.nanoTime() - start;
+        for (Timer timer : running) {
+            timer.cancel();
+        }
+
+        if (print) {
+            print("java.util.Timer", timers, elapsed, maxThreads);
+        }
+    }
+
+    private static void print(String name, int timers, long elapsedNs, int maxThreads) {
+        final long ops = (long) timers * RESTARTS;
+        System.out.println(String.format("%-16s timers: %6d  ns/restart: %8d  max threads: %d",
+                name, timers, elapsedNs / ops, maxThreads));
+    }
+}